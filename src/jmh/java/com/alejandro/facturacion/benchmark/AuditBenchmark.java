@@ -0,0 +1,132 @@
+package com.alejandro.facturacion.benchmark;
+
+import com.alejandro.facturacion.dto.AuditEntityType;
+import com.alejandro.facturacion.dto.AuditEventType;
+import com.alejandro.facturacion.dto.AuditStats;
+import com.alejandro.facturacion.repository.AuditLogRepository;
+import com.alejandro.facturacion.service.AuditService;
+import com.alejandro.facturacion.service.MoneyService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Coste del registro de auditoría para quien factura ({@link AuditService}).
+ *
+ * <ul>
+ *   <li>{@code request} y {@code requestWithAudit}: cuatro hilos simulan peticiones de {@code work}
+ *       unidades de CPU ({@code Blackhole.consumeCPU}); la segunda publica además un movimiento de
+ *       stock mientras el hilo {@code audit-writer} escribe en disco. La diferencia entre sus
+ *       percentiles (p50, p99, p99.9) es lo que la auditoría añade a la petición.</li>
+ *   <li>{@code append}: lo que cuesta al hilo de escritura cada evento (registro con CRC32C en el
+ *       segmento mapeado); su inverso es el ritmo sostenido antes de que el búfer se llene.</li>
+ * </ul>
+ *
+ * <pre>
+ *   mvn -Pjmh -DskipTests test-compile exec:exec -Djmh.args="AuditBenchmark"
+ * </pre>
+ *
+ * <p>Sin trabajo entre publicaciones los hilos llenan el búfer más deprisa de lo que el escritor lo
+ * vacía y lo medido sería el descarte; por eso cada petición simula trabajo. Antes de medir se
+ * comprueba que un evento publicado llega al disco y se puede consultar; al terminar se muestran
+ * los eventos publicados, escritos y descartados, que deben ser cero.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuditBenchmark {
+
+    private static final int PRODUCTS = 10_000;
+
+    @Param("10000")
+    public long work;
+
+    private Path directory;
+    private AuditService service;
+    private AuditLogRepository appendRepository;
+    private final AuditLogRepository.Entry entry = new AuditLogRepository.Entry();
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("audit-bench");
+        AuditLogRepository repository = new AuditLogRepository(directory.resolve("publish"), DataSize.ofMegabytes(64));
+        service = new AuditService(repository, new MoneyService("COP", 2, RoundingMode.HALF_UP), true,
+                65_536, 1_024, Duration.ofSeconds(1), Duration.ofDays(1), Duration.ofDays(365));
+        service.start();
+        appendRepository = new AuditLogRepository(directory.resolve("append"), DataSize.ofMegabytes(64));
+
+        service.stockMovement(1, -1, 9L, null, "comprobación");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (service.getStats().getWritten() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        if (service.find(AuditEntityType.PRODUCT, 1L, null, null, null, 10).size() != 1) {
+            throw new IllegalStateException("El evento publicado no llegó al registro");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException, IOException {
+        service.shutdown();
+        AuditStats stats = service.getStats();
+        System.out.println();
+        System.out.printf("Auditoría: %d publicados, %d escritos, %d descartados%n",
+                stats.getPublished(), stats.getWritten(), stats.getDropped());
+        appendRepository.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void request() {
+        Blackhole.consumeCPU(work);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void requestWithAudit() {
+        Blackhole.consumeCPU(work);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        service.stockMovement(1 + random.nextInt(PRODUCTS), -1 - random.nextInt(5), (long) random.nextInt(1_000),
+                null, null);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long append() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        entry.set(System.currentTimeMillis(), AuditEventType.STOCK_MOVEMENT, "admin", AuditEntityType.PRODUCT,
+                1 + random.nextInt(PRODUCTS), AuditEntityType.INVOICE, random.nextLong(1_000_000), -1,
+                random.nextInt(1_000), null);
+        return appendRepository.append(entry);
+    }
+}
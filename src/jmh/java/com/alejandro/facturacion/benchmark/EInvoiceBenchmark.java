@@ -0,0 +1,175 @@
+package com.alejandro.facturacion.benchmark;
+
+import com.alejandro.facturacion.config.EInvoiceProperties;
+import com.alejandro.facturacion.dto.ElectronicInvoice;
+import com.alejandro.facturacion.dto.TransmissionResult;
+import com.alejandro.facturacion.entity.Client;
+import com.alejandro.facturacion.entity.Invoice;
+import com.alejandro.facturacion.entity.InvoiceItem;
+import com.alejandro.facturacion.entity.InvoiceSeries;
+import com.alejandro.facturacion.entity.Product;
+import com.alejandro.facturacion.entity.TaxScheme;
+import com.alejandro.facturacion.service.EInvoiceTransmitter;
+import com.alejandro.facturacion.service.ElectronicInvoiceService;
+import com.alejandro.facturacion.service.MoneyService;
+import com.alejandro.facturacion.service.UblInvoiceWriter;
+import com.alejandro.facturacion.service.XadesSigner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Coste por documento de la factura electrónica: generación UBL en streaming sin firmar frente a
+ * generación sobre DOM, firma XAdES y serialización ({@code ElectronicInvoiceService.build}).
+ *
+ * <p>La factura tiene {@code lines} líneas con IVA, INC e ICA. La firma usa un certificado RSA
+ * autofirmado que se genera con {@code keytool} en un directorio temporal. Con {@code -prof gc} se
+ * obtiene la memoria reservada por documento ({@code gc.alloc.rate.norm}); con {@code -t} varios
+ * hilos, los documentos por segundo del pool de firma.
+ *
+ * <pre>
+ *   mvn -Pjmh -DskipTests test-compile exec:exec -Djmh.args="EInvoiceBenchmark -prof gc"
+ *   mvn -Pjmh -DskipTests test-compile exec:exec -Djmh.args="EInvoiceBenchmark.signed -bm thrpt -tu s -t 4"
+ * </pre>
+ *
+ * <p>Antes de medir se comprueba que el documento firmado contiene la firma y el CUFE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EInvoiceBenchmark {
+
+    private static final String PASSWORD = "benchmark";
+    private static final TaxScheme[] SCHEMES = {TaxScheme.IVA, TaxScheme.IVA, TaxScheme.INC, TaxScheme.ICA};
+    private static final BigDecimal[] RATES = {new BigDecimal("19.00"), new BigDecimal("5.00"),
+            new BigDecimal("8.00"), new BigDecimal("0.97")};
+
+    @Param({"5", "50"})
+    public int lines;
+
+    private Path directory;
+    private ElectronicInvoiceService service;
+    private Invoice invoice;
+    private InvoiceSeries series;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("einvoice-bench");
+        Path keystore = directory.resolve("firma.p12");
+        Process keytool = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "keytool").toString(),
+                "-genkeypair", "-alias", "firma", "-keyalg", "RSA", "-keysize", "2048", "-validity", "30",
+                "-dname", "CN=Benchmark, O=Facturacion, C=CO", "-storetype", "PKCS12",
+                "-keystore", keystore.toString(), "-storepass", PASSWORD)
+                .redirectErrorStream(true).start();
+        String output = new String(keytool.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        if (keytool.waitFor() != 0) {
+            throw new IllegalStateException("keytool falló: " + output);
+        }
+
+        EInvoiceProperties properties = new EInvoiceProperties();
+        properties.setTechnicalKey("fc8eac422eba16e22ffd8c6f94b3f40a6e38162c");
+        properties.getIssuer().setNit("900123456");
+        properties.getIssuer().setCheckDigit("7");
+        properties.getIssuer().setName("Emisor de pruebas");
+        properties.getSoftware().setId("56f2ae4e-9812-4fad-9255-08fcfcd5ccb0");
+        properties.getSoftware().setPin("12345");
+        properties.getSigning().setKeystore(keystore);
+        properties.getSigning().setKeystorePassword(PASSWORD);
+        properties.getSigning().setThreads(1);
+
+        // Solo build(): el servicio no toca repositorios ni transacciones
+        EInvoiceTransmitter transmitter = document -> new TransmissionResult(document.getInvoiceId(),
+                document.getNumber(), document.getCufe(), "ACCEPTED", null, null, null);
+        service = new ElectronicInvoiceService(null, null, null,
+                new UblInvoiceWriter(properties, new MoneyService("COP", 2, RoundingMode.HALF_UP)),
+                new XadesSigner(properties),
+                new StaticListableBeanFactory(Map.of("transmitter", transmitter)).getBeanProvider(EInvoiceTransmitter.class),
+                properties, event -> { }, null, null);
+
+        series = InvoiceSeries.builder().prefix("SETP").resolutionNumber("18760000001")
+                .rangeFrom(990_000_000L).rangeTo(995_000_000L).build();
+        invoice = invoice(lines);
+
+        ElectronicInvoice signed = service.build(invoice, series, true);
+        String xml = new String(signed.getXml(), StandardCharsets.UTF_8);
+        if (!xml.contains("SignatureValue") || !xml.contains(signed.getCufe())
+                || !xml.contains("<cbc:ID>04</cbc:ID>") || !xml.contains("<cbc:ID>03</cbc:ID>")) {
+            throw new IllegalStateException("El documento firmado no tiene firma, CUFE o tributos");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        service.shutdown();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public ElectronicInvoice unsigned() {
+        return service.build(invoice, series, false);
+    }
+
+    @Benchmark
+    public ElectronicInvoice signed() {
+        return service.build(invoice, series, true);
+    }
+
+    private static Invoice invoice(int lines) {
+        SplittableRandom random = new SplittableRandom(42);
+        List<InvoiceItem> items = new ArrayList<>(lines);
+        BigDecimal subtotal = BigDecimal.ZERO;
+        BigDecimal taxTotal = BigDecimal.ZERO;
+        for (int i = 0; i < lines; i++) {
+            TaxScheme scheme = SCHEMES[i % SCHEMES.length];
+            BigDecimal rate = RATES[i % RATES.length];
+            BigDecimal price = BigDecimal.valueOf(random.nextLong(1_000, 5_000_000), 2);
+            int quantity = random.nextInt(1, 20);
+            BigDecimal net = price.multiply(BigDecimal.valueOf(quantity));
+            BigDecimal tax = net.multiply(rate).divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
+            Product product = Product.builder().id((long) i + 1).name("Producto " + (i + 1))
+                    .price(price).taxRate(rate).taxScheme(scheme).build();
+            items.add(InvoiceItem.builder().id((long) i + 1).product(product).quantity(quantity).price(price)
+                    .discountRate(BigDecimal.ZERO).discountAmount(BigDecimal.ZERO).subtotal(net)
+                    .taxRate(rate).taxScheme(scheme).taxAmount(tax).build());
+            subtotal = subtotal.add(net);
+            taxTotal = taxTotal.add(tax);
+        }
+        Client client = Client.builder().id(1L).name("Cliente de pruebas").email("cliente@bench.test")
+                .identificationNumber("1020304050").build();
+        return Invoice.builder().id(1L).createdAt(LocalDateTime.of(2024, 3, 1, 10, 30))
+                .seriesPrefix("SETP").number(990_000_001L).subtotal(subtotal).discountTotal(BigDecimal.ZERO)
+                .taxTotal(taxTotal).total(subtotal.add(taxTotal)).client(client).items(items).build();
+    }
+}
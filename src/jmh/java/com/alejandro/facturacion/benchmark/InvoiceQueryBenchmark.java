@@ -0,0 +1,207 @@
+package com.alejandro.facturacion.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencia de las consultas de facturas antes y después de los índices de la migración V2.
+ *
+ * <p>Cada fork crea una base H2 en memoria (modo MySQL) con las migraciones hasta {@code schema}
+ * ("1": esquema inicial, solo los índices de las claves foráneas; "2": índices de V2), siembra
+ * {@code invoices} facturas con dos líneas cada una repartidas en dos años y muestra el plan de
+ * cada consulta antes de medir. Las consultas son las que genera Hibernate para
+ * {@code InvoiceRepository}, reducidas a las columnas de {@code invoices}.
+ *
+ * <pre>
+ *   mvn -Pjmh -DskipTests test-compile exec:exec -Djmh.args="InvoiceQueryBenchmark"
+ *   mvn -Pjmh -DskipTests test-compile exec:exec -Djmh.args="InvoiceQueryBenchmark -p invoices=10000000 -jvmArgs -Xmx12g"
+ * </pre>
+ *
+ * <p>H2 es un sustituto: los planes de MySQL se comprueban con {@code EXPLAIN} sobre una base
+ * sembrada con el perfil {@code loadtest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class InvoiceQueryBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:bench;MODE=MySQL;DATABASE_TO_LOWER=TRUE;"
+            + "NON_KEYWORDS=MONTH,YEAR,VALUE;DB_CLOSE_DELAY=-1;OPTIMIZE_REUSE_RESULTS=FALSE";
+    private static final int HISTORY_DAYS = 730;
+    private static final int PRODUCTS = 1_000;
+
+    private static final String BY_CLIENT =
+            "SELECT id, created_at, total, client_id FROM invoices WHERE client_id = ?";
+    private static final String BY_CLIENT_RECENT =
+            "SELECT id, created_at, total FROM invoices WHERE client_id = ? AND created_at >= ? ORDER BY created_at DESC";
+    private static final String BY_DAY =
+            "SELECT id, created_at, total, client_id FROM invoices WHERE created_at BETWEEN ? AND ?";
+    private static final String ITEMS_OF_INVOICE =
+            "SELECT id, quantity, price, subtotal, product_id FROM invoice_items WHERE invoice_id = ?";
+    private static final String MONTHLY_SALES = "SELECT YEAR(created_at), MONTH(created_at), COUNT(*), SUM(total) "
+            + "FROM invoices GROUP BY YEAR(created_at), MONTH(created_at) ORDER BY 1, 2";
+    private static final String MONTHLY_SALES_LAST_QUARTER = "SELECT YEAR(created_at), MONTH(created_at), COUNT(*), SUM(total) "
+            + "FROM invoices WHERE created_at >= ? GROUP BY YEAR(created_at), MONTH(created_at) ORDER BY 1, 2";
+
+    @Param({"1", "2"})
+    public String schema;
+
+    @Param("500000")
+    public int invoices;
+
+    private Connection connection;
+    private LocalDateTime start;
+    private int clients;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private PreparedStatement byClient;
+    private PreparedStatement byClientRecent;
+    private PreparedStatement byDay;
+    private PreparedStatement itemsOfInvoice;
+    private PreparedStatement monthlySales;
+    private PreparedStatement monthlySalesLastQuarter;
+
+    @Setup
+    public void setUp() throws SQLException {
+        ((Logger) LoggerFactory.getLogger("org.flywaydb")).setLevel(Level.WARN);
+        Flyway.configure().dataSource(URL, "sa", "").target(schema).load().migrate();
+        connection = DriverManager.getConnection(URL, "sa", "");
+        clients = Math.max(1, invoices / 10);
+        start = LocalDateTime.now().withNano(0).minusDays(HISTORY_DAYS);
+        long step = Math.max(1, HISTORY_DAYS * 86_400L / invoices);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO clients (id, name, email, identification_number, created_at) "
+                    + "SELECT x, 'Cliente ' || x, 'cliente' || x || '@bench.test', 'B' || x, TIMESTAMP '2020-01-01 00:00:00' "
+                    + "FROM " + range(clients));
+            statement.execute("INSERT INTO products (id, name, price, stock) "
+                    + "SELECT x, 'Producto ' || x, 10 + MOD(x * 37, 990), 0 FROM " + range(PRODUCTS));
+            statement.execute("INSERT INTO invoices (id, created_at, total, client_id) "
+                    + "SELECT x, DATEADD(SECOND, x * " + step + ", TIMESTAMP '" + Timestamp.valueOf(start) + "'), "
+                    + "MOD(x * 7919, 100000) / 100.0, MOD(x * 7919, " + clients + ") + 1 "
+                    + "FROM " + range(invoices));
+            statement.execute("INSERT INTO invoice_items (id, quantity, price, subtotal, product_id, invoice_id) "
+                    + "SELECT x, 1, 10, 10, MOD(x * 31, " + PRODUCTS + ") + 1, (x + 1) / 2 "
+                    + "FROM " + range(2L * invoices));
+            statement.execute("ANALYZE");
+        }
+
+        byClient = connection.prepareStatement(BY_CLIENT);
+        byClientRecent = connection.prepareStatement(BY_CLIENT_RECENT);
+        byDay = connection.prepareStatement(BY_DAY);
+        itemsOfInvoice = connection.prepareStatement(ITEMS_OF_INVOICE);
+        monthlySales = connection.prepareStatement(MONTHLY_SALES);
+        monthlySalesLastQuarter = connection.prepareStatement(MONTHLY_SALES_LAST_QUARTER);
+
+        System.out.println();
+        System.out.println("Esquema V" + schema + ", " + invoices + " facturas:");
+        for (String query : new String[]{BY_CLIENT, BY_CLIENT_RECENT, BY_DAY, ITEMS_OF_INVOICE, MONTHLY_SALES,
+                MONTHLY_SALES_LAST_QUARTER}) {
+            explain(query);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public void findByClientId(Blackhole blackhole) throws SQLException {
+        byClient.setLong(1, 1 + random.nextInt(clients));
+        consume(byClient, blackhole);
+    }
+
+    @Benchmark
+    public void findRecentByClientId(Blackhole blackhole) throws SQLException {
+        byClientRecent.setLong(1, 1 + random.nextInt(clients));
+        byClientRecent.setTimestamp(2, Timestamp.valueOf(start.plusDays(HISTORY_DAYS - 90)));
+        consume(byClientRecent, blackhole);
+    }
+
+    @Benchmark
+    public void findByCreatedAtBetween(Blackhole blackhole) throws SQLException {
+        LocalDateTime day = start.plusDays(random.nextInt(HISTORY_DAYS));
+        byDay.setTimestamp(1, Timestamp.valueOf(day));
+        byDay.setTimestamp(2, Timestamp.valueOf(day.plusDays(1)));
+        consume(byDay, blackhole);
+    }
+
+    @Benchmark
+    public void findItemsByInvoiceId(Blackhole blackhole) throws SQLException {
+        itemsOfInvoice.setLong(1, 1 + random.nextInt(invoices));
+        consume(itemsOfInvoice, blackhole);
+    }
+
+    @Benchmark
+    public void monthlySalesReport(Blackhole blackhole) throws SQLException {
+        consume(monthlySales, blackhole);
+    }
+
+    @Benchmark
+    public void monthlySalesLastQuarter(Blackhole blackhole) throws SQLException {
+        monthlySalesLastQuarter.setTimestamp(1, Timestamp.valueOf(start.plusDays(HISTORY_DAYS - 90)));
+        consume(monthlySalesLastQuarter, blackhole);
+    }
+
+    /** Tabla con la columna {@code x} de 1 a {@code n} ({@code SYSTEM_RANGE} la llama "X"). */
+    private static String range(long n) {
+        return "(SELECT \"X\" AS x FROM SYSTEM_RANGE(1, " + n + "))";
+    }
+
+    private static void consume(PreparedStatement statement, Blackhole blackhole) throws SQLException {
+        try (ResultSet rs = statement.executeQuery()) {
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                for (int i = 1; i <= columns; i++) {
+                    blackhole.consume(rs.getObject(i));
+                }
+            }
+        }
+    }
+
+    private void explain(String query) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + query)) {
+            int parameters = statement.getParameterMetaData().getParameterCount();
+            for (int i = 1; i <= parameters; i++) {
+                statement.setObject(i, null);
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    System.out.println("  " + rs.getString(1).replace("\n", "\n  "));
+                }
+            }
+        }
+    }
+}
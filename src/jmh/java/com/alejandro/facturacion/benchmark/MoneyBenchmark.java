@@ -0,0 +1,147 @@
+package com.alejandro.facturacion.benchmark;
+
+import com.alejandro.facturacion.utils.InvoiceCalculation;
+import com.alejandro.facturacion.utils.MoneyMath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cálculo de los importes de una factura de {@code lines} líneas: el motor en punto fijo
+ * ({@link InvoiceCalculation}) frente al cálculo equivalente con {@code BigDecimal}.
+ *
+ * <ul>
+ *   <li>{@code bigDecimal}: bruto, descuento, neto e IVA por línea con {@code BigDecimal},
+ *       redondeando igual que el motor.</li>
+ *   <li>{@code fixedPoint}: el camino de {@code InvoiceService}, conversiones de frontera incluidas
+ *       (precio y tasas a {@code long}, importes de cada línea de vuelta a {@code BigDecimal}).</li>
+ *   <li>{@code fixedPointArithmetic}: solo la aritmética, con los importes ya en unidades mínimas.</li>
+ * </ul>
+ *
+ * <pre>
+ *   mvn -Pjmh -DskipTests test-compile exec:exec -Djmh.args="MoneyBenchmark -prof gc"
+ * </pre>
+ *
+ * <p>Antes de medir se comprueba que los dos cálculos dan los mismos totales.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MoneyBenchmark {
+
+    private static final int SCALE = 2;
+    private static final RoundingMode ROUNDING = RoundingMode.HALF_UP;
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+    private static final BigDecimal[] TAX_RATES = {new BigDecimal("0.00"), new BigDecimal("5.00"), new BigDecimal("19.00")};
+
+    @Param({"10", "100"})
+    public int lines;
+
+    private BigDecimal[] prices;
+    private int[] quantities;
+    private BigDecimal[] discounts;
+    private BigDecimal[] taxRates;
+
+    private long[] pricesMinor;
+    private int[] discountsBasisPoints;
+    private int[] taxBasisPoints;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        prices = new BigDecimal[lines];
+        quantities = new int[lines];
+        discounts = new BigDecimal[lines];
+        taxRates = new BigDecimal[lines];
+        pricesMinor = new long[lines];
+        discountsBasisPoints = new int[lines];
+        taxBasisPoints = new int[lines];
+        for (int i = 0; i < lines; i++) {
+            prices[i] = BigDecimal.valueOf(random.nextLong(100, 5_000_000), SCALE);
+            quantities[i] = random.nextInt(1, 50);
+            discounts[i] = random.nextInt(4) == 0 ? BigDecimal.valueOf(random.nextInt(1, 3_000), 2) : null;
+            taxRates[i] = TAX_RATES[random.nextInt(TAX_RATES.length)];
+            pricesMinor[i] = MoneyMath.toMinor(prices[i], SCALE, ROUNDING);
+            discountsBasisPoints[i] = MoneyMath.toBasisPoints(discounts[i]);
+            taxBasisPoints[i] = MoneyMath.toBasisPoints(taxRates[i]);
+        }
+
+        BigDecimal[] expected = bigDecimalTotals();
+        InvoiceCalculation calculation = fixedPointTotals();
+        if (expected[0].compareTo(MoneyMath.toDecimal(calculation.getSubtotal(), SCALE)) != 0
+                || expected[1].compareTo(MoneyMath.toDecimal(calculation.getDiscountTotal(), SCALE)) != 0
+                || expected[2].compareTo(MoneyMath.toDecimal(calculation.getTaxTotal(), SCALE)) != 0) {
+            throw new IllegalStateException("Los dos cálculos no coinciden");
+        }
+    }
+
+    @Benchmark
+    public void bigDecimal(Blackhole blackhole) {
+        blackhole.consume(bigDecimalTotals());
+    }
+
+    @Benchmark
+    public void fixedPoint(Blackhole blackhole) {
+        InvoiceCalculation calculation = new InvoiceCalculation(ROUNDING);
+        for (int i = 0; i < lines; i++) {
+            calculation.addLine(MoneyMath.toMinor(prices[i], SCALE, ROUNDING), quantities[i],
+                    MoneyMath.toBasisPoints(discounts[i]), MoneyMath.toBasisPoints(taxRates[i]));
+            // Lo que InvoiceService guarda en cada línea
+            blackhole.consume(MoneyMath.toDecimal(calculation.getLineDiscount(), SCALE));
+            blackhole.consume(MoneyMath.toDecimal(calculation.getLineNet(), SCALE));
+            blackhole.consume(MoneyMath.toDecimal(calculation.getLineTax(), SCALE));
+        }
+        blackhole.consume(MoneyMath.toDecimal(calculation.getSubtotal(), SCALE));
+        blackhole.consume(MoneyMath.toDecimal(calculation.getDiscountTotal(), SCALE));
+        blackhole.consume(MoneyMath.toDecimal(calculation.getTaxTotal(), SCALE));
+        blackhole.consume(MoneyMath.toDecimal(calculation.getTotal(), SCALE));
+    }
+
+    @Benchmark
+    public long fixedPointArithmetic() {
+        return fixedPointTotals().getTotal();
+    }
+
+    /** Subtotal, descuentos e IVA con {@code BigDecimal}, redondeando cada línea. */
+    private BigDecimal[] bigDecimalTotals() {
+        BigDecimal subtotal = BigDecimal.ZERO;
+        BigDecimal discountTotal = BigDecimal.ZERO;
+        BigDecimal taxTotal = BigDecimal.ZERO;
+        for (int i = 0; i < lines; i++) {
+            BigDecimal gross = prices[i].multiply(BigDecimal.valueOf(quantities[i]));
+            BigDecimal discount = discounts[i] == null ? BigDecimal.ZERO
+                    : gross.multiply(discounts[i]).divide(HUNDRED, SCALE, ROUNDING);
+            BigDecimal net = gross.subtract(discount);
+            BigDecimal tax = net.multiply(taxRates[i]).divide(HUNDRED, SCALE, ROUNDING);
+            subtotal = subtotal.add(net);
+            discountTotal = discountTotal.add(discount);
+            taxTotal = taxTotal.add(tax);
+        }
+        return new BigDecimal[]{subtotal, discountTotal, taxTotal, subtotal.add(taxTotal)};
+    }
+
+    private InvoiceCalculation fixedPointTotals() {
+        InvoiceCalculation calculation = new InvoiceCalculation(ROUNDING);
+        for (int i = 0; i < lines; i++) {
+            calculation.addLine(pricesMinor[i], quantities[i], discountsBasisPoints[i], taxBasisPoints[i]);
+        }
+        return calculation;
+    }
+}
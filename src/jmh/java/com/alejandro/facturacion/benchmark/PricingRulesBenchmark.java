@@ -0,0 +1,185 @@
+package com.alejandro.facturacion.benchmark;
+
+import com.alejandro.facturacion.entity.PricingRule;
+import com.alejandro.facturacion.entity.PricingRuleType;
+import com.alejandro.facturacion.utils.CompiledPricingRules;
+import com.alejandro.facturacion.utils.MoneyMath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Valoración de las líneas de una factura con {@code rules} reglas de precios activas: la versión
+ * compilada ({@link CompiledPricingRules}, lo que usa {@code InvoiceService}) frente a recorrer la
+ * lista de reglas en cada línea.
+ *
+ * <p>Cada operación valora {@code LINES} líneas (producto, categoría y cantidad aleatorios) de un
+ * cliente aleatorio: precio unitario negociado y mejor descuento. La mitad de las reglas son tramos
+ * de volumen, un cuarto promociones por categoría y un cuarto precios por cliente. Antes de medir
+ * se comprueba que las dos formas dan el mismo resultado.
+ *
+ * <pre>
+ *   mvn -Pjmh -DskipTests test-compile exec:exec -Djmh.args="PricingRulesBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PricingRulesBenchmark {
+
+    private static final int LINES = 10;
+    private static final int PRODUCTS = 5_000;
+    private static final int CLIENTS = 1_000;
+    private static final int CATEGORIES = 50;
+    private static final long LIST_PRICE = 10_000;
+
+    @Param({"100", "10000"})
+    public int rules;
+
+    private final String[] categories = new String[CATEGORIES];
+    private List<PricingRule> ruleList;
+    private CompiledPricingRules compiled;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < CATEGORIES; i++) {
+            categories[i] = "categoria-" + i;
+        }
+        SplittableRandom seed = new SplittableRandom(7);
+        ruleList = new ArrayList<>(rules);
+        CompiledPricingRules.Builder builder = new CompiledPricingRules.Builder();
+        Set<String> negotiated = new HashSet<>();
+        for (int i = 0; i < rules; i++) {
+            PricingRule rule = new PricingRule();
+            rule.setId((long) i);
+            rule.setActive(true);
+            switch (i % 4) {
+                case 0, 1 -> {
+                    rule.setType(PricingRuleType.VOLUME_TIER);
+                    rule.setProductId(1L + seed.nextInt(PRODUCTS));
+                    rule.setMinQuantity(1 + seed.nextInt(100));
+                    rule.setDiscountPercent(BigDecimal.valueOf(seed.nextInt(1, 3_000), 2));
+                    builder.volumeTier(rule.getProductId(), rule.getMinQuantity(),
+                            MoneyMath.toBasisPoints(rule.getDiscountPercent()));
+                }
+                case 2 -> {
+                    rule.setType(PricingRuleType.CATEGORY_PROMOTION);
+                    rule.setCategory(categories[seed.nextInt(CATEGORIES)]);
+                    rule.setDiscountPercent(BigDecimal.valueOf(seed.nextInt(1, 3_000), 2));
+                    builder.categoryPromotion(rule.getCategory(), MoneyMath.toBasisPoints(rule.getDiscountPercent()));
+                }
+                default -> {
+                    long clientId;
+                    long productId;
+                    do {
+                        clientId = 1L + seed.nextInt(CLIENTS);
+                        productId = 1L + seed.nextInt(PRODUCTS);
+                    } while (!negotiated.add(clientId + "/" + productId));
+                    rule.setType(PricingRuleType.CLIENT_PRICE);
+                    rule.setClientId(clientId);
+                    rule.setProductId(productId);
+                    rule.setFixedPrice(BigDecimal.valueOf(seed.nextLong(100, LIST_PRICE), 2));
+                    builder.clientPrice(clientId, productId, MoneyMath.toMinor(rule.getFixedPrice(), 2, RoundingMode.HALF_UP));
+                }
+            }
+            ruleList.add(rule);
+        }
+        compiled = builder.build(Instant.MAX, rules);
+
+        SplittableRandom check = new SplittableRandom(1);
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < 10_000; i++) {
+            long clientId = 1L + check.nextInt(CLIENTS);
+            long productId = 1L + check.nextInt(PRODUCTS);
+            String category = categories[check.nextInt(CATEGORIES)];
+            int quantity = 1 + check.nextInt(120);
+            if (compiled.unitPrice(clientId, productId, LIST_PRICE) != scanUnitPrice(clientId, productId, now)
+                    || compiled.discountBasisPoints(productId, category, quantity)
+                    != scanDiscount(productId, category, quantity, now)) {
+                throw new IllegalStateException("La versión compilada no coincide con el recorrido de las reglas");
+            }
+        }
+    }
+
+    @Benchmark
+    public void compiled(Blackhole blackhole) {
+        CompiledPricingRules snapshot = compiled;
+        long clientId = 1L + random.nextInt(CLIENTS);
+        for (int i = 0; i < LINES; i++) {
+            long productId = 1L + random.nextInt(PRODUCTS);
+            blackhole.consume(snapshot.unitPrice(clientId, productId, LIST_PRICE));
+            blackhole.consume(snapshot.discountBasisPoints(productId, categories[random.nextInt(CATEGORIES)],
+                    1 + random.nextInt(120)));
+        }
+    }
+
+    @Benchmark
+    public void scanRules(Blackhole blackhole) {
+        LocalDateTime now = LocalDateTime.now();
+        long clientId = 1L + random.nextInt(CLIENTS);
+        for (int i = 0; i < LINES; i++) {
+            long productId = 1L + random.nextInt(PRODUCTS);
+            blackhole.consume(scanUnitPrice(clientId, productId, now));
+            blackhole.consume(scanDiscount(productId, categories[random.nextInt(CATEGORIES)],
+                    1 + random.nextInt(120), now));
+        }
+    }
+
+    private long scanUnitPrice(long clientId, long productId, LocalDateTime now) {
+        for (PricingRule rule : ruleList) {
+            if (rule.getType() == PricingRuleType.CLIENT_PRICE && applies(rule, now)
+                    && rule.getClientId() == clientId && rule.getProductId() == productId) {
+                return MoneyMath.toMinor(rule.getFixedPrice(), 2, RoundingMode.HALF_UP);
+            }
+        }
+        return LIST_PRICE;
+    }
+
+    private int scanDiscount(long productId, String category, int quantity, LocalDateTime now) {
+        int best = 0;
+        for (PricingRule rule : ruleList) {
+            if (!applies(rule, now)) {
+                continue;
+            }
+            boolean matches = switch (rule.getType()) {
+                case VOLUME_TIER -> rule.getProductId() == productId && rule.getMinQuantity() <= quantity;
+                case CATEGORY_PROMOTION -> category.equals(rule.getCategory());
+                case CLIENT_PRICE -> false;
+            };
+            if (matches) {
+                best = Math.max(best, MoneyMath.toBasisPoints(rule.getDiscountPercent()));
+            }
+        }
+        return best;
+    }
+
+    private static boolean applies(PricingRule rule, LocalDateTime now) {
+        return rule.isActive()
+                && (rule.getValidFrom() == null || !rule.getValidFrom().isAfter(now))
+                && (rule.getValidTo() == null || rule.getValidTo().isAfter(now));
+    }
+}
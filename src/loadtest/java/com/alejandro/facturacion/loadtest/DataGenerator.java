@@ -0,0 +1,277 @@
+package com.alejandro.facturacion.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.SplittableRandom;
+
+/**
+ * Siembra clientes, productos y facturas sintéticos directamente con JDBC por lotes, sin pasar
+ * por la API: millones de facturas se generan en minutos.
+ *
+ * <p>Aplica antes las migraciones de Flyway, así que sirve también con una base vacía. Los IDs se
+ * asignan aquí, a continuación de los existentes, para enlazar items con facturas sin leer claves
+ * generadas. Las facturas se reparten en orden de ID a lo largo de {@code loadtest.seed.history}
+ * hasta hoy, sin número legal. Los productos tienen stock de sobra (un movimiento inicial en el
+ * libro de stock) para que las facturas de la prueba no fallen por falta de stock, y los clientes
+ * sembrados reciben su resumen de cuenta con la misma consulta que la migración V10.
+ *
+ * <p>Debe ejecutarse con la aplicación parada: la búsqueda de facturas y los filtros de
+ * duplicados se construyen al arrancar.
+ */
+@Slf4j
+public class DataGenerator {
+
+    private static final String[] CATEGORIES = {"Papelería", "Tecnología", "Hogar", "Alimentos", "Ferretería", "Ropa"};
+    /** Tasas de IVA en puntos básicos y su frecuencia relativa. */
+    private static final int[] TAX_RATES = {1900, 1900, 1900, 500, 0};
+    private static final int INITIAL_STOCK = 1_000_000;
+
+    private final DataSource dataSource;
+    private final LoadTestProperties.Seed seed;
+    private final SplittableRandom random;
+
+    public DataGenerator(DataSource dataSource, LoadTestProperties.Seed seed) {
+        this.dataSource = dataSource;
+        this.seed = seed;
+        this.random = new SplittableRandom(seed.getRandomSeed());
+    }
+
+    public void run() throws SQLException {
+        long start = System.currentTimeMillis();
+        Flyway.configure()
+                .dataSource(dataSource)
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .load()
+                .migrate();
+        try (Connection connection = dataSource.getConnection()) {
+            if (seed.isSkipIfPresent() && nextId(connection, "invoices") > seed.getInvoices()) {
+                log.info("La base ya tiene al menos {} facturas; no se siembra", seed.getInvoices());
+                return;
+            }
+            connection.setAutoCommit(false);
+            LocalDateTime now = LocalDateTime.now();
+            long firstClient = nextId(connection, "clients");
+            long firstProduct = nextId(connection, "products");
+            insertClients(connection, firstClient, now.minus(seed.getHistory()));
+            long[] prices = new long[seed.getProducts()];
+            int[] taxRates = new int[seed.getProducts()];
+            insertProducts(connection, firstProduct, prices, taxRates, now);
+            insertInvoices(connection, firstClient, firstProduct, prices, taxRates, now);
+            summarize(connection, firstClient, firstClient + seed.getClients() - 1);
+            if (connection.getMetaData().getDatabaseProductName().startsWith("H2")) {
+                // H2 no avanza el contador AUTO_INCREMENT con los IDs explícitos
+                for (String table : new String[]{"clients", "products", "invoices", "invoice_items"}) {
+                    long next = nextId(connection, table);
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute("ALTER TABLE " + table + " ALTER COLUMN id RESTART WITH " + next);
+                    }
+                }
+                connection.commit();
+            }
+        }
+        log.info("Siembra terminada en {} s", (System.currentTimeMillis() - start) / 1000);
+    }
+
+    private void insertClients(Connection connection, long firstId, LocalDateTime createdAt) throws SQLException {
+        long start = System.currentTimeMillis();
+        Timestamp timestamp = Timestamp.valueOf(createdAt);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO clients (id, name, email, identification_number, created_at) VALUES (?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < seed.getClients(); i++) {
+                long id = firstId + i;
+                insert.setLong(1, id);
+                insert.setString(2, "Cliente " + id);
+                insert.setString(3, "cliente" + id + "@carga.test");
+                insert.setString(4, "LT" + id);
+                insert.setTimestamp(5, timestamp);
+                insert.addBatch();
+                flushIfFull(connection, insert, i + 1);
+            }
+            flush(connection, insert);
+        }
+        logRate("clientes", seed.getClients(), start);
+    }
+
+    private void insertProducts(Connection connection, long firstId, long[] prices, int[] taxRates, LocalDateTime now)
+            throws SQLException {
+        long start = System.currentTimeMillis();
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO products (id, name, description, price, tax_rate, stock, category) VALUES (?, ?, ?, ?, ?, ?, ?)");
+             PreparedStatement movement = connection.prepareStatement(
+                     "INSERT INTO stock_movements (product_id, movement_type, quantity, reference, created_at) "
+                             + "VALUES (?, 'INITIAL', ?, 'Siembra de la prueba de carga', ?)");
+             PreparedStatement price = connection.prepareStatement(
+                     "INSERT INTO product_prices (product_id, price, valid_from) VALUES (?, ?, ?)")) {
+            Timestamp timestamp = Timestamp.valueOf(now);
+            // El precio rige desde antes de la primera factura sembrada
+            Timestamp priceFrom = Timestamp.valueOf(now.minus(seed.getHistory()));
+            for (int i = 0; i < seed.getProducts(); i++) {
+                long id = firstId + i;
+                prices[i] = 1_000 + random.nextLong(500_000);
+                taxRates[i] = TAX_RATES[random.nextInt(TAX_RATES.length)];
+                String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+                insert.setLong(1, id);
+                insert.setString(2, "Producto " + id);
+                insert.setString(3, "Producto sintético de " + category.toLowerCase());
+                insert.setBigDecimal(4, BigDecimal.valueOf(prices[i], 2));
+                insert.setBigDecimal(5, BigDecimal.valueOf(taxRates[i], 2));
+                insert.setInt(6, INITIAL_STOCK);
+                insert.setString(7, category);
+                insert.addBatch();
+                movement.setLong(1, id);
+                movement.setInt(2, INITIAL_STOCK);
+                movement.setTimestamp(3, timestamp);
+                movement.addBatch();
+                price.setLong(1, id);
+                price.setBigDecimal(2, BigDecimal.valueOf(prices[i], 2));
+                price.setTimestamp(3, priceFrom);
+                price.addBatch();
+                if ((i + 1) % seed.getBatchSize() == 0) {
+                    insert.executeBatch();
+                    price.executeBatch();
+                    flush(connection, movement);
+                }
+            }
+            insert.executeBatch();
+            price.executeBatch();
+            flush(connection, movement);
+        }
+        logRate("productos", seed.getProducts(), start);
+    }
+
+    private void insertInvoices(Connection connection, long firstClient, long firstProduct, long[] prices,
+                                int[] taxRates, LocalDateTime now) throws SQLException {
+        long start = System.currentTimeMillis();
+        long invoiceId = nextId(connection, "invoices");
+        long itemId = nextId(connection, "invoice_items");
+        long from = Timestamp.valueOf(now.minus(seed.getHistory())).getTime();
+        long step = Math.max(1, seed.getHistory().toMillis() / Math.max(1, seed.getInvoices()));
+        int items = 0;
+        try (PreparedStatement insertInvoice = connection.prepareStatement(
+                "INSERT INTO invoices (id, created_at, client_id, subtotal, discount_total, tax_total, total) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?)");
+             PreparedStatement insertItem = connection.prepareStatement(
+                     "INSERT INTO invoice_items (id, invoice_id, product_id, quantity, price, discount_rate, "
+                             + "discount_amount, subtotal, tax_rate, tax_amount) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < seed.getInvoices(); i++, invoiceId++) {
+                int lines = 1 + random.nextInt(seed.getMaxItemsPerInvoice());
+                long subtotal = 0;
+                long taxTotal = 0;
+                for (int line = 0; line < lines; line++, itemId++) {
+                    int product = random.nextInt(seed.getProducts());
+                    int quantity = 1 + random.nextInt(5);
+                    long net = prices[product] * quantity;
+                    long tax = (net * taxRates[product] + 5_000) / 10_000;
+                    subtotal += net;
+                    taxTotal += tax;
+                    insertItem.setLong(1, itemId);
+                    insertItem.setLong(2, invoiceId);
+                    insertItem.setLong(3, firstProduct + product);
+                    insertItem.setInt(4, quantity);
+                    insertItem.setBigDecimal(5, BigDecimal.valueOf(prices[product], 2));
+                    insertItem.setBigDecimal(6, BigDecimal.ZERO);
+                    insertItem.setBigDecimal(7, BigDecimal.ZERO);
+                    insertItem.setBigDecimal(8, BigDecimal.valueOf(net, 2));
+                    insertItem.setBigDecimal(9, BigDecimal.valueOf(taxRates[product], 2));
+                    insertItem.setBigDecimal(10, BigDecimal.valueOf(tax, 2));
+                    insertItem.addBatch();
+                }
+                items += lines;
+                insertInvoice.setLong(1, invoiceId);
+                insertInvoice.setTimestamp(2, new Timestamp(from + i * step + random.nextLong(step)));
+                insertInvoice.setLong(3, firstClient + random.nextInt(seed.getClients()));
+                insertInvoice.setBigDecimal(4, BigDecimal.valueOf(subtotal, 2));
+                insertInvoice.setBigDecimal(5, BigDecimal.ZERO);
+                insertInvoice.setBigDecimal(6, BigDecimal.valueOf(taxTotal, 2));
+                insertInvoice.setBigDecimal(7, BigDecimal.valueOf(subtotal + taxTotal, 2));
+                insertInvoice.addBatch();
+                if ((i + 1) % seed.getBatchSize() == 0) {
+                    // Las facturas antes que sus items, por la clave foránea
+                    insertInvoice.executeBatch();
+                    flush(connection, insertItem);
+                    if ((i + 1) % (seed.getBatchSize() * 100) == 0) {
+                        log.info("{} facturas sembradas", i + 1);
+                    }
+                }
+            }
+            insertInvoice.executeBatch();
+            flush(connection, insertItem);
+        }
+        logRate("facturas", seed.getInvoices(), start);
+        log.info("{} items de factura sembrados", items);
+    }
+
+    /** Resumen de cuenta de los clientes sembrados, como en la migración V10. */
+    private void summarize(Connection connection, long firstClient, long lastClient) throws SQLException {
+        long start = System.currentTimeMillis();
+        try (PreparedStatement insert = connection.prepareStatement("""
+                INSERT INTO client_summaries (client_id, invoice_count, lifetime_total, first_invoice_at, last_invoice_at,
+                                              period_month, month_count, month_total, period_year, year_count, year_total, updated_at)
+                SELECT i.client_id,
+                       COUNT(*),
+                       COALESCE(SUM(i.total), 0),
+                       MIN(i.created_at),
+                       MAX(i.created_at),
+                       YEAR(CURRENT_DATE) * 100 + MONTH(CURRENT_DATE),
+                       SUM(CASE WHEN YEAR(i.created_at) * 100 + MONTH(i.created_at) = YEAR(CURRENT_DATE) * 100 + MONTH(CURRENT_DATE) THEN 1 ELSE 0 END),
+                       COALESCE(SUM(CASE WHEN YEAR(i.created_at) * 100 + MONTH(i.created_at) = YEAR(CURRENT_DATE) * 100 + MONTH(CURRENT_DATE) THEN i.total END), 0),
+                       YEAR(CURRENT_DATE),
+                       SUM(CASE WHEN YEAR(i.created_at) = YEAR(CURRENT_DATE) THEN 1 ELSE 0 END),
+                       COALESCE(SUM(CASE WHEN YEAR(i.created_at) = YEAR(CURRENT_DATE) THEN i.total END), 0),
+                       CURRENT_TIMESTAMP
+                FROM invoices i
+                WHERE i.client_id BETWEEN ? AND ?
+                GROUP BY i.client_id
+                """);
+             PreparedStatement last = connection.prepareStatement("""
+                     UPDATE client_summaries
+                     SET last_invoice_id = (SELECT MAX(i.id) FROM invoices i
+                                            WHERE i.client_id = client_summaries.client_id AND i.created_at = client_summaries.last_invoice_at)
+                     WHERE client_id BETWEEN ? AND ?
+                     """)) {
+            insert.setLong(1, firstClient);
+            insert.setLong(2, lastClient);
+            insert.executeUpdate();
+            last.setLong(1, firstClient);
+            last.setLong(2, lastClient);
+            last.executeUpdate();
+            connection.commit();
+        }
+        log.info("Resúmenes de cuenta calculados en {} ms", System.currentTimeMillis() - start);
+    }
+
+    private void flushIfFull(Connection connection, PreparedStatement statement, int rows) throws SQLException {
+        if (rows % seed.getBatchSize() == 0) {
+            flush(connection, statement);
+        }
+    }
+
+    private static void flush(Connection connection, PreparedStatement statement) throws SQLException {
+        statement.executeBatch();
+        connection.commit();
+    }
+
+    private static long nextId(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COALESCE(MAX(id), 0) + 1 FROM " + table)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static void logRate(String what, int rows, long start) {
+        long millis = Math.max(1, System.currentTimeMillis() - start);
+        log.info("{} {} sembrados en {} ms ({} filas/s)", rows, what, millis, rows * 1000L / millis);
+    }
+}
@@ -0,0 +1,34 @@
+package com.alejandro.facturacion.loadtest;
+
+/**
+ * Operaciones que lanza la prueba de carga, cada una con su propia tasa y su propio histograma.
+ */
+public enum LoadOperation {
+
+    /** {@code POST /api/invoices/{clientId}} con entre 1 y {@code max-items-per-invoice} productos. */
+    CREATE_INVOICE,
+
+    /** {@code GET /api/invoices/client/{clientId}}. */
+    CLIENT_INVOICES,
+
+    /** {@code GET /api/invoices/search} por cliente y periodo. */
+    SEARCH_INVOICES,
+
+    /** {@code GET /api/products/search} por un fragmento del nombre. */
+    SEARCH_PRODUCTS,
+
+    /** {@code GET /api/invoices/{id}/pdf} de una factura sembrada. */
+    INVOICE_PDF,
+
+    /** {@code GET /api/reports/monthly-sales}. */
+    MONTHLY_SALES,
+
+    /** {@code GET /api/reports/monthly-sales/pdf}. */
+    MONTHLY_SALES_PDF,
+
+    /** {@code GET /api/reactive/invoices/client/{clientId}} en NDJSON, para compararla con {@link #CLIENT_INVOICES}. */
+    CLIENT_INVOICES_REACTIVE,
+
+    /** {@code GET /api/reactive/reports/monthly-sales} en NDJSON, calculado en el momento. */
+    MONTHLY_SALES_REACTIVE
+}
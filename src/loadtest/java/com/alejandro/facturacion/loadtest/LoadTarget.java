@@ -0,0 +1,70 @@
+package com.alejandro.facturacion.loadtest;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.SplittableRandom;
+
+/**
+ * Rangos de IDs de clientes, productos y facturas de la base de datos probada, para elegir al azar
+ * a quién facturar y qué consultar. Se leen una vez al empezar; las facturas que crea la prueba no
+ * se consultan.
+ */
+public class LoadTarget {
+
+    private final long[] clients;
+    private final long[] products;
+    private final long[] invoices;
+
+    private LoadTarget(long[] clients, long[] products, long[] invoices) {
+        this.clients = clients;
+        this.products = products;
+        this.invoices = invoices;
+    }
+
+    /**
+     * @throws IllegalStateException si falta algún dato: sin clientes, productos y facturas no hay prueba
+     */
+    public static LoadTarget load(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            return new LoadTarget(range(connection, "clients"), range(connection, "products"),
+                    range(connection, "invoices"));
+        }
+    }
+
+    public long randomClient(SplittableRandom random) {
+        return pick(clients, random);
+    }
+
+    public long randomProduct(SplittableRandom random) {
+        return pick(products, random);
+    }
+
+    public long randomInvoice(SplittableRandom random) {
+        return pick(invoices, random);
+    }
+
+    @Override
+    public String toString() {
+        return "clientes " + clients[0] + "-" + clients[1] + ", productos " + products[0] + "-" + products[1]
+                + ", facturas " + invoices[0] + "-" + invoices[1];
+    }
+
+    private static long pick(long[] range, SplittableRandom random) {
+        return range[0] + random.nextLong(range[1] - range[0] + 1);
+    }
+
+    private static long[] range(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT MIN(id), MAX(id) FROM " + table)) {
+            rs.next();
+            long min = rs.getLong(1);
+            if (rs.wasNull()) {
+                throw new IllegalStateException("La tabla " + table + " está vacía; siembra la base con loadtest.seed.enabled=true");
+            }
+            return new long[]{min, rs.getLong(2)};
+        }
+    }
+}
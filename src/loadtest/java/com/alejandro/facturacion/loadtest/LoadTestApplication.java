@@ -0,0 +1,124 @@
+package com.alejandro.facturacion.loadtest;
+
+import com.alejandro.facturacion.FacturacionApplication;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Profile;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prueba de carga de punta a punta: siembra la base de datos con {@link DataGenerator}, arranca la
+ * aplicación en este proceso (o usa una ya arrancada), la somete a la carga de
+ * {@link WorkloadDriver} y termina con código 1 si se incumple algún SLO.
+ * <pre>
+ * mvn -Ploadtest -DskipTests test-compile exec:exec -Dloadtest.args="--loadtest.seed.invoices=2000000"
+ * </pre>
+ *
+ * <p>La configuración por defecto está en {@code application-loadtest.properties}: H2 en
+ * {@code target/loadtest}, la aplicación embebida con el perfil {@code loadtest-server} y una
+ * mezcla de facturación, consultas, PDF y reportes. Con la aplicación embebida la carga y el
+ * servidor comparten la máquina; para medir el servidor solo, se arranca aparte contra la misma
+ * base de datos y se usa {@code loadtest.embedded=false}.
+ */
+@Slf4j
+@SpringBootConfiguration
+@Profile("loadtest")
+@EnableConfigurationProperties(LoadTestProperties.class)
+public class LoadTestApplication {
+
+    public static void main(String[] args) throws Exception {
+        // DevTools reiniciaría este main al arrancar la aplicación embebida
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        SpringApplication application = new SpringApplication(LoadTestApplication.class);
+        application.setWebApplicationType(WebApplicationType.NONE);
+        application.setAdditionalProfiles("loadtest");
+        int status;
+        try (ConfigurableApplicationContext context = application.run(args)) {
+            status = run(context.getBean(LoadTestProperties.class));
+        }
+        System.exit(status);
+    }
+
+    private static int run(LoadTestProperties properties) throws Exception {
+        LoadTestProperties.Datasource db = properties.getDatasource();
+        LoadTarget target;
+        try (HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(db.getUrl())
+                .username(db.getUsername())
+                .password(db.getPassword())
+                .build()) {
+            if (properties.getSeed().isEnabled()) {
+                new DataGenerator(dataSource, properties.getSeed()).run();
+            }
+            target = LoadTarget.load(dataSource);
+        }
+        log.info("Datos de la prueba: {}", target);
+
+        ConfigurableApplicationContext server = properties.isEmbedded() ? startEmbedded(db) : null;
+        // Los hilos solo se ven con la aplicación en este proceso; se cuentan pasado el calentamiento
+        ThreadSampler sampler = server != null
+                ? new ThreadSampler(properties.getWorkload().getWarmup().toMillis(), 100) : null;
+        LoadTestReport report;
+        try {
+            String baseUrl = server != null
+                    ? "http://localhost:" + server.getEnvironment().getProperty("local.server.port")
+                    : properties.getBaseUrl();
+            report = new WorkloadDriver(properties, target, baseUrl).run();
+        } finally {
+            if (sampler != null) {
+                sampler.close();
+            }
+            if (server != null) {
+                server.close();
+            }
+        }
+
+        report.print(properties.getReportDirectory());
+        if (sampler != null) {
+            sampler.print();
+        }
+        List<String> violations = report.violations(properties);
+        if (!violations.isEmpty()) {
+            violations.forEach(violation -> log.error("SLO incumplido: {}", violation));
+            return 1;
+        }
+        log.info("Todos los SLO se cumplen");
+        return 0;
+    }
+
+    /**
+     * Arranca la aplicación en un puerto libre contra la base de datos sembrada.
+     */
+    private static ConfigurableApplicationContext startEmbedded(LoadTestProperties.Datasource db) {
+        // Como argumentos y no como propiedades por defecto, para que prevalezcan sobre application.properties
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.datasource.url=" + db.getUrl(),
+                "--spring.datasource.username=" + db.getUsername(),
+                "--spring.datasource.password=" + (db.getPassword() != null ? db.getPassword() : "")));
+        if (db.getR2dbcUrl() != null && !db.getR2dbcUrl().isBlank()) {
+            args.add("--facturacion.reactive.enabled=true");
+            args.add("--facturacion.reactive.url=" + db.getR2dbcUrl());
+        }
+        if (db.getUrl().startsWith("jdbc:h2:")) {
+            args.add("--spring.datasource.driver-class-name=org.h2.Driver");
+            args.add("--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect");
+        }
+        long start = System.currentTimeMillis();
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(FacturacionApplication.class)
+                .profiles("loadtest-server")
+                .run(args.toArray(String[]::new));
+        log.info("Aplicación embebida arrancada en {} ms", System.currentTimeMillis() - start);
+        return context;
+    }
+}
@@ -0,0 +1,90 @@
+package com.alejandro.facturacion.loadtest;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Propiedades de la prueba de carga ({@code loadtest.*}); los valores por defecto están en
+ * {@code application-loadtest.properties}.
+ */
+@Data
+@ConfigurationProperties(prefix = "loadtest")
+public class LoadTestProperties {
+
+    /**
+     * Arranca la aplicación en este mismo proceso contra {@link #datasource}; si es false se ataca
+     * la instancia de {@link #baseUrl}, que debe usar la misma base de datos.
+     */
+    private boolean embedded = true;
+
+    /** URL de la instancia a probar cuando no es embebida. */
+    private String baseUrl = "http://localhost:8081";
+
+    private String username = "admin";
+    private String password = "admin123";
+
+    /** Carpeta donde se dejan los histogramas completos de cada operación ({@code .hgrm}). */
+    private String reportDirectory = "target/loadtest";
+
+    private Datasource datasource = new Datasource();
+    private Seed seed = new Seed();
+    private Workload workload = new Workload();
+
+    /** Latencia máxima por operación; sin SLO, la operación solo se informa. */
+    private Map<LoadOperation, Slo> slos = new EnumMap<>(LoadOperation.class);
+
+    /** Proporción máxima de peticiones fallidas (errores de red o respuestas distintas de 2xx). */
+    private double maxErrorRate = 0.01;
+
+    /** Base de datos que se siembra y que usa la aplicación embebida. */
+    @Data
+    public static class Datasource {
+        private String url;
+        private String username;
+        private String password;
+        /** URL R2DBC de la misma base; si se indica, la aplicación embebida activa la API reactiva. */
+        private String r2dbcUrl;
+    }
+
+    /** Datos sintéticos; se añaden a los que ya haya. */
+    @Data
+    public static class Seed {
+        private boolean enabled = true;
+        /** No siembra si la base ya tiene al menos {@code invoices} facturas, por ejemplo de una prueba anterior. */
+        private boolean skipIfPresent = true;
+        private int clients = 100_000;
+        private int products = 10_000;
+        private int invoices = 1_000_000;
+        private int maxItemsPerInvoice = 5;
+        /** Las facturas se reparten por igual en este periodo hasta hoy. */
+        private Duration history = Duration.ofDays(365);
+        /** Filas por lote JDBC; cada lote se confirma por separado. */
+        private int batchSize = 2_000;
+        /** Semilla del generador, para que dos siembras con los mismos parámetros sean iguales. */
+        private long randomSeed = 42;
+    }
+
+    @Data
+    public static class Workload {
+        private Duration duration = Duration.ofMinutes(5);
+        /** Las latencias de este periodo inicial se descartan. */
+        private Duration warmup = Duration.ofSeconds(30);
+        private Duration reportInterval = Duration.ofSeconds(10);
+        private Duration requestTimeout = Duration.ofSeconds(30);
+        /** Peticiones en curso como máximo; si se alcanza, las siguientes esperan y su espera cuenta como latencia. */
+        private int maxInFlight = 256;
+        /** Peticiones por segundo de cada operación; las que no aparecen no se lanzan. */
+        private Map<LoadOperation, Double> rates = new EnumMap<>(LoadOperation.class);
+    }
+
+    @Data
+    public static class Slo {
+        /** Percentil que se comprueba (99 = p99). */
+        private double percentile = 99;
+        private Duration max;
+    }
+}
@@ -0,0 +1,108 @@
+package com.alejandro.facturacion.loadtest;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Resultado de la prueba: rendimiento e histograma de latencias (en microsegundos) de cada
+ * operación durante el periodo medido, y comprobación de los SLO.
+ */
+@Slf4j
+@Getter
+@RequiredArgsConstructor
+public class LoadTestReport {
+
+    private final List<OperationResult> results;
+
+    /**
+     * Escribe el resumen en el log y el histograma completo de cada operación en
+     * {@code <directorio>/<operación>.hgrm}, en milisegundos (se puede dibujar con HdrHistogram Plotter).
+     */
+    public void print(String directory) throws IOException {
+        StringBuilder table = new StringBuilder(String.format(Locale.ROOT, "%n%-24s %10s %8s %9s %9s %9s %9s %9s %9s %9s%n",
+                "Operación", "Peticiones", "Errores", "req/s", "media ms", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "máx ms"));
+        for (OperationResult result : results) {
+            Histogram histogram = result.getHistogram();
+            table.append(String.format(Locale.ROOT, "%-24s %10d %8d %9.1f %9s %9s %9s %9s %9s %9s%n",
+                    result.getOperation(), histogram.getTotalCount(), result.getErrors(), result.getThroughput(),
+                    millis((long) histogram.getMean()), millis(histogram.getValueAtPercentile(50)),
+                    millis(histogram.getValueAtPercentile(90)), millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)), millis(histogram.getMaxValue())));
+        }
+        log.info("Resultado de la prueba de carga:{}", table);
+
+        Path dir = Path.of(directory);
+        Files.createDirectories(dir);
+        for (OperationResult result : results) {
+            Path file = dir.resolve(result.getOperation().name().toLowerCase(Locale.ROOT) + ".hgrm");
+            try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+                result.getHistogram().outputPercentileDistribution(out, 1_000.0);
+            }
+        }
+        log.info("Histogramas completos en {}", dir.toAbsolutePath());
+    }
+
+    /**
+     * SLO incumplidos: percentiles por encima de su máximo y proporción de errores por encima de
+     * {@code loadtest.max-error-rate}.
+     */
+    public List<String> violations(LoadTestProperties properties) {
+        List<String> violations = new ArrayList<>();
+        long requests = 0;
+        long errors = 0;
+        for (OperationResult result : results) {
+            requests += result.getHistogram().getTotalCount();
+            errors += result.getErrors();
+            LoadTestProperties.Slo slo = properties.getSlos().get(result.getOperation());
+            if (slo == null || slo.getMax() == null) {
+                continue;
+            }
+            long limit = slo.getMax().toNanos() / 1_000;
+            long value = result.getHistogram().getValueAtPercentile(slo.getPercentile());
+            if (value > limit) {
+                violations.add(String.format(Locale.ROOT, "%s: p%s = %s ms supera %s ms", result.getOperation(),
+                        trim(slo.getPercentile()), millis(value), millis(limit)));
+            }
+        }
+        properties.getSlos().keySet().stream()
+                .filter(operation -> results.stream().noneMatch(result -> result.getOperation() == operation))
+                .forEach(operation -> log.warn("Hay SLO para {} pero la operación no tiene tasa; no se comprueba", operation));
+        if (requests > 0 && errors > properties.getMaxErrorRate() * requests) {
+            violations.add(String.format(Locale.ROOT, "errores: %d de %d peticiones (%.2f %%) supera el %.2f %%",
+                    errors, requests, errors * 100.0 / requests, properties.getMaxErrorRate() * 100));
+        }
+        return violations;
+    }
+
+    /** Microsegundos a milisegundos con dos decimales. */
+    static String millis(long micros) {
+        return String.format(Locale.ROOT, "%.2f", micros / 1_000.0);
+    }
+
+    private static String trim(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class OperationResult {
+        private final LoadOperation operation;
+        private final Histogram histogram;
+        private final long errors;
+        private final long measuredNanos;
+
+        public double getThroughput() {
+            return histogram.getTotalCount() * 1_000_000_000.0 / measuredNanos;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.alejandro.facturacion.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hilos que usa la aplicación embebida durante la parte medida de la prueba: cada
+ * {@code interval} cuenta los hilos vivos y los ocupados de cada pool (el nombre del hilo sin su
+ * número final) y guarda el máximo. Un hilo está ocupado si no está esperando trabajo en la cola de
+ * su pool; esperar una conexión o a la base de datos cuenta como ocupado. Sirve para comparar los
+ * endpoints MVC, que ocupan un hilo de Tomcat ({@code http-nio-...-exec-}) durante toda la
+ * petición, con la API reactiva.
+ *
+ * <p>Con la aplicación embebida la carga corre en la misma JVM; sus hilos empiezan por
+ * {@code loadtest-} o {@code HttpClient-}. Contra una instancia externa no se ven sus hilos.
+ */
+@Slf4j
+public class ThreadSampler implements AutoCloseable {
+
+    private static final int TOP = 10;
+    private static final int STACK_DEPTH = 16;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "loadtest-threads");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, Integer> peaks = new HashMap<>();
+    private final Map<String, Integer> busyPeaks = new HashMap<>();
+    private int peakTotal;
+
+    public ThreadSampler(long delayMillis, long intervalMillis) {
+        scheduler.scheduleAtFixedRate(this::sample, delayMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void sample() {
+        Map<String, Integer> counts = new HashMap<>();
+        Map<String, Integer> busy = new HashMap<>();
+        int total = 0;
+        for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds(), STACK_DEPTH)) {
+            if (info != null) {
+                String pool = info.getThreadName().replaceFirst("\\d+$", "");
+                counts.merge(pool, 1, Integer::sum);
+                busy.merge(pool, idle(info) ? 0 : 1, Integer::sum);
+                total++;
+            }
+        }
+        counts.forEach((pool, count) -> peaks.merge(pool, count, Math::max));
+        busy.forEach((pool, count) -> busyPeaks.merge(pool, count, Math::max));
+        peakTotal = Math.max(peakTotal, total);
+    }
+
+    /** Esperando una tarea en la cola de un pool o un evento en un selector. */
+    private static boolean idle(ThreadInfo info) {
+        if (info.getThreadState() == Thread.State.RUNNABLE) {
+            for (StackTraceElement frame : info.getStackTrace()) {
+                if (frame.getMethodName().equals("epollWait") || frame.getMethodName().equals("accept")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        // Solo la espera del propio pool: la de una conexión de Hikari también pasa por poll()
+        for (StackTraceElement frame : info.getStackTrace()) {
+            if ((frame.getMethodName().equals("getTask") && frame.getClassName().endsWith("ThreadPoolExecutor"))
+                    || (frame.getMethodName().equals("awaitWork") && frame.getClassName().endsWith("ForkJoinPool"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Escribe en el log el máximo de hilos vivos y ocupados de los {@value #TOP} pools con más hilos
+     * ocupados, y el máximo de hilos vivos de la JVM.
+     */
+    public synchronized void print() {
+        StringBuilder table = new StringBuilder(String.format(Locale.ROOT, "%n%-40s %6s %9s%n", "Pool", "Vivos", "Ocupados"));
+        busyPeaks.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .limit(TOP)
+                .forEach(entry -> table.append(String.format(Locale.ROOT, "%-40s %6d %9d%n", entry.getKey(),
+                        peaks.get(entry.getKey()), entry.getValue())));
+        table.append(String.format(Locale.ROOT, "%-40s %6d%n", "Total de la JVM", peakTotal));
+        log.info("Hilos durante la medición (máximos):{}", table);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,228 @@
+package com.alejandro.facturacion.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lanza las operaciones de {@code loadtest.workload.rates} contra la API, cada una a su tasa fija
+ * (modelo abierto: la llegada de peticiones no depende de lo que tarden las anteriores).
+ *
+ * <p>Un único hilo programa las peticiones y las envía con el cliente HTTP asíncrono del JDK, así
+ * que la concurrencia la limita {@code max-in-flight} y no el número de hilos. La latencia se mide
+ * desde el momento en que la petición debía salir, no desde que salió: si el servidor se atasca y
+ * las peticiones se acumulan, su espera cuenta (sin corregirlo, un atasco apenas se notaría en los
+ * percentiles). Las latencias se guardan en microsegundos en un {@link Recorder} por operación.
+ */
+@Slf4j
+public class WorkloadDriver {
+
+    private final LoadTestProperties.Workload workload;
+    private final LoadTarget target;
+    private final int maxItemsPerInvoice;
+    private final String baseUrl;
+    private final String authorization;
+    private final SplittableRandom random = new SplittableRandom();
+    private final AtomicInteger callbackThreads = new AtomicInteger();
+    private final ExecutorService callbacks = Executors.newFixedThreadPool(2,
+            runnable -> new Thread(runnable, "loadtest-http-" + callbackThreads.incrementAndGet()));
+    private final HttpClient httpClient;
+
+    private final Map<LoadOperation, Recorder> recorders = new EnumMap<>(LoadOperation.class);
+    private final Map<LoadOperation, LongAdder> errors = new EnumMap<>(LoadOperation.class);
+
+    /** Las peticiones que debían salir antes (calentamiento) no se cuentan, aunque terminen después. */
+    private volatile long measureFrom;
+
+    public WorkloadDriver(LoadTestProperties properties, LoadTarget target, String baseUrl) {
+        this.workload = properties.getWorkload();
+        this.target = target;
+        this.maxItemsPerInvoice = properties.getSeed().getMaxItemsPerInvoice();
+        this.baseUrl = baseUrl;
+        this.authorization = "Basic " + Base64.getEncoder().encodeToString(
+                (properties.getUsername() + ":" + properties.getPassword()).getBytes(StandardCharsets.UTF_8));
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(workload.getRequestTimeout())
+                .executor(callbacks)
+                .build();
+    }
+
+    public LoadTestReport run() {
+        List<LoadOperation> operations = new ArrayList<>();
+        workload.getRates().forEach((operation, rate) -> {
+            if (rate != null && rate > 0) {
+                operations.add(operation);
+                recorders.put(operation, new Recorder(3));
+                errors.put(operation, new LongAdder());
+            }
+        });
+        if (operations.isEmpty()) {
+            throw new IllegalStateException("No hay ninguna operación con tasa en loadtest.workload.rates");
+        }
+        int count = operations.size();
+        long[] intervals = new long[count];
+        long[] due = new long[count];
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            intervals[i] = (long) (TimeUnit.SECONDS.toNanos(1) / workload.getRates().get(operations.get(i)));
+            due[i] = start + random.nextLong(intervals[i]);
+        }
+        measureFrom = start + workload.getWarmup().toNanos();
+        long end = measureFrom + workload.getDuration().toNanos();
+        long reportInterval = workload.getReportInterval().toNanos();
+        long nextReport = measureFrom + reportInterval;
+        Map<LoadOperation, Histogram> totals = new EnumMap<>(LoadOperation.class);
+        operations.forEach(operation -> totals.put(operation, new Histogram(3)));
+        Semaphore inFlight = new Semaphore(workload.getMaxInFlight());
+        log.info("Calentando {} s y midiendo {} s: {}", workload.getWarmup().toSeconds(), workload.getDuration().toSeconds(),
+                workload.getRates());
+
+        while (true) {
+            int next = 0;
+            for (int i = 1; i < count; i++) {
+                if (due[i] < due[next]) {
+                    next = i;
+                }
+            }
+            long intended = due[next];
+            if (intended >= end) {
+                break;
+            }
+            if (intended >= nextReport) {
+                report(operations, totals, (intended - measureFrom) / 1_000_000_000L, workload.getReportInterval().toSeconds());
+                nextReport += reportInterval;
+            }
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            inFlight.acquireUninterruptibly();
+            send(operations.get(next), intended, inFlight);
+            due[next] += intervals[next];
+        }
+
+        // Se esperan las peticiones en curso, pero no más que su tiempo máximo
+        try {
+            if (!inFlight.tryAcquire(workload.getMaxInFlight(), workload.getRequestTimeout().toMillis() + 1_000,
+                    TimeUnit.MILLISECONDS)) {
+                log.warn("Quedan peticiones sin terminar al cerrar la prueba; no se cuentan");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long measuredNanos = Math.max(1, Math.min(System.nanoTime(), end) - measureFrom);
+        List<LoadTestReport.OperationResult> results = new ArrayList<>();
+        for (LoadOperation operation : operations) {
+            Histogram total = totals.get(operation);
+            total.add(recorders.get(operation).getIntervalHistogram());
+            results.add(new LoadTestReport.OperationResult(operation, total, errors.get(operation).sum(), measuredNanos));
+        }
+        callbacks.shutdown();
+        return new LoadTestReport(results);
+    }
+
+    private void send(LoadOperation operation, long intended, Semaphore inFlight) {
+        HttpRequest request;
+        try {
+            request = request(operation);
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, failure) -> {
+                    if (intended < measureFrom) {
+                        inFlight.release();
+                        return;
+                    }
+                    long micros = (System.nanoTime() - intended) / 1_000;
+                    recorders.get(operation).recordValue(Math.max(1, micros));
+                    if (failure != null || response.statusCode() / 100 != 2) {
+                        errors.get(operation).increment();
+                        if (failure != null && log.isDebugEnabled()) {
+                            log.debug("{} falló", operation, failure);
+                        }
+                    }
+                    inFlight.release();
+                });
+    }
+
+    private HttpRequest request(LoadOperation operation) {
+        HttpRequest.Builder builder = switch (operation) {
+            case CREATE_INVOICE -> HttpRequest.newBuilder(uri("/api/invoices/" + target.randomClient(random)))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(invoiceBody()));
+            case CLIENT_INVOICES -> HttpRequest.newBuilder(uri("/api/invoices/client/" + target.randomClient(random)));
+            case SEARCH_INVOICES -> {
+                LocalDate from = LocalDate.now().minusDays(random.nextInt(365)).withDayOfMonth(1);
+                yield HttpRequest.newBuilder(uri("/api/invoices/search?clientId=" + target.randomClient(random)
+                        + "&from=" + from + "&limit=20"));
+            }
+            case SEARCH_PRODUCTS -> HttpRequest.newBuilder(uri("/api/products/search?name="
+                    + URLEncoder.encode("Producto " + (100 + random.nextInt(900)), StandardCharsets.UTF_8)));
+            case INVOICE_PDF -> HttpRequest.newBuilder(uri("/api/invoices/" + target.randomInvoice(random) + "/pdf"));
+            case MONTHLY_SALES -> HttpRequest.newBuilder(uri("/api/reports/monthly-sales"));
+            case MONTHLY_SALES_PDF -> HttpRequest.newBuilder(uri("/api/reports/monthly-sales/pdf"));
+            case CLIENT_INVOICES_REACTIVE -> HttpRequest.newBuilder(uri("/api/reactive/invoices/client/" + target.randomClient(random)))
+                    .header("Accept", "application/x-ndjson");
+            case MONTHLY_SALES_REACTIVE -> HttpRequest.newBuilder(uri("/api/reactive/reports/monthly-sales"))
+                    .header("Accept", "application/x-ndjson");
+        };
+        return builder.header("Authorization", authorization)
+                .timeout(workload.getRequestTimeout())
+                .build();
+    }
+
+    private String invoiceBody() {
+        int lines = 1 + random.nextInt(maxItemsPerInvoice);
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < lines; i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append("{\"productId\":").append(target.randomProduct(random))
+                    .append(",\"quantity\":").append(1 + random.nextInt(5)).append('}');
+        }
+        return body.append(']').toString();
+    }
+
+    private URI uri(String path) {
+        return URI.create(baseUrl + path);
+    }
+
+    /** Una línea por operación con el rendimiento y la latencia del último intervalo. */
+    private void report(List<LoadOperation> operations, Map<LoadOperation, Histogram> totals, long elapsedSeconds,
+                        long intervalSeconds) {
+        for (LoadOperation operation : operations) {
+            Histogram interval = recorders.get(operation).getIntervalHistogram();
+            totals.get(operation).add(interval);
+            log.info("[{} s] {}: {} req/s, p50 {} ms, p99 {} ms, máx {} ms", elapsedSeconds, operation,
+                    String.format("%.1f", interval.getTotalCount() / (double) Math.max(1, intervalSeconds)),
+                    LoadTestReport.millis(interval.getValueAtPercentile(50)),
+                    LoadTestReport.millis(interval.getValueAtPercentile(99)),
+                    LoadTestReport.millis(interval.getMaxValue()));
+        }
+    }
+}
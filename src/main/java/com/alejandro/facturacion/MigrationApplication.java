@@ -0,0 +1,43 @@
+package com.alejandro.facturacion;
+
+import com.alejandro.facturacion.config.ShardMigrationConfig;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.flyway.FlywayAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Aplica las migraciones de Flyway y termina, sin levantar el resto de la aplicación.
+ *
+ * <p>Se ejecuta una vez por despliegue, antes de arrancar las instancias con el perfil
+ * {@code prod} (que no migran):
+ * <pre>
+ * java -cp target/facturacion-0.0.1-SNAPSHOT.jar com.alejandro.facturacion.MigrationApplication
+ * </pre>
+ * Ese comando necesita el jar fino del perfil {@code fast-startup} (dependencias en
+ * {@code target/lib}). Con el jar ejecutable de Spring Boot, cuyas clases están en
+ * {@code BOOT-INF/}, se lanza con
+ * {@code -Dloader.main=com.alejandro.facturacion.MigrationApplication} y
+ * {@code org.springframework.boot.loader.launch.PropertiesLauncher} como clase principal.
+ *
+ * <p>Solo registra el DataSource y Flyway; el perfil {@code migrate} evita además que el escaneo
+ * de componentes de {@link FacturacionApplication} recoja esta configuración. Con sharding
+ * ({@code facturacion.sharding.enabled=true}) migra también cada shard adicional.
+ */
+@SpringBootConfiguration
+@Profile("migrate")
+@ImportAutoConfiguration({DataSourceAutoConfiguration.class, FlywayAutoConfiguration.class})
+@Import(ShardMigrationConfig.class)
+public class MigrationApplication {
+
+    public static void main(String[] args) {
+        SpringApplication application = new SpringApplication(MigrationApplication.class);
+        application.setWebApplicationType(WebApplicationType.NONE);
+        application.setAdditionalProfiles("migrate");
+        System.exit(SpringApplication.exit(application.run(args)));
+    }
+}
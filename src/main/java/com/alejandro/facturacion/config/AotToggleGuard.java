@@ -0,0 +1,163 @@
+package com.alejandro.facturacion.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aot.AotDetector;
+import org.springframework.beans.factory.aot.BeanFactoryInitializationAotContribution;
+import org.springframework.beans.factory.aot.BeanFactoryInitializationAotProcessor;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.annotation.MergedAnnotation;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Impide arrancar con AOT ({@code -Dspring.aot.enabled=true}) cuando algún
+ * {@code @ConditionalOnProperty} de la aplicación no daría el mismo resultado que al compilar con
+ * {@code -Pfast-startup}.
+ *
+ * <p>El procesamiento AOT evalúa las condiciones al compilar (con el perfil {@code prod}) y el
+ * código generado registra solo los beans que pasaron: en tiempo de ejecución
+ * {@code facturacion.sharding.enabled}, {@code facturacion.edge.enabled},
+ * {@code facturacion.cache.transport}, etc. ya no cambian qué beans existen. Sin esta comprobación,
+ * activar el sharding por variable de entorno en una instancia AOT arrancaría sin sharding y sin
+ * avisar. {@link Recorder} guarda en el build el resultado de cada condición y este componente
+ * las vuelve a evaluar con el entorno al arrancar.
+ */
+@Slf4j
+@Component
+public class AotToggleGuard {
+
+    /** Recurso generado por {@link Recorder} en {@code target/spring-aot/main/resources}. */
+    static final String RESOURCE = "META-INF/facturacion/aot-toggles.properties";
+
+    private static final String BASE_PACKAGE = "com.alejandro.facturacion";
+
+    public AotToggleGuard(Environment environment) {
+        if (!AotDetector.useGeneratedArtifacts()) {
+            return;
+        }
+        Properties recorded = load();
+        if (recorded == null) {
+            log.warn("Arranque con AOT sin {}: no se comprueban las opciones fijadas al compilar", RESOURCE);
+            return;
+        }
+        List<String> changed = new ArrayList<>();
+        for (Toggle toggle : toggles()) {
+            String built = recorded.getProperty(toggle.className());
+            if (built != null && Boolean.parseBoolean(built) != toggle.matches(environment)) {
+                changed.add(toggle.className().substring(BASE_PACKAGE.length() + 1) + " ("
+                        + String.join(", ", toggle.properties()) + ")");
+            }
+        }
+        if (!changed.isEmpty()) {
+            throw new IllegalStateException("El build AOT se generó con otros valores para las opciones de: "
+                    + String.join("; ", changed) + ". Recompila con -Pfast-startup y los mismos valores "
+                    + "o arranca sin -Dspring.aot.enabled=true");
+        }
+    }
+
+    private static Properties load() {
+        ClassPathResource resource = new ClassPathResource(RESOURCE);
+        if (!resource.exists()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = resource.getInputStream()) {
+            properties.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return properties;
+    }
+
+    /**
+     * Clases de la aplicación con {@code @ConditionalOnProperty}, registren o no un bean ahora.
+     */
+    static List<Toggle> toggles() {
+        AnnotationTypeFilter filter = new AnnotationTypeFilter(ConditionalOnProperty.class);
+        // Sin evaluar las condiciones: interesan también las clases que ahora no se registrarían
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false) {
+            @Override
+            protected boolean isCandidateComponent(MetadataReader metadataReader) throws IOException {
+                return filter.match(metadataReader, getMetadataReaderFactory());
+            }
+        };
+        List<Toggle> toggles = new ArrayList<>();
+        for (BeanDefinition candidate : scanner.findCandidateComponents(BASE_PACKAGE)) {
+            MergedAnnotation<ConditionalOnProperty> condition = ((AnnotatedBeanDefinition) candidate).getMetadata()
+                    .getAnnotations().get(ConditionalOnProperty.class);
+            String prefix = condition.getString("prefix").trim();
+            if (StringUtils.hasText(prefix) && !prefix.endsWith(".")) {
+                prefix += ".";
+            }
+            String[] names = condition.getStringArray("name");
+            if (names.length == 0) {
+                names = condition.getStringArray("value");
+            }
+            List<String> properties = new ArrayList<>(names.length);
+            for (String name : names) {
+                properties.add(prefix + name);
+            }
+            toggles.add(new Toggle(candidate.getBeanClassName(), properties, condition.getString("havingValue"),
+                    condition.getBoolean("matchIfMissing")));
+        }
+        return toggles;
+    }
+
+    /** Un {@code @ConditionalOnProperty}, evaluado con las mismas reglas que Spring Boot. */
+    record Toggle(String className, List<String> properties, String havingValue, boolean matchIfMissing) {
+
+        boolean matches(Environment environment) {
+            for (String property : properties) {
+                String value = environment.getProperty(property);
+                boolean matched = value == null ? matchIfMissing
+                        : StringUtils.hasLength(havingValue) ? value.equalsIgnoreCase(havingValue)
+                        : !"false".equalsIgnoreCase(value);
+                if (!matched) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Se ejecuta durante {@code process-aot} (registrado en {@code META-INF/spring/aot.factories}) y
+     * escribe en {@link #RESOURCE}, por clase, si su condición se cumplía en ese momento.
+     */
+    public static class Recorder implements BeanFactoryInitializationAotProcessor {
+
+        @Override
+        public BeanFactoryInitializationAotContribution processAheadOfTime(ConfigurableListableBeanFactory beanFactory) {
+            Environment environment = beanFactory.getBean(Environment.class);
+            Properties values = new Properties();
+            for (Toggle toggle : toggles()) {
+                values.setProperty(toggle.className(), String.valueOf(toggle.matches(environment)));
+            }
+            return (generationContext, code) -> {
+                StringWriter content = new StringWriter();
+                try {
+                    values.store(content, "Opciones condicionales fijadas por el build AOT");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                generationContext.getGeneratedFiles().addResourceFile(RESOURCE, content.toString());
+            };
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.alejandro.facturacion.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Propiedades de la caché de clientes, productos y facturas ({@code facturacion.cache.*}).
+ */
+@Data
+@ConfigurationProperties(prefix = "facturacion.cache")
+public class CacheProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * Transporte de las invalidaciones entre instancias: {@code db} (tabla de cambios sondeada),
+     * {@code udp} (datagramas entre las instancias de {@link Udp#getPeers()}) o {@code none}
+     * (una sola instancia).
+     */
+    private String transport = "db";
+
+    /** Identificador de la instancia en el bus; por defecto, uno aleatorio en cada arranque. */
+    private String nodeId;
+
+    /** Antigüedad máxima de una entrada, aunque no llegue ninguna invalidación. */
+    private Duration ttl = Duration.ofMinutes(10);
+
+    /**
+     * Retraso máximo admitido del bus: si las invalidaciones de las demás instancias no se han
+     * recibido en este tiempo, las lecturas van a la base de datos hasta que el bus se recupere.
+     */
+    private Duration maxStaleness = Duration.ofSeconds(5);
+
+    private int maxClients = 10_000;
+    private int maxProducts = 10_000;
+    private int maxInvoices = 5_000;
+
+    private Db db = new Db();
+
+    private Udp udp = new Udp();
+
+    /**
+     * Transporte {@code db}: tabla {@code cache_invalidations} del shard principal.
+     */
+    @Data
+    public static class Db {
+        private Duration pollInterval = Duration.ofMillis(500);
+        /** Tiempo que se conservan las invalidaciones en la tabla. */
+        private Duration retention = Duration.ofHours(1);
+    }
+
+    /**
+     * Transporte {@code udp}: cada instancia escucha en {@code port} y envía a todas las de {@code peers}.
+     */
+    @Data
+    public static class Udp {
+        private int port = 7700;
+        /** Otras instancias, como {@code host:puerto}. */
+        private List<String> peers = new ArrayList<>();
+        /** Cada instancia avisa a las demás de que sigue viva, con el número de su última invalidación. */
+        private Duration heartbeatInterval = Duration.ofSeconds(1);
+    }
+}
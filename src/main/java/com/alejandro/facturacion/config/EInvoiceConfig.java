@@ -0,0 +1,12 @@
+package com.alejandro.facturacion.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registra las propiedades de la facturación electrónica.
+ */
+@Configuration
+@EnableConfigurationProperties(EInvoiceProperties.class)
+public class EInvoiceConfig {
+}
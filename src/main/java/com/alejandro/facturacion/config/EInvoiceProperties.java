@@ -0,0 +1,80 @@
+package com.alejandro.facturacion.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.ZoneId;
+
+/**
+ * Propiedades de la facturación electrónica DIAN ({@code facturacion.einvoice.*}).
+ */
+@Data
+@ConfigurationProperties(prefix = "facturacion.einvoice")
+public class EInvoiceProperties {
+
+    /** Ambiente de la DIAN: 1 = producción, 2 = pruebas. */
+    private String environment = "2";
+
+    /** Clave técnica asociada a la resolución de numeración; forma parte del CUFE. */
+    private String technicalKey = "";
+
+    /** Zona horaria de la fecha y hora de emisión. */
+    private ZoneId zone = ZoneId.of("America/Bogota");
+
+    /** Implementación del envío: {@code local} deja los documentos en {@link #outboxDir}. */
+    private String transmitter = "local";
+
+    /** Directorio de salida del transmisor local. */
+    private Path outboxDir = Path.of("./data/einvoices");
+
+    private Issuer issuer = new Issuer();
+
+    private Software software = new Software();
+
+    private Signing signing = new Signing();
+
+    /**
+     * Datos del emisor (obligado a facturar).
+     */
+    @Data
+    public static class Issuer {
+        /** NIT sin dígito de verificación. */
+        private String nit = "";
+        private String checkDigit = "";
+        private String name = "";
+        /** Responsabilidades fiscales (RUT casilla 53). */
+        private String taxLevelCode = "R-99-PN";
+    }
+
+    /**
+     * Software de facturación registrado ante la DIAN.
+     */
+    @Data
+    public static class Software {
+        private String id = "";
+        private String pin = "";
+        /** NIT del proveedor tecnológico; por defecto, el del emisor. */
+        private String providerNit;
+    }
+
+    /**
+     * Certificado de firma y política XAdES.
+     */
+    @Data
+    public static class Signing {
+        /** Almacén con la clave privada y el certificado. Sin él, los documentos no se firman. */
+        private Path keystore;
+        private String keystoreType = "PKCS12";
+        private String keystorePassword = "";
+        /** Alias de la clave; por defecto, la primera entrada con clave privada. */
+        private String keyAlias;
+        /** Contraseña de la clave; por defecto, la del almacén. */
+        private String keyPassword;
+        /** Hilos del pool de firma para lotes. */
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private String policyId = "https://facturaelectronica.dian.gov.co/politicadefirma/v2/politicadefirmav2.pdf";
+        /** Huella SHA-256 (Base64) del documento de la política de firma. */
+        private String policyDigest = "dMoMvtcG5aIzgYo0tIsSQeVJBDnUnfSOfBpxXrmor0Y=";
+    }
+}
@@ -0,0 +1,12 @@
+package com.alejandro.facturacion.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registra las propiedades del modo borde, que usan tanto los nodos como la instancia central.
+ */
+@Configuration
+@EnableConfigurationProperties(EdgeProperties.class)
+public class EdgeConfig {
+}
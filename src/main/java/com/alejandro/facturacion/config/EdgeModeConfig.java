@@ -0,0 +1,57 @@
+package com.alejandro.facturacion.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Configuración de un nodo de borde ({@code facturacion.edge.enabled=true}).
+ *
+ * <p>El catálogo, los clientes, las series y las reglas de precios son una copia de la central:
+ * sus escrituras responden 409 y deben hacerse en la central. La facturación electrónica también
+ * se envía desde la central, cuando recibe las facturas del nodo.
+ */
+@Configuration
+@ConditionalOnProperty(name = "facturacion.edge.enabled", havingValue = "true")
+public class EdgeModeConfig implements WebMvcConfigurer {
+
+    private static final String[] CENTRAL_ONLY = {
+            "/api/products/**", "/api/clients/**", "/api/invoice-series/**", "/api/pricing-rules/**",
+            "/api/einvoices/**", "/api/shards/**"
+    };
+
+    public EdgeModeConfig(EdgeProperties properties,
+                          @Value("${facturacion.sharding.enabled:false}") boolean sharding) {
+        if (properties.getNodeId() == null || properties.getNodeId().isBlank()) {
+            throw new IllegalStateException("facturacion.edge.node-id es obligatorio en un nodo de borde");
+        }
+        if (properties.getCentralUrl() == null || properties.getCentralUrl().isBlank()) {
+            throw new IllegalStateException("facturacion.edge.central-url es obligatorio en un nodo de borde");
+        }
+        if (sharding) {
+            throw new IllegalStateException("Un nodo de borde no usa sharding (facturacion.sharding.enabled)");
+        }
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+                    throws Exception {
+                if (HttpMethod.GET.matches(request.getMethod()) || HttpMethod.HEAD.matches(request.getMethod())) {
+                    return true;
+                }
+                response.sendError(HttpStatus.CONFLICT.value(), "Nodo de borde: este cambio debe hacerse en la central");
+                return false;
+            }
+        }).addPathPatterns(CENTRAL_ONLY);
+    }
+}
@@ -0,0 +1,65 @@
+package com.alejandro.facturacion.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Propiedades del modo borde ({@code facturacion.edge.*}): un punto de venta que factura contra una
+ * base de datos local y sincroniza por lotes con la instancia central.
+ *
+ * <p>Las propiedades de {@code node-id} a {@code blocks-low-water} las usa el nodo de borde; las de
+ * {@link Central} las usa la instancia central al atender a los nodos.
+ */
+@Data
+@ConfigurationProperties(prefix = "facturacion.edge")
+public class EdgeProperties {
+
+    /** Arranca como nodo de borde; por defecto la instancia es central y atiende a los nodos. */
+    private boolean enabled = false;
+
+    /** Identificador del nodo ante la central; debe ser único y no cambiar entre arranques. */
+    private String nodeId;
+
+    /** URL base de la instancia central, por ejemplo {@code https://facturacion.example.com}. */
+    private String centralUrl;
+    private String centralUsername;
+    private String centralPassword;
+
+    /** Cada cuánto se envían las facturas pendientes y se piden números y stock. */
+    private Duration syncInterval = Duration.ofSeconds(30);
+
+    /** Cada cuánto se vuelve a descargar el catálogo, los clientes, las series y las reglas de precios. */
+    private Duration snapshotInterval = Duration.ofMinutes(5);
+
+    private Duration requestTimeout = Duration.ofSeconds(30);
+
+    /** Facturas por lote enviado a la central. */
+    private int batchSize = 200;
+
+    /**
+     * Unidades de cada producto que el nodo pide reservar en la central. Se pide reponer cuando le
+     * queda menos de la mitad.
+     */
+    private int stockAllowance = 10;
+
+    /** Tamaño de los bloques de números pedidos para cada serie. */
+    private int blockSize = 500;
+
+    /** Se pide un bloque nuevo cuando a una serie le quedan menos números que estos. */
+    private int blocksLowWater = 200;
+
+    private Central central = new Central();
+
+    /**
+     * Lado central: qué se replica a los nodos y cuánto se les concede.
+     */
+    @Data
+    public static class Central {
+        /** Se replican los clientes creados o con facturas en este periodo. */
+        private Duration clientWindow = Duration.ofDays(90);
+        private int maxClients = 50_000;
+        private int maxBlockSize = 5_000;
+    }
+}
@@ -0,0 +1,35 @@
+package com.alejandro.facturacion.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Propiedades de la API de lectura reactiva ({@code facturacion.reactive.*}).
+ *
+ * <p>Las credenciales son opcionales: si no se indican se usan las de {@code spring.datasource}.
+ */
+@Data
+@ConfigurationProperties(prefix = "facturacion.reactive")
+public class ReactiveProperties {
+
+    /** Activa los endpoints de {@code /api/reactive}, servidos con R2DBC. */
+    private boolean enabled = false;
+
+    /**
+     * URL R2DBC de la base de datos, por ejemplo {@code r2dbc:mysql://localhost:3306/facturacion}.
+     * Puede apuntar a una réplica: estas lecturas no necesitan ver las últimas escrituras.
+     */
+    private String url;
+
+    private String username;
+
+    private String password;
+
+    /** Conexiones R2DBC como máximo; cada una sirve una consulta a la vez. */
+    private int maximumPoolSize = 20;
+
+    /** Espera máxima por una conexión libre antes de fallar la petición. */
+    private Duration acquireTimeout = Duration.ofSeconds(5);
+}
@@ -0,0 +1,75 @@
+package com.alejandro.facturacion.config;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+/**
+ * Configura el acceso R2DBC de la API de lectura reactiva cuando
+ * {@code facturacion.reactive.enabled=true}. Las escrituras siguen en JPA.
+ *
+ * <p>El pool no se registra como bean: con un {@code ConnectionFactory} en el contexto Spring Boot
+ * deja de configurar el {@code DataSource} de JPA (por lo mismo, {@link
+ * com.alejandro.facturacion.FacturacionApplication} excluye la autoconfiguración de R2DBC).
+ * <pre>
+ * facturacion.reactive.enabled=true
+ * facturacion.reactive.url=r2dbc:mysql://localhost:3306/facturacion
+ * </pre>
+ */
+@Configuration
+@EnableConfigurationProperties(ReactiveProperties.class)
+@ConditionalOnProperty(name = "facturacion.reactive.enabled", havingValue = "true")
+public class ReactiveReadConfig implements DisposableBean {
+
+    private final ConnectionPool connectionPool;
+
+    public ReactiveReadConfig(ReactiveProperties properties, DataSourceProperties dataSourceProperties,
+                              @Value("${facturacion.sharding.enabled:false}") boolean sharding) {
+        if (sharding) {
+            // Las facturas de un cliente pueden estar en cualquier shard y aquí solo hay una base de datos
+            throw new IllegalStateException(
+                    "La API reactiva (facturacion.reactive.enabled) no se combina con facturacion.sharding.enabled");
+        }
+        if (properties.getUrl() == null || properties.getUrl().isBlank()) {
+            throw new IllegalStateException("facturacion.reactive.url es obligatorio con la API reactiva");
+        }
+        String username = properties.getUsername() != null
+                ? properties.getUsername() : dataSourceProperties.determineUsername();
+        String password = properties.getPassword() != null
+                ? properties.getPassword() : dataSourceProperties.determinePassword();
+
+        ConnectionFactoryOptions.Builder options = ConnectionFactoryOptions.parse(properties.getUrl()).mutate();
+        if (username != null) {
+            options.option(ConnectionFactoryOptions.USER, username);
+        }
+        if (password != null) {
+            options.option(ConnectionFactoryOptions.PASSWORD, password);
+        }
+        this.connectionPool = new ConnectionPool(ConnectionPoolConfiguration
+                .builder(ConnectionFactories.get(options.build()))
+                .name("reactive")
+                .initialSize(0)
+                .maxSize(properties.getMaximumPoolSize())
+                .maxAcquireTime(properties.getAcquireTimeout())
+                .build());
+    }
+
+    @Bean
+    public DatabaseClient reactiveDatabaseClient() {
+        return DatabaseClient.create(connectionPool);
+    }
+
+    @Override
+    public void destroy() {
+        connectionPool.dispose();
+    }
+}
@@ -0,0 +1,25 @@
+package com.alejandro.facturacion.config;
+
+/**
+ * Marca, por hilo de petición, que las lecturas deben ir al primario porque el
+ * mismo cliente acaba de escribir y las réplicas podrían no tener aún el cambio.
+ */
+public final class ReadYourWritesContext {
+
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = new ThreadLocal<>();
+
+    private ReadYourWritesContext() {
+    }
+
+    public static void requirePrimary() {
+        PRIMARY_REQUIRED.set(Boolean.TRUE);
+    }
+
+    public static boolean isPrimaryRequired() {
+        return Boolean.TRUE.equals(PRIMARY_REQUIRED.get());
+    }
+
+    public static void clear() {
+        PRIMARY_REQUIRED.remove();
+    }
+}
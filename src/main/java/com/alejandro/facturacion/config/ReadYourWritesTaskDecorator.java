@@ -0,0 +1,25 @@
+package com.alejandro.facturacion.config;
+
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * Lleva {@link ReadYourWritesContext} del hilo que encola una tarea al hilo del pool que la ejecuta,
+ * para que un PDF o un reporte pedido justo después de escribir tampoco lea de una réplica atrasada.
+ */
+public class ReadYourWritesTaskDecorator implements TaskDecorator {
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        if (!ReadYourWritesContext.isPrimaryRequired()) {
+            return runnable;
+        }
+        return () -> {
+            ReadYourWritesContext.requirePrimary();
+            try {
+                runnable.run();
+            } finally {
+                ReadYourWritesContext.clear();
+            }
+        };
+    }
+}
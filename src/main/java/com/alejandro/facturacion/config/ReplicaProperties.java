@@ -0,0 +1,40 @@
+package com.alejandro.facturacion.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Propiedades de las réplicas de lectura ({@code facturacion.datasource.replicas.*}).
+ *
+ * <p>Las credenciales son opcionales: si no se indican se usan las de {@code spring.datasource}.
+ */
+@Data
+@ConfigurationProperties(prefix = "facturacion.datasource.replicas")
+public class ReplicaProperties {
+
+    /** Activa el enrutamiento de transacciones de solo lectura hacia las réplicas. */
+    private boolean enabled = false;
+
+    /** URLs JDBC de las réplicas. */
+    private List<String> urls = new ArrayList<>();
+
+    private String username;
+
+    private String password;
+
+    /** Tamaño máximo del pool de conexiones de cada réplica. */
+    private int maximumPoolSize = 10;
+
+    /** Intervalo entre comprobaciones de salud de las réplicas (ISO-8601). */
+    private Duration healthCheckInterval = Duration.ofSeconds(10);
+
+    /**
+     * Ventana durante la cual, tras una petición de escritura, las lecturas del mismo
+     * cliente HTTP se envían al primario (read-your-writes). Cero la desactiva.
+     */
+    private Duration readYourWritesWindow = Duration.ofSeconds(5);
+}
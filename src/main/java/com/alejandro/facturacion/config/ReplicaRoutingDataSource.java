@@ -0,0 +1,95 @@
+package com.alejandro.facturacion.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link DataSource} que envía las transacciones {@code @Transactional(readOnly = true)}
+ * a una réplica sana (en round-robin) y todo lo demás al primario.
+ *
+ * <p>Debe usarse detrás de un {@code LazyConnectionDataSourceProxy}: la marca de solo
+ * lectura se fija después de que el gestor de transacciones pida la conexión, así que
+ * la conexión física se obtiene en la primera sentencia SQL.
+ *
+ * <p>Si no hay réplicas sanas, o la petición actual exige leer sus propias escrituras
+ * ({@link ReadYourWritesContext}), la lectura va al primario.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+
+    private final List<String> replicaKeys;
+    private final Map<String, DataSource> replicas;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private volatile List<String> healthyReplicas;
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicaDataSources) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        this.replicas = new HashMap<>();
+        this.replicaKeys = new ArrayList<>();
+        for (int i = 0; i < replicaDataSources.size(); i++) {
+            String key = "replica-" + i;
+            replicaKeys.add(key);
+            replicas.put(key, replicaDataSources.get(i));
+            targets.put(key, replicaDataSources.get(i));
+        }
+        this.healthyReplicas = List.copyOf(replicaKeys);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                || ReadYourWritesContext.isPrimaryRequired()) {
+            return PRIMARY;
+        }
+        List<String> healthy = healthyReplicas;
+        if (healthy.isEmpty()) {
+            return PRIMARY;
+        }
+        int index = Math.floorMod(nextReplica.getAndIncrement(), healthy.size());
+        return healthy.get(index);
+    }
+
+    /**
+     * Comprueba cada réplica y actualiza la lista de réplicas elegibles.
+     * Una réplica caída vuelve a recibir tráfico en cuanto responde de nuevo.
+     */
+    @Scheduled(fixedDelayString = "${facturacion.datasource.replicas.health-check-interval:PT10S}")
+    public void checkReplicas() {
+        List<String> healthy = new ArrayList<>(replicaKeys.size());
+        for (String key : replicaKeys) {
+            if (isAlive(replicas.get(key))) {
+                healthy.add(key);
+            } else if (healthyReplicas.contains(key)) {
+                log.warn("Réplica {} no responde; las lecturas se redirigen", key);
+            }
+        }
+        healthyReplicas = List.copyOf(healthy);
+    }
+
+    public List<String> getHealthyReplicas() {
+        return healthyReplicas;
+    }
+
+    private boolean isAlive(DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection()) {
+            return connection.isValid(2);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.alejandro.facturacion.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Habilita la ejecución de tareas programadas ({@code @Scheduled}) de mantenimiento.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
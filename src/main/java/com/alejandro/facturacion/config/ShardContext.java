@@ -0,0 +1,31 @@
+package com.alejandro.facturacion.config;
+
+/**
+ * Shard al que van, por hilo, las conexiones que se abran a continuación.
+ *
+ * <p>Sin shard fijado las conexiones van al shard principal (0). Como el proxy de conexiones es
+ * perezoso, basta con fijarlo antes de la primera sentencia SQL de la transacción.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    public static Integer current() {
+        return CURRENT.get();
+    }
+
+    public static void set(Integer shard) {
+        if (shard == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(shard);
+        }
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+}
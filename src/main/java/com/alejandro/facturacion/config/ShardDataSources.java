@@ -0,0 +1,96 @@
+package com.alejandro.facturacion.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Construcción de los pools de los shards adicionales y preparación de la serie de IDs de cada shard.
+ */
+@Slf4j
+public final class ShardDataSources {
+
+    /** Tablas cuyos IDs se generan en la serie del shard (las de los datos de cada cliente). */
+    static final List<String> CLIENT_TABLES = List.of("clients", "invoices", "invoice_items");
+
+    private ShardDataSources() {
+    }
+
+    /**
+     * Pool (aún sin arrancar) del shard indicado. Las credenciales que no se configuren en
+     * {@code facturacion.sharding.*} se toman de {@code spring.datasource}.
+     */
+    public static HikariDataSource create(int shard, String url, DataSourceProperties homeProperties,
+                                          ShardingProperties shardingProperties) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("shard-" + shard);
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername(shardingProperties.getUsername() != null
+                ? shardingProperties.getUsername() : homeProperties.determineUsername());
+        dataSource.setPassword(shardingProperties.getPassword() != null
+                ? shardingProperties.getPassword() : homeProperties.determinePassword());
+        dataSource.setMaximumPoolSize(shardingProperties.getMaximumPoolSize());
+        dataSource.setConnectionInitSql(idSeriesInitSql(shard, url));
+        return dataSource;
+    }
+
+    /**
+     * En MySQL la separación entre IDs autoincrementales es de sesión: cada conexión del shard la
+     * fija al abrirse, y MySQL mantiene la serie aunque se inserten IDs explícitos de otros shards.
+     * En H2 se fija en la propia columna (ver {@link #alignIds}).
+     * @return Sentencia de inicio de las conexiones, o {@code null} si la base de datos no es MySQL
+     */
+    public static String idSeriesInitSql(int shard, String url) {
+        if (url == null || !(url.startsWith("jdbc:mysql:") || url.startsWith("jdbc:mariadb:"))) {
+            return null;
+        }
+        return "SET SESSION auto_increment_increment = " + ShardRoutingDataSource.ID_STEP
+                + ", auto_increment_offset = " + (shard + 1);
+    }
+
+    /**
+     * Lleva el siguiente ID de {@link #CLIENT_TABLES} al primer valor de la serie del shard que
+     * sea mayor que los IDs existentes (y, salvo en el shard principal, que {@code ID_BASE}).
+     *
+     * <p>Se llama al migrar y después de copiar clientes de otro shard: en H2 una inserción con ID
+     * explícito hace que la columna siga desde ese ID, que es de la serie de otro shard. En MySQL
+     * solo hace falta la primera vez, porque la serie la mantiene la sesión. No debe llamarse
+     * dentro de una transacción (en ambas bases de datos {@code ALTER TABLE} la confirma).
+     */
+    public static void alignIds(DataSource dataSource, int shard) {
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        boolean h2 = Boolean.TRUE.equals(jdbc.execute((ConnectionCallback<Boolean>) connection ->
+                connection.getMetaData().getDatabaseProductName().startsWith("H2")));
+        long floor = shard == ShardRoutingDataSource.HOME_SHARD ? 0 : ShardRoutingDataSource.ID_BASE - 1;
+        for (String table : CLIENT_TABLES) {
+            long max = jdbc.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + table, Long.class);
+            long last = Math.max(max, floor);
+            if (!h2 && last == max) {
+                continue;
+            }
+            if (shard != ShardRoutingDataSource.HOME_SHARD && max > 0 && max < ShardRoutingDataSource.ID_BASE) {
+                log.warn("La tabla {} del shard {} tiene registros anteriores a su serie de IDs; "
+                        + "sus clientes deben registrarse en client_shards", table, shard);
+            }
+            long next = nextInSeries(last, shard);
+            if (h2) {
+                jdbc.execute("ALTER TABLE " + table + " ALTER COLUMN id SET INCREMENT BY "
+                        + ShardRoutingDataSource.ID_STEP);
+                jdbc.execute("ALTER TABLE " + table + " ALTER COLUMN id RESTART WITH " + next);
+            } else {
+                jdbc.execute("ALTER TABLE " + table + " AUTO_INCREMENT = " + next);
+            }
+            log.debug("Shard {}: el siguiente ID de {} es {}", shard, table, next);
+        }
+    }
+
+    /** Primer ID mayor que {@code last} de la serie del shard. */
+    static long nextInSeries(long last, int shard) {
+        return last + 1 + Math.floorMod(shard - last, (long) ShardRoutingDataSource.ID_STEP);
+    }
+}
@@ -0,0 +1,51 @@
+package com.alejandro.facturacion.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * Con sharding, las migraciones de Flyway se aplican al shard principal y después a cada shard
+ * adicional, con la misma configuración. En todos se prepara además la serie de IDs del shard.
+ *
+ * <p>Se usa tanto al arrancar la aplicación como desde {@code MigrationApplication}.
+ */
+@Slf4j
+@Configuration
+@EnableConfigurationProperties(ShardingProperties.class)
+@ConditionalOnProperty(name = "facturacion.sharding.enabled", havingValue = "true")
+public class ShardMigrationConfig {
+
+    @Bean
+    public FlywayMigrationStrategy shardMigrationStrategy(DataSourceProperties homeProperties,
+                                                          ShardingProperties shardingProperties) {
+        return flyway -> {
+            flyway.migrate();
+            ShardDataSources.alignIds(flyway.getConfiguration().getDataSource(), ShardRoutingDataSource.HOME_SHARD);
+            List<String> urls = shardingProperties.getUrls();
+            for (int i = 0; i < urls.size(); i++) {
+                int shard = i + 1;
+                try (HikariDataSource dataSource = ShardDataSources.create(shard, urls.get(i), homeProperties,
+                        shardingProperties)) {
+                    // Flyway usa una conexión para el historial y otra para las migraciones
+                    dataSource.setMaximumPoolSize(2);
+                    Flyway.configure()
+                            .configuration(flyway.getConfiguration())
+                            .dataSource(dataSource)
+                            .load()
+                            .migrate();
+                    ShardDataSources.alignIds(dataSource, shard);
+                }
+                log.info("Shard {} migrado", shard);
+            }
+        };
+    }
+}
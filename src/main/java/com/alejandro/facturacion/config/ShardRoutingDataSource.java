@@ -0,0 +1,72 @@
+package com.alejandro.facturacion.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link DataSource} que envía cada conexión al shard fijado en {@link ShardContext}
+ * (por defecto, al shard principal 0).
+ *
+ * <p>Igual que el enrutamiento a réplicas, debe usarse detrás de un
+ * {@code LazyConnectionDataSourceProxy} para que el shard se decida en la primera sentencia SQL
+ * y no al abrir la transacción.
+ *
+ * <p>Cada shard genera IDs de clientes, facturas e items de su propia serie: a partir de
+ * {@link #ID_BASE}, los IDs {@code n} con {@code (n - 1) % ID_STEP == shard}. Así un ID identifica
+ * el shard donde se creó el registro aunque después se mueva a otro, y los registros movidos, que
+ * conservan su ID, no hacen que el shard de destino genere IDs de otra serie. Los IDs anteriores a
+ * {@link #ID_BASE} son del shard principal.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    public static final int HOME_SHARD = 0;
+
+    /** Primer ID de las series de los shards adicionales. */
+    public static final long ID_BASE = 1_000_000_000_000L;
+
+    /** Separación entre IDs consecutivos de un shard, y por tanto número máximo de shards. */
+    public static final int ID_STEP = 64;
+
+    private final List<DataSource> shards;
+
+    public ShardRoutingDataSource(List<DataSource> shards) {
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+        if (shards.size() > ID_STEP) {
+            throw new IllegalArgumentException("Como máximo se admiten " + ID_STEP + " shards");
+        }
+        this.shards = List.copyOf(shards);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(HOME_SHARD));
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Integer shard = ShardContext.current();
+        return shard != null ? shard : HOME_SHARD;
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /** Pool del shard indicado, sin pasar por el enrutamiento. */
+    public DataSource getShard(int shard) {
+        return shards.get(shard);
+    }
+
+    /** Shard en cuya serie está el ID indicado (el principal si no corresponde a ninguno). */
+    public int shardOfId(long id) {
+        if (id < ID_BASE) {
+            return HOME_SHARD;
+        }
+        int shard = (int) ((id - 1) % ID_STEP);
+        return shard < shards.size() ? shard : HOME_SHARD;
+    }
+}
@@ -0,0 +1,72 @@
+package com.alejandro.facturacion.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Configura el sharding por cliente cuando {@code facturacion.sharding.enabled=true}.
+ *
+ * <p>El shard principal (0) se construye desde {@code spring.datasource.*} y guarda, además de sus
+ * clientes, todo lo que no es de un cliente (catálogo maestro, series, trabajos, directorio de
+ * shards). Cada shard adicional tiene su propio pool Hikari. Para probarlo en local basta con
+ * varias bases de datos vacías, en la misma instancia de MySQL o en varias:
+ * <pre>
+ * facturacion.sharding.enabled=true
+ * facturacion.sharding.urls=jdbc:mysql://localhost:3306/facturacion_s1,jdbc:mysql://localhost:3307/facturacion_s2
+ * </pre>
+ *
+ * <p>No se combina con las réplicas de lectura.
+ */
+@Configuration
+@EnableConfigurationProperties(ShardingProperties.class)
+@ConditionalOnProperty(name = "facturacion.sharding.enabled", havingValue = "true")
+public class ShardingConfig {
+
+    public ShardingConfig(@Value("${facturacion.datasource.replicas.enabled:false}") boolean replicasEnabled) {
+        if (replicasEnabled) {
+            throw new IllegalStateException(
+                    "facturacion.sharding.enabled y facturacion.datasource.replicas.enabled no pueden activarse a la vez");
+        }
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource homeShardDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("shard-0");
+        dataSource.setConnectionInitSql(ShardDataSources.idSeriesInitSql(ShardRoutingDataSource.HOME_SHARD,
+                properties.determineUrl()));
+        return dataSource;
+    }
+
+    @Bean
+    public ShardRoutingDataSource shardRoutingDataSource(HikariDataSource homeShardDataSource,
+                                                         DataSourceProperties homeProperties,
+                                                         ShardingProperties shardingProperties) {
+        List<DataSource> shards = new ArrayList<>();
+        shards.add(homeShardDataSource);
+        List<String> urls = shardingProperties.getUrls();
+        for (int i = 0; i < urls.size(); i++) {
+            shards.add(ShardDataSources.create(i + 1, urls.get(i), homeProperties, shardingProperties));
+        }
+        return new ShardRoutingDataSource(shards);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+    }
+}
@@ -0,0 +1,37 @@
+package com.alejandro.facturacion.config;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.Map;
+
+/**
+ * Con {@code facturacion.sharding.enabled=true} desactiva {@code spring.jpa.open-in-view}.
+ *
+ * <p>Con open-in-view el {@code EntityManager} de la petición conserva su conexión entre
+ * transacciones: si algo de la petición ejecuta SQL antes de que {@code ShardRouter} fije el shard
+ * del cliente (un filtro, otra llamada del controlador), la escritura iría sin avisar al shard de
+ * esa primera conexión. Sin open-in-view cada transacción abre su conexión en su primera sentencia,
+ * ya con el shard fijado. Activar las dos opciones a la vez impide arrancar.
+ *
+ * <p>Registrado en {@code META-INF/spring.factories}; se aplica también a {@code MigrationApplication}.
+ */
+public class ShardingEnvironmentPostProcessor implements EnvironmentPostProcessor {
+
+    static final String OPEN_IN_VIEW = "spring.jpa.open-in-view";
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if (!environment.getProperty("facturacion.sharding.enabled", Boolean.class, false)) {
+            return;
+        }
+        if (environment.getProperty(OPEN_IN_VIEW, Boolean.class, false)) {
+            throw new IllegalStateException("facturacion.sharding.enabled y " + OPEN_IN_VIEW
+                    + " no pueden activarse a la vez");
+        }
+        environment.getPropertySources().addFirst(new MapPropertySource("facturacion-sharding",
+                Map.of(OPEN_IN_VIEW, "false")));
+    }
+}
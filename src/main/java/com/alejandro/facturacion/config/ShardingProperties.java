@@ -0,0 +1,43 @@
+package com.alejandro.facturacion.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Propiedades del sharding por cliente ({@code facturacion.sharding.*}).
+ *
+ * <p>El shard 0 es siempre {@code spring.datasource}; {@code urls} añade los shards 1..N en ese
+ * orden. El orden forma parte de los datos (los IDs generados en cada shard están en su propio
+ * rango), así que los shards existentes no se reordenan: solo se añaden al final.
+ * Las credenciales son opcionales: si no se indican se usan las de {@code spring.datasource}.
+ */
+@Data
+@ConfigurationProperties(prefix = "facturacion.sharding")
+public class ShardingProperties {
+
+    /** Activa el enrutamiento de clientes y facturas por shard. */
+    private boolean enabled = false;
+
+    /** URLs JDBC de los shards adicionales (1..N). */
+    private List<String> urls = new ArrayList<>();
+
+    private String username;
+
+    private String password;
+
+    /** Tamaño máximo del pool de conexiones de cada shard adicional. */
+    private int maximumPoolSize = 10;
+
+    /** Intervalo de recarga del directorio de clientes movidos entre shards (ISO-8601). */
+    private Duration directoryRefreshInterval = Duration.ofSeconds(5);
+
+    /** Intervalo de la resincronización completa del catálogo de productos en los shards. */
+    private Duration catalogResyncInterval = Duration.ofMinutes(10);
+
+    /** Hilos para las consultas que recorren todos los shards (reportes, búsquedas globales). */
+    private int scatterThreads = 8;
+}
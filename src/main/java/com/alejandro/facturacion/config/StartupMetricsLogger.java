@@ -0,0 +1,44 @@
+package com.alejandro.facturacion.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Registra el tiempo hasta que la aplicación está lista y la memoria residente (RSS) en ese
+ * momento, para comparar modos de arranque (JVM normal, AOT, CDS, imagen nativa).
+ */
+@Slf4j
+@Component
+public class StartupMetricsLogger {
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void logStartupMetrics(ApplicationReadyEvent event) {
+        log.info("Arranque: lista en {} ms (JVM {} ms), RSS {}",
+                event.getTimeTaken() != null ? event.getTimeTaken().toMillis() : -1,
+                ManagementFactory.getRuntimeMXBean().getUptime(), residentSetSize());
+    }
+
+    /**
+     * VmRSS de {@code /proc/self/status}; solo disponible en Linux.
+     */
+    private static String residentSetSize() {
+        try {
+            List<String> status = Files.readAllLines(Path.of("/proc/self/status"));
+            return status.stream()
+                    .filter(line -> line.startsWith("VmRSS:"))
+                    .map(line -> line.substring("VmRSS:".length()).trim())
+                    .findFirst()
+                    .orElse("n/d");
+        } catch (IOException | RuntimeException e) {
+            return "n/d";
+        }
+    }
+}
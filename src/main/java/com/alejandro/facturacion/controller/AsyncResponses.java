@@ -0,0 +1,31 @@
+package com.alejandro.facturacion.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Traduce los fallos de las respuestas asíncronas (pools de renderizado) a códigos HTTP.
+ */
+final class AsyncResponses {
+
+    private AsyncResponses() {
+    }
+
+    /**
+     * 503 si el pool está saturado o la tarea no terminó a tiempo; 500 para cualquier otro error.
+     */
+    static ResponseStatusException toStatus(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof ResponseStatusException status) {
+            return status;
+        }
+        if (cause instanceof RejectedExecutionException || cause instanceof TimeoutException) {
+            return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, cause.getMessage());
+        }
+        return new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error al generar el documento", cause);
+    }
+}
@@ -0,0 +1,61 @@
+package com.alejandro.facturacion.controller;
+
+import com.alejandro.facturacion.dto.AuditEntityType;
+import com.alejandro.facturacion.dto.AuditRecord;
+import com.alejandro.facturacion.dto.AuditStats;
+import com.alejandro.facturacion.service.AuditService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Controlador REST para consultar el registro de auditoría.
+ */
+@RestController
+@RequestMapping("/api/audit")
+public class AuditController {
+
+    private final AuditService auditService;
+
+    public AuditController(AuditService auditService) {
+        this.auditService = auditService;
+    }
+
+    /**
+     * Busca eventos de auditoría, en orden de secuencia.
+     * @param entityType Entidad (INVOICE, PRODUCT, CLIENT); sin ella se devuelven todos los eventos
+     * @param entityId ID de la entidad, incluidos los eventos en que aparece como relacionada
+     * @param from Desde (incluido)
+     * @param to Hasta (excluido)
+     * @param after Secuencia del último evento recibido, para pedir los siguientes
+     * @param limit Número máximo de eventos (hasta 1000)
+     * @return Eventos encontrados
+     */
+    @GetMapping
+    public ResponseEntity<List<AuditRecord>> find(@RequestParam(required = false) AuditEntityType entityType,
+                                                  @RequestParam(required = false) Long entityId,
+                                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                  @RequestParam(required = false) Long after,
+                                                  @RequestParam(defaultValue = "100") int limit) {
+        try {
+            return ResponseEntity.ok(auditService.find(entityType, entityId, from, to, after, limit));
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+    }
+
+    /**
+     * Obtiene el estado del registro de auditoría en esta instancia.
+     * @return Eventos publicados, descartados y escritos, y segmentos en disco
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<AuditStats> getStats() {
+        return ResponseEntity.ok(auditService.getStats());
+    }
+}
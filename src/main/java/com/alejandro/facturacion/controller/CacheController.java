@@ -0,0 +1,41 @@
+package com.alejandro.facturacion.controller;
+
+import com.alejandro.facturacion.dto.CacheStats;
+import com.alejandro.facturacion.service.EntityCache;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * Controlador REST para consultar y vaciar la caché de entidades.
+ */
+@RestController
+@RequestMapping("/api/cache")
+public class CacheController {
+
+    private final EntityCache entityCache;
+
+    public CacheController(EntityCache entityCache) {
+        this.entityCache = entityCache;
+    }
+
+    /**
+     * Obtiene el estado de la caché en esta instancia.
+     * @return Tamaño, aciertos, fallos e invalidaciones por región
+     */
+    @GetMapping
+    public ResponseEntity<List<CacheStats>> getStats() {
+        return ResponseEntity.ok(entityCache.getStats());
+    }
+
+    /**
+     * Vacía la caché en todas las instancias.
+     * @return 204 No Content
+     */
+    @DeleteMapping
+    public ResponseEntity<Void> clear() {
+        entityCache.invalidateAll();
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -1,11 +1,20 @@
 package com.alejandro.facturacion.controller;
 
+import com.alejandro.facturacion.dto.ClientSummary;
+import com.alejandro.facturacion.dto.ImportFormat;
+import com.alejandro.facturacion.dto.ImportReport;
 import com.alejandro.facturacion.entity.Client;
 import com.alejandro.facturacion.service.ClientService;
+import com.alejandro.facturacion.service.ClientSummaryService;
+import com.alejandro.facturacion.service.ImportService;
 import jakarta.validation.Valid;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 /**
@@ -17,15 +26,21 @@ import java.util.List;
 public class ClientController {
 
     private final ClientService clientService;
+    private final ImportService importService;
+    private final ClientSummaryService clientSummaryService;
 
-    public ClientController(ClientService clientService) {
+    public ClientController(ClientService clientService, ImportService importService,
+                            ClientSummaryService clientSummaryService) {
         this.clientService = clientService;
+        this.importService = importService;
+        this.clientSummaryService = clientSummaryService;
     }
 
     /**
      * Crea un nuevo cliente.
      * @param client Cliente a crear
-     * @return Cliente creado o error si ya existe email o identificación
+     * @return Cliente creado o error si ya existe email o identificación (también si otra instancia
+     *         lo acaba de crear y solo lo detectan las claves únicas)
      */
     @PostMapping
     public ResponseEntity<Client> createClient(@Valid @RequestBody Client client) {
@@ -33,7 +48,30 @@ public class ClientController {
             clientService.existsByIdentificationNumber(client.getIdentificationNumber())) {
             return ResponseEntity.badRequest().build();
         }
-        return ResponseEntity.ok(clientService.saveClient(client));
+        try {
+            return ResponseEntity.ok(clientService.saveClient(client));
+        } catch (DataIntegrityViolationException ex) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Importa clientes en bloque desde CSV (con cabecera) o NDJSON, leyendo el cuerpo en streaming.
+     * Las filas cuya clave ya existe (email) actualizan el registro.
+     * @param body Contenido del fichero
+     * @param format Formato; si se omite se deduce del Content-Type (por defecto CSV)
+     * @param separator Separador de campos CSV
+     * @param contentType Tipo de contenido de la petición
+     * @return Totales de altas, actualizaciones y errores por fila
+     */
+    @PostMapping("/import")
+    public ResponseEntity<ImportReport> importClients(InputStream body,
+                                                       @RequestParam(required = false) ImportFormat format,
+                                                       @RequestParam(defaultValue = ",") char separator,
+                                                       @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType)
+            throws IOException {
+        ImportFormat resolved = format != null ? format : ImportFormat.fromContentType(contentType);
+        return ResponseEntity.ok(importService.importClients(body, resolved, separator));
     }
 
     /**
@@ -57,6 +95,19 @@ public class ClientController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Obtiene el resumen de cuenta de un cliente: número y total de sus facturas, la última y los
+     * totales del mes y el año en curso, sin recorrer sus facturas.
+     * @param id ID del cliente
+     * @return Resumen del cliente o 404 si no existe
+     */
+    @GetMapping("/{id}/summary")
+    public ResponseEntity<ClientSummary> getClientSummary(@PathVariable Long id) {
+        return clientSummaryService.getSummary(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     /**
      * Elimina un cliente por su ID.
      * @param id ID del cliente
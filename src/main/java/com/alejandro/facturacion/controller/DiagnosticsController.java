@@ -0,0 +1,127 @@
+package com.alejandro.facturacion.controller;
+
+import com.alejandro.facturacion.dto.RecordingInfo;
+import com.alejandro.facturacion.dto.RenderPoolStats;
+import com.alejandro.facturacion.service.FlightRecorderService;
+import com.alejandro.facturacion.service.RenderExecutorService;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Controlador REST de diagnóstico.
+ * Permite iniciar y detener grabaciones de Java Flight Recorder, descargar su contenido como
+ * fichero .jfr y consultar la ocupación de los pools de renderizado.
+ */
+@RestController
+@RequestMapping("/api/diagnostics")
+public class DiagnosticsController {
+
+    private final FlightRecorderService flightRecorderService;
+    private final RenderExecutorService renderExecutors;
+
+    public DiagnosticsController(FlightRecorderService flightRecorderService, RenderExecutorService renderExecutors) {
+        this.flightRecorderService = flightRecorderService;
+        this.renderExecutors = renderExecutors;
+    }
+
+    /**
+     * Inicia una grabación.
+     * @param name Nombre de la grabación
+     * @param settings Configuración de JFR: default (sobrecarga baja) o profile (más detalle)
+     * @param duration Duración ISO-8601 (por ejemplo PT5M) tras la que se detiene sola
+     * @return 201 Created con la grabación o 400 si la configuración o la duración no son válidas
+     */
+    @PostMapping("/recordings")
+    public ResponseEntity<RecordingInfo> startRecording(@RequestParam(required = false) String name,
+                                                        @RequestParam(required = false) String settings,
+                                                        @RequestParam(required = false) Duration duration) {
+        try {
+            RecordingInfo recording = flightRecorderService.start(name, settings, duration);
+            return ResponseEntity.created(URI.create("/api/diagnostics/recordings/" + recording.getId())).body(recording);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    /**
+     * Lista las grabaciones iniciadas por la aplicación, incluida la continua.
+     */
+    @GetMapping("/recordings")
+    public List<RecordingInfo> getRecordings() {
+        return flightRecorderService.getRecordings();
+    }
+
+    @GetMapping("/recordings/{id}")
+    public ResponseEntity<RecordingInfo> getRecording(@PathVariable long id) {
+        return flightRecorderService.getRecording(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Detiene una grabación en curso.
+     * @return Grabación detenida, 404 si no existe o 409 si no estaba en curso
+     */
+    @PostMapping("/recordings/{id}/stop")
+    public ResponseEntity<RecordingInfo> stopRecording(@PathVariable long id) {
+        try {
+            return flightRecorderService.stop(id)
+                    .map(ResponseEntity::ok)
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+    }
+
+    /**
+     * Descarga el contenido de la grabación (en curso o detenida) como fichero .jfr,
+     * para abrirlo con JDK Mission Control o {@code jfr print}.
+     */
+    @GetMapping("/recordings/{id}/file")
+    public ResponseEntity<FileSystemResource> downloadRecording(@PathVariable long id) {
+        Path file;
+        try {
+            file = flightRecorderService.dump(id)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Grabación no encontrada"));
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Content-Disposition", "attachment; filename=" + file.getFileName());
+
+        return ResponseEntity.ok()
+                .headers(headers)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(new FileSystemResource(file));
+    }
+
+    /**
+     * Cierra una grabación y borra sus datos.
+     */
+    @DeleteMapping("/recordings/{id}")
+    public ResponseEntity<Void> deleteRecording(@PathVariable long id) {
+        return flightRecorderService.close(id)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Ocupación de los pools de renderizado: hilos activos, cola, rechazos, tiempos agotados y
+     * utilización en el último intervalo.
+     */
+    @GetMapping("/executors")
+    public List<RenderPoolStats> getExecutorStats() {
+        return renderExecutors.getStats();
+    }
+}
@@ -0,0 +1,40 @@
+package com.alejandro.facturacion.controller;
+
+import com.alejandro.facturacion.dto.EdgeStatus;
+import com.alejandro.facturacion.service.EdgeSyncService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Controlador REST de un nodo de borde (solo con {@code facturacion.edge.enabled=true}).
+ */
+@RestController
+@RequestMapping("/api/edge")
+@ConditionalOnProperty(name = "facturacion.edge.enabled", havingValue = "true")
+public class EdgeController {
+
+    private final EdgeSyncService edgeSyncService;
+
+    public EdgeController(EdgeSyncService edgeSyncService) {
+        this.edgeSyncService = edgeSyncService;
+    }
+
+    /**
+     * Obtiene el estado de sincronización con la central.
+     * @return Facturas pendientes, números disponibles y resultado de la última sincronización
+     */
+    @GetMapping("/status")
+    public ResponseEntity<EdgeStatus> getStatus() {
+        return ResponseEntity.ok(edgeSyncService.getStatus());
+    }
+
+    /**
+     * Sincroniza ahora con la central, sin esperar al siguiente intervalo.
+     * @return Estado tras la sincronización; si la central no responde, el error queda en {@code lastError}
+     */
+    @PostMapping("/sync")
+    public ResponseEntity<EdgeStatus> sync() {
+        return ResponseEntity.ok(edgeSyncService.sync());
+    }
+}
@@ -0,0 +1,107 @@
+package com.alejandro.facturacion.controller;
+
+import com.alejandro.facturacion.dto.EdgeStockConflict;
+import com.alejandro.facturacion.dto.EdgeSyncRequest;
+import com.alejandro.facturacion.service.EdgeIngestService;
+import com.alejandro.facturacion.utils.GzipJson;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Controlador REST de la central para los nodos de borde. La copia de datos y los lotes viajan
+ * como JSON comprimido con gzip.
+ */
+@RestController
+@RequestMapping("/api/edge/nodes")
+@ConditionalOnProperty(name = "facturacion.edge.enabled", havingValue = "false", matchIfMissing = true)
+public class EdgeIngestController {
+
+    private static final int MAX_NODE_ID_LENGTH = 100;
+
+    private final EdgeIngestService edgeIngestService;
+    private final ObjectMapper mapper;
+
+    public EdgeIngestController(EdgeIngestService edgeIngestService, ObjectMapper objectMapper) {
+        this.edgeIngestService = edgeIngestService;
+        this.mapper = GzipJson.mapper(objectMapper);
+    }
+
+    /**
+     * Obtiene la copia de productos, clientes recientes, series y reglas de precios para un nodo.
+     * @param nodeId Identificador del nodo
+     * @return Copia comprimida con gzip
+     */
+    @GetMapping("/{nodeId}/snapshot")
+    public ResponseEntity<byte[]> getSnapshot(@PathVariable String nodeId) throws IOException {
+        checkNodeId(nodeId);
+        return gzipped(edgeIngestService.snapshot(nodeId));
+    }
+
+    /**
+     * Recibe un lote de facturas del nodo y le concede números y stock.
+     * @param nodeId Identificador del nodo
+     * @param body Lote en JSON, comprimido con gzip si se indica en Content-Encoding
+     * @param contentEncoding Codificación del cuerpo
+     * @return Facturas aceptadas y rechazadas, bloques de números y stock reservado, comprimidos con gzip
+     */
+    @PostMapping("/{nodeId}/sync")
+    public ResponseEntity<byte[]> sync(@PathVariable String nodeId, InputStream body,
+                                       @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding)
+            throws IOException {
+        checkNodeId(nodeId);
+        EdgeSyncRequest request = GzipJson.read(mapper, body, contentEncoding, EdgeSyncRequest.class);
+        return gzipped(edgeIngestService.sync(nodeId, request));
+    }
+
+    /**
+     * Obtiene las ventas de los nodos que no tenían stock en la central.
+     * @param nodeId Nodo; si se omite, todos
+     * @param limit Máximo de conflictos, los más recientes
+     * @return Conflictos de stock
+     */
+    @GetMapping("/conflicts")
+    public ResponseEntity<List<EdgeStockConflict>> getConflicts(@RequestParam(required = false) String nodeId,
+                                                                @RequestParam(defaultValue = "100") int limit) {
+        if (limit <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit debe ser positivo");
+        }
+        return ResponseEntity.ok(edgeIngestService.getConflicts(nodeId, limit));
+    }
+
+    /**
+     * Da de baja un nodo: devuelve su stock reservado y cierra sus bloques de números. Solo debe
+     * hacerse cuando el nodo ya no tiene facturas pendientes de enviar.
+     * @param nodeId Identificador del nodo
+     * @return 204 No Content
+     */
+    @DeleteMapping("/{nodeId}")
+    public ResponseEntity<Void> decommission(@PathVariable String nodeId) {
+        checkNodeId(nodeId);
+        edgeIngestService.decommission(nodeId);
+        return ResponseEntity.noContent().build();
+    }
+
+    private static void checkNodeId(String nodeId) {
+        if (nodeId.isBlank() || nodeId.length() > MAX_NODE_ID_LENGTH) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "El identificador del nodo debe tener entre 1 y " + MAX_NODE_ID_LENGTH + " caracteres");
+        }
+    }
+
+    private ResponseEntity<byte[]> gzipped(Object body) throws IOException {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.CONTENT_ENCODING, GzipJson.ENCODING)
+                .body(GzipJson.write(mapper, body));
+    }
+}
@@ -0,0 +1,94 @@
+package com.alejandro.facturacion.controller;
+
+import com.alejandro.facturacion.dto.EInvoiceBatchReport;
+import com.alejandro.facturacion.dto.ElectronicInvoice;
+import com.alejandro.facturacion.dto.TransmissionResult;
+import com.alejandro.facturacion.service.ElectronicInvoiceService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+
+/**
+ * Controlador REST para la facturación electrónica (UBL 2.1 DIAN).
+ */
+@RestController
+@RequestMapping("/api/einvoices")
+public class ElectronicInvoiceController {
+
+    private final ElectronicInvoiceService electronicInvoiceService;
+
+    public ElectronicInvoiceController(ElectronicInvoiceService electronicInvoiceService) {
+        this.electronicInvoiceService = electronicInvoiceService;
+    }
+
+    /**
+     * Descarga el XML UBL de una factura. El CUFE se devuelve también en la cabecera {@code X-CUFE}.
+     * @param invoiceId ID de la factura
+     * @param signed Si se firma con XAdES (por defecto sí)
+     * @return XML de la factura, 404 si no existe o 409 si no tiene número legal o la firma no está configurada
+     */
+    @GetMapping("/{invoiceId}")
+    public ResponseEntity<byte[]> getElectronicInvoice(@PathVariable Long invoiceId,
+                                                       @RequestParam(defaultValue = "true") boolean signed) {
+        try {
+            ElectronicInvoice document = electronicInvoiceService.generate(invoiceId, signed)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Factura no encontrada"));
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.add("Content-Disposition", "inline; filename=" + document.getNumber() + ".xml");
+            headers.add("X-CUFE", document.getCufe());
+
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .contentType(MediaType.APPLICATION_XML)
+                    .body(document.getXml());
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+    }
+
+    /**
+     * Genera, firma y envía una factura.
+     * @param invoiceId ID de la factura
+     * @return Respuesta del receptor, 404 si no existe o 409 si no puede emitirse
+     */
+    @PostMapping("/{invoiceId}/send")
+    public ResponseEntity<TransmissionResult> sendElectronicInvoice(@PathVariable Long invoiceId) {
+        try {
+            return electronicInvoiceService.send(invoiceId)
+                    .map(ResponseEntity::ok)
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+    }
+
+    /**
+     * Genera y firma en paralelo las facturas numeradas de un periodo.
+     * @param from Primer día (inclusivo)
+     * @param to Último día (inclusivo)
+     * @param transmit Si además se envían
+     * @return Resumen del lote con rendimiento y errores, o 409 si la firma no está configurada
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<EInvoiceBatchReport> processBatch(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "false") boolean transmit) throws InterruptedException {
+        if (to.isBefore(from)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El periodo no es válido");
+        }
+        try {
+            return ResponseEntity.ok(electronicInvoiceService.processBatch(
+                    from.atStartOfDay(), to.plusDays(1).atStartOfDay(), transmit));
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package com.alejandro.facturacion.controller;
 
 import com.alejandro.facturacion.dto.InvoiceItemRequest;
+import com.alejandro.facturacion.dto.InvoiceSearchCriteria;
+import com.alejandro.facturacion.dto.InvoiceSearchResult;
+import com.alejandro.facturacion.dto.RenderPool;
 import com.alejandro.facturacion.entity.Invoice;
 import com.alejandro.facturacion.service.InvoiceService;
 import com.alejandro.facturacion.service.InvoicePdfService;
+import com.alejandro.facturacion.service.InvoiceSearchService;
+import com.alejandro.facturacion.service.RenderExecutorService;
 import com.alejandro.facturacion.utils.InvoicePdfExporter;
+import jakarta.validation.Valid;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -13,12 +19,12 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.io.ByteArrayInputStream;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Controlador REST para la gestión de facturas.
- * Proporciona endpoints para crear, listar, obtener, exportar y descargar facturas en PDF.
+ * Proporciona endpoints para crear, listar, buscar, obtener, exportar y descargar facturas en PDF.
  */
 @RestController
 @RequestMapping("/api/invoices")
@@ -26,28 +32,38 @@ public class InvoiceController {
 
     private final InvoiceService invoiceService;
     private final InvoicePdfService pdfService;
+    private final RenderExecutorService renderExecutors;
+    private final InvoiceSearchService invoiceSearchService;
 
-    public InvoiceController(InvoiceService invoiceService, InvoicePdfService pdfService) {
+    public InvoiceController(InvoiceService invoiceService, InvoicePdfService pdfService,
+                             RenderExecutorService renderExecutors, InvoiceSearchService invoiceSearchService) {
         this.invoiceService = invoiceService;
         this.pdfService = pdfService;
+        this.renderExecutors = renderExecutors;
+        this.invoiceSearchService = invoiceSearchService;
     }
 
     /**
      * Crea una nueva factura para un cliente.
      * @param clientId ID del cliente
      * @param items Lista de productos y cantidades
-     * @return Factura creada
+     * @param series Prefijo de la serie de numeración (opcional; por defecto la serie predeterminada)
+     * @return Factura creada, 400 si los datos no son válidos (descuento fuera de 0-100, cantidad no
+     *         positiva...) o 409 si la serie no puede numerar
      */
     @PostMapping("/{clientId}")
     public ResponseEntity<Invoice> createInvoice(
             @PathVariable Long clientId,
-            @RequestBody List<InvoiceItemRequest> items) {
+            @RequestBody List<@Valid InvoiceItemRequest> items,
+            @RequestParam(required = false) String series) {
 
         try {
-            Invoice invoice = invoiceService.createInvoice(clientId, items);
+            Invoice invoice = invoiceService.createInvoice(clientId, items, series);
             return ResponseEntity.ok(invoice);
         } catch (IllegalArgumentException ex) {
             return ResponseEntity.badRequest().body(null);
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(null);
         }
     }
 
@@ -60,6 +76,23 @@ public class InvoiceController {
         return ResponseEntity.ok(invoiceService.getAllInvoices());
     }
 
+    /**
+     * Busca facturas combinando filtros por cliente, identificación, producto, importe, fechas y
+     * número legal, con paginación por cursor.
+     * @param criteria Filtros, orden ({@code sort}), tamaño de página ({@code limit}) y cursor ({@code after})
+     * @return Página de resultados, 400 si los filtros o el cursor no son válidos o 409 si la búsqueda está desactivada
+     */
+    @GetMapping("/search")
+    public ResponseEntity<InvoiceSearchResult> searchInvoices(InvoiceSearchCriteria criteria) {
+        try {
+            return ResponseEntity.ok(invoiceSearchService.search(criteria));
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        } catch (IllegalStateException ex) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, ex.getMessage());
+        }
+    }
+
     /**
      * Obtiene una factura por su ID.
      * @param id ID de la factura
@@ -83,52 +116,53 @@ public class InvoiceController {
     }
 
     /**
-     * Descarga el PDF de una factura.
+     * Descarga el PDF de una factura. Se renderiza en el pool de PDF, fuera del hilo de la petición.
      * @param invoiceId ID de la factura
-     * @return PDF de la factura
+     * @return PDF de la factura, 404 si no existe o 503 si el pool está saturado o no termina a tiempo
      */
     @GetMapping("/{invoiceId}/pdf")
-    public ResponseEntity<InputStreamResource> generateInvoicePdf(@PathVariable Long invoiceId) {
+    public CompletableFuture<ResponseEntity<InputStreamResource>> generateInvoicePdf(@PathVariable Long invoiceId) {
         Invoice invoice = invoiceService.getInvoiceById(invoiceId)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Factura no encontrada"));
 
-        ByteArrayInputStream pdfStream = pdfService.generatePdf(invoice);
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.add("Content-Disposition", "inline; filename=factura_" + invoiceId + ".pdf");
-
-        return ResponseEntity
-                .ok()
-                .headers(headers)
-                .contentType(MediaType.APPLICATION_PDF)
-                .body(new InputStreamResource(pdfStream));
+        return renderExecutors.submit(RenderPool.PDF, () -> pdfService.generatePdf(invoice))
+                .thenApply(pdfStream -> {
+                    HttpHeaders headers = new HttpHeaders();
+                    headers.add("Content-Disposition", "inline; filename=factura_" + invoiceId + ".pdf");
+
+                    return ResponseEntity
+                            .ok()
+                            .headers(headers)
+                            .contentType(MediaType.APPLICATION_PDF)
+                            .body(new InputStreamResource(pdfStream));
+                })
+                .exceptionally(e -> {
+                    throw AsyncResponses.toStatus(e);
+                });
     }
 
     /**
-     * Exporta una factura como PDF usando iText 7.
+     * Exporta una factura como PDF usando iText 7. Se renderiza en el pool de PDF.
      * @param id ID de la factura
-     * @return PDF de la factura como arreglo de bytes
+     * @return PDF de la factura como arreglo de bytes, 404 si no existe o 503 si el pool está saturado
      */
     @GetMapping("/{id}/export")
-    public ResponseEntity<byte[]> exportInvoiceAsPdf(@PathVariable Long id) {
+    public CompletableFuture<ResponseEntity<byte[]>> exportInvoiceAsPdf(@PathVariable Long id) {
         Invoice invoice = invoiceService.getInvoiceById(id)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Factura no encontrada"));
 
-        ByteArrayInputStream pdfStream = InvoicePdfExporter.exportInvoiceToPdf(invoice);
-        byte[] pdfBytes = new byte[0];
-        try {
-            pdfBytes = pdfStream.readAllBytes();
-        } catch (Exception e) {
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error al generar PDF");
-        }
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.add("Content-Disposition", "inline; filename=factura_" + id + ".pdf");
-
-        return ResponseEntity.ok()
-                .headers(headers)
-                .contentType(MediaType.APPLICATION_PDF)
-                .body(pdfBytes);
+        return renderExecutors.submit(RenderPool.PDF, () -> InvoicePdfExporter.exportInvoiceToPdf(invoice).readAllBytes())
+                .thenApply(pdfBytes -> {
+                    HttpHeaders headers = new HttpHeaders();
+                    headers.add("Content-Disposition", "inline; filename=factura_" + id + ".pdf");
+
+                    return ResponseEntity.ok()
+                            .headers(headers)
+                            .contentType(MediaType.APPLICATION_PDF)
+                            .body(pdfBytes);
+                })
+                .exceptionally(e -> {
+                    throw AsyncResponses.toStatus(e);
+                });
     }
 }
-
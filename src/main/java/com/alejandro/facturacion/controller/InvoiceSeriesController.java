@@ -0,0 +1,81 @@
+package com.alejandro.facturacion.controller;
+
+import com.alejandro.facturacion.dto.NumberingAudit;
+import com.alejandro.facturacion.entity.InvoiceSeries;
+import com.alejandro.facturacion.service.InvoiceSeriesService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+/**
+ * Controlador REST para las series de numeración autorizadas de facturas.
+ */
+@RestController
+@RequestMapping("/api/invoice-series")
+public class InvoiceSeriesController {
+
+    private final InvoiceSeriesService seriesService;
+
+    public InvoiceSeriesController(InvoiceSeriesService seriesService) {
+        this.seriesService = seriesService;
+    }
+
+    /**
+     * Registra una serie autorizada (prefijo, rango y vigencia de la resolución).
+     * @param series Serie a crear
+     * @return Serie creada
+     */
+    @PostMapping
+    public ResponseEntity<InvoiceSeries> createSeries(@RequestBody InvoiceSeries series) {
+        try {
+            return ResponseEntity.ok(seriesService.createSeries(series));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    /**
+     * Actualiza una serie: resolución, vigencia, ampliación del rango, tamaño de bloque y estado.
+     * @param id ID de la serie
+     * @param series Nuevos datos
+     * @return Serie actualizada o 404 si no existe
+     */
+    @PutMapping("/{id}")
+    public ResponseEntity<InvoiceSeries> updateSeries(@PathVariable Long id, @RequestBody InvoiceSeries series) {
+        try {
+            return seriesService.updateSeries(id, series)
+                    .map(ResponseEntity::ok)
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    /**
+     * Obtiene todas las series.
+     * @return Lista de series
+     */
+    @GetMapping
+    public ResponseEntity<List<InvoiceSeries>> getAllSeries() {
+        return ResponseEntity.ok(seriesService.getAllSeries());
+    }
+
+    /**
+     * Audita la numeración de una serie: duplicados y huecos en el rango indicado.
+     * @param prefix Prefijo de la serie
+     * @param from Primer número a revisar (opcional)
+     * @param to Último número a revisar (opcional)
+     * @return Resultado de la auditoría o 404 si la serie no existe
+     */
+    @GetMapping("/{prefix}/audit")
+    public ResponseEntity<NumberingAudit> audit(@PathVariable String prefix,
+                                                @RequestParam(required = false) Long from,
+                                                @RequestParam(required = false) Long to) {
+        return seriesService.audit(prefix, from, to)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,96 @@
+package com.alejandro.facturacion.controller;
+
+import com.alejandro.facturacion.dto.JobRequest;
+import com.alejandro.facturacion.entity.Job;
+import com.alejandro.facturacion.service.JobService;
+import jakarta.validation.Valid;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Controlador REST para trabajos asíncronos de larga duración.
+ * Permite encolar reportes y exportaciones, consultar su estado, cancelarlos y descargar el resultado.
+ */
+@RestController
+@RequestMapping("/api/jobs")
+public class JobController {
+
+    private final JobService jobService;
+
+    public JobController(JobService jobService) {
+        this.jobService = jobService;
+    }
+
+    /**
+     * Encola un nuevo trabajo.
+     * @param request Tipo, prioridad y parámetros del trabajo
+     * @return 202 Accepted con el trabajo creado, 400 si el tipo no es válido o 503 si la cola está llena
+     */
+    @PostMapping
+    public ResponseEntity<Job> submitJob(@Valid @RequestBody JobRequest request) {
+        try {
+            Job job = jobService.submit(request);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/jobs/" + job.getId()))
+                    .body(job);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().build();
+        } catch (RejectedExecutionException ex) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    /**
+     * Obtiene el estado y progreso de un trabajo.
+     * @param id ID del trabajo
+     * @return Trabajo encontrado o 404 si no existe
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<Job> getJob(@PathVariable String id) {
+        return jobService.getJob(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Descarga el resultado de un trabajo completado.
+     * @param id ID del trabajo
+     * @return Fichero de resultado, 404 si no existe o 409 si aún no ha terminado
+     */
+    @GetMapping("/{id}/result")
+    public ResponseEntity<FileSystemResource> downloadResult(@PathVariable String id) {
+        Job job = jobService.getJob(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Trabajo no encontrado"));
+        Path result = jobService.getResult(job)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.CONFLICT, "El trabajo no tiene resultado disponible"));
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Content-Disposition", "attachment; filename=" + result.getFileName());
+
+        return ResponseEntity.ok()
+                .headers(headers)
+                .contentType(MediaType.parseMediaType(job.getContentType()))
+                .body(new FileSystemResource(result));
+    }
+
+    /**
+     * Cancela un trabajo en cola o en ejecución.
+     * @param id ID del trabajo
+     * @return Trabajo con su estado actualizado o 404 si no existe
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Job> cancelJob(@PathVariable String id) {
+        return jobService.cancel(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
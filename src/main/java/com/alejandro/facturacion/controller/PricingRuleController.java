@@ -0,0 +1,78 @@
+package com.alejandro.facturacion.controller;
+
+import com.alejandro.facturacion.entity.PricingRule;
+import com.alejandro.facturacion.service.PricingRuleService;
+import jakarta.validation.Valid;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * Controlador REST para las reglas de precios (descuentos por volumen,
+ * promociones por categoría y precios negociados por cliente).
+ */
+@RestController
+@RequestMapping("/api/pricing-rules")
+public class PricingRuleController {
+
+    private final PricingRuleService pricingRuleService;
+
+    public PricingRuleController(PricingRuleService pricingRuleService) {
+        this.pricingRuleService = pricingRuleService;
+    }
+
+    /**
+     * Crea una nueva regla de precios.
+     * @param rule Regla a crear
+     * @return Regla creada, o 400 si no tiene tipo, le faltan los campos de su tipo o algún valor está fuera de rango
+     */
+    @PostMapping
+    public ResponseEntity<PricingRule> createRule(@Valid @RequestBody PricingRule rule) {
+        rule.setId(null);
+        try {
+            return ResponseEntity.ok(pricingRuleService.saveRule(rule));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Actualiza una regla existente.
+     * @param id ID de la regla
+     * @param rule Nuevos datos de la regla
+     * @return Regla actualizada, 404 si no existe o 400 si no es válida
+     */
+    @PutMapping("/{id}")
+    public ResponseEntity<PricingRule> updateRule(@PathVariable Long id, @Valid @RequestBody PricingRule rule) {
+        if (pricingRuleService.getRuleById(id).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        rule.setId(id);
+        try {
+            return ResponseEntity.ok(pricingRuleService.saveRule(rule));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Obtiene todas las reglas de precios.
+     * @return Lista de reglas
+     */
+    @GetMapping
+    public ResponseEntity<List<PricingRule>> getAllRules() {
+        return ResponseEntity.ok(pricingRuleService.getAllRules());
+    }
+
+    /**
+     * Elimina una regla de precios.
+     * @param id ID de la regla
+     * @return 204 No Content si se elimina correctamente
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deleteRule(@PathVariable Long id) {
+        pricingRuleService.deleteRule(id);
+        return ResponseEntity.noContent().build();
+    }
+}
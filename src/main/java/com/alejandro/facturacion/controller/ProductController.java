@@ -1,38 +1,89 @@
 package com.alejandro.facturacion.controller;
 
+import com.alejandro.facturacion.dto.ImportFormat;
+import com.alejandro.facturacion.dto.ImportReport;
+import com.alejandro.facturacion.dto.ProductPrice;
+import com.alejandro.facturacion.dto.StockLevel;
+import com.alejandro.facturacion.dto.StockMovement;
+import com.alejandro.facturacion.dto.StockMovementRequest;
 import com.alejandro.facturacion.entity.Product;
 import com.alejandro.facturacion.service.ProductService;
+import com.alejandro.facturacion.service.ImportService;
+import com.alejandro.facturacion.service.ProductPriceHistory;
+import com.alejandro.facturacion.service.StockLedgerService;
 import jakarta.validation.Valid;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
  * Controlador REST para la gestión de productos.
- * Proporciona endpoints para crear, listar, buscar, obtener y eliminar productos.
+ * Proporciona endpoints para crear, listar, buscar, obtener y eliminar productos, para
+ * consultar y registrar sus movimientos de stock y para consultar su historial de precios.
  */
 @RestController
 @RequestMapping("/api/products")
 public class ProductController {
 
     private final ProductService productService;
+    private final ImportService importService;
+    private final StockLedgerService stockLedger;
+    private final ProductPriceHistory priceHistory;
 
-    public ProductController(ProductService productService) {
+    public ProductController(ProductService productService, ImportService importService,
+                             StockLedgerService stockLedger, ProductPriceHistory priceHistory) {
         this.productService = productService;
+        this.importService = importService;
+        this.stockLedger = stockLedger;
+        this.priceHistory = priceHistory;
     }
 
     /**
      * Crea un nuevo producto.
      * @param product Producto a crear
-     * @return Producto creado o error si ya existe el nombre
+     * @return Producto creado o error si ya existe el nombre, el stock es negativo o los datos violan
+     *         alguna restricción
      */
     @PostMapping
     public ResponseEntity<Product> createProduct(@Valid @RequestBody Product product) {
         if (productService.existsByName(product.getName())) {
             return ResponseEntity.badRequest().build();
         }
-        return ResponseEntity.ok(productService.saveProduct(product));
+        try {
+            return ResponseEntity.ok(productService.saveProduct(product));
+        } catch (DataIntegrityViolationException ex) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+    }
+
+    /**
+     * Importa productos en bloque desde CSV (con cabecera) o NDJSON, leyendo el cuerpo en streaming.
+     * Las filas cuya clave ya existe (nombre) actualizan el registro.
+     * @param body Contenido del fichero
+     * @param format Formato; si se omite se deduce del Content-Type (por defecto CSV)
+     * @param separator Separador de campos CSV
+     * @param contentType Tipo de contenido de la petición
+     * @return Totales de altas, actualizaciones y errores por fila
+     */
+    @PostMapping("/import")
+    public ResponseEntity<ImportReport> importProducts(InputStream body,
+                                                       @RequestParam(required = false) ImportFormat format,
+                                                       @RequestParam(defaultValue = ",") char separator,
+                                                       @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType)
+            throws IOException {
+        ImportFormat resolved = format != null ? format : ImportFormat.fromContentType(contentType);
+        return ResponseEntity.ok(importService.importProducts(body, resolved, separator));
     }
 
     /**
@@ -66,6 +117,83 @@ public class ProductController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Obtiene el stock de un producto, actual o en un momento pasado.
+     * @param id ID del producto
+     * @param at Momento a consultar; sin él, el stock actual
+     * @return Stock o 404 si el producto no existe
+     */
+    @GetMapping("/{id}/stock")
+    public ResponseEntity<StockLevel> getStock(@PathVariable Long id,
+                                               @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime at) {
+        return (at != null ? stockLedger.getStockAt(id, at) : stockLedger.getStock(id))
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Obtiene el precio de un producto en un momento dado.
+     * @param id ID del producto
+     * @param at Momento a consultar; sin él, el precio actual
+     * @return Precio con su intervalo de vigencia, o 404 si el producto no tenía precio entonces
+     */
+    @GetMapping("/{id}/price")
+    public ResponseEntity<ProductPrice> getPrice(@PathVariable Long id,
+                                                 @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime at) {
+        return priceHistory.getPriceAt(id, at != null ? at : LocalDateTime.now())
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Lista el historial de precios de un producto, del más antiguo al vigente.
+     * @param id ID del producto
+     * @return Precios con su intervalo de vigencia, o 404 si el producto no tiene historial
+     */
+    @GetMapping("/{id}/prices")
+    public ResponseEntity<List<ProductPrice>> getPriceHistory(@PathVariable Long id) {
+        List<ProductPrice> history = priceHistory.getHistory(id);
+        return history.isEmpty() ? ResponseEntity.notFound().build() : ResponseEntity.ok(history);
+    }
+
+    /**
+     * Lista los movimientos de stock de un producto, en orden.
+     * @param id ID del producto
+     * @param from Desde (incluido)
+     * @param to Hasta (excluido)
+     * @param after ID del último movimiento recibido, para pedir los siguientes
+     * @param limit Número máximo de movimientos (hasta 1000)
+     * @return Movimientos encontrados
+     */
+    @GetMapping("/{id}/stock/movements")
+    public ResponseEntity<List<StockMovement>> getStockMovements(@PathVariable Long id,
+                                                                 @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                                 @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                                 @RequestParam(required = false) Long after,
+                                                                 @RequestParam(defaultValue = "100") int limit) {
+        try {
+            return ResponseEntity.ok(stockLedger.getMovements(id, from, to, after, limit));
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+    }
+
+    /**
+     * Registra una devolución (RETURN) o un ajuste de inventario (ADJUSTMENT).
+     * @param id ID del producto
+     * @param request Tipo, cantidad (negativa en los ajustes que restan) y referencia
+     * @return Stock resultante, o 400 si el movimiento no es válido o dejaría el stock en negativo
+     */
+    @PostMapping("/{id}/stock/movements")
+    public ResponseEntity<StockLevel> recordStockMovement(@PathVariable Long id,
+                                                          @RequestBody StockMovementRequest request) {
+        try {
+            return ResponseEntity.ok(stockLedger.recordManual(id, request));
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+    }
+
     /**
      * Elimina un producto por su ID.
      * @param id ID del producto
@@ -0,0 +1,70 @@
+package com.alejandro.facturacion.controller;
+
+import com.alejandro.facturacion.dto.InvoiceView;
+import com.alejandro.facturacion.dto.MonthlySalesReportDTO;
+import com.alejandro.facturacion.service.ReactiveReadService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDate;
+
+/**
+ * Controlador REST de la API de lectura reactiva (solo con {@code facturacion.reactive.enabled=true}).
+ *
+ * <p>Cada endpoint devuelve un flujo que se escribe elemento a elemento: como Server-Sent Events
+ * (el formato por defecto) o en NDJSON, una línea JSON por elemento, con
+ * {@code Accept: application/x-ndjson}. El hilo de la petición se libera en cuanto se lanza la consulta
+ * y la base de datos solo entrega filas a medida que el cliente las consume.
+ */
+@RestController
+@RequestMapping("/api/reactive")
+@ConditionalOnProperty(name = "facturacion.reactive.enabled", havingValue = "true")
+public class ReactiveReadController {
+
+    private final ReactiveReadService reactiveReadService;
+
+    public ReactiveReadController(ReactiveReadService reactiveReadService) {
+        this.reactiveReadService = reactiveReadService;
+    }
+
+    /**
+     * Emite las facturas de un cliente con sus líneas, de la más antigua a la más reciente.
+     * @param clientId ID del cliente
+     * @return Flujo de facturas del cliente
+     */
+    @GetMapping(value = "/invoices/client/{clientId}", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    public Flux<InvoiceView> getInvoicesByClientId(@PathVariable Long clientId) {
+        return reactiveReadService.getInvoicesByClientId(clientId);
+    }
+
+    /**
+     * Emite las facturas creadas entre dos fechas con sus líneas, por ID.
+     * @param from Primer día (inclusivo, opcional)
+     * @param to Último día (exclusivo, opcional)
+     * @return Flujo de facturas, 400 si el intervalo no es válido
+     */
+    @GetMapping(value = "/invoices", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    public Flux<InvoiceView> getInvoices(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            return reactiveReadService.getInvoices(from, to);
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+    }
+
+    /**
+     * Emite el reporte mensual de ventas calculado en el momento (sin versiones precalculadas).
+     * @return Flujo de reportes mensuales por año y mes
+     */
+    @GetMapping(value = "/reports/monthly-sales", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    public Flux<MonthlySalesReportDTO> getMonthlySalesReport() {
+        return reactiveReadService.getMonthlySales();
+    }
+}
@@ -1,59 +1,100 @@
 package com.alejandro.facturacion.controller;
 
 import com.alejandro.facturacion.dto.MonthlySalesReportDTO;
-import com.alejandro.facturacion.service.ReportService;
-import com.alejandro.facturacion.utils.PdfReportGenerator;
-import org.springframework.core.io.InputStreamResource;
+import com.alejandro.facturacion.dto.MonthlySalesSnapshot;
+import com.alejandro.facturacion.service.ReportSnapshotService;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
-import java.io.ByteArrayInputStream;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Controlador REST para reportes de ventas.
  * Proporciona endpoints para obtener reportes mensuales en JSON y PDF.
+ *
+ * <p>Los reportes se sirven desde versiones precalculadas; las cabeceras
+ * {@code X-Report-Version} y {@code X-Report-Generated-At} indican su antigüedad.
+ * Las regeneraciones se ejecutan en el pool de reportes ({@code facturacion.render.report.*}).
  */
 @RestController
 @RequestMapping("/api/reports")
 public class ReportController {
 
-    private final ReportService reportService;
+    static final String VERSION_HEADER = "X-Report-Version";
+    static final String GENERATED_AT_HEADER = "X-Report-Generated-At";
 
-    public ReportController(ReportService reportService) {
-        this.reportService = reportService;
+    private final ReportSnapshotService reportSnapshotService;
+
+    public ReportController(ReportSnapshotService reportSnapshotService) {
+        this.reportSnapshotService = reportSnapshotService;
     }
 
     /**
      * Obtiene el reporte mensual de ventas en formato JSON.
+     * @param version Versión concreta a obtener (opcional)
+     * @param refresh Si es true, espera a una regeneración con los datos actuales
      * @return Lista de reportes mensuales
      */
     @GetMapping("/monthly-sales")
-    public ResponseEntity<List<MonthlySalesReportDTO>> getMonthlySalesReport() {
-        List<MonthlySalesReportDTO> report = reportService.getMonthlySales();
-        return ResponseEntity.ok(report);
+    public CompletableFuture<ResponseEntity<List<MonthlySalesReportDTO>>> getMonthlySalesReport(
+            @RequestParam(required = false) Long version,
+            @RequestParam(defaultValue = "false") boolean refresh) {
+        return resolveSnapshot(version, refresh)
+                .thenApply(snapshot -> ResponseEntity.ok()
+                        .headers(snapshotHeaders(snapshot))
+                        .body(snapshot.getReport()));
     }
 
     /**
      * Exporta el reporte mensual de ventas en formato PDF.
+     * @param version Versión concreta a obtener (opcional)
+     * @param refresh Si es true, espera a una regeneración con los datos actuales
      * @return PDF con el reporte mensual
      */
     @GetMapping("/monthly-sales/pdf")
-    public ResponseEntity<InputStreamResource> exportMonthlySalesPdf() {
-        List<MonthlySalesReportDTO> reportList = reportService.getMonthlySales();
+    public CompletableFuture<ResponseEntity<ByteArrayResource>> exportMonthlySalesPdf(
+            @RequestParam(required = false) Long version,
+            @RequestParam(defaultValue = "false") boolean refresh) {
+        return resolveSnapshot(version, refresh).thenApply(snapshot -> {
+            HttpHeaders headers = snapshotHeaders(snapshot);
+            headers.add("Content-Disposition", "inline; filename=reporte_mensual_ventas.pdf");
 
-        ByteArrayInputStream bis = PdfReportGenerator.generateMonthlySalesReport(reportList);
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .contentType(MediaType.APPLICATION_PDF)
+                    .body(new ByteArrayResource(snapshot.getPdf()));
+        });
+    }
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.add("Content-Disposition", "inline; filename=reporte_mensual_ventas.pdf");
+    /**
+     * La regeneración (con refresh, o si aún no hay ninguna versión) se espera sin ocupar el hilo de
+     * la petición; si el pool de reportes está saturado o no termina a tiempo se responde 503.
+     */
+    private CompletableFuture<MonthlySalesSnapshot> resolveSnapshot(Long version, boolean refresh) {
+        if (version != null) {
+            return CompletableFuture.completedFuture(reportSnapshotService.getVersion(version)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Versión de reporte no disponible")));
+        }
+        CompletableFuture<MonthlySalesSnapshot> snapshot = refresh ? reportSnapshotService.refresh() : reportSnapshotService.getLatest();
+        return snapshot.exceptionally(e -> {
+            throw AsyncResponses.toStatus(e);
+        });
+    }
 
-        return ResponseEntity.ok()
-                .headers(headers)
-                .contentType(MediaType.APPLICATION_PDF)
-                .body(new InputStreamResource(bis));
+    private HttpHeaders snapshotHeaders(MonthlySalesSnapshot snapshot) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(VERSION_HEADER, String.valueOf(snapshot.getVersion()));
+        headers.add(GENERATED_AT_HEADER, snapshot.getGeneratedAt().toString());
+        headers.setLastModified(snapshot.getGeneratedAt());
+        return headers;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,73 @@
+package com.alejandro.facturacion.controller;
+
+import com.alejandro.facturacion.dto.ClientMove;
+import com.alejandro.facturacion.dto.RebalanceReport;
+import com.alejandro.facturacion.dto.ShardStats;
+import com.alejandro.facturacion.service.ShardRebalancer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+/**
+ * Controlador REST para administrar los shards (solo con {@code facturacion.sharding.enabled=true}).
+ */
+@RestController
+@RequestMapping("/api/shards")
+@ConditionalOnProperty(name = "facturacion.sharding.enabled", havingValue = "true")
+public class ShardController {
+
+    private final ShardRebalancer shardRebalancer;
+
+    public ShardController(ShardRebalancer shardRebalancer) {
+        this.shardRebalancer = shardRebalancer;
+    }
+
+    /**
+     * Obtiene la carga de cada shard.
+     * @return Clientes y facturas por shard
+     */
+    @GetMapping
+    public ResponseEntity<List<ShardStats>> getShards() {
+        return ResponseEntity.ok(shardRebalancer.getStats());
+    }
+
+    /**
+     * Mueve un cliente, con sus facturas, a otro shard. Mientras dura, sus escrituras responden 409.
+     * @param clientId ID del cliente
+     * @param target Shard de destino
+     * @return Resultado del movimiento, 400 si el cliente o el shard no son válidos o 409 si hay otro movimiento en curso
+     */
+    @PostMapping("/clients/{clientId}/move")
+    public ResponseEntity<ClientMove> moveClient(@PathVariable Long clientId, @RequestParam int target) {
+        try {
+            return ResponseEntity.ok(shardRebalancer.moveClient(clientId, target));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+    }
+
+    /**
+     * Mueve clientes del shard con más facturas al que tiene menos hasta equilibrarlos.
+     * @param maxMoves Máximo de clientes a mover
+     * @param dryRun Si solo se planifica, sin mover nada (por defecto sí)
+     * @return Carga antes y después, y los movimientos; 409 si hay otro movimiento en curso
+     */
+    @PostMapping("/rebalance")
+    public ResponseEntity<RebalanceReport> rebalance(@RequestParam(defaultValue = "10") int maxMoves,
+                                                     @RequestParam(defaultValue = "true") boolean dryRun) {
+        if (maxMoves <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "maxMoves debe ser positivo");
+        }
+        try {
+            return ResponseEntity.ok(shardRebalancer.rebalance(maxMoves, dryRun));
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+    }
+}
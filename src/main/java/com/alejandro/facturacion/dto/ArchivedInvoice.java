@@ -0,0 +1,127 @@
+package com.alejandro.facturacion.dto;
+
+import com.alejandro.facturacion.entity.Client;
+import com.alejandro.facturacion.entity.Invoice;
+import com.alejandro.facturacion.entity.InvoiceItem;
+import com.alejandro.facturacion.entity.Product;
+import com.alejandro.facturacion.entity.TaxScheme;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copia inmutable de una factura tal como se guarda en el archivo frío.
+ *
+ * <p>Incluye los datos del cliente y de los productos en el momento del archivado,
+ * de modo que la factura puede reconstruirse sin consultar la base de datos.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchivedInvoice {
+
+    private Long id;
+    private LocalDateTime createdAt;
+    private String seriesPrefix;
+    private Long number;
+    private BigDecimal subtotal;
+    private BigDecimal discountTotal;
+    private BigDecimal taxTotal;
+    private BigDecimal total;
+    private Long clientId;
+    private String clientName;
+    private String clientEmail;
+    private String clientIdentificationNumber;
+    private List<Item> items;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+        private Long id;
+        private Long productId;
+        private String productName;
+        private Integer quantity;
+        private BigDecimal price;
+        private BigDecimal discountRate;
+        private BigDecimal discountAmount;
+        private BigDecimal subtotal;
+        private BigDecimal taxRate;
+        private BigDecimal taxAmount;
+        private TaxScheme taxScheme;
+    }
+
+    public static ArchivedInvoice from(Invoice invoice) {
+        List<Item> items = new ArrayList<>();
+        if (invoice.getItems() != null) {
+            for (InvoiceItem item : invoice.getItems()) {
+                Product product = item.getProduct();
+                items.add(new Item(item.getId(),
+                        product != null ? product.getId() : null,
+                        product != null ? product.getName() : null,
+                        item.getQuantity(), item.getPrice(), item.getDiscountRate(), item.getDiscountAmount(),
+                        item.getSubtotal(), item.getTaxRate(), item.getTaxAmount(), item.getTaxScheme()));
+            }
+        }
+        Client client = invoice.getClient();
+        return new ArchivedInvoice(invoice.getId(), invoice.getCreatedAt(),
+                invoice.getSeriesPrefix(), invoice.getNumber(), invoice.getSubtotal(),
+                invoice.getDiscountTotal(), invoice.getTaxTotal(), invoice.getTotal(),
+                client != null ? client.getId() : null,
+                client != null ? client.getName() : null,
+                client != null ? client.getEmail() : null,
+                client != null ? client.getIdentificationNumber() : null,
+                items);
+    }
+
+    /**
+     * Reconstruye una factura desacoplada (no gestionada por JPA) a partir de la copia archivada.
+     */
+    public Invoice toInvoice() {
+        Client client = clientId == null ? null : Client.builder()
+                .id(clientId)
+                .name(clientName)
+                .email(clientEmail)
+                .identificationNumber(clientIdentificationNumber)
+                .build();
+
+        List<InvoiceItem> invoiceItems = new ArrayList<>();
+        for (Item item : items) {
+            Product product = item.getProductId() == null ? null : Product.builder()
+                    .id(item.getProductId())
+                    .name(item.getProductName())
+                    .price(item.getPrice())
+                    .build();
+            invoiceItems.add(InvoiceItem.builder()
+                    .id(item.getId())
+                    .product(product)
+                    .quantity(item.getQuantity())
+                    .price(item.getPrice())
+                    .discountRate(item.getDiscountRate())
+                    .discountAmount(item.getDiscountAmount())
+                    .subtotal(item.getSubtotal())
+                    .taxRate(item.getTaxRate())
+                    .taxScheme(item.getTaxScheme())
+                    .taxAmount(item.getTaxAmount())
+                    .build());
+        }
+
+        return Invoice.builder()
+                .id(id)
+                .createdAt(createdAt)
+                .seriesPrefix(seriesPrefix)
+                .number(number)
+                .subtotal(subtotal)
+                .discountTotal(discountTotal)
+                .taxTotal(taxTotal)
+                .total(total)
+                .client(client)
+                .items(invoiceItems)
+                .build();
+    }
+}
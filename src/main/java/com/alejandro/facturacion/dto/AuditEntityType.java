@@ -0,0 +1,10 @@
+package com.alejandro.facturacion.dto;
+
+/**
+ * Entidades por las que se indexa el registro de auditoría.
+ */
+public enum AuditEntityType {
+    INVOICE,
+    PRODUCT,
+    CLIENT
+}
@@ -0,0 +1,15 @@
+package com.alejandro.facturacion.dto;
+
+/**
+ * Tipos de evento del registro de auditoría.
+ */
+public enum AuditEventType {
+    /** Factura creada; relacionada con su cliente, cantidad = número de líneas, valor = total en unidades mínimas. */
+    INVOICE_CREATED,
+    /** Movimiento de stock de un producto; cantidad = variación, valor = stock resultante si se conoce. */
+    STOCK_MOVEMENT,
+    /** Alta, cambio o baja de un producto (ID 0: cambio masivo, como una importación). */
+    PRODUCT_CHANGED,
+    /** Alta, cambio o baja de un cliente (ID 0: cambio masivo, como una importación). */
+    CLIENT_CHANGED
+}
@@ -0,0 +1,28 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Evento del registro de auditoría.
+ */
+@Value
+public class AuditRecord {
+
+    /** Posición en el registro: creciente, sirve de cursor para pedir los siguientes. */
+    long sequence;
+    LocalDateTime timestamp;
+    AuditEventType type;
+    /** Usuario autenticado que hizo el cambio, o null si lo hizo un proceso interno. */
+    String user;
+    AuditEntityType entityType;
+    long entityId;
+    /** Entidad relacionada (el cliente de una factura, la factura de un movimiento de stock), o null. */
+    AuditEntityType relatedType;
+    Long relatedId;
+    /** Significado según el tipo de evento; ver {@link AuditEventType}. */
+    Long quantity;
+    Long value;
+    String detail;
+}
@@ -0,0 +1,24 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Value;
+
+/**
+ * Estado del registro de auditoría en esta instancia.
+ */
+@Value
+public class AuditStats {
+
+    long published;
+    /** Eventos descartados porque el búfer estaba lleno. */
+    long dropped;
+    long written;
+    long failed;
+    long batches;
+    int largestBatch;
+    long pending;
+    int bufferCapacity;
+    int segments;
+    long diskBytes;
+    /** Última secuencia escrita, o -1 si el registro está vacío. */
+    long lastSequence;
+}
@@ -0,0 +1,19 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Value;
+
+/**
+ * Invalidación de una entrada (o de una región completa) de la caché, tal como viaja entre
+ * instancias.
+ */
+@Value
+public class CacheInvalidation {
+
+    CacheRegion region;
+    /** ID de la entidad, o {@code null} para toda la región. */
+    Long entityId;
+
+    public static CacheInvalidation all(CacheRegion region) {
+        return new CacheInvalidation(region, null);
+    }
+}
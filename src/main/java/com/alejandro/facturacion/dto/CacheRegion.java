@@ -0,0 +1,13 @@
+package com.alejandro.facturacion.dto;
+
+/**
+ * Regiones de la caché de entidades.
+ */
+public enum CacheRegion {
+    CLIENT,
+    PRODUCT,
+    /** Facturas con su cliente, items y productos; se invalidan también al cambiar estos. */
+    INVOICE,
+    /** Resúmenes de cuenta de los clientes, guardados por {@code ClientSummaryService}. */
+    CLIENT_SUMMARY
+}
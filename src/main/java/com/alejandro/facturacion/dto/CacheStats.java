@@ -0,0 +1,18 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Value;
+
+/**
+ * Estado de una región de la caché de entidades en esta instancia.
+ */
+@Value
+public class CacheStats {
+
+    CacheRegion region;
+    int size;
+    long hits;
+    long misses;
+    /** Lecturas que fueron directamente a la base de datos porque el bus de invalidaciones iba retrasado. */
+    long bypassed;
+    long invalidations;
+}
@@ -0,0 +1,29 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Movimiento de un cliente (con sus facturas e items) entre shards, planificado o ejecutado.
+ */
+@Data
+@NoArgsConstructor
+public class ClientMove {
+
+    private Long clientId;
+    private int fromShard;
+    private int toShard;
+    private long invoices;
+    /** Items copiados; {@code null} si el movimiento no se ejecutó. */
+    private Long items;
+    private Long durationMillis;
+    /** Motivo por el que el movimiento no se completó. */
+    private String error;
+
+    public ClientMove(Long clientId, int fromShard, int toShard, long invoices) {
+        this.clientId = clientId;
+        this.fromShard = fromShard;
+        this.toShard = toShard;
+        this.invoices = invoices;
+    }
+}
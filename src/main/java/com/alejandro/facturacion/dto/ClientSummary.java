@@ -0,0 +1,30 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Resumen de cuenta de un cliente: totales de todas sus facturas y del mes y el año en curso.
+ * Las facturas ya archivadas antes de llevarse el resumen no cuentan.
+ */
+@Value
+public class ClientSummary {
+
+    Long clientId;
+    long invoiceCount;
+    BigDecimal lifetimeTotal;
+    /** Fecha de la primera factura, o null si no tiene. */
+    LocalDateTime firstInvoiceAt;
+    /** Factura más reciente, o null si no tiene. */
+    Long lastInvoiceId;
+    LocalDateTime lastInvoiceAt;
+    /** Mes en curso (aaaa-mm). */
+    String month;
+    long monthCount;
+    BigDecimal monthTotal;
+    int year;
+    long yearCount;
+    BigDecimal yearTotal;
+}
@@ -0,0 +1,30 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resultado de generar y firmar un lote de facturas electrónicas.
+ */
+@Data
+public class EInvoiceBatchReport {
+
+    private int requested;
+    private int signed;
+    private int transmitted;
+    private int signingThreads;
+    private long elapsedMillis;
+    private List<Failure> failures = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Failure {
+        private Long invoiceId;
+        private String message;
+    }
+}
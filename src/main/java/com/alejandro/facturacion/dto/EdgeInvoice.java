@@ -0,0 +1,110 @@
+package com.alejandro.facturacion.dto;
+
+import com.alejandro.facturacion.entity.Invoice;
+import com.alejandro.facturacion.entity.InvoiceItem;
+import com.alejandro.facturacion.entity.TaxScheme;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Factura emitida por un nodo de borde, tal como se envía a la central: con su número legal y sus
+ * importes ya calculados, que la central conserva sin recalcular.
+ */
+@Data
+public class EdgeInvoice {
+
+    /** ID de la factura en la base de datos del nodo. */
+    private Long localId;
+    private LocalDateTime createdAt;
+    private Long clientId;
+    private String seriesPrefix;
+    private Long number;
+    private BigDecimal subtotal;
+    private BigDecimal discountTotal;
+    private BigDecimal taxTotal;
+    private BigDecimal total;
+    private List<Item> items = new ArrayList<>();
+
+    /**
+     * Línea de la factura.
+     */
+    @Data
+    public static class Item {
+        private Long productId;
+        private Integer quantity;
+        private BigDecimal price;
+        private BigDecimal discountRate;
+        private BigDecimal discountAmount;
+        private BigDecimal subtotal;
+        private BigDecimal taxRate;
+        private TaxScheme taxScheme;
+        private BigDecimal taxAmount;
+    }
+
+    /**
+     * Copia una factura local, que debe tener cargados su cliente, items y productos.
+     */
+    public static EdgeInvoice of(Invoice invoice) {
+        EdgeInvoice edgeInvoice = new EdgeInvoice();
+        edgeInvoice.setLocalId(invoice.getId());
+        edgeInvoice.setCreatedAt(invoice.getCreatedAt());
+        edgeInvoice.setClientId(invoice.getClient().getId());
+        edgeInvoice.setSeriesPrefix(invoice.getSeriesPrefix());
+        edgeInvoice.setNumber(invoice.getNumber());
+        edgeInvoice.setSubtotal(invoice.getSubtotal());
+        edgeInvoice.setDiscountTotal(invoice.getDiscountTotal());
+        edgeInvoice.setTaxTotal(invoice.getTaxTotal());
+        edgeInvoice.setTotal(invoice.getTotal());
+        for (InvoiceItem invoiceItem : invoice.getItems()) {
+            Item item = new Item();
+            item.setProductId(invoiceItem.getProduct().getId());
+            item.setQuantity(invoiceItem.getQuantity());
+            item.setPrice(invoiceItem.getPrice());
+            item.setDiscountRate(invoiceItem.getDiscountRate());
+            item.setDiscountAmount(invoiceItem.getDiscountAmount());
+            item.setSubtotal(invoiceItem.getSubtotal());
+            item.setTaxRate(invoiceItem.getTaxRate());
+            item.setTaxScheme(invoiceItem.getTaxScheme());
+            item.setTaxAmount(invoiceItem.getTaxAmount());
+            edgeInvoice.getItems().add(item);
+        }
+        return edgeInvoice;
+    }
+
+    /**
+     * Indica si una factura guardada es esta misma factura reenviada: mismo cliente, mismos
+     * importes y las mismas líneas (en cualquier orden). Los importes se comparan por valor, sin
+     * tener en cuenta la escala, y una línea sin tributo equivale a una de IVA.
+     */
+    public boolean sameAs(Invoice invoice) {
+        EdgeInvoice saved = of(invoice);
+        return Objects.equals(clientId, saved.clientId)
+                && amountsKey(subtotal, discountTotal, taxTotal, total)
+                .equals(amountsKey(saved.subtotal, saved.discountTotal, saved.taxTotal, saved.total))
+                && lineKeys(items).equals(lineKeys(saved.items));
+    }
+
+    private static List<String> lineKeys(List<Item> items) {
+        List<String> keys = new ArrayList<>(items.size());
+        for (Item item : items) {
+            keys.add(item.productId + "/" + item.quantity + "/" + TaxScheme.orDefault(item.taxScheme) + "/"
+                    + amountsKey(item.price, item.discountRate, item.discountAmount, item.subtotal, item.taxRate,
+                    item.taxAmount));
+        }
+        keys.sort(null);
+        return keys;
+    }
+
+    private static String amountsKey(BigDecimal... amounts) {
+        StringBuilder key = new StringBuilder();
+        for (BigDecimal amount : amounts) {
+            key.append(amount == null ? "-" : amount.stripTrailingZeros().toPlainString()).append('/');
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,18 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Bloque de números de una serie concedido a un nodo de borde.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EdgeNumberBlock {
+
+    private String seriesPrefix;
+    private long rangeStart;
+    private long rangeEnd;
+}
@@ -0,0 +1,26 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copia de los datos de la central que un nodo de borde necesita para facturar sin conexión. Las
+ * filas se envían con las columnas de su tabla, para que el nodo las guarde tal cual.
+ */
+@Data
+public class EdgeSnapshot {
+
+    private LocalDateTime generatedAt;
+    private List<Map<String, Object>> products = new ArrayList<>();
+    /** Clientes creados o con facturas recientes ({@code facturacion.edge.central.client-window}). */
+    private List<Map<String, Object>> clients = new ArrayList<>();
+    private List<Map<String, Object>> invoiceSeries = new ArrayList<>();
+    private List<Map<String, Object>> pricingRules = new ArrayList<>();
+    /** Stock reservado para el nodo, por producto. */
+    private Map<Long, Integer> allowances = new HashMap<>();
+}
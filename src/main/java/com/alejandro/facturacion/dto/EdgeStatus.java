@@ -0,0 +1,27 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Estado de sincronización de un nodo de borde.
+ */
+@Data
+public class EdgeStatus {
+
+    private String nodeId;
+    private String centralUrl;
+    private LocalDateTime lastSnapshot;
+    private LocalDateTime lastSync;
+    /** Error de la última sincronización; {@code null} si fue bien. */
+    private String lastError;
+    /** Facturas pendientes de enviar a la central. */
+    private long pendingInvoices;
+    /** De las pendientes, las que la central rechazó; su motivo queda en {@code edge_outbox}. */
+    private long rejectedInvoices;
+    /** Números disponibles por serie en los bloques concedidos al nodo. */
+    private Map<String, Long> numbersLeft = new HashMap<>();
+}
@@ -0,0 +1,25 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Unidades que un nodo de borde vendió sin que quedara stock en la central para cubrirlas. La
+ * factura se conserva (ya es un documento legal emitido); el conflicto queda para revisión.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EdgeStockConflict {
+
+    private Long id;
+    private String nodeId;
+    private Long productId;
+    private Long invoiceId;
+    /** Unidades facturadas por encima del stock disponible. */
+    private int shortfall;
+    private LocalDateTime createdAt;
+}
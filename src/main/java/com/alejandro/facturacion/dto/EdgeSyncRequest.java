@@ -0,0 +1,24 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lote que un nodo de borde envía a la central: facturas emitidas y lo que necesita para seguir
+ * facturando sin conexión.
+ */
+@Data
+public class EdgeSyncRequest {
+
+    private List<EdgeInvoice> invoices = new ArrayList<>();
+
+    /** Números pedidos por serie (prefijo → cantidad); la central concede como mucho un bloque por serie. */
+    private Map<String, Integer> numbersWanted = new HashMap<>();
+
+    /** Unidades de stock pedidas por producto (ID → cantidad), según haya en la central. */
+    private Map<Long, Integer> stockWanted = new HashMap<>();
+}
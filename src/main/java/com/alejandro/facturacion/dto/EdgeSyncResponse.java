@@ -0,0 +1,37 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Respuesta de la central a un lote de un nodo de borde.
+ */
+@Data
+public class EdgeSyncResponse {
+
+    /** IDs locales de las facturas guardadas en la central (también las que ya lo estaban). */
+    private List<Long> accepted = new ArrayList<>();
+
+    /** IDs locales de las facturas rechazadas, con el motivo; el nodo las reintenta en el siguiente lote. */
+    private Map<Long, String> rejected = new HashMap<>();
+
+    /**
+     * Todos los bloques de números concedidos al nodo que no están completamente facturados en la
+     * central, incluidos los de este lote. El nodo añade los que no tenga, por si se perdió una
+     * respuesta anterior.
+     */
+    private List<EdgeNumberBlock> blocks = new ArrayList<>();
+
+    /** Stock reservado para el nodo en la central y aún no facturado, por producto. */
+    private Map<Long, Integer> allowances = new HashMap<>();
+
+    /** Unidades vendidas por el nodo sin stock en la central, detectadas en este lote. */
+    private List<EdgeStockConflict> conflicts = new ArrayList<>();
+
+    /** Series para las que no se pudo conceder un bloque, con el motivo. */
+    private Map<String, String> numberingErrors = new HashMap<>();
+}
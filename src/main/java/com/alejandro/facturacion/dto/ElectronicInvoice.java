@@ -0,0 +1,16 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Value;
+
+/**
+ * Documento UBL generado para una factura, firmado o no.
+ */
+@Value
+public class ElectronicInvoice {
+    Long invoiceId;
+    /** Número legal completo (prefijo + consecutivo). */
+    String number;
+    String cufe;
+    boolean signed;
+    byte[] xml;
+}
@@ -0,0 +1,21 @@
+package com.alejandro.facturacion.dto;
+
+/**
+ * Formatos aceptados por los endpoints de importación masiva.
+ */
+public enum ImportFormat {
+    /** CSV con cabecera. */
+    CSV,
+    /** Un objeto JSON por línea. */
+    NDJSON;
+
+    /**
+     * Deduce el formato a partir del {@code Content-Type}; por defecto CSV.
+     */
+    public static ImportFormat fromContentType(String contentType) {
+        if (contentType != null && contentType.toLowerCase().contains("json")) {
+            return NDJSON;
+        }
+        return CSV;
+    }
+}
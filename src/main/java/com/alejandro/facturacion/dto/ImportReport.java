@@ -0,0 +1,35 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resultado de una importación masiva: totales y errores por fila.
+ */
+@Data
+public class ImportReport {
+
+    private long processed;
+    private long inserted;
+    private long updated;
+    private long failed;
+    private long durationMillis;
+
+    /** Errores por fila; se conservan los primeros {@code facturacion.import.max-reported-errors}. */
+    private List<RowError> errors = new ArrayList<>();
+    private boolean errorsTruncated;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RowError {
+        /** Línea del fichero donde empieza la fila. */
+        private long line;
+        private String key;
+        private String message;
+    }
+}
@@ -1,11 +1,22 @@
 package com.alejandro.facturacion.dto;
 
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
 import lombok.Data;
 
+import java.math.BigDecimal;
+
 @Data
 public class InvoiceItemRequest {
+    @NotNull
     private Long productId;
+    @NotNull
+    @Positive
     private Integer quantity;
+    /** Descuento opcional de la línea en porcentaje (0-100). */
+    @DecimalMin("0")
+    @DecimalMax("100")
+    private BigDecimal discountPercent;
 }
-
-
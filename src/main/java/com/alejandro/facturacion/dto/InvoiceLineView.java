@@ -0,0 +1,22 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+
+/**
+ * Línea de una {@link InvoiceView}.
+ */
+@Value
+public class InvoiceLineView {
+
+    Long productId;
+    String productName;
+    Integer quantity;
+    BigDecimal price;
+    BigDecimal discountRate;
+    BigDecimal discountAmount;
+    BigDecimal subtotal;
+    BigDecimal taxRate;
+    BigDecimal taxAmount;
+}
@@ -0,0 +1,12 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Value;
+
+/**
+ * Número legal asignado a una factura: prefijo de la serie y consecutivo.
+ */
+@Value
+public class InvoiceNumber {
+    String seriesPrefix;
+    long number;
+}
@@ -0,0 +1,36 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Data;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Filtros de {@code GET /api/invoices/search}; todos son opcionales y se combinan con AND.
+ */
+@Data
+public class InvoiceSearchCriteria {
+
+    private Long clientId;
+    /** Parte del nombre del cliente, sin distinguir mayúsculas. */
+    private String clientName;
+    /** Número de identificación exacto del cliente. */
+    private String identificationNumber;
+    /** Parte del nombre de alguno de los productos facturados, sin distinguir mayúsculas. */
+    private String productName;
+    private String series;
+    private Long number;
+    private BigDecimal minTotal;
+    private BigDecimal maxTotal;
+    /** Primer día incluido. */
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate from;
+    /** Último día incluido. */
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate to;
+    private InvoiceSearchSort sort = InvoiceSearchSort.CREATED_AT_DESC;
+    private int limit = 50;
+    /** Cursor {@code nextCursor} de la página anterior. */
+    private String after;
+}
@@ -0,0 +1,22 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Factura encontrada por la búsqueda, con los datos del índice; el detalle se obtiene con
+ * {@code GET /api/invoices/{id}}.
+ */
+@Value
+public class InvoiceSearchHit {
+
+    Long id;
+    /** Número legal completo, o null si la factura no tiene. */
+    String fullNumber;
+    Long clientId;
+    String clientName;
+    LocalDateTime createdAt;
+    BigDecimal total;
+}
@@ -0,0 +1,21 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Página de resultados de la búsqueda de facturas.
+ */
+@Value
+public class InvoiceSearchResult {
+
+    List<InvoiceSearchHit> invoices;
+    /** Cursor para pedir la página siguiente con {@code after}, o null si no hay más. */
+    String nextCursor;
+    /** Facturas que cumplen los filtros, en todas las páginas. */
+    int totalMatches;
+    /** False mientras el índice se carga al arrancar: los resultados pueden estar incompletos. */
+    boolean complete;
+    int indexedInvoices;
+}
@@ -0,0 +1,19 @@
+package com.alejandro.facturacion.dto;
+
+/**
+ * Orden de los resultados de la búsqueda de facturas. Los empates se resuelven por ID en el mismo sentido.
+ */
+public enum InvoiceSearchSort {
+    CREATED_AT_DESC,
+    CREATED_AT_ASC,
+    TOTAL_DESC,
+    TOTAL_ASC;
+
+    public boolean byTotal() {
+        return this == TOTAL_DESC || this == TOTAL_ASC;
+    }
+
+    public boolean descending() {
+        return this == CREATED_AT_DESC || this == TOTAL_DESC;
+    }
+}
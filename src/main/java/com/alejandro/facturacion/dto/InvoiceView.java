@@ -0,0 +1,25 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Factura de solo lectura servida por la API reactiva, con sus líneas.
+ */
+@Value
+public class InvoiceView {
+
+    long id;
+    /** Número legal completo, por ejemplo {@code FE1024} (nulo si no tiene). */
+    String fullNumber;
+    LocalDateTime createdAt;
+    Long clientId;
+    BigDecimal subtotal;
+    BigDecimal discountTotal;
+    BigDecimal taxTotal;
+    BigDecimal total;
+    List<InvoiceLineView> items;
+}
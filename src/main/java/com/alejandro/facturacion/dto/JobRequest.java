@@ -0,0 +1,16 @@
+package com.alejandro.facturacion.dto;
+
+import com.alejandro.facturacion.entity.JobType;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+public class JobRequest {
+    @NotNull
+    private JobType type;
+    private int priority;
+    private Map<String, Object> params = new HashMap<>();
+}
@@ -0,0 +1,23 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Value;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Versión precalculada del reporte mensual de ventas, en JSON y en PDF.
+ */
+@Value
+public class MonthlySalesSnapshot {
+
+    /** Número de versión, creciente en cada regeneración. */
+    long version;
+
+    /** Momento en que se calcularon los datos. */
+    Instant generatedAt;
+
+    List<MonthlySalesReportDTO> report;
+
+    byte[] pdf;
+}
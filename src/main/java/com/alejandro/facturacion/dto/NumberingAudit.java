@@ -0,0 +1,43 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resultado de auditar la numeración de una serie: números emitidos, duplicados y huecos.
+ */
+@Data
+public class NumberingAudit {
+
+    private String prefix;
+    private long auditedFrom;
+    private long auditedTo;
+    /** Primer número de la serie aún no reservado por ningún nodo. */
+    private long nextBlockStart;
+    private long issued;
+    private List<Long> duplicates = new ArrayList<>();
+    private List<Gap> gaps = new ArrayList<>();
+    private boolean gapsTruncated;
+
+    /**
+     * Rango de números sin factura.
+     *
+     * <p>{@code PENDING}: dentro de un bloque reservado por un nodo activo o concedido a un nodo de
+     * borde, todavía puede emitirse o estar pendiente de sincronizar.
+     * {@code RECOVERABLE}: dentro de un bloque liberado o con la concesión vencida; lo emitirá el
+     * próximo nodo que lo recupere. {@code MISSING}: fuera de cualquier bloque abierto, es un
+     * hueco real.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Gap {
+        private long from;
+        private long to;
+        private String status;
+    }
+}
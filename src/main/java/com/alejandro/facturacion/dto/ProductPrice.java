@@ -0,0 +1,19 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Precio de un producto durante un intervalo de su historial.
+ */
+@Value
+public class ProductPrice {
+
+    long productId;
+    BigDecimal price;
+    LocalDateTime validFrom;
+    /** Inicio del precio siguiente (exclusivo), o nulo si es el vigente. */
+    LocalDateTime validTo;
+}
@@ -0,0 +1,19 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resultado de un rebalanceo de shards: carga inicial, movimientos y carga final.
+ */
+@Data
+public class RebalanceReport {
+
+    private boolean dryRun;
+    private List<ShardStats> before = new ArrayList<>();
+    private List<ClientMove> moves = new ArrayList<>();
+    /** Carga tras los movimientos; vacía en una simulación. */
+    private List<ShardStats> after = new ArrayList<>();
+}
@@ -0,0 +1,31 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Estado de una grabación de Java Flight Recorder.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecordingInfo {
+
+    private long id;
+    private String name;
+    /** NEW, DELAYED, RUNNING, STOPPED o CLOSED. */
+    private String state;
+    private Instant startTime;
+    private Instant stopTime;
+    /** Duración máxima (la grabación se detiene sola), o null si es continua. */
+    private Duration duration;
+    private Duration maxAge;
+    /** Bytes grabados en disco hasta ahora. */
+    private long size;
+    /** Si es la grabación continua de diagnóstico que se inicia con la aplicación. */
+    private boolean alwaysOn;
+}
@@ -0,0 +1,11 @@
+package com.alejandro.facturacion.dto;
+
+/**
+ * Pools de hilos dedicados al renderizado, separados de los hilos de petición HTTP.
+ */
+public enum RenderPool {
+    /** PDF de facturas individuales (OpenPDF e iText). */
+    PDF,
+    /** Regeneración del reporte mensual: consulta agregada y PDF. */
+    REPORT
+}
@@ -0,0 +1,28 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Value;
+
+/**
+ * Estado de un pool de renderizado en esta instancia.
+ */
+@Value
+public class RenderPoolStats {
+
+    RenderPool pool;
+    int threads;
+    int queueCapacity;
+    long timeoutMillis;
+    int active;
+    int queued;
+    long submitted;
+    long completed;
+    long failed;
+    /** Tareas rechazadas al enviarlas porque la cola estaba llena. */
+    long rejected;
+    /** Tareas que no terminaron dentro del tiempo máximo (contando la espera en cola). */
+    long timedOut;
+    /** Fracción del tiempo de los hilos ocupada en el último intervalo de muestreo (0 a 1). */
+    double utilization;
+    double averageQueueMillis;
+    double averageRunMillis;
+}
@@ -0,0 +1,14 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Value;
+
+/**
+ * Carga de un shard: clientes y facturas que guarda.
+ */
+@Value
+public class ShardStats {
+
+    int shard;
+    long clients;
+    long invoices;
+}
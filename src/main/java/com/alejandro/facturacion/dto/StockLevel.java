@@ -0,0 +1,16 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Stock de un producto en un instante.
+ */
+@Value
+public class StockLevel {
+
+    long productId;
+    long stock;
+    LocalDateTime at;
+}
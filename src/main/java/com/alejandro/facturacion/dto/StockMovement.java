@@ -0,0 +1,22 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Movimiento del libro de stock de un producto.
+ */
+@Value
+public class StockMovement {
+
+    long id;
+    long productId;
+    StockMovementType type;
+    /** Variación del stock: negativa en las salidas. */
+    int quantity;
+    /** Factura que lo causa, o null. */
+    Long invoiceId;
+    String reference;
+    LocalDateTime createdAt;
+}
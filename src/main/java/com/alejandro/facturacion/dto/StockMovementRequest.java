@@ -0,0 +1,17 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Data;
+
+/**
+ * Devolución o ajuste de stock registrado a mano.
+ */
+@Data
+public class StockMovementRequest {
+    /** RETURN o ADJUSTMENT. */
+    private StockMovementType type;
+    /** Unidades: positivas en una devolución; con signo en un ajuste. */
+    private Integer quantity;
+    /** Factura de la que se devuelven las unidades, si se conoce. */
+    private Long invoiceId;
+    private String reference;
+}
@@ -0,0 +1,23 @@
+package com.alejandro.facturacion.dto;
+
+/**
+ * Tipos de movimiento del libro de stock. Las cantidades llevan signo: negativas las salidas.
+ */
+public enum StockMovementType {
+    /** Stock con el que se dio de alta el producto (o el que tenía al crear el libro). */
+    INITIAL,
+    /** Venta de una factura. */
+    SALE,
+    /** Devolución de unidades vendidas. */
+    RETURN,
+    /** Ajuste manual, por importación o, en un nodo de borde, por lo que le reserva la central. */
+    ADJUSTMENT,
+    /** Venta devuelta al stock porque su factura no llegó a confirmarse. */
+    CANCELLATION,
+    /** Unidades reservadas para un nodo de borde. */
+    EDGE_RESERVATION,
+    /** Reserva de un nodo de borde devuelta al darlo de baja. */
+    EDGE_RELEASE,
+    /** Venta de un nodo de borde que no cubría su reserva. */
+    EDGE_SALE
+}
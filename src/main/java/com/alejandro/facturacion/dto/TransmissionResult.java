@@ -0,0 +1,23 @@
+package com.alejandro.facturacion.dto;
+
+import lombok.Value;
+
+import java.time.Instant;
+
+/**
+ * Respuesta del envío de una factura electrónica.
+ *
+ * <p>{@code status}: {@code ACCEPTED} si el receptor validó el documento, {@code REJECTED} si lo
+ * rechazó (ver {@code message}).
+ */
+@Value
+public class TransmissionResult {
+    Long invoiceId;
+    String number;
+    String cufe;
+    String status;
+    /** Identificador de seguimiento asignado por el receptor. */
+    String trackId;
+    String message;
+    Instant transmittedAt;
+}
@@ -6,14 +6,20 @@ import lombok.*;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 @Entity
-@Table(name = "invoices")
+@Table(name = "invoices", indexes = {
+        @Index(name = "idx_invoices_client_created_at", columnList = "client_id, created_at"),
+        @Index(name = "idx_invoices_created_at_total", columnList = "created_at, total")
+}, uniqueConstraints = @UniqueConstraint(name = "uk_invoices_series_number",
+        columnNames = {"series_prefix", "invoice_number"}))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 public class Invoice {
 
     @Id
@@ -22,8 +28,43 @@ public class Invoice {
 
     private LocalDateTime createdAt;
 
+    /** Prefijo de la serie de numeración autorizada (nulo si no hay series configuradas). */
+    @Column(name = "series_prefix", length = 10)
+    private String seriesPrefix;
+
+    /** Número consecutivo dentro de la serie. */
+    @Column(name = "invoice_number")
+    private Long number;
+
+    /** Suma de las líneas después de descuentos y antes de impuestos. */
+    @Column(precision = 38, scale = 2)
+    private BigDecimal subtotal;
+
+    @Column(name = "discount_total", precision = 38, scale = 2)
+    private BigDecimal discountTotal;
+
+    @Column(name = "tax_total", precision = 38, scale = 2)
+    private BigDecimal taxTotal;
+
+    /** Total a pagar: subtotal + impuestos. */
+    @Column(precision = 38, scale = 2)
     private BigDecimal total;
 
+    /** Resultado del último envío electrónico ({@code ACCEPTED} o {@code REJECTED}); nulo si no se ha enviado. */
+    @Column(name = "einvoice_status", length = 20)
+    private String einvoiceStatus;
+
+    /** CUFE del último documento electrónico enviado. */
+    @Column(name = "einvoice_cufe", length = 96)
+    private String einvoiceCufe;
+
+    /** Identificador de seguimiento que asignó el receptor en el último envío. */
+    @Column(name = "einvoice_track_id", length = 100)
+    private String einvoiceTrackId;
+
+    @Column(name = "einvoice_sent_at")
+    private LocalDateTime einvoiceSentAt;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "client_id")
     @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
@@ -34,9 +75,34 @@ public class Invoice {
     @JsonIgnoreProperties({"invoice"})
     private List<InvoiceItem> items;
 
+    /** Número legal completo, por ejemplo {@code FE1024}. */
+    @Transient
+    public String getFullNumber() {
+        return number == null ? null : (seriesPrefix != null ? seriesPrefix : "") + number;
+    }
+
+    /** Impuestos de la factura por tributo, sumando los de sus líneas (sin tributo, IVA). */
+    public Map<TaxScheme, BigDecimal> taxTotalsByScheme() {
+        Map<TaxScheme, BigDecimal> totals = new EnumMap<>(TaxScheme.class);
+        for (TaxScheme scheme : TaxScheme.values()) {
+            totals.put(scheme, BigDecimal.ZERO);
+        }
+        if (items != null) {
+            for (InvoiceItem item : items) {
+                if (item.getTaxAmount() != null) {
+                    totals.merge(TaxScheme.orDefault(item.getTaxScheme()), item.getTaxAmount(), BigDecimal::add);
+                }
+            }
+        }
+        return totals;
+    }
+
+    /** Las facturas recibidas de un nodo de borde conservan la fecha en que se emitieron. */
     @PrePersist
     public void setCreatedAt() {
-        this.createdAt = LocalDateTime.now();
+        if (this.createdAt == null) {
+            this.createdAt = LocalDateTime.now();
+        }
     }
 }
 
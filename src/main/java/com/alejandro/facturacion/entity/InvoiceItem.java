@@ -7,11 +7,14 @@ import lombok.*;
 import java.math.BigDecimal;
 
 @Entity
-@Table(name = "invoice_items")
+@Table(name = "invoice_items", indexes = {
+        @Index(name = "idx_invoice_items_invoice", columnList = "invoice_id"),
+        @Index(name = "idx_invoice_items_product", columnList = "product_id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 public class InvoiceItem {
 
     @Id
@@ -20,10 +23,33 @@ public class InvoiceItem {
 
     private Integer quantity;
 
+    /** Precio unitario aplicado. */
+    @Column(precision = 38, scale = 2)
     private BigDecimal price;
 
+    /** Descuento aplicado en porcentaje. */
+    @Column(name = "discount_rate", precision = 5, scale = 2)
+    private BigDecimal discountRate;
+
+    @Column(name = "discount_amount", precision = 38, scale = 2)
+    private BigDecimal discountAmount;
+
+    /** Importe de la línea después del descuento y antes de impuestos. */
+    @Column(precision = 38, scale = 2)
     private BigDecimal subtotal;
 
+    /** Tasa del impuesto aplicada en porcentaje. */
+    @Column(name = "tax_rate", precision = 5, scale = 2)
+    private BigDecimal taxRate;
+
+    /** Tributo del impuesto; sin valor (líneas anteriores a V14), IVA. */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "tax_scheme", length = 10)
+    private TaxScheme taxScheme;
+
+    @Column(name = "tax_amount", precision = 38, scale = 2)
+    private BigDecimal taxAmount;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "product_id")
     @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
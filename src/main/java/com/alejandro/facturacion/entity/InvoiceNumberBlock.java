@@ -0,0 +1,57 @@
+package com.alejandro.facturacion.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Bloque de números consecutivos de una serie reservado por un nodo.
+ *
+ * <p>La reserva se persiste antes de emitir ningún número del bloque; los números usados son
+ * los de las facturas guardadas, así que los libres de un bloque abandonado se recalculan
+ * siempre a partir de la tabla {@code invoices}.
+ */
+@Entity
+@Table(name = "invoice_number_blocks", indexes = @Index(
+        name = "idx_invoice_number_blocks_series_status", columnList = "series_id, status, range_start"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class InvoiceNumberBlock {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "series_id", nullable = false)
+    private Long seriesId;
+
+    @Column(name = "series_prefix", nullable = false, length = 10)
+    private String seriesPrefix;
+
+    @Column(name = "range_start", nullable = false)
+    private Long rangeStart;
+
+    @Column(name = "range_end", nullable = false)
+    private Long rangeEnd;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private NumberBlockStatus status;
+
+    @Column(name = "owner_node", length = 100)
+    private String ownerNode;
+
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    public void setCreatedAt() {
+        this.createdAt = LocalDateTime.now();
+    }
+}
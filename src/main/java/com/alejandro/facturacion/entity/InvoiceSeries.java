@@ -0,0 +1,56 @@
+package com.alejandro.facturacion.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+
+/**
+ * Serie de numeración autorizada (prefijo y rango de la resolución de facturación).
+ *
+ * <p>{@code nextBlockStart} es el primer número todavía no reservado por ningún nodo; los
+ * nodos reservan bloques de {@code blockSize} números avanzándolo.
+ */
+@Entity
+@Table(name = "invoice_series")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class InvoiceSeries {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true, length = 10)
+    private String prefix;
+
+    @Column(name = "resolution_number", length = 50)
+    private String resolutionNumber;
+
+    @Column(name = "range_from", nullable = false)
+    private Long rangeFrom;
+
+    @Column(name = "range_to", nullable = false)
+    private Long rangeTo;
+
+    @Column(name = "valid_from")
+    private LocalDate validFrom;
+
+    @Column(name = "valid_to")
+    private LocalDate validTo;
+
+    @Column(name = "next_block_start", nullable = false)
+    private Long nextBlockStart;
+
+    @Column(name = "block_size", nullable = false)
+    private Integer blockSize;
+
+    /** Serie usada cuando la factura no indica ninguna. */
+    @Column(name = "default_series", nullable = false)
+    private boolean defaultSeries;
+
+    @Column(nullable = false)
+    private boolean active;
+}
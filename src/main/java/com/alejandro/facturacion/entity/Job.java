@@ -0,0 +1,80 @@
+package com.alejandro.facturacion.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Trabajo asíncrono de larga duración (reportes, exportaciones, lotes de PDFs).
+ *
+ * <p>El estado se persiste para que los trabajos pendientes sobrevivan a un reinicio;
+ * el resultado se guarda en disco local y aquí solo se registra su ruta.
+ */
+@Entity
+@Table(name = "jobs", indexes = {
+        @Index(name = "idx_jobs_status", columnList = "status"),
+        @Index(name = "idx_jobs_finished_at", columnList = "finished_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Job {
+
+    /** Identificador UUID, no secuencial para que no pueda adivinarse. */
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 40)
+    private JobType type;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private JobStatus status;
+
+    /** Prioridad: los valores mayores se ejecutan antes. */
+    private int priority;
+
+    /** Progreso de 0 a 100. */
+    private int progress;
+
+    /** Parámetros del trabajo serializados en JSON. */
+    @Column(columnDefinition = "TEXT")
+    private String params;
+
+    @Column(name = "result_path", length = 500)
+    private String resultPath;
+
+    @Column(name = "content_type", length = 100)
+    private String contentType;
+
+    @Column(length = 1000)
+    private String error;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    /** Instancia que tiene el trabajo encolado o en ejecución. */
+    @Column(length = 100)
+    private String owner;
+
+    /** Última renovación de {@link #owner}; caducada, otra instancia puede reclamar el trabajo. */
+    @Column(name = "heartbeat_at")
+    private LocalDateTime heartbeatAt;
+
+    @PrePersist
+    public void setCreatedAt() {
+        if (this.createdAt == null) {
+            this.createdAt = LocalDateTime.now();
+        }
+    }
+}
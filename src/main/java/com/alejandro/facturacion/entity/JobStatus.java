@@ -0,0 +1,16 @@
+package com.alejandro.facturacion.entity;
+
+/**
+ * Estados del ciclo de vida de un trabajo asíncrono.
+ */
+public enum JobStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    CANCELLED;
+
+    public boolean isFinished() {
+        return this == COMPLETED || this == FAILED || this == CANCELLED;
+    }
+}
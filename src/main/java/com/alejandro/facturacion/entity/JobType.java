@@ -0,0 +1,13 @@
+package com.alejandro.facturacion.entity;
+
+/**
+ * Tipos de trabajo asíncrono soportados por {@code JobService}.
+ */
+public enum JobType {
+    /** Reporte mensual de ventas en JSON. */
+    MONTHLY_SALES_REPORT,
+    /** Reporte mensual de ventas en PDF. */
+    MONTHLY_SALES_PDF,
+    /** ZIP con el PDF de varias facturas (parámetro {@code invoiceIds}). */
+    INVOICE_PDF_BATCH
+}
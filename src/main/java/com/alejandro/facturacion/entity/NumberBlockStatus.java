@@ -0,0 +1,22 @@
+package com.alejandro.facturacion.entity;
+
+/**
+ * Estado de un bloque de números de factura.
+ */
+public enum NumberBlockStatus {
+    /** Reservado por un nodo mientras renueve su concesión. */
+    LEASED,
+    /** Liberado (apagado ordenado); cualquier nodo puede recuperar sus números libres. */
+    RELEASED,
+    /**
+     * Todos sus números se usaron, o era de un nodo de borde dado de baja: los que no llegaron a la
+     * central no se reutilizan.
+     */
+    CLOSED,
+    /**
+     * Concedido a un nodo de borde ({@code owner_node}), sin concesión que renovar: sus números solo
+     * los emite ese nodo hasta que la central recibe todas sus facturas o el nodo se da de baja, y
+     * entonces pasa a {@link #CLOSED}.
+     */
+    EDGE
+}
@@ -0,0 +1,68 @@
+package com.alejandro.facturacion.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Regla de precios: descuentos por volumen, promociones por categoría y precios por cliente.
+ *
+ * <p>Las reglas activas se compilan en memoria ({@code PricingRuleEngine}); los campos
+ * usados dependen del {@link PricingRuleType}.
+ */
+@Entity
+@Table(name = "pricing_rules")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PricingRule {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 30)
+    private PricingRuleType type;
+
+    @Column(name = "product_id")
+    private Long productId;
+
+    private String category;
+
+    @Column(name = "client_id")
+    private Long clientId;
+
+    /** Cantidad mínima a partir de la cual aplica un descuento por volumen. */
+    @PositiveOrZero
+    @Column(name = "min_quantity")
+    private Integer minQuantity;
+
+    /** Descuento en porcentaje (VOLUME_TIER y CATEGORY_PROMOTION). */
+    @DecimalMin("0")
+    @DecimalMax("100")
+    @Column(name = "discount_percent", precision = 5, scale = 2)
+    private BigDecimal discountPercent;
+
+    /** Precio unitario negociado (CLIENT_PRICE). */
+    @PositiveOrZero
+    @Column(name = "fixed_price", precision = 38, scale = 2)
+    private BigDecimal fixedPrice;
+
+    /** Inicio de vigencia; nulo si aplica desde ya. */
+    @Column(name = "valid_from")
+    private LocalDateTime validFrom;
+
+    /** Fin de vigencia (exclusivo); nulo si no caduca. */
+    @Column(name = "valid_to")
+    private LocalDateTime validTo;
+
+    @Builder.Default
+    private boolean active = true;
+}
@@ -0,0 +1,13 @@
+package com.alejandro.facturacion.entity;
+
+/**
+ * Tipos de regla de precios.
+ */
+public enum PricingRuleType {
+    /** Descuento por volumen: {@code productId}, {@code minQuantity}, {@code discountPercent}. */
+    VOLUME_TIER,
+    /** Promoción por categoría: {@code category}, {@code discountPercent}. */
+    CATEGORY_PROMOTION,
+    /** Precio negociado con un cliente: {@code clientId}, {@code productId}, {@code fixedPrice}. */
+    CLIENT_PRICE
+}
@@ -11,7 +11,7 @@ import java.math.BigDecimal;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class Product {
 
@@ -24,8 +24,25 @@ public class Product {
     @Column(length = 500)
     private String description;
 
+    @Column(precision = 38, scale = 2)
     private BigDecimal price;
 
+    /** Tasa del impuesto en porcentaje (19.00 = 19%). */
+    @Column(name = "tax_rate", precision = 5, scale = 2)
+    private BigDecimal taxRate;
+
+    /** Tributo del impuesto; sin valor, IVA. */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "tax_scheme", length = 10)
+    private TaxScheme taxScheme;
+
+    /**
+     * Stock con el que se da de alta el producto. Después lo lleva el libro de movimientos
+     * ({@code StockLedgerService}), que solo lo actualiza aquí al tomar un snapshot; los servicios
+     * lo devuelven con el stock actual del libro y convierten el que llega al modificar un producto
+     * en un movimiento de ajuste.
+     */
+    @Column(updatable = false)
     private Integer stock;
 
     private String category;
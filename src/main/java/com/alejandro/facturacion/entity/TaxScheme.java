@@ -0,0 +1,33 @@
+package com.alejandro.facturacion.entity;
+
+/**
+ * Tributo de un impuesto, con su código en la tabla 13.2.6.1 del anexo técnico de la DIAN.
+ */
+public enum TaxScheme {
+    IVA("01", "IVA"),
+    /** Impuesto Nacional al Consumo. */
+    INC("04", "INC"),
+    /** Impuesto de Industria, Comercio y Avisos. */
+    ICA("03", "ICA");
+
+    private final String code;
+    private final String label;
+
+    TaxScheme(String code, String label) {
+        this.code = code;
+        this.label = label;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /** Los productos y líneas sin tributo son de IVA, el único que existía antes. */
+    public static TaxScheme orDefault(TaxScheme scheme) {
+        return scheme != null ? scheme : IVA;
+    }
+}
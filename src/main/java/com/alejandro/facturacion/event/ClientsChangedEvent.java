@@ -0,0 +1,19 @@
+package com.alejandro.facturacion.event;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Evento publicado al crear, modificar o eliminar clientes.
+ */
+@Value
+public class ClientsChangedEvent {
+
+    /** IDs de los clientes afectados, o {@code null} si pueden haber cambiado todos. */
+    List<Long> clientIds;
+
+    public static ClientsChangedEvent all() {
+        return new ClientsChangedEvent(null);
+    }
+}
@@ -0,0 +1,17 @@
+package com.alejandro.facturacion.event;
+
+import com.alejandro.facturacion.entity.Invoice;
+import lombok.Value;
+
+/**
+ * Evento publicado por {@code InvoiceService} al crear una factura.
+ *
+ * <p>Los oyentes que dependan de datos confirmados deben usar
+ * {@code @TransactionalEventListener} (fase AFTER_COMMIT por defecto).
+ */
+@Value
+public class InvoiceCreatedEvent {
+
+    /** Factura creada, con su cliente e items. */
+    Invoice invoice;
+}
@@ -0,0 +1,7 @@
+package com.alejandro.facturacion.event;
+
+/**
+ * Evento publicado al crear o modificar una serie de numeración de facturas.
+ */
+public class InvoiceSeriesChangedEvent {
+}
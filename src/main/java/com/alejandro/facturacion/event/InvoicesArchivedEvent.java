@@ -0,0 +1,16 @@
+package com.alejandro.facturacion.event;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Evento publicado por {@code InvoiceArchiveService} al mover facturas al archivo y borrarlas
+ * de la base de datos. Se publica además de {@link InvoicesChangedEvent}.
+ */
+@Value
+public class InvoicesArchivedEvent {
+
+    /** IDs de las facturas archivadas. */
+    List<Long> invoiceIds;
+}
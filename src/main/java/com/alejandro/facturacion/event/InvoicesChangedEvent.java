@@ -0,0 +1,20 @@
+package com.alejandro.facturacion.event;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Evento publicado cuando cambian facturas existentes o llegan facturas por un camino distinto
+ * de la creación normal: archivado, ingesta de nodos de borde o cambio de estado electrónico.
+ */
+@Value
+public class InvoicesChangedEvent {
+
+    /** IDs de las facturas afectadas, o {@code null} si pueden haber cambiado todas. */
+    List<Long> invoiceIds;
+
+    public static InvoicesChangedEvent all() {
+        return new InvoicesChangedEvent(null);
+    }
+}
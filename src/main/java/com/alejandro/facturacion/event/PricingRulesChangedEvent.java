@@ -0,0 +1,7 @@
+package com.alejandro.facturacion.event;
+
+/**
+ * Evento publicado al crear, modificar o eliminar reglas de precios.
+ */
+public class PricingRulesChangedEvent {
+}
@@ -0,0 +1,19 @@
+package com.alejandro.facturacion.event;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Evento publicado al crear, modificar o eliminar productos del catálogo.
+ */
+@Value
+public class ProductsChangedEvent {
+
+    /** IDs de los productos afectados, o {@code null} si puede haber cambiado todo el catálogo. */
+    List<Long> productIds;
+
+    public static ProductsChangedEvent all() {
+        return new ProductsChangedEvent(null);
+    }
+}
@@ -0,0 +1,15 @@
+package com.alejandro.facturacion.event;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Evento publicado por {@code StockLedgerService} al añadir movimientos de stock.
+ */
+@Value
+public class StockChangedEvent {
+
+    /** IDs de los productos cuyo stock ha cambiado. */
+    List<Long> productIds;
+}
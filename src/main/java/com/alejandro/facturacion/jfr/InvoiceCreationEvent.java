@@ -0,0 +1,128 @@
+package com.alejandro.facturacion.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Evento JFR de la creación de una factura, desde la validación hasta el final de su transacción.
+ *
+ * <p>La duración total se reparte en el tiempo de los repositorios (consultas e inserciones hechas
+ * durante la factura), el del stock, el de la numeración y el de la confirmación (flush de
+ * Hibernate y commit). Lo que falta hasta el total es cálculo en memoria o espera de bloqueos de Java.
+ * Sin una grabación activa que incluya el evento, los métodos no hacen nada.
+ */
+@Name("facturacion.InvoiceCreation")
+@Label("Creación de factura")
+@Category({"Facturación", "Facturas"})
+@Description("Creación de una factura, hasta el final de su transacción")
+@StackTrace(false)
+public class InvoiceCreationEvent extends Event {
+
+    @Label("Cliente")
+    long clientId;
+
+    @Label("Líneas")
+    int lines;
+
+    @Label("Serie")
+    String seriesPrefix;
+
+    @Label("Tiempo en repositorios")
+    @Timespan
+    long repositoryTime;
+
+    @Label("Tiempo de stock")
+    @Description("Lectura y descuento del stock de los productos")
+    @Timespan
+    long stockTime;
+
+    @Label("Tiempo de numeración")
+    @Timespan
+    long numberingTime;
+
+    @Label("Tiempo de confirmación")
+    @Description("Flush de Hibernate y commit de la transacción")
+    @Timespan
+    long commitTime;
+
+    @Label("Confirmada")
+    boolean committed;
+
+    /**
+     * Empieza a medir la creación de una factura en el hilo actual.
+     */
+    public static InvoiceCreationEvent start(long clientId, int lines) {
+        InvoiceCreationEvent event = new InvoiceCreationEvent();
+        if (event.isEnabled()) {
+            event.clientId = clientId;
+            event.lines = lines;
+            RepositoryCallInterceptor.startAccumulating();
+            event.begin();
+        }
+        return event;
+    }
+
+    /** Instante actual para medir un tramo, o 0 si el evento no está activo. */
+    public long mark() {
+        return isEnabled() ? System.nanoTime() : 0;
+    }
+
+    public void addStockTime(long mark) {
+        if (mark != 0) {
+            stockTime += System.nanoTime() - mark;
+        }
+    }
+
+    public void addNumberingTime(long mark) {
+        if (mark != 0) {
+            numberingTime += System.nanoTime() - mark;
+        }
+    }
+
+    /**
+     * Registra el evento al terminar la transacción en curso, con el tiempo de confirmación y si se
+     * confirmó. Debe llamarse al principio, para que también se registren las facturas que fallan.
+     */
+    public void commitAfterTransaction() {
+        if (!isEnabled()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Sin transacción no hay final que esperar: no se registra
+            RepositoryCallInterceptor.stopAccumulating();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private long commitStart;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                commitStart = System.nanoTime();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                end();
+                committed = status == STATUS_COMMITTED;
+                if (commitStart != 0) {
+                    commitTime = System.nanoTime() - commitStart;
+                }
+                repositoryTime = RepositoryCallInterceptor.stopAccumulating();
+                if (shouldCommit()) {
+                    commit();
+                }
+            }
+        });
+    }
+
+    public void setSeriesPrefix(String seriesPrefix) {
+        this.seriesPrefix = seriesPrefix;
+    }
+}
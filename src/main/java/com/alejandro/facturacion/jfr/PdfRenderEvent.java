@@ -0,0 +1,62 @@
+package com.alejandro.facturacion.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento JFR de la generación de un PDF.
+ */
+@Name("facturacion.PdfRender")
+@Label("Generación de PDF")
+@Category({"Facturación", "PDF"})
+@Description("Generación de un PDF de factura o de reporte")
+@StackTrace(false)
+public class PdfRenderEvent extends Event {
+
+    @Label("Motor")
+    @Description("Biblioteca usada: openpdf o itext")
+    String engine;
+
+    @Label("Documento")
+    String document;
+
+    @Label("Páginas")
+    int pages;
+
+    @Label("Tamaño")
+    @DataAmount
+    long bytes;
+
+    /**
+     * Empieza a medir la generación de un documento.
+     */
+    public static PdfRenderEvent start(String engine, String document) {
+        PdfRenderEvent event = new PdfRenderEvent();
+        if (event.isEnabled()) {
+            event.engine = engine;
+            event.document = document;
+            event.begin();
+        }
+        return event;
+    }
+
+    /**
+     * Registra el evento con el resultado de la generación.
+     */
+    public void finish(int pages, long bytes) {
+        if (!isEnabled()) {
+            return;
+        }
+        end();
+        if (shouldCommit()) {
+            this.pages = pages;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.alejandro.facturacion.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento JFR de la consulta de un reporte sobre la base de datos.
+ */
+@Name("facturacion.ReportQuery")
+@Label("Consulta de reporte")
+@Category({"Facturación", "Reportes"})
+@Description("Consulta de un reporte sobre la base de datos y el archivo")
+@StackTrace(false)
+public class ReportQueryEvent extends Event {
+
+    @Label("Reporte")
+    String report;
+
+    @Label("Shards")
+    int shards;
+
+    @Label("Filas")
+    int rows;
+
+    @Label("Incluye archivo")
+    boolean includesArchive;
+
+    public static ReportQueryEvent start(String report) {
+        ReportQueryEvent event = new ReportQueryEvent();
+        if (event.isEnabled()) {
+            event.report = report;
+            event.begin();
+        }
+        return event;
+    }
+
+    public void finish(int shards, int rows, boolean includesArchive) {
+        if (!isEnabled()) {
+            return;
+        }
+        end();
+        if (shouldCommit()) {
+            this.shards = shards;
+            this.rows = rows;
+            this.includesArchive = includesArchive;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.alejandro.facturacion.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Evento JFR de una llamada a un repositorio de Spring Data. Por defecto solo se registran las que
+ * superan 5 ms; el umbral se cambia en la configuración de la grabación
+ * ({@code facturacion.RepositoryCall#threshold}).
+ */
+@Name("facturacion.RepositoryCall")
+@Label("Llamada a repositorio")
+@Category({"Facturación", "Base de datos"})
+@Description("Llamada a un método de un repositorio de Spring Data")
+@Threshold("5 ms")
+@StackTrace(false)
+class RepositoryCallEvent extends Event {
+
+    @Label("Repositorio")
+    String repository;
+
+    @Label("Método")
+    String method;
+
+    @Label("Error")
+    String error;
+}
@@ -0,0 +1,57 @@
+package com.alejandro.facturacion.jfr;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * Mide las llamadas a un repositorio: emite un {@link RepositoryCallEvent} y, si el hilo está
+ * midiendo una factura ({@link InvoiceCreationEvent}), suma su duración al tiempo en repositorios.
+ */
+public class RepositoryCallInterceptor implements MethodInterceptor {
+
+    /** Tiempo acumulado en repositorios por el hilo, mientras se mide una factura. */
+    private static final ThreadLocal<long[]> ACCUMULATED = new ThreadLocal<>();
+
+    private final String repository;
+
+    public RepositoryCallInterceptor(String repository) {
+        this.repository = repository;
+    }
+
+    static void startAccumulating() {
+        ACCUMULATED.set(new long[1]);
+    }
+
+    static long stopAccumulating() {
+        long[] accumulated = ACCUMULATED.get();
+        ACCUMULATED.remove();
+        return accumulated != null ? accumulated[0] : 0;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        RepositoryCallEvent event = new RepositoryCallEvent();
+        long[] accumulated = ACCUMULATED.get();
+        if (!event.isEnabled() && accumulated == null) {
+            return invocation.proceed();
+        }
+        long start = System.nanoTime();
+        event.begin();
+        try {
+            return invocation.proceed();
+        } catch (Throwable e) {
+            event.error = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            event.end();
+            if (accumulated != null) {
+                accumulated[0] += System.nanoTime() - start;
+            }
+            if (event.shouldCommit()) {
+                event.repository = repository;
+                event.method = invocation.getMethod().getName();
+                event.commit();
+            }
+        }
+    }
+}
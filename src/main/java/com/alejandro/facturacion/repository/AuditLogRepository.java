@@ -0,0 +1,716 @@
+package com.alejandro.facturacion.repository;
+
+import com.alejandro.facturacion.dto.AuditEntityType;
+import com.alejandro.facturacion.dto.AuditEventType;
+import com.alejandro.facturacion.dto.AuditRecord;
+import com.alejandro.facturacion.utils.LongIntHashMap;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Registro de auditoría de solo anexado en disco local, en segmentos mapeados en memoria.
+ *
+ * <p>Formato:
+ * <ul>
+ *   <li>{@code audit-NNNNNNNNNNNNNNNNNNNN.log}: segmento de tamaño fijo ({@code facturacion.audit.segment-size})
+ *       cuyo nombre es la secuencia de su primer evento. Tras una cabecera de 16 bytes, cada evento
+ *       ocupa su longitud, su CRC-32C y sus campos en binario; el resto del fichero queda a ceros.</li>
+ *   <li>{@code audit-NNNNNNNNNNNNNNNNNNNN.idx}: índice de un segmento ya cerrado, con su rango de
+ *       secuencias y fechas y los pares (entidad, posición) ordenados por entidad.</li>
+ * </ul>
+ *
+ * <p>El segmento activo se indexa en memoria al escribir y, al arrancar, se recorre hasta el primer
+ * evento incompleto o con CRC erróneo. Los datos escritos sobreviven a una caída del proceso (están
+ * en las páginas del sistema operativo) y se sincronizan en disco con {@link #force()}.
+ *
+ * <p>Un único hilo escribe; las consultas pueden ser concurrentes y solo toman el cerrojo para ver
+ * qué segmentos y eventos existen en ese momento.
+ */
+@Slf4j
+@Repository
+public class AuditLogRepository {
+
+    private static final int SEGMENT_MAGIC = 0x41554447; // "AUDG"
+    private static final int INDEX_MAGIC = 0x41554449; // "AUDI"
+    private static final int FORMAT_VERSION = 1;
+    private static final int SEGMENT_HEADER_BYTES = 16;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int FIXED_PAYLOAD_BYTES = 8 + 8 + 1 + 1 + 8 + 1 + 8 + 8 + 8 + 2 + 2;
+    private static final int INDEX_HEADER_BYTES = 48;
+    private static final int INDEX_ENTRY_BYTES = 12;
+    private static final int MAX_TEXT_BYTES = 1024;
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final CRC32C crc = new CRC32C();
+
+    /** Segmentos cerrados, del más antiguo al más reciente; protegidos por {@link #lock}. */
+    private final List<Segment> sealed = new ArrayList<>();
+    private Segment active;
+    private long nextSequence;
+
+    public AuditLogRepository(@Value("${facturacion.audit.directory:./data/audit}") Path directory,
+                              @Value("${facturacion.audit.segment-size:64MB}") DataSize segmentSize) throws IOException {
+        if (segmentSize.toBytes() < 64 * 1024 || segmentSize.toBytes() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("facturacion.audit.segment-size debe estar entre 64KB y 2GB");
+        }
+        this.directory = directory;
+        this.segmentBytes = (int) segmentSize.toBytes();
+        recover();
+    }
+
+    /**
+     * Evento a escribir. Se rellena con {@link #set} y se reutiliza: el registro copia sus valores.
+     */
+    public static final class Entry {
+
+        long timestamp;
+        AuditEventType type;
+        String user;
+        AuditEntityType entityType;
+        long entityId;
+        AuditEntityType relatedType;
+        long relatedId;
+        long quantity;
+        long value;
+        String detail;
+
+        /**
+         * @param timestamp Milisegundos desde la época
+         * @param relatedType Entidad relacionada, o null
+         * @param quantity Cantidad, o {@code Long.MIN_VALUE} si no aplica
+         * @param value Valor, o {@code Long.MIN_VALUE} si no aplica
+         */
+        public void set(long timestamp, AuditEventType type, String user, AuditEntityType entityType, long entityId,
+                        AuditEntityType relatedType, long relatedId, long quantity, long value, String detail) {
+            this.timestamp = timestamp;
+            this.type = type;
+            this.user = user;
+            this.entityType = entityType;
+            this.entityId = entityId;
+            this.relatedType = relatedType;
+            this.relatedId = relatedId;
+            this.quantity = quantity;
+            this.value = value;
+            this.detail = detail;
+        }
+
+        /** Suelta las cadenas para no retenerlas mientras la entrada espera a reutilizarse. */
+        public void clear() {
+            user = null;
+            detail = null;
+        }
+    }
+
+    /**
+     * Añade un evento al segmento activo, pasando a uno nuevo si no cabe.
+     *
+     * @return la secuencia asignada al evento
+     */
+    public long append(Entry entry) {
+        byte[] user = text(entry.user);
+        byte[] detail = text(entry.detail);
+        int length = FIXED_PAYLOAD_BYTES + (user != null ? user.length : 0) + (detail != null ? detail.length : 0);
+        lock.writeLock().lock();
+        try {
+            if (active.end + RECORD_HEADER_BYTES + length > segmentBytes) {
+                roll();
+            }
+            long sequence = nextSequence++;
+            MappedByteBuffer buffer = active.data;
+            int offset = active.end;
+            int position = offset + RECORD_HEADER_BYTES;
+            buffer.putLong(position, sequence);
+            buffer.putLong(position + 8, entry.timestamp);
+            buffer.put(position + 16, (byte) entry.type.ordinal());
+            buffer.put(position + 17, (byte) entry.entityType.ordinal());
+            buffer.putLong(position + 18, entry.entityId);
+            buffer.put(position + 26, (byte) (entry.relatedType != null ? entry.relatedType.ordinal() : -1));
+            buffer.putLong(position + 27, entry.relatedId);
+            buffer.putLong(position + 35, entry.quantity);
+            buffer.putLong(position + 43, entry.value);
+            position = putText(buffer, position + 51, user);
+            putText(buffer, position, detail);
+            crc.reset();
+            crc.update(buffer.slice(offset + RECORD_HEADER_BYTES, length));
+            buffer.putInt(offset + 4, (int) crc.getValue());
+            // La longitud se escribe la última: hasta entonces el evento no existe al recorrer el segmento
+            buffer.putInt(offset, length);
+
+            active.end = offset + RECORD_HEADER_BYTES + length;
+            active.track(sequence, entry.timestamp);
+            active.index.add(key(entry.entityType, entry.entityId), offset);
+            if (entry.relatedType != null) {
+                active.index.add(key(entry.relatedType, entry.relatedId), offset);
+            }
+            return sequence;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Busca eventos en orden de secuencia.
+     *
+     * @param entityType Entidad, o null para todos los eventos del rango de fechas
+     * @param entityId ID de la entidad; incluye los eventos en que aparece como relacionada
+     * @param fromMillis Inicio del rango de fechas (incluido)
+     * @param toMillis Fin del rango de fechas (excluido)
+     * @param afterSequence Solo eventos con secuencia mayor (-1 para todos)
+     * @param limit Número máximo de eventos
+     */
+    public List<AuditRecord> find(AuditEntityType entityType, long entityId, long fromMillis, long toMillis,
+                                  long afterSequence, int limit) {
+        List<SegmentView> views = snapshot();
+        List<AuditRecord> records = new ArrayList<>();
+        long key = entityType != null ? key(entityType, entityId) : 0;
+        for (SegmentView view : views) {
+            if (records.size() >= limit) {
+                break;
+            }
+            Segment segment = view.segment;
+            if (view.records == 0 || view.lastSequence <= afterSequence
+                    || view.maxTimestamp < fromMillis || view.minTimestamp >= toMillis) {
+                continue;
+            }
+            ByteBuffer data;
+            ByteBuffer index;
+            try {
+                data = segment.readable();
+                index = view.index == null && entityType != null ? segment.sealedIndex() : null;
+            } catch (UncheckedIOException e) {
+                continue; // borrado por la retención después de la instantánea
+            }
+            if (entityType == null) {
+                for (int offset = SEGMENT_HEADER_BYTES; offset < view.end && records.size() < limit;
+                     offset += RECORD_HEADER_BYTES + data.getInt(offset)) {
+                    collect(data, offset, fromMillis, toMillis, afterSequence, records);
+                }
+            } else if (view.index != null) {
+                for (int entry = view.index.first(key); entry >= 0 && entry < view.indexSize && records.size() < limit;
+                     entry = view.index.next(entry)) {
+                    collect(data, view.index.offset(entry), fromMillis, toMillis, afterSequence, records);
+                }
+            } else {
+                int entries = index.getInt(4);
+                for (int entry = lowerBound(index, entries, key);
+                     entry < entries && index.getLong(INDEX_HEADER_BYTES + entry * INDEX_ENTRY_BYTES) == key
+                             && records.size() < limit;
+                     entry++) {
+                    collect(data, index.getInt(INDEX_HEADER_BYTES + entry * INDEX_ENTRY_BYTES + 8),
+                            fromMillis, toMillis, afterSequence, records);
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Cierra el segmento activo si su primer evento es anterior a {@code cutoffMillis}, para que la
+     * retención pueda borrarlo por días completos.
+     */
+    public void rollIfOlderThan(long cutoffMillis) {
+        lock.writeLock().lock();
+        try {
+            if (active.records > 0 && active.minTimestamp < cutoffMillis) {
+                roll();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Borra los segmentos cerrados cuyo evento más reciente es anterior a {@code cutoffMillis}.
+     *
+     * @return número de segmentos borrados
+     */
+    public int deleteOlderThan(long cutoffMillis) {
+        List<Segment> expired = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            while (!sealed.isEmpty() && sealed.get(0).maxTimestamp < cutoffMillis) {
+                expired.add(sealed.remove(0));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        for (Segment segment : expired) {
+            try {
+                // Las consultas en curso siguen leyendo de la proyección en memoria
+                Files.deleteIfExists(indexPath(segment.firstSequence));
+                Files.deleteIfExists(segmentPath(segment.firstSequence));
+            } catch (IOException e) {
+                log.warn("No se pudo borrar el segmento de auditoría {}", segment.firstSequence, e);
+            }
+        }
+        return expired.size();
+    }
+
+    /** Sincroniza en disco el segmento activo. */
+    public void force() {
+        Segment segment;
+        lock.readLock().lock();
+        try {
+            segment = active;
+        } finally {
+            lock.readLock().unlock();
+        }
+        segment.data.force();
+    }
+
+    public int getSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return sealed.size() + 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Bytes ocupados por los eventos en todos los segmentos. */
+    public long getUsedBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = active.end;
+            for (Segment segment : sealed) {
+                bytes += segment.end;
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Última secuencia escrita, o -1 si el registro está vacío. */
+    public long getLastSequence() {
+        lock.readLock().lock();
+        try {
+            return nextSequence - 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        force();
+    }
+
+    private List<SegmentView> snapshot() {
+        lock.readLock().lock();
+        try {
+            List<SegmentView> views = new ArrayList<>(sealed.size() + 1);
+            for (Segment segment : sealed) {
+                views.add(new SegmentView(segment, null));
+            }
+            views.add(new SegmentView(active, active.index));
+            return views;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void collect(ByteBuffer data, int offset, long fromMillis, long toMillis, long afterSequence,
+                                List<AuditRecord> records) {
+        int position = offset + RECORD_HEADER_BYTES;
+        long sequence = data.getLong(position);
+        long timestamp = data.getLong(position + 8);
+        if (sequence <= afterSequence || timestamp < fromMillis || timestamp >= toMillis) {
+            return;
+        }
+        AuditEventType type = AuditEventType.values()[data.get(position + 16)];
+        AuditEntityType entityType = AuditEntityType.values()[data.get(position + 17)];
+        long entityId = data.getLong(position + 18);
+        byte relatedType = data.get(position + 26);
+        long relatedId = data.getLong(position + 27);
+        long quantity = data.getLong(position + 35);
+        long value = data.getLong(position + 43);
+        position += 51;
+        int userLength = data.getShort(position);
+        String user = readText(data, position);
+        position += 2 + Math.max(userLength, 0);
+        String detail = readText(data, position);
+        records.add(new AuditRecord(sequence,
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()),
+                type, user, entityType, entityId,
+                relatedType >= 0 ? AuditEntityType.values()[relatedType] : null,
+                relatedType >= 0 ? relatedId : null,
+                quantity != NONE ? quantity : null,
+                value != NONE ? value : null,
+                detail));
+    }
+
+    /** Cierra el segmento activo (escribe su índice) y abre uno nuevo. Con el cerrojo de escritura. */
+    private void roll() {
+        try {
+            active.data.force();
+            writeIndex(active);
+            active.index = null;
+            sealed.add(active);
+            active = openSegment(nextSequence);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo cambiar de segmento de auditoría", e);
+        }
+    }
+
+    private Segment openSegment(long firstSequence) throws IOException {
+        Files.createDirectories(directory);
+        Segment segment = new Segment(firstSequence);
+        try (FileChannel channel = FileChannel.open(segmentPath(firstSequence), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment.data = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        segment.data.putInt(0, SEGMENT_MAGIC);
+        segment.data.putInt(4, FORMAT_VERSION);
+        segment.data.putLong(8, firstSequence);
+        segment.end = SEGMENT_HEADER_BYTES;
+        segment.index = new ActiveIndex();
+        return segment;
+    }
+
+    private void writeIndex(Segment segment) throws IOException {
+        ActiveIndex index = segment.index;
+        long[] keys = Arrays.copyOf(index.keys, index.keyCount);
+        Arrays.sort(keys);
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_HEADER_BYTES + index.size * INDEX_ENTRY_BYTES);
+        buffer.putInt(INDEX_MAGIC).putInt(index.size).putInt(segment.end).putInt(0)
+                .putLong(segment.records).putLong(segment.lastSequence)
+                .putLong(segment.minTimestamp).putLong(segment.maxTimestamp);
+        // Dentro de cada entidad, las posiciones quedan en orden de escritura
+        for (long key : keys) {
+            for (int entry = index.first(key); entry >= 0; entry = index.next(entry)) {
+                buffer.putLong(key).putInt(index.offset(entry));
+            }
+        }
+        Path temporary = directory.resolve(indexPath(segment.firstSequence).getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, indexPath(segment.firstSequence), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            try (Stream<Path> list = Files.list(directory)) {
+                list.filter(p -> p.getFileName().toString().matches("audit-\\d{20}\\.log")).sorted().forEach(files::add);
+            }
+        }
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            long firstSequence = Long.parseLong(file.getFileName().toString().substring(6, 26));
+            Segment segment = new Segment(firstSequence);
+            boolean last = i == files.size() - 1;
+            if (Files.exists(indexPath(firstSequence))) {
+                readIndexHeader(segment);
+                sealed.add(segment);
+                nextSequence = segment.lastSequence + 1;
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                segment.data = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), segmentBytes));
+            }
+            if (segment.data.getInt(0) != SEGMENT_MAGIC) {
+                throw new IllegalStateException("El fichero " + file + " no es un segmento de auditoría");
+            }
+            segment.index = new ActiveIndex();
+            scan(segment);
+            nextSequence = segment.records > 0 ? segment.lastSequence + 1 : firstSequence;
+            if (last) {
+                active = segment;
+            } else {
+                // Quedó sin índice por una caída al cambiar de segmento
+                writeIndex(segment);
+                segment.index = null;
+                sealed.add(segment);
+            }
+        }
+        if (active == null) {
+            active = openSegment(nextSequence);
+        }
+        log.info("Registro de auditoría en {}: {} segmentos, siguiente secuencia {}",
+                directory.toAbsolutePath(), sealed.size() + 1, nextSequence);
+    }
+
+    /** Recorre los eventos de un segmento sin índice hasta el primero incompleto o dañado. */
+    private void scan(Segment segment) {
+        MappedByteBuffer data = segment.data;
+        int capacity = data.capacity();
+        int offset = SEGMENT_HEADER_BYTES;
+        long expected = segment.firstSequence;
+        while (offset + RECORD_HEADER_BYTES <= capacity) {
+            int length = data.getInt(offset);
+            if (length < FIXED_PAYLOAD_BYTES || offset + RECORD_HEADER_BYTES + length > capacity) {
+                break;
+            }
+            crc.reset();
+            crc.update(data.slice(offset + RECORD_HEADER_BYTES, length));
+            int position = offset + RECORD_HEADER_BYTES;
+            if ((int) crc.getValue() != data.getInt(offset + 4) || data.getLong(position) != expected) {
+                log.warn("Segmento de auditoría {}: evento dañado en la posición {}; se descarta desde ahí",
+                        segment.firstSequence, offset);
+                break;
+            }
+            segment.track(expected, data.getLong(position + 8));
+            segment.index.add(key(AuditEntityType.values()[data.get(position + 17)], data.getLong(position + 18)), offset);
+            byte relatedType = data.get(position + 26);
+            if (relatedType >= 0) {
+                segment.index.add(key(AuditEntityType.values()[relatedType], data.getLong(position + 27)), offset);
+            }
+            expected++;
+            offset += RECORD_HEADER_BYTES + length;
+        }
+        // Lo que hubiera tras el último evento válido se pone a cero para poder seguir escribiendo
+        for (int i = offset; i < Math.min(capacity, offset + RECORD_HEADER_BYTES + FIXED_PAYLOAD_BYTES + 2 * MAX_TEXT_BYTES); i++) {
+            data.put(i, (byte) 0);
+        }
+        segment.end = offset;
+    }
+
+    private void readIndexHeader(Segment segment) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_BYTES);
+        try (FileChannel channel = FileChannel.open(indexPath(segment.firstSequence), StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // lectura completa de la cabecera
+            }
+        }
+        header.flip();
+        if (header.remaining() < INDEX_HEADER_BYTES || header.getInt() != INDEX_MAGIC) {
+            throw new IllegalStateException("Índice de auditoría dañado: " + indexPath(segment.firstSequence));
+        }
+        header.getInt();
+        segment.end = header.getInt();
+        header.getInt();
+        segment.records = header.getLong();
+        segment.lastSequence = header.getLong();
+        segment.minTimestamp = header.getLong();
+        segment.maxTimestamp = header.getLong();
+    }
+
+    private Path segmentPath(long firstSequence) {
+        return directory.resolve(String.format("audit-%020d.log", firstSequence));
+    }
+
+    private Path indexPath(long firstSequence) {
+        return directory.resolve(String.format("audit-%020d.idx", firstSequence));
+    }
+
+    /** Primera entrada del índice cerrado con clave mayor o igual que {@code key}. */
+    private static int lowerBound(ByteBuffer index, int entries, long key) {
+        int low = 0;
+        int high = entries;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (index.getLong(INDEX_HEADER_BYTES + mid * INDEX_ENTRY_BYTES) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Clave de índice de una entidad: tipo en el byte alto (desde 1, porque 0 está reservado) e ID. */
+    private static long key(AuditEntityType type, long id) {
+        return ((long) (type.ordinal() + 1) << 56) | (id & 0x00FF_FFFF_FFFF_FFFFL);
+    }
+
+    private static byte[] text(String value) {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return bytes.length > MAX_TEXT_BYTES ? Arrays.copyOf(bytes, MAX_TEXT_BYTES) : bytes;
+    }
+
+    private static int putText(ByteBuffer buffer, int position, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putShort(position, (short) -1);
+            return position + 2;
+        }
+        buffer.putShort(position, (short) bytes.length);
+        buffer.put(position + 2, bytes);
+        return position + 2 + bytes.length;
+    }
+
+    private static String readText(ByteBuffer buffer, int position) {
+        int length = buffer.getShort(position);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(position + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Segmento del registro, con su rango de secuencias y de fechas. */
+    private final class Segment {
+
+        final long firstSequence;
+        /** Proyección de los datos: de lectura y escritura si se abrió en esta ejecución, si no se mapea al leer. */
+        volatile MappedByteBuffer data;
+        private volatile MappedByteBuffer indexData;
+        int end;
+        long records;
+        long lastSequence = -1;
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+        /** Índice en memoria, solo mientras el segmento está activo. */
+        ActiveIndex index;
+
+        Segment(long firstSequence) {
+            this.firstSequence = firstSequence;
+        }
+
+        void track(long sequence, long timestamp) {
+            records++;
+            lastSequence = sequence;
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+        }
+
+        ByteBuffer readable() {
+            MappedByteBuffer mapped = data;
+            if (mapped == null) {
+                synchronized (this) {
+                    if (data == null) {
+                        data = map(segmentPath(firstSequence));
+                    }
+                    mapped = data;
+                }
+            }
+            return mapped;
+        }
+
+        ByteBuffer sealedIndex() {
+            MappedByteBuffer mapped = indexData;
+            if (mapped == null) {
+                synchronized (this) {
+                    if (indexData == null) {
+                        indexData = map(indexPath(firstSequence));
+                    }
+                    mapped = indexData;
+                }
+            }
+            return mapped;
+        }
+
+        private MappedByteBuffer map(Path path) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se pudo mapear " + path, e);
+            }
+        }
+    }
+
+    /**
+     * Índice del segmento activo: para cada entidad, lista enlazada (en arrays) de las posiciones de
+     * sus eventos en orden de escritura. Las entradas no cambian una vez añadidas salvo el enlace
+     * de la última de cada entidad, así que una consulta recorre las que existían al tomar la
+     * instantánea y se detiene en la primera posterior.
+     */
+    private static final class ActiveIndex {
+
+        private final LongIntHashMap firstByKey = new LongIntHashMap(1024, -1);
+        private final LongIntHashMap lastByKey = new LongIntHashMap(1024, -1);
+        private int[] offsets = new int[1024];
+        private int[] next = new int[1024];
+        private int size;
+        private long[] keys = new long[256];
+        private int keyCount;
+
+        synchronized void add(long key, int offset) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                next = Arrays.copyOf(next, size * 2);
+            }
+            int entry = size;
+            offsets[entry] = offset;
+            next[entry] = -1;
+            int last = lastByKey.put(key, entry);
+            if (last >= 0) {
+                next[last] = entry;
+            } else {
+                firstByKey.put(key, entry);
+                if (keyCount == keys.length) {
+                    keys = Arrays.copyOf(keys, keyCount * 2);
+                }
+                keys[keyCount++] = key;
+            }
+            size++;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized int first(long key) {
+            return firstByKey.get(key);
+        }
+
+        synchronized int next(int entry) {
+            return next[entry];
+        }
+
+        synchronized int offset(int entry) {
+            return offsets[entry];
+        }
+    }
+
+    /** Lo que una consulta puede leer de un segmento: lo escrito hasta que tomó la instantánea. */
+    private static final class SegmentView {
+
+        final Segment segment;
+        final int end;
+        final long records;
+        final long lastSequence;
+        final long minTimestamp;
+        final long maxTimestamp;
+        final ActiveIndex index;
+        final int indexSize;
+
+        /** Se crea con el cerrojo tomado. */
+        SegmentView(Segment segment, ActiveIndex index) {
+            this.segment = segment;
+            this.end = segment.end;
+            this.records = segment.records;
+            this.lastSequence = segment.lastSequence;
+            this.minTimestamp = segment.minTimestamp;
+            this.maxTimestamp = segment.maxTimestamp;
+            this.index = index;
+            this.indexSize = index != null ? index.size() : 0;
+        }
+    }
+}
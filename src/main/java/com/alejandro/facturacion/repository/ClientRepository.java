@@ -2,7 +2,10 @@ package com.alejandro.facturacion.repository;
 
 import com.alejandro.facturacion.entity.Client;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface ClientRepository extends JpaRepository<Client, Long> {
@@ -14,5 +17,8 @@ public interface ClientRepository extends JpaRepository<Client, Long> {
     boolean existsByEmail(String email);
 
     boolean existsByIdentificationNumber(String identificationNumber);
+
+    @Query("SELECT c.id FROM Client c WHERE LOWER(c.name) LIKE LOWER(CONCAT('%', :name, '%'))")
+    List<Long> findIdsByNameContaining(@Param("name") String name);
 }
 
@@ -0,0 +1,462 @@
+package com.alejandro.facturacion.repository;
+
+import com.alejandro.facturacion.dto.ArchivedInvoice;
+import com.alejandro.facturacion.dto.MonthlySalesReportDTO;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Almacén frío de facturas archivadas en disco local.
+ *
+ * <p>Formato:
+ * <ul>
+ *   <li>{@code segment-NNNNN.dat}: fichero de solo anexado con bloques comprimidos (Deflate).
+ *       Cada bloque contiene facturas de un único mes, ordenadas por ID, serializadas en JSON.</li>
+ *   <li>{@code segment-NNNNN.idx}: índice disperso, una línea JSON por bloque con su posición,
+ *       rango de IDs, mes y agregados (número de facturas y ventas). Un bloque descartado se
+ *       anula con una segunda línea igual marcada como {@code discarded}.</li>
+ * </ul>
+ *
+ * <p>Añadir es idempotente por ID: las facturas que ya están en el archivo se omiten, de modo que
+ * reintentar un lote cuya transacción no llegó a confirmarse no las duplica.
+ *
+ * <p>El índice completo se mantiene en memoria, además ordenado por ID mínimo para buscar por ID
+ * con una búsqueda binaria. Las lecturas acceden a los segmentos mediante ficheros mapeados en
+ * memoria, de modo que una búsqueda por ID solo descomprime los bloques cuyo rango contiene el ID
+ * (normalmente uno: los rangos de meses distintos apenas se solapan). Los últimos bloques
+ * descomprimidos se conservan en una caché pequeña.
+ */
+@Slf4j
+@Repository
+public class InvoiceArchiveRepository {
+
+    private static final int BLOCK_MAGIC = 0x46414342; // "FACB"
+    private static final int BLOCK_HEADER_BYTES = 12;
+    private static final int DECODED_BLOCK_CACHE_SIZE = 32;
+
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final long segmentMaxBytes;
+
+    private final List<BlockIndexEntry> index = new CopyOnWriteArrayList<>();
+    /** {@link #index} ordenado por ID mínimo; se reconstruye en cada cambio del índice. */
+    private volatile IdLookup lookup = IdLookup.of(List.of());
+    private final Map<Integer, MappedByteBuffer> mappedSegments = new ConcurrentHashMap<>();
+    private final Map<BlockIndexEntry, List<ArchivedInvoice>> decodedBlocks =
+            new LinkedHashMap<>(DECODED_BLOCK_CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<BlockIndexEntry, List<ArchivedInvoice>> eldest) {
+                    return size() > DECODED_BLOCK_CACHE_SIZE;
+                }
+            };
+
+    private FileChannel activeChannel;
+    private int activeSegment;
+
+    /**
+     * Entrada del índice disperso: describe un bloque comprimido dentro de un segmento.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BlockIndexEntry {
+        private int segment;
+        private long offset;
+        private int length;
+        private long minId;
+        private long maxId;
+        private int year;
+        private int month;
+        private long invoiceCount;
+        private BigDecimal totalSales;
+        /** Solo en la línea que anula un bloque ya escrito. */
+        private boolean discarded;
+
+        private boolean sameBlock(BlockIndexEntry other) {
+            return segment == other.segment && offset == other.offset;
+        }
+    }
+
+    public InvoiceArchiveRepository(ObjectMapper objectMapper,
+                                    @Value("${facturacion.archive.directory:./data/archive}") Path directory,
+                                    @Value("${facturacion.archive.segment-size:64MB}") DataSize segmentSize) throws IOException {
+        // Las posiciones dentro de un segmento mapeado son int
+        if (segmentSize.toBytes() <= 0 || segmentSize.toBytes() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("facturacion.archive.segment-size debe ser positivo y menor de 2GB");
+        }
+        this.objectMapper = objectMapper;
+        this.directory = directory;
+        this.segmentMaxBytes = segmentSize.toBytes();
+        loadIndex();
+        lookup = IdLookup.of(index);
+    }
+
+    /**
+     * Añade un bloque con facturas de un mismo mes y lo persiste de forma duradera
+     * (datos e índice sincronizados en disco) antes de devolver el control. Las facturas que ya
+     * están archivadas se omiten.
+     *
+     * @param month mes al que pertenecen todas las facturas
+     * @param invoices facturas a archivar
+     * @return entrada de índice del bloque escrito, o {@code null} si todas estaban ya archivadas
+     */
+    public synchronized BlockIndexEntry append(YearMonth month, List<ArchivedInvoice> invoices) {
+        List<ArchivedInvoice> sorted = new ArrayList<>(invoices);
+        sorted.sort(Comparator.comparing(ArchivedInvoice::getId));
+        Set<Long> archived = archivedIds(sorted.get(0).getId(), sorted.get(sorted.size() - 1).getId());
+        if (!archived.isEmpty()) {
+            sorted.removeIf(invoice -> archived.contains(invoice.getId()));
+            log.info("{} facturas de {} ya estaban archivadas; se omiten", archived.size(), month);
+            if (sorted.isEmpty()) {
+                return null;
+            }
+        }
+
+        try {
+            byte[] raw = objectMapper.writeValueAsBytes(sorted);
+            byte[] compressed = deflate(raw);
+
+            FileChannel channel = channelFor(BLOCK_HEADER_BYTES + compressed.length);
+            long offset = channel.size();
+            ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER_BYTES + compressed.length);
+            block.putInt(BLOCK_MAGIC).putInt(raw.length).putInt(compressed.length).put(compressed).flip();
+            while (block.hasRemaining()) {
+                channel.write(block, offset + block.position());
+            }
+            channel.force(false);
+
+            BigDecimal totalSales = sorted.stream()
+                    .map(ArchivedInvoice::getTotal)
+                    .filter(t -> t != null)
+                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+            BlockIndexEntry entry = new BlockIndexEntry(activeSegment, offset, BLOCK_HEADER_BYTES + compressed.length,
+                    sorted.get(0).getId(), sorted.get(sorted.size() - 1).getId(),
+                    month.getYear(), month.getMonthValue(), sorted.size(), totalSales, false);
+
+            Path indexFile = indexPath(activeSegment);
+            Files.write(indexFile, (objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+
+            index.add(entry);
+            lookup = IdLookup.of(index);
+            return entry;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error escribiendo el archivo de facturas", e);
+        }
+    }
+
+    /**
+     * Anula un bloque escrito por {@link #append} cuyas facturas no llegaron a borrarse de la base
+     * de datos (la transacción no se confirmó): deja de contar en los agregados y de leerse.
+     */
+    public synchronized void discard(BlockIndexEntry entry) {
+        BlockIndexEntry tombstone = new BlockIndexEntry(entry.getSegment(), entry.getOffset(), entry.getLength(),
+                entry.getMinId(), entry.getMaxId(), entry.getYear(), entry.getMonth(), entry.getInvoiceCount(),
+                entry.getTotalSales(), true);
+        try {
+            Files.write(indexPath(entry.getSegment()),
+                    (objectMapper.writeValueAsString(tombstone) + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+        } catch (IOException e) {
+            // Sin la anulación el bloque queda duplicado hasta que el siguiente archivado lo salte
+            throw new UncheckedIOException("Error anulando un bloque del archivo de facturas", e);
+        } finally {
+            index.removeIf(existing -> existing.sameBlock(entry));
+            lookup = IdLookup.of(index);
+            synchronized (decodedBlocks) {
+                decodedBlocks.keySet().removeIf(existing -> existing.sameBlock(entry));
+            }
+        }
+    }
+
+    /**
+     * Busca una factura archivada por su ID.
+     */
+    public Optional<ArchivedInvoice> findById(long id) {
+        for (BlockIndexEntry entry : lookup.candidates(id)) {
+            List<ArchivedInvoice> invoices = readBlock(entry);
+            int position = binarySearch(invoices, id);
+            if (position >= 0) {
+                return Optional.of(invoices.get(position));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Agregados mensuales de las facturas archivadas, calculados solo a partir del índice.
+     */
+    public List<MonthlySalesReportDTO> getMonthlySalesReport() {
+        Map<YearMonth, MonthlySalesReportDTO> byMonth = new TreeMap<>();
+        for (BlockIndexEntry entry : index) {
+            YearMonth month = YearMonth.of(entry.getYear(), entry.getMonth());
+            MonthlySalesReportDTO report = byMonth.computeIfAbsent(month,
+                    m -> new MonthlySalesReportDTO(m.getYear(), m.getMonthValue(), 0L, BigDecimal.ZERO));
+            report.setTotalInvoices(report.getTotalInvoices() + entry.getInvoiceCount());
+            report.setTotalSales(report.getTotalSales().add(entry.getTotalSales()));
+        }
+        return new ArrayList<>(byMonth.values());
+    }
+
+    public boolean isEmpty() {
+        return index.isEmpty();
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (activeChannel != null) {
+            activeChannel.close();
+            activeChannel = null;
+        }
+    }
+
+    /** IDs del intervalo que ya están en el archivo; solo se leen los bloques que lo solapan. */
+    private Set<Long> archivedIds(long minId, long maxId) {
+        Set<Long> ids = new HashSet<>();
+        for (BlockIndexEntry entry : index) {
+            if (entry.getMaxId() < minId || entry.getMinId() > maxId) {
+                continue;
+            }
+            for (ArchivedInvoice invoice : readBlock(entry)) {
+                if (invoice.getId() >= minId && invoice.getId() <= maxId) {
+                    ids.add(invoice.getId());
+                }
+            }
+        }
+        return ids;
+    }
+
+    private List<ArchivedInvoice> readBlock(BlockIndexEntry entry) {
+        synchronized (decodedBlocks) {
+            List<ArchivedInvoice> cached = decodedBlocks.get(entry);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        ByteBuffer block = mapped(entry).slice((int) entry.getOffset(), entry.getLength());
+        if (block.getInt() != BLOCK_MAGIC) {
+            throw new IllegalStateException("Bloque de archivo corrupto en el segmento " + entry.getSegment()
+                    + ", posición " + entry.getOffset());
+        }
+        int rawLength = block.getInt();
+        int compressedLength = block.getInt();
+        byte[] compressed = new byte[compressedLength];
+        block.get(compressed);
+
+        try {
+            List<ArchivedInvoice> invoices = objectMapper.readValue(inflate(compressed, rawLength),
+                    new TypeReference<List<ArchivedInvoice>>() { });
+            synchronized (decodedBlocks) {
+                decodedBlocks.put(entry, invoices);
+            }
+            return invoices;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error leyendo el archivo de facturas", e);
+        }
+    }
+
+    /**
+     * Devuelve el mapeo en memoria del segmento, volviendo a mapearlo si el bloque
+     * pedido quedó fuera (el segmento activo crece con cada anexado).
+     */
+    private MappedByteBuffer mapped(BlockIndexEntry entry) {
+        long end = entry.getOffset() + entry.getLength();
+        MappedByteBuffer buffer = mappedSegments.get(entry.getSegment());
+        if (buffer != null && buffer.capacity() >= end) {
+            return buffer;
+        }
+        return mappedSegments.compute(entry.getSegment(), (segment, current) -> {
+            if (current != null && current.capacity() >= end) {
+                return current;
+            }
+            try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se pudo mapear el segmento " + segment, e);
+            }
+        });
+    }
+
+    private FileChannel channelFor(int blockBytes) throws IOException {
+        if (activeChannel != null && activeChannel.size() + blockBytes > segmentMaxBytes && activeChannel.size() > 0) {
+            activeChannel.close();
+            activeChannel = null;
+            activeSegment++;
+        }
+        if (activeChannel == null) {
+            Files.createDirectories(directory);
+            activeChannel = FileChannel.open(segmentPath(activeSegment),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        }
+        return activeChannel;
+    }
+
+    private void loadIndex() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> indexFiles;
+        try (Stream<Path> files = Files.list(directory)) {
+            indexFiles = files.filter(p -> p.getFileName().toString().endsWith(".idx")).sorted().toList();
+        }
+        for (Path indexFile : indexFiles) {
+            for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                BlockIndexEntry entry = objectMapper.readValue(line, BlockIndexEntry.class);
+                if (entry.isDiscarded()) {
+                    index.removeIf(existing -> existing.sameBlock(entry));
+                } else {
+                    index.add(entry);
+                }
+            }
+        }
+        activeSegment = index.stream().mapToInt(BlockIndexEntry::getSegment).max().orElse(0);
+        log.info("Archivo de facturas cargado: {} bloques en {}", index.size(), directory.toAbsolutePath());
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("segment-%05d.dat", segment));
+    }
+
+    private Path indexPath(int segment) {
+        return directory.resolve(String.format("segment-%05d.idx", segment));
+    }
+
+    /**
+     * Bloques ordenados por ID mínimo junto con el máximo acumulado de sus IDs máximos: los bloques
+     * cuyo rango contiene un ID son, como mucho, los anteriores al último con ID mínimo no mayor que
+     * él, y se deja de retroceder en cuanto el máximo acumulado queda por debajo.
+     */
+    private static final class IdLookup {
+
+        private final BlockIndexEntry[] byMinId;
+        private final long[] maxIdUpTo;
+
+        private IdLookup(BlockIndexEntry[] byMinId) {
+            this.byMinId = byMinId;
+            this.maxIdUpTo = new long[byMinId.length];
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i < byMinId.length; i++) {
+                max = Math.max(max, byMinId[i].getMaxId());
+                maxIdUpTo[i] = max;
+            }
+        }
+
+        static IdLookup of(List<BlockIndexEntry> entries) {
+            BlockIndexEntry[] sorted = entries.toArray(new BlockIndexEntry[0]);
+            Arrays.sort(sorted, Comparator.comparingLong(BlockIndexEntry::getMinId));
+            return new IdLookup(sorted);
+        }
+
+        List<BlockIndexEntry> candidates(long id) {
+            // Último bloque con ID mínimo <= id
+            int low = 0;
+            int high = byMinId.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (byMinId[mid].getMinId() <= id) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            List<BlockIndexEntry> candidates = new ArrayList<>(1);
+            for (int i = high; i >= 0 && maxIdUpTo[i] >= id; i--) {
+                if (byMinId[i].getMaxId() >= id) {
+                    candidates.add(byMinId[i]);
+                }
+            }
+            return candidates;
+        }
+    }
+
+    private static int binarySearch(List<ArchivedInvoice> invoices, long id) {
+        int low = 0;
+        int high = invoices.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midId = invoices.get(mid).getId();
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int read = 0;
+            while (read < rawLength && !inflater.finished()) {
+                read += inflater.inflate(raw, read, rawLength - read);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Bloque comprimido inválido", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
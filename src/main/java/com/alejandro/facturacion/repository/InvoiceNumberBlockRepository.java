@@ -0,0 +1,16 @@
+package com.alejandro.facturacion.repository;
+
+import com.alejandro.facturacion.entity.InvoiceNumberBlock;
+import com.alejandro.facturacion.entity.NumberBlockStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+/**
+ * Consulta de bloques de numeración. Las reservas, renovaciones y cierres los hace
+ * {@code InvoiceNumberingService} con su propio pool de conexiones.
+ */
+public interface InvoiceNumberBlockRepository extends JpaRepository<InvoiceNumberBlock, Long> {
+
+    List<InvoiceNumberBlock> findBySeriesPrefixAndStatus(String seriesPrefix, NumberBlockStatus status);
+}
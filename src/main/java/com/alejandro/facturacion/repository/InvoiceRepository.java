@@ -2,12 +2,18 @@ package com.alejandro.facturacion.repository;
 
 import com.alejandro.facturacion.dto.MonthlySalesReportDTO;
 import com.alejandro.facturacion.entity.Invoice;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Repositorio para el acceso a datos de la entidad Invoice.
@@ -34,9 +40,14 @@ public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
      * Busca todas las facturas de un cliente específico.
      * 
      * @param clientId ID del cliente
-     * @return Lista de facturas del cliente ordenadas por fecha de creación
+     * @return Lista de facturas del cliente ordenadas por fecha de creación, con su cliente, items y
+     *         productos (con sharding no hay open-in-view que los cargue al serializar)
      */
-    List<Invoice> findByClientId(Long clientId);
+    // Con la consulta derivada y el grafo, Hibernate filtra por clients.id tras el LEFT JOIN y H2 no usa
+    // el índice de invoices.client_id: recorre todas las facturas
+    @EntityGraph(attributePaths = {"client", "items", "items.product"})
+    @Query("SELECT i FROM Invoice i WHERE i.client.id = :clientId")
+    List<Invoice> findByClientId(@Param("clientId") Long clientId);
 
     /**
      * Busca facturas creadas dentro de un rango de fechas.
@@ -57,5 +68,103 @@ public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
      */
     @Query("SELECT new com.alejandro.facturacion.dto.MonthlySalesReportDTO(FUNCTION('YEAR', i.createdAt), FUNCTION('MONTH', i.createdAt), COUNT(i), SUM(i.total)) FROM Invoice i GROUP BY FUNCTION('YEAR', i.createdAt), FUNCTION('MONTH', i.createdAt) ORDER BY FUNCTION('YEAR', i.createdAt), FUNCTION('MONTH', i.createdAt)")
     List<MonthlySalesReportDTO> getMonthlySalesReport();
-}
 
+    /**
+     * Obtiene los IDs de las facturas creadas antes de una fecha, de la más antigua a la más reciente.
+     *
+     * <p>Se excluyen las facturas cuyo número pertenece a un bloque de numeración no cerrado: los
+     * números libres de esos bloques se calculan a partir de esta tabla y no deben parecer libres.
+     *
+     * @param cutoff Fecha límite (exclusiva)
+     * @param pageable Tamaño del lote a obtener
+     * @return IDs de las facturas candidatas a archivarse
+     */
+    @Query("SELECT i.id FROM Invoice i WHERE i.createdAt < :cutoff AND NOT EXISTS ("
+            + "SELECT b.id FROM InvoiceNumberBlock b WHERE b.seriesPrefix = i.seriesPrefix "
+            + "AND b.status <> com.alejandro.facturacion.entity.NumberBlockStatus.CLOSED "
+            + "AND i.number BETWEEN b.rangeStart AND b.rangeEnd) ORDER BY i.createdAt, i.id")
+    List<Long> findIdsCreatedBefore(@Param("cutoff") LocalDateTime cutoff, Pageable pageable);
+
+    /**
+     * Como {@link #findIdsCreatedBefore}, para un shard distinto del principal: allí no hay bloques
+     * de numeración, así que el llamante comprueba los números contra el shard principal y pasa en
+     * {@code excluded} las facturas que no pueden archivarse todavía.
+     *
+     * @param cutoff Fecha límite (exclusiva)
+     * @param excluded IDs a omitir (no puede estar vacía)
+     * @param pageable Tamaño del lote a obtener
+     * @return IDs de las facturas candidatas a archivarse
+     */
+    @Query("SELECT i.id FROM Invoice i WHERE i.createdAt < :cutoff AND i.id NOT IN :excluded ORDER BY i.createdAt, i.id")
+    List<Long> findIdsCreatedBeforeExcluding(@Param("cutoff") LocalDateTime cutoff,
+                                             @Param("excluded") Collection<Long> excluded, Pageable pageable);
+
+    /**
+     * Carga facturas junto con su cliente, items y productos en una sola consulta.
+     *
+     * @param ids IDs de las facturas
+     * @return Facturas con todas sus asociaciones inicializadas
+     */
+    @EntityGraph(attributePaths = {"client", "items", "items.product"})
+    List<Invoice> findWithDetailsByIdIn(List<Long> ids);
+
+    /**
+     * Carga una factura junto con su cliente, items y productos en una sola consulta.
+     *
+     * @param id ID de la factura
+     * @return Factura con todas sus asociaciones inicializadas
+     */
+    @EntityGraph(attributePaths = {"client", "items", "items.product"})
+    Optional<Invoice> findWithDetailsById(Long id);
+
+    /**
+     * Busca una factura por su número legal.
+     *
+     * @param seriesPrefix Prefijo de la serie
+     * @param number Número dentro de la serie
+     * @return Factura con ese número, si existe
+     */
+    Optional<Invoice> findBySeriesPrefixAndNumber(String seriesPrefix, Long number);
+
+    /**
+     * Carga todas las facturas junto con su cliente, items y productos.
+     *
+     * @return Facturas con todas sus asociaciones inicializadas
+     */
+    @EntityGraph(attributePaths = {"client", "items", "items.product"})
+    @Query("SELECT i FROM Invoice i")
+    List<Invoice> findAllWithDetails();
+
+    /**
+     * IDs de las facturas con número legal creadas en un intervalo, para emitirlas como factura electrónica.
+     *
+     * @param from Inicio del intervalo (inclusivo)
+     * @param to Fin del intervalo (exclusivo)
+     * @return IDs ordenados
+     */
+    @Query("SELECT i.id FROM Invoice i WHERE i.createdAt >= :from AND i.createdAt < :to "
+            + "AND i.number IS NOT NULL ORDER BY i.id")
+    List<Long> findNumberedIdsCreatedBetween(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    /**
+     * IDs de las facturas con número legal creadas en un intervalo que el receptor aún no ha aceptado.
+     *
+     * @param from Inicio del intervalo (inclusivo)
+     * @param to Fin del intervalo (exclusivo)
+     * @return IDs ordenados
+     */
+    @Query("SELECT i.id FROM Invoice i WHERE i.createdAt >= :from AND i.createdAt < :to "
+            + "AND i.number IS NOT NULL AND (i.einvoiceStatus IS NULL OR i.einvoiceStatus <> 'ACCEPTED') ORDER BY i.id")
+    List<Long> findUnacceptedNumberedIdsCreatedBetween(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    /**
+     * Guarda el resultado del envío de una factura electrónica.
+     *
+     * @return Filas actualizadas
+     */
+    @Modifying
+    @Query("UPDATE Invoice i SET i.einvoiceStatus = :status, i.einvoiceCufe = :cufe, i.einvoiceTrackId = :trackId, "
+            + "i.einvoiceSentAt = :sentAt WHERE i.id = :id")
+    int recordTransmission(@Param("id") Long id, @Param("status") String status, @Param("cufe") String cufe,
+                           @Param("trackId") String trackId, @Param("sentAt") LocalDateTime sentAt);
+}
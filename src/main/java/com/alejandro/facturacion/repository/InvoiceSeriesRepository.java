@@ -0,0 +1,28 @@
+package com.alejandro.facturacion.repository;
+
+import com.alejandro.facturacion.entity.InvoiceSeries;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface InvoiceSeriesRepository extends JpaRepository<InvoiceSeries, Long> {
+
+    Optional<InvoiceSeries> findByPrefix(String prefix);
+
+    List<InvoiceSeries> findByActiveTrue();
+
+    boolean existsByPrefix(String prefix);
+
+    /**
+     * Bloquea la fila de la serie para reservar un bloque. Solo se usa una vez por bloque,
+     * no por factura.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM InvoiceSeries s WHERE s.id = :id")
+    Optional<InvoiceSeries> findByIdForUpdate(@Param("id") Long id);
+}
@@ -0,0 +1,87 @@
+package com.alejandro.facturacion.repository;
+
+import com.alejandro.facturacion.entity.Job;
+import com.alejandro.facturacion.entity.JobStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Los cambios de estado se hacen con UPDATE condicionales sobre el estado actual, nunca guardando la
+ * entidad entera: así una cancelación no se pisa con el resultado del trabajador ni al revés, y dos
+ * instancias no reclaman el mismo trabajo.
+ */
+public interface JobRepository extends JpaRepository<Job, String> {
+
+    List<Job> findByStatusInOrderByPriorityDescCreatedAtAsc(Collection<JobStatus> statuses);
+
+    List<Job> findByStatusInAndFinishedAtBefore(Collection<JobStatus> statuses, LocalDateTime before);
+
+    /**
+     * Progreso de un trabajo en ejecución.
+     *
+     * @return 0 si el trabajo ya no está en ejecución (cancelado desde otra instancia)
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("UPDATE Job j SET j.progress = :progress WHERE j.id = :id AND j.status = com.alejandro.facturacion.entity.JobStatus.RUNNING")
+    int updateProgress(@Param("id") String id, @Param("progress") int progress);
+
+    /**
+     * Reclama un trabajo pendiente para volver a encolarlo desde el principio, si es de esta
+     * instancia o su propietario ha dejado de renovarlo.
+     *
+     * @return 1 si se ha reclamado
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("UPDATE Job j SET j.status = com.alejandro.facturacion.entity.JobStatus.QUEUED, j.progress = 0, "
+            + "j.startedAt = null, j.owner = :owner, j.heartbeatAt = :now "
+            + "WHERE j.id = :id AND j.status IN (com.alejandro.facturacion.entity.JobStatus.QUEUED, "
+            + "com.alejandro.facturacion.entity.JobStatus.RUNNING) "
+            + "AND (j.owner = :owner OR j.heartbeatAt IS NULL OR j.heartbeatAt < :expiredBefore)")
+    int claim(@Param("id") String id, @Param("owner") String owner, @Param("now") LocalDateTime now,
+              @Param("expiredBefore") LocalDateTime expiredBefore);
+
+    /**
+     * Pasa a ejecución un trabajo encolado por esta instancia.
+     *
+     * @return 0 si se canceló o lo reclamó otra instancia
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("UPDATE Job j SET j.status = com.alejandro.facturacion.entity.JobStatus.RUNNING, j.startedAt = :now "
+            + "WHERE j.id = :id AND j.owner = :owner AND j.status = com.alejandro.facturacion.entity.JobStatus.QUEUED")
+    int markRunning(@Param("id") String id, @Param("owner") String owner, @Param("now") LocalDateTime now);
+
+    /**
+     * Termina un trabajo que sigue pendiente.
+     *
+     * @return 0 si ya estaba terminado (por ejemplo, cancelado mientras se ejecutaba)
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("UPDATE Job j SET j.status = :status, j.finishedAt = :now, j.resultPath = :resultPath, "
+            + "j.contentType = :contentType, j.error = :error "
+            + "WHERE j.id = :id AND j.status IN (com.alejandro.facturacion.entity.JobStatus.QUEUED, "
+            + "com.alejandro.facturacion.entity.JobStatus.RUNNING)")
+    int finish(@Param("id") String id, @Param("status") JobStatus status, @Param("now") LocalDateTime now,
+               @Param("resultPath") String resultPath, @Param("contentType") String contentType,
+               @Param("error") String error);
+
+    /**
+     * Renueva los trabajos pendientes de una instancia.
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("UPDATE Job j SET j.heartbeatAt = :now WHERE j.owner = :owner "
+            + "AND j.status IN (com.alejandro.facturacion.entity.JobStatus.QUEUED, "
+            + "com.alejandro.facturacion.entity.JobStatus.RUNNING)")
+    int heartbeat(@Param("owner") String owner, @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,10 @@
+package com.alejandro.facturacion.repository;
+
+import com.alejandro.facturacion.entity.PricingRule;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface PricingRuleRepository extends JpaRepository<PricingRule, Long> {
+    List<PricingRule> findByActiveTrue();
+}
@@ -0,0 +1,154 @@
+package com.alejandro.facturacion.repository;
+
+import com.alejandro.facturacion.dto.InvoiceLineView;
+import com.alejandro.facturacion.dto.InvoiceView;
+import com.alejandro.facturacion.dto.MonthlySalesReportDTO;
+import io.r2dbc.spi.Readable;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Consultas de solo lectura sobre facturas con R2DBC, para la API reactiva.
+ *
+ * <p>Los resultados se emiten a medida que llegan de la base de datos y al ritmo que pide el
+ * suscriptor. Las facturas se leen con sus líneas en una sola consulta (una fila por línea) y se
+ * agrupan por factura al vuelo: solo las líneas de la factura en curso quedan en memoria.
+ */
+@Repository
+@ConditionalOnProperty(name = "facturacion.reactive.enabled", havingValue = "true")
+public class ReactiveInvoiceRepository {
+
+    private static final String INVOICE_LINES = "SELECT i.id, i.created_at, i.series_prefix, i.invoice_number, "
+            + "i.client_id, i.subtotal, i.discount_total, i.tax_total, i.total, "
+            + "ii.id AS item_id, ii.product_id, p.name AS product_name, ii.quantity, ii.price, ii.discount_rate, "
+            + "ii.discount_amount, ii.subtotal AS item_subtotal, ii.tax_rate, ii.tax_amount "
+            + "FROM invoices i "
+            + "LEFT JOIN invoice_items ii ON ii.invoice_id = i.id "
+            + "LEFT JOIN products p ON p.id = ii.product_id ";
+
+    private final DatabaseClient databaseClient;
+
+    public ReactiveInvoiceRepository(DatabaseClient reactiveDatabaseClient) {
+        this.databaseClient = reactiveDatabaseClient;
+    }
+
+    /**
+     * Facturas de un cliente con sus líneas, por fecha de creación (índice client_id, created_at).
+     *
+     * @param clientId ID del cliente
+     * @return Facturas del cliente
+     */
+    public Flux<InvoiceView> findByClientId(long clientId) {
+        return invoices(databaseClient.sql(INVOICE_LINES + "WHERE i.client_id = :clientId "
+                        + "ORDER BY i.created_at, i.id, ii.id")
+                .bind("clientId", clientId));
+    }
+
+    /**
+     * Facturas creadas en un intervalo con sus líneas, por ID.
+     *
+     * @param from Inicio del intervalo (inclusivo); nulo para no acotarlo
+     * @param to Fin del intervalo (exclusivo); nulo para no acotarlo
+     * @return Facturas del intervalo
+     */
+    public Flux<InvoiceView> findByCreatedAtBetween(LocalDateTime from, LocalDateTime to) {
+        List<String> conditions = new ArrayList<>();
+        if (from != null) {
+            conditions.add("i.created_at >= :from");
+        }
+        if (to != null) {
+            conditions.add("i.created_at < :to");
+        }
+        String where = conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions) + " ";
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(INVOICE_LINES + where + "ORDER BY i.id, ii.id");
+        if (from != null) {
+            spec = spec.bind("from", from);
+        }
+        if (to != null) {
+            spec = spec.bind("to", to);
+        }
+        return invoices(spec);
+    }
+
+    /**
+     * Reporte mensual de ventas de las facturas activas, ordenado por año y mes
+     * (la misma agregación que {@link InvoiceRepository#getMonthlySalesReport()}).
+     *
+     * @return Un reporte por mes con facturas
+     */
+    public Flux<MonthlySalesReportDTO> getMonthlySalesReport() {
+        return databaseClient.sql("SELECT YEAR(created_at) AS sales_year, MONTH(created_at) AS sales_month, "
+                        + "COUNT(*) AS total_invoices, SUM(total) AS total_sales FROM invoices "
+                        + "GROUP BY YEAR(created_at), MONTH(created_at) ORDER BY sales_year, sales_month")
+                // Los tipos de YEAR() y COUNT() varían según el driver
+                .map(row -> new MonthlySalesReportDTO(
+                        ((Number) row.get("sales_year")).intValue(),
+                        ((Number) row.get("sales_month")).intValue(),
+                        ((Number) row.get("total_invoices")).longValue(),
+                        row.get("total_sales", BigDecimal.class)))
+                .all();
+    }
+
+    private static Flux<InvoiceView> invoices(DatabaseClient.GenericExecuteSpec spec) {
+        return spec.map(InvoiceLineRow::new)
+                .all()
+                .bufferUntilChanged(row -> row.invoiceId)
+                .map(ReactiveInvoiceRepository::toView);
+    }
+
+    private static InvoiceView toView(List<InvoiceLineRow> rows) {
+        InvoiceLineRow first = rows.get(0);
+        List<InvoiceLineView> items = new ArrayList<>(rows.size());
+        for (InvoiceLineRow row : rows) {
+            // Con LEFT JOIN, una factura sin líneas llega como una fila sin item
+            if (row.line != null) {
+                items.add(row.line);
+            }
+        }
+        return new InvoiceView(first.invoiceId, first.fullNumber, first.createdAt, first.clientId,
+                first.subtotal, first.discountTotal, first.taxTotal, first.total, items);
+    }
+
+    /** Una fila de la consulta: la cabecera de la factura repetida y una de sus líneas. */
+    private static class InvoiceLineRow {
+        private final long invoiceId;
+        private final String fullNumber;
+        private final LocalDateTime createdAt;
+        private final Long clientId;
+        private final BigDecimal subtotal;
+        private final BigDecimal discountTotal;
+        private final BigDecimal taxTotal;
+        private final BigDecimal total;
+        private final InvoiceLineView line;
+
+        InvoiceLineRow(Readable row) {
+            this.invoiceId = row.get("id", Long.class);
+            String seriesPrefix = row.get("series_prefix", String.class);
+            Long number = row.get("invoice_number", Long.class);
+            this.fullNumber = number == null ? null : (seriesPrefix != null ? seriesPrefix : "") + number;
+            this.createdAt = row.get("created_at", LocalDateTime.class);
+            this.clientId = row.get("client_id", Long.class);
+            this.subtotal = row.get("subtotal", BigDecimal.class);
+            this.discountTotal = row.get("discount_total", BigDecimal.class);
+            this.taxTotal = row.get("tax_total", BigDecimal.class);
+            this.total = row.get("total", BigDecimal.class);
+            this.line = row.get("item_id", Long.class) == null ? null : new InvoiceLineView(
+                    row.get("product_id", Long.class),
+                    row.get("product_name", String.class),
+                    row.get("quantity", Integer.class),
+                    row.get("price", BigDecimal.class),
+                    row.get("discount_rate", BigDecimal.class),
+                    row.get("discount_amount", BigDecimal.class),
+                    row.get("item_subtotal", BigDecimal.class),
+                    row.get("tax_rate", BigDecimal.class),
+                    row.get("tax_amount", BigDecimal.class));
+        }
+    }
+}
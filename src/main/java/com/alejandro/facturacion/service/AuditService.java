@@ -0,0 +1,295 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.dto.AuditEntityType;
+import com.alejandro.facturacion.dto.AuditEventType;
+import com.alejandro.facturacion.dto.AuditRecord;
+import com.alejandro.facturacion.dto.AuditStats;
+import com.alejandro.facturacion.entity.Invoice;
+import com.alejandro.facturacion.event.ClientsChangedEvent;
+import com.alejandro.facturacion.event.ProductsChangedEvent;
+import com.alejandro.facturacion.repository.AuditLogRepository;
+import com.alejandro.facturacion.utils.RingBuffer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Registro de auditoría de facturas, movimientos de stock y cambios de catálogo, sin escrituras
+ * síncronas en la petición.
+ *
+ * <p>Los eventos se publican en un {@link RingBuffer} sin bloqueos (unos cientos de nanosegundos
+ * según {@code AuditBenchmark} en {@code src/jmh}, sin reservar memoria salvo la del propio aviso
+ * de confirmación) y el hilo {@code audit-writer} los escribe por lotes en {@link AuditLogRepository}. Los cambios hechos en una transacción se publican
+ * al confirmarse, así que no queda rastro de los que se deshacen.
+ *
+ * <p>Si el búfer ({@code facturacion.audit.buffer-size} eventos) se llena porque el disco no da
+ * abasto, los eventos nuevos se descartan y se cuentan en {@link #getStats()}: la auditoría nunca
+ * frena la facturación. Los segmentos se cierran al llenarse o al cumplir
+ * {@code facturacion.audit.segment-max-age} y se borran pasada {@code facturacion.audit.retention}.
+ */
+@Slf4j
+@Service
+public class AuditService {
+
+    private static final int MAX_LIMIT = 1000;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final AuditLogRepository repository;
+    private final MoneyService moneyService;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long forceIntervalNanos;
+    private final Duration segmentMaxAge;
+    private final Duration retention;
+
+    private final RingBuffer<AuditLogRepository.Entry> buffer;
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    // Solo los escribe el hilo de escritura
+    private volatile long written;
+    private volatile long failed;
+    private volatile long batches;
+    private volatile int largestBatch;
+    private volatile boolean running;
+    private Thread writer;
+
+    public AuditService(AuditLogRepository repository,
+                        MoneyService moneyService,
+                        @Value("${facturacion.audit.enabled:true}") boolean enabled,
+                        @Value("${facturacion.audit.buffer-size:65536}") int bufferSize,
+                        @Value("${facturacion.audit.batch-size:1024}") int batchSize,
+                        @Value("${facturacion.audit.force-interval:PT1S}") Duration forceInterval,
+                        @Value("${facturacion.audit.segment-max-age:P1D}") Duration segmentMaxAge,
+                        @Value("${facturacion.audit.retention:P365D}") Duration retention) {
+        this.repository = repository;
+        this.moneyService = moneyService;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.forceIntervalNanos = forceInterval.toNanos();
+        this.segmentMaxAge = segmentMaxAge;
+        this.retention = retention;
+        this.buffer = new RingBuffer<>(bufferSize, AuditLogRepository.Entry::new);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::writeLoop, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    /**
+     * Registra la creación de una factura cuando se confirme la transacción en curso. Sus salidas de
+     * stock las registra {@link StockLedgerService} con {@link #stockMovement}.
+     */
+    public void invoiceCreated(Invoice invoice) {
+        if (!enabled) {
+            return;
+        }
+        String user = currentUser();
+        afterCommit(() -> publish(System.currentTimeMillis(), AuditEventType.INVOICE_CREATED, user,
+                AuditEntityType.INVOICE, invoice.getId(), AuditEntityType.CLIENT, invoice.getClient().getId(),
+                invoice.getItems().size(), invoice.getTotal() != null ? moneyService.toMinor(invoice.getTotal()) : NONE,
+                invoice.getNumber() != null ? invoice.getFullNumber() : null));
+    }
+
+    /**
+     * Registra un movimiento de stock cuando se confirme la transacción en curso.
+     *
+     * @param stockAfter Stock resultante, o null si no se conoce
+     * @param invoiceId Factura que lo causa, o null
+     * @param detail Motivo
+     */
+    public void stockMovement(long productId, long delta, Long stockAfter, Long invoiceId, String detail) {
+        if (!enabled) {
+            return;
+        }
+        String user = currentUser();
+        afterCommit(() -> publish(System.currentTimeMillis(), AuditEventType.STOCK_MOVEMENT, user,
+                AuditEntityType.PRODUCT, productId, invoiceId != null ? AuditEntityType.INVOICE : null,
+                invoiceId != null ? invoiceId : 0, delta, stockAfter != null ? stockAfter : NONE, detail));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductsChanged(ProductsChangedEvent event) {
+        catalogChanged(AuditEventType.PRODUCT_CHANGED, AuditEntityType.PRODUCT, event.getProductIds());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onClientsChanged(ClientsChangedEvent event) {
+        catalogChanged(AuditEventType.CLIENT_CHANGED, AuditEntityType.CLIENT, event.getClientIds());
+    }
+
+    /**
+     * Busca eventos de auditoría en orden de secuencia.
+     *
+     * @param entityType Entidad por la que filtrar, o null para todos los eventos
+     * @param entityId ID de la entidad; obligatorio si se indica {@code entityType}
+     * @param from Inicio (incluido), o null
+     * @param to Fin (excluido), o null
+     * @param after Secuencia del último evento ya recibido, o null
+     * @throws IllegalArgumentException si los filtros no son válidos
+     */
+    public List<AuditRecord> find(AuditEntityType entityType, Long entityId, LocalDateTime from, LocalDateTime to,
+                                  Long after, int limit) {
+        if (entityType != null && entityId == null) {
+            throw new IllegalArgumentException("entityId es obligatorio si se indica entityType");
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit debe estar entre 1 y " + MAX_LIMIT);
+        }
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new IllegalArgumentException("from no puede ser posterior a to");
+        }
+        return repository.find(entityType, entityId != null ? entityId : 0,
+                from != null ? toMillis(from) : Long.MIN_VALUE,
+                to != null ? toMillis(to) : Long.MAX_VALUE,
+                after != null ? after : -1, limit);
+    }
+
+    public AuditStats getStats() {
+        return new AuditStats(published.sum(), dropped.sum(), written, failed, batches, largestBatch, buffer.size(),
+                buffer.capacity(), repository.getSegmentCount(), repository.getUsedBytes(), repository.getLastSequence());
+    }
+
+    /** Cierra el segmento activo si es demasiado antiguo y borra los que superan la retención. */
+    @Scheduled(fixedDelayString = "${facturacion.audit.maintenance-interval:PT10M}")
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        repository.rollIfOlderThan(now - segmentMaxAge.toMillis());
+        int deleted = repository.deleteOlderThan(now - retention.toMillis());
+        if (deleted > 0) {
+            log.info("{} segmentos de auditoría anteriores a {} borrados", deleted, retention);
+        }
+    }
+
+    private void flushRemaining() {
+        while (buffer.drain(this::write, batchSize) > 0) {
+            // vacía lo que quede en el búfer
+        }
+        repository.force();
+    }
+
+    private void writeLoop() {
+        long forcedAt = System.nanoTime();
+        boolean dirty = false;
+        while (running) {
+            int count = buffer.drain(this::write, batchSize);
+            if (count > 0) {
+                batches++;
+                largestBatch = Math.max(largestBatch, count);
+                dirty = true;
+            }
+            if (dirty && System.nanoTime() - forcedAt >= forceIntervalNanos) {
+                try {
+                    repository.force();
+                } catch (RuntimeException e) {
+                    log.warn("No se pudo sincronizar el registro de auditoría", e);
+                }
+                forcedAt = System.nanoTime();
+                dirty = false;
+            }
+            if (count < batchSize) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        flushRemaining();
+    }
+
+    private void write(AuditLogRepository.Entry entry) {
+        try {
+            repository.append(entry);
+            written++;
+        } catch (RuntimeException e) {
+            // Se descarta para no bloquear el búfer detrás de un evento que no se puede escribir
+            if (failed++ == 0) {
+                log.error("No se pudo escribir en el registro de auditoría", e);
+            }
+        } finally {
+            entry.clear();
+        }
+    }
+
+    private void catalogChanged(AuditEventType type, AuditEntityType entityType, List<Long> ids) {
+        if (!enabled) {
+            return;
+        }
+        String user = currentUser();
+        long now = System.currentTimeMillis();
+        if (ids == null) {
+            publish(now, type, user, entityType, 0, null, 0, NONE, NONE, "cambio masivo");
+            return;
+        }
+        for (Long id : ids) {
+            publish(now, type, user, entityType, id, null, 0, NONE, NONE, null);
+        }
+    }
+
+    private void publish(long timestamp, AuditEventType type, String user, AuditEntityType entityType, long entityId,
+                         AuditEntityType relatedType, long relatedId, long quantity, long value, String detail) {
+        long sequence = buffer.tryClaim();
+        if (sequence < 0) {
+            dropped.increment();
+            return;
+        }
+        buffer.get(sequence).set(timestamp, type, user, entityType, entityId, relatedType, relatedId, quantity, value, detail);
+        buffer.publish(sequence);
+        published.increment();
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static String currentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.isAuthenticated() ? authentication.getName() : null;
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,29 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.dto.CacheInvalidation;
+
+import java.util.function.Consumer;
+
+/**
+ * Transporte de las invalidaciones de la caché entre instancias.
+ *
+ * <p>La implementación activa se elige con {@code facturacion.cache.transport}. Solo arranca si
+ * la caché está habilitada, cuando {@link EntityCache} llama a {@link #start}.
+ */
+public interface CacheInvalidationBus {
+
+    /**
+     * Empieza a recibir invalidaciones de las demás instancias. Si el transporte detecta que pudo
+     * perder alguna, entrega invalidaciones de regiones completas.
+     */
+    void start(Consumer<CacheInvalidation> listener);
+
+    /** Envía una invalidación confirmada en esta instancia a las demás, sin bloquear al llamante. */
+    void publish(CacheInvalidation invalidation);
+
+    /**
+     * Nanosegundos transcurridos desde el último instante hasta el que se han recibido todas las
+     * invalidaciones de las demás instancias, o {@link Long#MAX_VALUE} si aún no se sabe.
+     */
+    long lagNanos();
+}
@@ -1,46 +1,90 @@
 package com.alejandro.facturacion.service;
 
+import com.alejandro.facturacion.config.ShardRoutingDataSource;
+import com.alejandro.facturacion.dto.CacheRegion;
 import com.alejandro.facturacion.entity.Client;
+import com.alejandro.facturacion.event.ClientsChangedEvent;
 import com.alejandro.facturacion.repository.ClientRepository;
-import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 
+/**
+ * Con sharding, cada cliente se lee y se escribe en su shard; las búsquedas por email o
+ * identificación y el listado completo recorren todos los shards.
+ *
+ * <p>La búsqueda por ID pasa por {@link EntityCache}; los cambios se publican como
+ * {@link ClientsChangedEvent} para invalidarla en todas las instancias.
+ */
 @Service
 @RequiredArgsConstructor
 @Transactional
 public class ClientService {
 
     private final ClientRepository clientRepository;
+    private final DuplicateIndex duplicateIndex;
+    private final ShardRouter shardRouter;
+    private final EntityCache entityCache;
+    private final ApplicationEventPublisher eventPublisher;
 
     public Client saveClient(Client client) {
-        return clientRepository.save(client);
+        // Los clientes nuevos se reparten entre los shards; los existentes se guardan en el suyo
+        Client saved = client.getId() == null
+                ? shardRouter.onShard(shardRouter.shardForNewClient(), () -> clientRepository.save(client))
+                : shardRouter.forClientWrite(client.getId(), () -> clientRepository.save(client));
+        duplicateIndex.addClient(saved.getEmail(), saved.getIdentificationNumber());
+        eventPublisher.publishEvent(new ClientsChangedEvent(List.of(saved.getId())));
+        return saved;
     }
 
+    @Transactional(readOnly = true)
     public List<Client> getAllClients() {
-        return clientRepository.findAll();
+        if (!shardRouter.isSharded()) {
+            return clientRepository.findAll();
+        }
+        List<Client> clients = new ArrayList<>();
+        shardRouter.scatter(clientRepository::findAll).forEach(clients::addAll);
+        clients.sort(Comparator.comparing(Client::getId));
+        return clients;
     }
 
+    // Sin transacción propia, para que un acierto de la caché no tome una conexión
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public Optional<Client> getClientById(Long id) {
-        return clientRepository.findById(id);
+        return entityCache.get(CacheRegion.CLIENT, id,
+                () -> shardRouter.forClient(id, () -> clientRepository.findById(id)));
     }
 
+    @Transactional(readOnly = true)
     public Optional<Client> getClientByEmail(String email) {
-        return clientRepository.findByEmail(email);
+        return shardRouter.findFirst(ShardRoutingDataSource.HOME_SHARD, () -> clientRepository.findByEmail(email));
     }
 
+    @Transactional(readOnly = true)
     public boolean existsByEmail(String email) {
-        return clientRepository.existsByEmail(email);
+        // El filtro descarta sin consultar la base de datos la mayoría de emails nuevos
+        return duplicateIndex.mightContainClientEmail(email)
+                && shardRouter.scatter(() -> clientRepository.existsByEmail(email)).contains(true);
     }
 
+    @Transactional(readOnly = true)
     public boolean existsByIdentificationNumber(String idNumber) {
-        return clientRepository.existsByIdentificationNumber(idNumber);
+        return duplicateIndex.mightContainClientIdentification(idNumber)
+                && shardRouter.scatter(() -> clientRepository.existsByIdentificationNumber(idNumber)).contains(true);
     }
 
     public void deleteClient(Long id) {
-        clientRepository.deleteById(id);
+        shardRouter.forClientWrite(id, () -> {
+            clientRepository.deleteById(id);
+            return null;
+        });
+        eventPublisher.publishEvent(new ClientsChangedEvent(List.of(id)));
     }
 }
@@ -0,0 +1,235 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.dto.CacheRegion;
+import com.alejandro.facturacion.dto.ClientSummary;
+import com.alejandro.facturacion.entity.Invoice;
+import com.alejandro.facturacion.event.InvoiceCreatedEvent;
+import com.alejandro.facturacion.utils.ClientSummaryCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Resumen de cuenta de cada cliente (tabla {@code client_summaries}), para no tener que cargar y
+ * sumar todas sus facturas.
+ *
+ * <p>Cada factura se suma a su resumen con una única sentencia en la misma transacción que la
+ * guarda, así que el resumen nunca diverge de las facturas confirmadas. Las lecturas pasan por una
+ * caché de arrays de primitivos ({@link ClientSummaryCache}, hasta
+ * {@code facturacion.cache.max-client-summaries} clientes) que se invalida, en esta instancia y en
+ * las demás, a través de {@link EntityCache}.
+ *
+ * <p>Los totales del mes y el año son los del periodo más reciente en que el cliente ha facturado:
+ * al empezar uno nuevo la primera factura los reinicia, y al leerlos se devuelven en cero si ese
+ * periodo no es el actual. Una factura con fecha de un periodo anterior (de un nodo de borde) solo
+ * cuenta en los totales históricos.
+ */
+@Service
+public class ClientSummaryService {
+
+    /*
+     * MySQL evalúa las asignaciones de ON DUPLICATE KEY UPDATE en orden, viendo los valores ya
+     * asignados; H2, sobre la fila original. Las columnas que leen period_month, period_year y
+     * last_invoice_at se asignan antes que ellas para que ambas den el mismo resultado.
+     */
+    private static final String UPSERT = """
+            INSERT INTO client_summaries (client_id, invoice_count, lifetime_total, first_invoice_at, last_invoice_id,
+                                          last_invoice_at, period_month, month_count, month_total, period_year,
+                                          year_count, year_total, updated_at)
+            VALUES (:clientId, 1, :total, :createdAt, :invoiceId, :createdAt, :month, 1, :total, :year, 1, :total, :now)
+            ON DUPLICATE KEY UPDATE
+                invoice_count = invoice_count + 1,
+                lifetime_total = lifetime_total + :total,
+                first_invoice_at = CASE WHEN first_invoice_at IS NULL OR :createdAt < first_invoice_at
+                                        THEN :createdAt ELSE first_invoice_at END,
+                month_count = CASE WHEN period_month = :month THEN month_count + 1
+                                   WHEN period_month < :month THEN 1 ELSE month_count END,
+                month_total = CASE WHEN period_month = :month THEN month_total + :total
+                                   WHEN period_month < :month THEN :total ELSE month_total END,
+                period_month = CASE WHEN period_month < :month THEN :month ELSE period_month END,
+                year_count = CASE WHEN period_year = :year THEN year_count + 1
+                                  WHEN period_year < :year THEN 1 ELSE year_count END,
+                year_total = CASE WHEN period_year = :year THEN year_total + :total
+                                  WHEN period_year < :year THEN :total ELSE year_total END,
+                period_year = CASE WHEN period_year < :year THEN :year ELSE period_year END,
+                last_invoice_id = CASE WHEN last_invoice_at IS NULL OR :createdAt >= last_invoice_at
+                                       THEN :invoiceId ELSE last_invoice_id END,
+                last_invoice_at = CASE WHEN last_invoice_at IS NULL OR :createdAt >= last_invoice_at
+                                       THEN :createdAt ELSE last_invoice_at END,
+                updated_at = :now
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final ShardRouter shardRouter;
+    private final ClientService clientService;
+    private final EntityCache entityCache;
+    private final MoneyService moneyService;
+    private final ClientSummaryCache cache;
+
+    public ClientSummaryService(JdbcTemplate jdbcTemplate,
+                                ShardRouter shardRouter,
+                                ClientService clientService,
+                                EntityCache entityCache,
+                                MoneyService moneyService,
+                                @Value("${facturacion.cache.max-client-summaries:100000}") int maxSummaries) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.shardRouter = shardRouter;
+        this.clientService = clientService;
+        this.entityCache = entityCache;
+        this.moneyService = moneyService;
+        this.cache = new ClientSummaryCache(maxSummaries);
+        entityCache.registerRegion(CacheRegion.CLIENT_SUMMARY, this::evict);
+    }
+
+    /**
+     * Suma una factura recién guardada al resumen de su cliente. Se llama dentro de la transacción
+     * (y del shard) de la factura: si esta no se confirma, el resumen tampoco cambia.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordInvoice(Invoice invoice) {
+        LocalDateTime createdAt = invoice.getCreatedAt();
+        namedJdbcTemplate.update(UPSERT, new MapSqlParameterSource()
+                .addValue("clientId", invoice.getClient().getId())
+                .addValue("total", invoice.getTotal() != null ? invoice.getTotal() : BigDecimal.ZERO)
+                .addValue("createdAt", Timestamp.valueOf(createdAt))
+                .addValue("invoiceId", invoice.getId())
+                .addValue("month", periodMonth(YearMonth.from(createdAt)))
+                .addValue("year", createdAt.getYear())
+                .addValue("now", Timestamp.valueOf(LocalDateTime.now())));
+    }
+
+    /** Con la factura confirmada, el resumen en caché del cliente ya no vale en ninguna instancia. */
+    @TransactionalEventListener
+    public void onInvoiceCreated(InvoiceCreatedEvent event) {
+        entityCache.invalidate(CacheRegion.CLIENT_SUMMARY, event.getInvoice().getClient().getId());
+    }
+
+    /**
+     * Devuelve el resumen de cuenta del cliente, con todo en cero si aún no tiene facturas.
+     *
+     * @return el resumen, o vacío si el cliente no existe
+     */
+    public Optional<ClientSummary> getSummary(Long clientId) {
+        if (clientId == null || clientId <= 0) {
+            return Optional.empty();
+        }
+        boolean cacheable = entityCache.isFresh();
+        if (cacheable) {
+            ClientSummaryCache.Totals cached = cache.get(clientId, System.nanoTime() - entityCache.getTtlNanos());
+            if (cached != null) {
+                return Optional.of(toSummary(cached));
+            }
+        }
+        long version = cache.version();
+        long loadedAt = System.nanoTime();
+        ClientSummaryCache.Totals loaded = shardRouter.forClient(clientId, () -> load(clientId));
+        if (loaded != null) {
+            if (cacheable) {
+                cache.putIfUnchanged(loaded, version, loadedAt);
+            }
+            return Optional.of(toSummary(loaded));
+        }
+        // Sin fila: el cliente no tiene facturas o no existe (solo se guardan los resúmenes con facturas)
+        return clientService.getClientById(clientId).map(client -> toSummary(empty(clientId)));
+    }
+
+    /** Número de resúmenes en la caché de esta instancia. */
+    public int getCachedCount() {
+        return cache.size();
+    }
+
+    private void evict(Long clientId) {
+        if (clientId == null) {
+            cache.clear();
+        } else {
+            cache.remove(clientId);
+        }
+    }
+
+    private ClientSummaryCache.Totals load(long clientId) {
+        List<ClientSummaryCache.Totals> rows = jdbcTemplate.query(
+                "SELECT * FROM client_summaries WHERE client_id = ?", (rs, rowNum) -> toTotals(rs), clientId);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private ClientSummaryCache.Totals toTotals(ResultSet rs) throws SQLException {
+        long lastInvoiceId = rs.getLong("last_invoice_id");
+        if (rs.wasNull()) {
+            lastInvoiceId = ClientSummaryCache.Totals.NONE;
+        }
+        return new ClientSummaryCache.Totals(
+                rs.getLong("client_id"),
+                rs.getLong("invoice_count"),
+                moneyService.toMinor(rs.getBigDecimal("lifetime_total")),
+                toMicros(rs.getTimestamp("first_invoice_at")),
+                lastInvoiceId,
+                toMicros(rs.getTimestamp("last_invoice_at")),
+                rs.getInt("period_month"),
+                rs.getLong("month_count"),
+                moneyService.toMinor(rs.getBigDecimal("month_total")),
+                rs.getInt("period_year"),
+                rs.getLong("year_count"),
+                moneyService.toMinor(rs.getBigDecimal("year_total")));
+    }
+
+    private static ClientSummaryCache.Totals empty(long clientId) {
+        return new ClientSummaryCache.Totals(clientId, 0, 0, ClientSummaryCache.Totals.NONE,
+                ClientSummaryCache.Totals.NONE, ClientSummaryCache.Totals.NONE, 0, 0, 0, 0, 0, 0);
+    }
+
+    private ClientSummary toSummary(ClientSummaryCache.Totals totals) {
+        YearMonth current = YearMonth.now();
+        boolean currentMonth = totals.periodMonth == periodMonth(current);
+        boolean currentYear = totals.periodYear == current.getYear();
+        return new ClientSummary(
+                totals.clientId,
+                totals.invoiceCount,
+                moneyService.toDecimal(totals.lifetimeTotal),
+                fromMicros(totals.firstInvoiceAt),
+                totals.lastInvoiceId != ClientSummaryCache.Totals.NONE ? totals.lastInvoiceId : null,
+                fromMicros(totals.lastInvoiceAt),
+                current.toString(),
+                currentMonth ? totals.monthCount : 0,
+                moneyService.toDecimal(currentMonth ? totals.monthTotal : 0),
+                current.getYear(),
+                currentYear ? totals.yearCount : 0,
+                moneyService.toDecimal(currentYear ? totals.yearTotal : 0));
+    }
+
+    private static int periodMonth(YearMonth month) {
+        return month.getYear() * 100 + month.getMonthValue();
+    }
+
+    private static long toMicros(Timestamp timestamp) {
+        if (timestamp == null) {
+            return ClientSummaryCache.Totals.NONE;
+        }
+        LocalDateTime dateTime = timestamp.toLocalDateTime();
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + dateTime.getNano() / 1_000;
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        if (micros == ClientSummaryCache.Totals.NONE) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,173 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.CacheProperties;
+import com.alejandro.facturacion.dto.CacheInvalidation;
+import com.alejandro.facturacion.dto.CacheRegion;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Bus de invalidaciones sobre la tabla {@code cache_invalidations}: cada instancia inserta los
+ * cambios que confirma y sondea los de las demás cada {@code facturacion.cache.db.poll-interval}.
+ *
+ * <p>Las inserciones y los sondeos se hacen en un hilo propio, fuera de la transacción y del shard
+ * de la petición (con sharding, la tabla es la del shard principal). Como los IDs autoincrementales
+ * pueden confirmarse en otro orden, cada sondeo vuelve a leer las filas de los últimos segundos y
+ * descarta las ya entregadas. Si una instancia pasa más tiempo sin sondear que el que se conservan
+ * las filas, invalida todas las regiones.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "facturacion.cache.transport", havingValue = "db", matchIfMissing = true)
+public class DbCacheInvalidationBus implements CacheInvalidationBus {
+
+    /** Margen para recoger filas con IDs menores que se confirmaron después de un sondeo. */
+    private static final long REREAD_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String origin;
+    private final Duration pollInterval;
+    private final Duration retention;
+    private final Queue<CacheInvalidation> outbox = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cache-bus-db");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Consumer<CacheInvalidation> listener;
+    /** Máximo ID leído por cada sondeo reciente: {@code {inicio del sondeo, ID}}. */
+    private final Deque<long[]> recentPolls = new ArrayDeque<>();
+    private final Set<Long> delivered = new HashSet<>();
+    private long lastId;
+    private volatile long syncedAt;
+
+    public DbCacheInvalidationBus(JdbcTemplate jdbcTemplate, CacheProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.origin = properties.getNodeId() != null ? properties.getNodeId() : UUID.randomUUID().toString();
+        this.pollInterval = properties.getDb().getPollInterval();
+        this.retention = properties.getDb().getRetention();
+        this.syncedAt = System.nanoTime();
+    }
+
+    @Override
+    public void start(Consumer<CacheInvalidation> listener) {
+        this.listener = listener;
+        executor.execute(() -> {
+            long start = System.nanoTime();
+            Long max = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM cache_invalidations", Long.class);
+            lastId = max != null ? max : 0;
+            syncedAt = start;
+        });
+        executor.scheduleWithFixedDelay(this::poll, pollInterval.toMillis(), pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        long purgeMillis = Math.max(retention.toMillis() / 4, 1000);
+        executor.scheduleWithFixedDelay(this::purge, purgeMillis, purgeMillis, TimeUnit.MILLISECONDS);
+        log.info("Bus de invalidaciones de caché por base de datos (instancia {}, sondeo cada {} ms)",
+                origin, pollInterval.toMillis());
+    }
+
+    @Override
+    public void publish(CacheInvalidation invalidation) {
+        outbox.add(invalidation);
+        executor.execute(this::flush);
+    }
+
+    @Override
+    public long lagNanos() {
+        return System.nanoTime() - syncedAt;
+    }
+
+    private void flush() {
+        List<Object[]> rows = new ArrayList<>();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (CacheInvalidation invalidation; (invalidation = outbox.poll()) != null; ) {
+            rows.add(new Object[]{origin, invalidation.getRegion().name(), invalidation.getEntityId(), now});
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO cache_invalidations (origin, region, entity_id, created_at) VALUES (?, ?, ?, ?)", rows);
+        } catch (RuntimeException e) {
+            // Las demás instancias dejarán de ver estos cambios; su caché los descartará por antigüedad
+            log.error("No se pudieron registrar {} invalidaciones de caché", rows.size(), e);
+        }
+    }
+
+    private void poll() {
+        long start = System.nanoTime();
+        try {
+            if (start - syncedAt > retention.toNanos()) {
+                log.warn("El bus de invalidaciones estuvo detenido más de {}; se vacía la caché", retention);
+                for (CacheRegion region : CacheRegion.values()) {
+                    listener.accept(CacheInvalidation.all(region));
+                }
+            }
+            while (!recentPolls.isEmpty() && start - recentPolls.peekFirst()[0] > REREAD_WINDOW_NANOS) {
+                lastId = recentPolls.pollFirst()[1];
+            }
+            long from = lastId;
+            delivered.removeIf(id -> id <= from);
+
+            long[] max = {from};
+            jdbcTemplate.query("SELECT id, origin, region, entity_id FROM cache_invalidations WHERE id > ? ORDER BY id",
+                    rs -> {
+                        long id = rs.getLong("id");
+                        max[0] = Math.max(max[0], id);
+                        if (!delivered.add(id) || origin.equals(rs.getString("origin"))) {
+                            return;
+                        }
+                        CacheRegion region = CacheRegion.valueOf(rs.getString("region"));
+                        long entityId = rs.getLong("entity_id");
+                        listener.accept(new CacheInvalidation(region, rs.wasNull() ? null : entityId));
+                    }, from);
+            recentPolls.addLast(new long[]{start, max[0]});
+            syncedAt = start;
+        } catch (RuntimeException e) {
+            log.warn("No se pudieron leer las invalidaciones de caché: {}", e.getMessage());
+        }
+    }
+
+    private void purge() {
+        try {
+            int deleted = jdbcTemplate.update("DELETE FROM cache_invalidations WHERE created_at < ?",
+                    Timestamp.valueOf(LocalDateTime.now().minus(retention)));
+            if (deleted > 0) {
+                log.debug("Invalidaciones de caché antiguas borradas: {}", deleted);
+            }
+        } catch (RuntimeException e) {
+            log.warn("No se pudieron borrar las invalidaciones de caché antiguas: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
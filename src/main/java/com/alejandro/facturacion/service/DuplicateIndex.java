@@ -0,0 +1,293 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.ShardRoutingDataSource;
+import com.alejandro.facturacion.utils.BloomFilter;
+import lombok.extern.slf4j.Slf4j;
+import com.alejandro.facturacion.dto.CacheInvalidation;
+import com.alejandro.facturacion.dto.CacheRegion;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Filtros de Bloom sobre los emails y números de identificación de clientes y los nombres
+ * de productos, para descartar en memoria la mayoría de comprobaciones de duplicados.
+ *
+ * <p>Un {@code false} de los métodos {@code mightContain*} garantiza que el valor no existe;
+ * un {@code true} solo indica que hay que confirmarlo en la base de datos. Mientras los filtros
+ * no están cargados (o tras superar su capacidad, durante la reconstrucción) se responde
+ * {@code true}, de modo que el resultado nunca es incorrecto, solo más lento.
+ *
+ * <p>Los borrados no se reflejan: un valor eliminado sigue dando positivo hasta la siguiente
+ * reconstrucción, lo que solo cuesta una consulta de más.
+ *
+ * <p>Con sharding, los filtros de clientes se cargan desde todos los shards y el de productos
+ * desde el catálogo maestro.
+ *
+ * <p>Con varias instancias, las altas y cambios de las demás llegan como invalidaciones de
+ * {@link CacheRegion#CLIENT} y {@link CacheRegion#PRODUCT} por el {@link CacheInvalidationBus}: se
+ * leen sus filas por ID cada {@code facturacion.import.bloom-sync-interval} y se añaden a los filtros;
+ * una invalidación de toda la región (importaciones, mensajes perdidos) los reconstruye. Un negativo
+ * solo se da por bueno si {@link EntityCache#isFresh()} (el bus está al día, con el mismo margen
+ * {@code facturacion.cache.max-staleness} que la caché) y no quedan cambios recibidos sin aplicar;
+ * sin caché, toda comprobación va a la base de datos. Las claves únicas de {@code clients} cubren el
+ * margen restante: {@code ClientController} responde 400 igual que ante un duplicado detectado.
+ */
+@Slf4j
+@Service
+public class DuplicateIndex {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final List<JdbcTemplate> clientSources = new ArrayList<>();
+    private final EntityCache entityCache;
+    private final long minExpectedInsertions;
+    private final double falsePositiveRate;
+
+    /** IDs cambiados en otras instancias pendientes de añadir a los filtros, con el orden de llegada. */
+    private final Map<Long, Long> pendingClients = new ConcurrentHashMap<>();
+    private final Map<Long, Long> pendingProducts = new ConcurrentHashMap<>();
+    private final AtomicLong remoteChanges = new AtomicLong();
+    /** Hay una reconstrucción encargada que aún no ha empezado a leer. */
+    private final AtomicBoolean rebuildRequested = new AtomicBoolean();
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "duplicate-index-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Filters current;
+    /** Filtros en construcción: reciben también las altas para no perder las concurrentes con la carga. */
+    private volatile Filters building;
+
+    public DuplicateIndex(JdbcTemplate jdbcTemplate,
+                          ObjectProvider<ShardRoutingDataSource> shards,
+                          EntityCache entityCache,
+                          @Value("${facturacion.import.bloom-expected-insertions:1000000}") long minExpectedInsertions,
+                          @Value("${facturacion.import.bloom-false-positive-rate:0.01}") double falsePositiveRate) {
+        this.jdbcTemplate = jdbcTemplate;
+        ShardRoutingDataSource sharded = shards.getIfAvailable();
+        if (sharded == null) {
+            clientSources.add(jdbcTemplate);
+        } else {
+            for (int shard = 0; shard < sharded.getShardCount(); shard++) {
+                clientSources.add(new JdbcTemplate(sharded.getShard(shard)));
+            }
+        }
+        this.entityCache = entityCache;
+        this.minExpectedInsertions = minExpectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        entityCache.addRemoteObserver(this::onRemoteChange);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        rebuild();
+    }
+
+    /**
+     * Reconstruye los filtros desde la base de datos, dimensionados para el doble de los registros actuales.
+     */
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        long clients = 0;
+        for (JdbcTemplate source : clientSources) {
+            clients += source.queryForObject("SELECT COUNT(*) FROM clients", Long.class);
+        }
+        Long products = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM products", Long.class);
+
+        Filters next = new Filters(
+                new BloomFilter(Math.max(minExpectedInsertions, 2 * clients), falsePositiveRate),
+                new BloomFilter(Math.max(minExpectedInsertions, 2 * clients), falsePositiveRate),
+                new BloomFilter(Math.max(minExpectedInsertions, 2 * products), falsePositiveRate));
+        building = next;
+        try {
+            for (JdbcTemplate source : clientSources) {
+                source.query("SELECT email, identification_number FROM clients", rs -> {
+                    next.add(next.clientEmails, rs.getString(1));
+                    next.add(next.clientIdentifications, rs.getString(2));
+                });
+            }
+            jdbcTemplate.query("SELECT name FROM products", rs -> {
+                next.add(next.productNames, rs.getString(1));
+            });
+            // Si mientras tanto se pidió otra reconstrucción, lo leído puede estar incompleto
+            current = rebuildRequested.get() ? null : next;
+        } finally {
+            building = null;
+        }
+        log.info("Filtros de duplicados cargados: {} clientes y {} productos en {} ms",
+                clients, products, System.currentTimeMillis() - start);
+    }
+
+    public boolean mightContainClientEmail(String email) {
+        Filters filters = current;
+        return filters == null || !inSync(pendingClients) || filters.clientEmails.mightContain(normalize(email));
+    }
+
+    public boolean mightContainClientIdentification(String identificationNumber) {
+        Filters filters = current;
+        return filters == null || !inSync(pendingClients)
+                || filters.clientIdentifications.mightContain(normalize(identificationNumber));
+    }
+
+    public boolean mightContainProductName(String name) {
+        Filters filters = current;
+        return filters == null || !inSync(pendingProducts) || filters.productNames.mightContain(normalize(name));
+    }
+
+    /** Los filtros reflejan los cambios de las demás instancias recibidos hasta ahora. */
+    private boolean inSync(Map<Long, Long> pending) {
+        return pending.isEmpty() && entityCache.isFresh();
+    }
+
+    /**
+     * Añade a los filtros los clientes y productos cambiados en otras instancias.
+     */
+    @Scheduled(fixedDelayString = "${facturacion.import.bloom-sync-interval:PT0.5S}")
+    public void applyRemoteChanges() {
+        Map<Long, Long> clientChanges = Map.copyOf(pendingClients);
+        Map<Long, Long> productChanges = Map.copyOf(pendingProducts);
+        List<Long> clients = List.copyOf(clientChanges.keySet());
+        List<Long> products = List.copyOf(productChanges.keySet());
+        try {
+            if (!clients.isEmpty()) {
+                for (JdbcTemplate source : clientSources) {
+                    new NamedParameterJdbcTemplate(source).query(
+                            "SELECT email, identification_number FROM clients WHERE id IN (:ids)", Map.of("ids", clients),
+                            rs -> {
+                                addClient(rs.getString(1), rs.getString(2));
+                            });
+                }
+            }
+            if (!products.isEmpty()) {
+                new NamedParameterJdbcTemplate(jdbcTemplate).query("SELECT name FROM products WHERE id IN (:ids)",
+                        Map.of("ids", products), rs -> {
+                            addProduct(rs.getString(1));
+                        });
+            }
+        } catch (RuntimeException e) {
+            log.warn("No se pudieron aplicar los cambios de otras instancias a los filtros de duplicados", e);
+            rebuildInBackground();
+        }
+        // Solo después de aplicarlos, y salvo que hayan vuelto a cambiar mientras tanto
+        clientChanges.forEach(pendingClients::remove);
+        productChanges.forEach(pendingProducts::remove);
+    }
+
+    private void onRemoteChange(CacheInvalidation invalidation) {
+        Map<Long, Long> pending = switch (invalidation.getRegion()) {
+            case CLIENT -> pendingClients;
+            case PRODUCT -> pendingProducts;
+            default -> null;
+        };
+        if (pending == null) {
+            return;
+        }
+        if (invalidation.getEntityId() == null) {
+            rebuildInBackground();
+        } else {
+            pending.put(invalidation.getEntityId(), remoteChanges.incrementAndGet());
+        }
+    }
+
+    public void addClient(String email, String identificationNumber) {
+        forEachTarget(filters -> {
+            filters.add(filters.clientEmails, email);
+            filters.add(filters.clientIdentifications, identificationNumber);
+        });
+    }
+
+    public void addProduct(String name) {
+        forEachTarget(filters -> filters.add(filters.productNames, name));
+    }
+
+    private void forEachTarget(Consumer<Filters> action) {
+        Filters filters = current;
+        if (filters != null) {
+            action.accept(filters);
+            // Saturados, se sustituyen por "siempre positivo" mientras se reconstruyen
+            if (filters.isOverCapacity()) {
+                rebuildInBackground();
+            }
+        }
+        Filters pending = building;
+        if (pending != null && pending != filters) {
+            action.accept(pending);
+        }
+    }
+
+    /**
+     * Reconstruye los filtros en segundo plano; mientras tanto se responde {@code true}.
+     */
+    private void rebuildInBackground() {
+        current = null;
+        if (rebuildRequested.getAndSet(true)) {
+            return; // ya hay una encargada que aún no ha empezado
+        }
+        rebuildExecutor.execute(() -> {
+            rebuildRequested.set(false);
+            try {
+                rebuild();
+            } catch (RuntimeException e) {
+                log.error("Error reconstruyendo los filtros de duplicados", e);
+            }
+        });
+    }
+
+    /**
+     * Las colaciones habituales de MySQL no distinguen mayúsculas ni tildes (y algunas tampoco
+     * espacios finales); el filtro normaliza igual o más, para que nunca dé un falso negativo.
+     */
+    private static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(value.stripTrailing(), Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Filters {
+        private final BloomFilter clientEmails;
+        private final BloomFilter clientIdentifications;
+        private final BloomFilter productNames;
+        private final AtomicLong insertions = new AtomicLong();
+
+        private Filters(BloomFilter clientEmails, BloomFilter clientIdentifications, BloomFilter productNames) {
+            this.clientEmails = clientEmails;
+            this.clientIdentifications = clientIdentifications;
+            this.productNames = productNames;
+        }
+
+        private void add(BloomFilter filter, String value) {
+            if (value != null) {
+                filter.put(normalize(value));
+                insertions.incrementAndGet();
+            }
+        }
+
+        private boolean isOverCapacity() {
+            long capacity = clientEmails.getExpectedInsertions() * 2 + productNames.getExpectedInsertions();
+            return insertions.get() > capacity;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.dto.ElectronicInvoice;
+import com.alejandro.facturacion.dto.TransmissionResult;
+
+/**
+ * Envía facturas electrónicas firmadas a su receptor (la DIAN o un proveedor tecnológico).
+ *
+ * <p>La implementación activa se elige con {@code facturacion.einvoice.transmitter}. Se invoca
+ * desde los hilos del pool de firma, por lo que debe admitir llamadas concurrentes.
+ */
+public interface EInvoiceTransmitter {
+
+    TransmissionResult transmit(ElectronicInvoice document) throws Exception;
+}
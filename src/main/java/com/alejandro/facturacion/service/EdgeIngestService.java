@@ -0,0 +1,325 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.EdgeProperties;
+import com.alejandro.facturacion.dto.EdgeInvoice;
+import com.alejandro.facturacion.dto.EdgeSnapshot;
+import com.alejandro.facturacion.dto.EdgeStockConflict;
+import com.alejandro.facturacion.dto.EdgeSyncRequest;
+import com.alejandro.facturacion.dto.EdgeSyncResponse;
+import com.alejandro.facturacion.dto.StockMovementType;
+import com.alejandro.facturacion.entity.Invoice;
+import com.alejandro.facturacion.event.InvoicesChangedEvent;
+import com.alejandro.facturacion.event.ProductsChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Lado central del modo borde: entrega a cada nodo la copia de los datos que necesita para
+ * facturar sin conexión y recibe sus lotes de facturas.
+ *
+ * <p>El stock se concilia con reservas por nodo ({@code edge_allowances}): la central saca de su
+ * libro de stock ({@link StockLedgerService}) las unidades que concede a un nodo, y el nodo vende
+ * contra ellas. Al
+ * recibir una factura, sus unidades se toman primero de la reserva del nodo y, si no alcanza, del
+ * stock de la central. Si tampoco hay stock, la factura se guarda igualmente (ya es un documento
+ * legal emitido) y el faltante queda en {@code edge_stock_conflicts} para revisión. La fila de la
+ * reserva se bloquea siempre antes que la del producto.
+ *
+ * <p>Cada factura se guarda en su propia transacción, en el shard de su cliente; un lote reenviado
+ * no la duplica gracias a {@code edge_invoices} y al número legal, que es único.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "facturacion.edge.enabled", havingValue = "false", matchIfMissing = true)
+public class EdgeIngestService {
+
+    /** Productos por transacción al conceder stock, para no bloquear a la vez todo el catálogo. */
+    private static final int GRANT_CHUNK = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate homeTransaction;
+    private final InvoiceService invoiceService;
+    private final InvoiceNumberingService numberingService;
+    private final ShardRouter shardRouter;
+    private final ApplicationEventPublisher eventPublisher;
+    private final StockLedgerService stockLedger;
+    private final EdgeProperties.Central properties;
+
+    public EdgeIngestService(JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             InvoiceService invoiceService,
+                             InvoiceNumberingService numberingService,
+                             ShardRouter shardRouter,
+                             ApplicationEventPublisher eventPublisher,
+                             StockLedgerService stockLedger,
+                             EdgeProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.homeTransaction = new TransactionTemplate(transactionManager);
+        this.invoiceService = invoiceService;
+        this.numberingService = numberingService;
+        this.shardRouter = shardRouter;
+        this.eventPublisher = eventPublisher;
+        this.stockLedger = stockLedger;
+        this.properties = properties.getCentral();
+    }
+
+    /**
+     * Copia del catálogo, los clientes recientes, las series y las reglas de precios para un nodo.
+     */
+    public EdgeSnapshot snapshot(String nodeId) {
+        LocalDateTime now = LocalDateTime.now();
+        EdgeSnapshot snapshot = new EdgeSnapshot();
+        snapshot.setGeneratedAt(now);
+        snapshot.setProducts(portable(jdbcTemplate.queryForList("SELECT * FROM products ORDER BY id")));
+
+        Timestamp since = Timestamp.valueOf(now.minus(properties.getClientWindow()));
+        int maxClients = properties.getMaxClients();
+        List<Map<String, Object>> clients = new ArrayList<>();
+        shardRouter.scatter(() -> jdbcTemplate.queryForList("SELECT * FROM clients c WHERE c.created_at >= ? "
+                        + "OR EXISTS (SELECT 1 FROM invoices i WHERE i.client_id = c.id AND i.created_at >= ?) "
+                        + "ORDER BY c.id DESC LIMIT ?", since, since, maxClients))
+                .forEach(clients::addAll);
+        List<Map<String, Object>> portableClients = portable(clients);
+        portableClients.sort(Comparator.comparing((Map<String, Object> row) -> ((Number) row.get("id")).longValue())
+                .reversed());
+        snapshot.setClients(portableClients.size() > maxClients
+                ? new ArrayList<>(portableClients.subList(0, maxClients)) : portableClients);
+
+        snapshot.setInvoiceSeries(portable(jdbcTemplate.queryForList("SELECT * FROM invoice_series ORDER BY id")));
+        snapshot.setPricingRules(portable(jdbcTemplate.queryForList("SELECT * FROM pricing_rules ORDER BY id")));
+        snapshot.setAllowances(allowances(nodeId));
+        return snapshot;
+    }
+
+    /**
+     * Guarda las facturas del lote, concilia su stock y concede al nodo los números y el stock
+     * que pide. Una factura rechazada no impide guardar las demás.
+     */
+    public EdgeSyncResponse sync(String nodeId, EdgeSyncRequest request) {
+        EdgeSyncResponse response = new EdgeSyncResponse();
+        Set<Long> touchedProducts = new TreeSet<>();
+        List<Long> ingested = new ArrayList<>();
+        for (EdgeInvoice edgeInvoice : request.getInvoices()) {
+            try {
+                ingest(nodeId, edgeInvoice, response, touchedProducts, ingested);
+                response.getAccepted().add(edgeInvoice.getLocalId());
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                response.getRejected().put(edgeInvoice.getLocalId(), e.getMessage());
+            } catch (DataAccessException e) {
+                log.warn("No se pudo guardar la factura {} del nodo de borde {}", edgeInvoice.getLocalId(), nodeId, e);
+                response.getRejected().put(edgeInvoice.getLocalId(), "Error de base de datos: " + e.getMostSpecificCause().getMessage());
+            }
+        }
+        if (!request.getInvoices().isEmpty()) {
+            numberingService.closeEdgeBlocks(nodeId);
+        }
+        grantStock(nodeId, request.getStockWanted(), touchedProducts);
+        request.getNumbersWanted().forEach((prefix, wanted) -> {
+            int size = Math.max(1, Math.min(wanted != null ? wanted : 0, properties.getMaxBlockSize()));
+            try {
+                numberingService.grantEdgeBlock(prefix, nodeId, size);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                response.getNumberingErrors().put(prefix, e.getMessage());
+            }
+        });
+        response.setBlocks(numberingService.getEdgeBlocks(nodeId));
+        response.setAllowances(allowances(nodeId));
+        if (!touchedProducts.isEmpty()) {
+            eventPublisher.publishEvent(new ProductsChangedEvent(new ArrayList<>(touchedProducts)));
+        }
+        if (!ingested.isEmpty()) {
+            eventPublisher.publishEvent(new InvoicesChangedEvent(ingested));
+        }
+        if (!response.getRejected().isEmpty() || !response.getConflicts().isEmpty()) {
+            log.warn("Lote del nodo de borde {}: {} facturas guardadas, {} rechazadas, {} conflictos de stock",
+                    nodeId, response.getAccepted().size(), response.getRejected().size(), response.getConflicts().size());
+        }
+        return response;
+    }
+
+    /**
+     * Conflictos de stock registrados, del más reciente al más antiguo.
+     *
+     * @param nodeId nodo, o {@code null} para todos
+     */
+    public List<EdgeStockConflict> getConflicts(String nodeId, int limit) {
+        String sql = "SELECT id, node_id, product_id, invoice_id, shortfall, created_at FROM edge_stock_conflicts "
+                + (nodeId != null ? "WHERE node_id = ? " : "") + "ORDER BY id DESC LIMIT ?";
+        Object[] args = nodeId != null ? new Object[]{nodeId, limit} : new Object[]{limit};
+        return jdbcTemplate.query(sql, (rs, i) -> new EdgeStockConflict(rs.getLong("id"), rs.getString("node_id"),
+                rs.getLong("product_id"), rs.getLong("invoice_id"), rs.getInt("shortfall"),
+                rs.getTimestamp("created_at").toLocalDateTime()), args);
+    }
+
+    /**
+     * Da de baja un nodo: su stock reservado vuelve a la central y sus bloques de números se
+     * cierran sin reutilizar los números pendientes. Debe hacerse después de que el nodo haya
+     * enviado todas sus facturas; si envía alguna después, se guarda y su stock se descuenta del
+     * de la central (o queda como conflicto si no alcanza), porque la reserva ya se devolvió.
+     */
+    public void decommission(String nodeId) {
+        Map<Long, Integer> returned = homeTransaction.execute(status -> {
+            Map<Long, Integer> allowances = new TreeMap<>(allowances(nodeId));
+            jdbcTemplate.update("DELETE FROM edge_allowances WHERE node_id = ?", nodeId);
+            allowances.forEach((productId, quantity) -> stockLedger.record(productId, StockMovementType.EDGE_RELEASE,
+                    quantity, null, "Baja del nodo de borde " + nodeId));
+            return allowances;
+        });
+        int blocks = numberingService.closeDecommissionedEdgeBlocks(nodeId);
+        log.info("Nodo de borde {} dado de baja: {} productos devueltos al stock, {} bloques de números cerrados",
+                nodeId, returned.size(), blocks);
+        if (!returned.isEmpty()) {
+            eventPublisher.publishEvent(new ProductsChangedEvent(new ArrayList<>(returned.keySet())));
+        }
+    }
+
+    private void ingest(String nodeId, EdgeInvoice edgeInvoice, EdgeSyncResponse response, Set<Long> touchedProducts,
+                        List<Long> ingested) {
+        if (edgeInvoice.getLocalId() == null) {
+            throw new IllegalArgumentException("La factura no tiene ID local");
+        }
+        if (isReceived(nodeId, edgeInvoice.getLocalId())) {
+            return;
+        }
+        if (edgeInvoice.getSeriesPrefix() == null || edgeInvoice.getNumber() == null) {
+            throw new IllegalArgumentException("La factura no tiene número legal; el nodo debe tener una serie de numeración");
+        }
+        if (!numberingService.isEdgeNumber(edgeInvoice.getSeriesPrefix(), edgeInvoice.getNumber(), nodeId)) {
+            throw new IllegalArgumentException("El número " + edgeInvoice.getSeriesPrefix() + edgeInvoice.getNumber()
+                    + " no pertenece a ningún bloque concedido al nodo " + nodeId);
+        }
+        Invoice invoice = invoiceService.saveEdgeInvoice(edgeInvoice);
+
+        // Cantidades por producto, en orden de ID para bloquear las filas siempre en el mismo orden
+        Map<Long, Integer> quantities = new TreeMap<>();
+        for (EdgeInvoice.Item item : edgeInvoice.getItems()) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        try {
+            homeTransaction.executeWithoutResult(status -> {
+                jdbcTemplate.update("INSERT INTO edge_invoices (node_id, local_id, invoice_id, received_at) VALUES (?, ?, ?, ?)",
+                        nodeId, edgeInvoice.getLocalId(), invoice.getId(), Timestamp.valueOf(LocalDateTime.now()));
+                quantities.forEach((productId, quantity) ->
+                        consumeStock(nodeId, productId, quantity, invoice.getId(), response));
+            });
+        } catch (DuplicateKeyException e) {
+            return; // otro envío del mismo lote ya la registró
+        }
+        touchedProducts.addAll(quantities.keySet());
+        ingested.add(invoice.getId());
+    }
+
+    private boolean isReceived(String nodeId, long localId) {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM edge_invoices WHERE node_id = ? AND local_id = ?",
+                Long.class, nodeId, localId);
+        return count != null && count > 0;
+    }
+
+    /**
+     * Descuenta las unidades vendidas de la reserva del nodo y, si no alcanza, del stock de la central.
+     */
+    private void consumeStock(String nodeId, long productId, int quantity, long invoiceId, EdgeSyncResponse response) {
+        Integer allowance = jdbcTemplate.query(
+                "SELECT quantity FROM edge_allowances WHERE node_id = ? AND product_id = ? FOR UPDATE",
+                rs -> rs.next() ? rs.getInt(1) : null, nodeId, productId);
+        LocalDateTime now = LocalDateTime.now();
+        int fromAllowance = allowance != null ? Math.max(0, Math.min(allowance, quantity)) : 0;
+        if (fromAllowance > 0) {
+            jdbcTemplate.update("UPDATE edge_allowances SET quantity = quantity - ?, updated_at = ? "
+                    + "WHERE node_id = ? AND product_id = ?", fromAllowance, Timestamp.valueOf(now), nodeId, productId);
+        }
+        int rest = quantity - fromAllowance;
+        if (rest == 0) {
+            return;
+        }
+        int fromStock = stockLedger.take(productId, rest, StockMovementType.EDGE_SALE, invoiceId,
+                "Venta del nodo de borde " + nodeId);
+        int shortfall = rest - fromStock;
+        if (shortfall > 0) {
+            jdbcTemplate.update("INSERT INTO edge_stock_conflicts (node_id, product_id, invoice_id, shortfall, created_at) "
+                    + "VALUES (?, ?, ?, ?, ?)", nodeId, productId, invoiceId, shortfall, Timestamp.valueOf(now));
+            response.getConflicts().add(new EdgeStockConflict(null, nodeId, productId, invoiceId, shortfall, now));
+        }
+    }
+
+    /**
+     * Reserva para el nodo el stock que pide, hasta donde alcance el de la central.
+     */
+    private void grantStock(String nodeId, Map<Long, Integer> wanted, Set<Long> touchedProducts) {
+        List<Map.Entry<Long, Integer>> requests = new ArrayList<>(new TreeMap<>(wanted).entrySet());
+        requests.removeIf(entry -> entry.getValue() == null || entry.getValue() <= 0);
+        for (int from = 0; from < requests.size(); from += GRANT_CHUNK) {
+            List<Map.Entry<Long, Integer>> chunk = requests.subList(from, Math.min(requests.size(), from + GRANT_CHUNK));
+            homeTransaction.executeWithoutResult(status -> {
+                Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+                for (Map.Entry<Long, Integer> request : chunk) {
+                    long productId = request.getKey();
+                    jdbcTemplate.query("SELECT quantity FROM edge_allowances WHERE node_id = ? AND product_id = ? FOR UPDATE",
+                            rs -> null, nodeId, productId);
+                    int granted = stockLedger.take(productId, request.getValue(), StockMovementType.EDGE_RESERVATION,
+                            null, "Reserva para el nodo de borde " + nodeId);
+                    if (granted == 0) {
+                        continue;
+                    }
+                    int updated = jdbcTemplate.update("UPDATE edge_allowances SET quantity = quantity + ?, updated_at = ? "
+                            + "WHERE node_id = ? AND product_id = ?", granted, now, nodeId, productId);
+                    if (updated == 0) {
+                        jdbcTemplate.update("INSERT INTO edge_allowances (node_id, product_id, quantity, updated_at) "
+                                + "VALUES (?, ?, ?, ?)", nodeId, productId, granted, now);
+                    }
+                    touchedProducts.add(productId);
+                }
+            });
+        }
+    }
+
+    private Map<Long, Integer> allowances(String nodeId) {
+        Map<Long, Integer> allowances = new HashMap<>();
+        jdbcTemplate.query("SELECT product_id, quantity FROM edge_allowances WHERE node_id = ? AND quantity > 0",
+                rs -> {
+                    allowances.put(rs.getLong(1), rs.getInt(2));
+                }, nodeId);
+        return allowances;
+    }
+
+    /**
+     * Filas genéricas con nombres de columna en minúsculas y fechas como tipos de {@code java.time},
+     * que se serializan igual en cualquier zona horaria.
+     */
+    private static List<Map<String, Object>> portable(List<Map<String, Object>> rows) {
+        List<Map<String, Object>> result = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            Map<String, Object> copy = new LinkedHashMap<>();
+            row.forEach((column, value) -> {
+                if (value instanceof Timestamp timestamp) {
+                    value = timestamp.toLocalDateTime();
+                } else if (value instanceof java.sql.Date date) {
+                    value = date.toLocalDate();
+                }
+                copy.put(column.toLowerCase(Locale.ROOT), value);
+            });
+            result.add(copy);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,366 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.EdgeProperties;
+import com.alejandro.facturacion.dto.EdgeInvoice;
+import com.alejandro.facturacion.dto.EdgeNumberBlock;
+import com.alejandro.facturacion.dto.EdgeSnapshot;
+import com.alejandro.facturacion.dto.EdgeStatus;
+import com.alejandro.facturacion.dto.EdgeSyncRequest;
+import com.alejandro.facturacion.dto.EdgeSyncResponse;
+import com.alejandro.facturacion.event.ClientsChangedEvent;
+import com.alejandro.facturacion.event.InvoiceCreatedEvent;
+import com.alejandro.facturacion.event.InvoiceSeriesChangedEvent;
+import com.alejandro.facturacion.event.PricingRulesChangedEvent;
+import com.alejandro.facturacion.event.ProductsChangedEvent;
+import com.alejandro.facturacion.repository.InvoiceRepository;
+import com.alejandro.facturacion.utils.GzipJson;
+import com.alejandro.facturacion.utils.SqlRows;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lado del nodo de borde ({@code facturacion.edge.enabled=true}): factura contra la base de datos
+ * local y sincroniza con la central por lotes.
+ *
+ * <p>Las facturas se crean con el flujo normal de {@link InvoiceService}, sin llamadas de red:
+ * <ul>
+ *   <li>Productos, clientes, series y reglas de precios son la copia que se descarga de la central
+ *       cada {@code facturacion.edge.snapshot-interval}.</li>
+ *   <li>Los números salen de bloques concedidos por la central, que se guardan como bloques
+ *       liberados en {@code invoice_number_blocks}: el asignador local los recupera como si los
+ *       hubiera soltado otro nodo. La serie local nunca reserva bloques propios.</li>
+ *   <li>El stock local de cada producto es lo que la central le tiene reservado menos lo vendido y
+ *       aún no enviado, así que la validación de stock de siempre impide vender más de lo reservado.</li>
+ * </ul>
+ *
+ * <p>Cada factura entra en {@code edge_outbox} en su misma transacción. Cada
+ * {@code facturacion.edge.sync-interval} se envían en lotes comprimidos y, en la misma llamada,
+ * se piden números y stock. Sin conexión, el nodo sigue facturando mientras le queden números y
+ * stock reservado.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "facturacion.edge.enabled", havingValue = "true")
+public class EdgeSyncService {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final EdgeProperties properties;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final InvoiceRepository invoiceRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final StockLedgerService stockLedger;
+    private final ProductPriceHistory priceHistory;
+    private final ObjectMapper mapper;
+    private final HttpClient httpClient;
+    private final String authorization;
+
+    private volatile LocalDateTime lastSnapshot;
+    private volatile LocalDateTime lastSync;
+    private volatile String lastError;
+
+    public EdgeSyncService(EdgeProperties properties,
+                           JdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager,
+                           InvoiceRepository invoiceRepository,
+                           ApplicationEventPublisher eventPublisher,
+                           StockLedgerService stockLedger,
+                           ProductPriceHistory priceHistory,
+                           ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.invoiceRepository = invoiceRepository;
+        this.eventPublisher = eventPublisher;
+        this.stockLedger = stockLedger;
+        this.priceHistory = priceHistory;
+        this.mapper = GzipJson.mapper(objectMapper);
+        this.httpClient = HttpClient.newBuilder().connectTimeout(properties.getRequestTimeout()).build();
+        this.authorization = properties.getCentralUsername() == null ? null : "Basic " + Base64.getEncoder()
+                .encodeToString((properties.getCentralUsername() + ":" + properties.getCentralPassword())
+                        .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Deja la factura pendiente de enviar, dentro de la transacción que la guarda.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onInvoiceCreated(InvoiceCreatedEvent event) {
+        jdbcTemplate.update("INSERT INTO edge_outbox (invoice_id, created_at, attempts) VALUES (?, ?, 0)",
+                event.getInvoice().getId(), Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    @Scheduled(fixedDelayString = "${facturacion.edge.sync-interval:PT30S}")
+    public void scheduledSync() {
+        sync();
+    }
+
+    /**
+     * Descarga la copia de la central si toca, envía las facturas pendientes y pide números y stock.
+     * Los errores de red no se propagan: quedan en {@link EdgeStatus#getLastError()}.
+     */
+    public synchronized EdgeStatus sync() {
+        try {
+            if (lastSnapshot == null
+                    || lastSnapshot.plus(properties.getSnapshotInterval()).isBefore(LocalDateTime.now())) {
+                pullSnapshot();
+            }
+            long lastId = 0;
+            int sent;
+            do {
+                List<Long> ids = jdbcTemplate.queryForList(
+                        "SELECT invoice_id FROM edge_outbox WHERE invoice_id > ? ORDER BY invoice_id LIMIT ?",
+                        Long.class, lastId, properties.getBatchSize());
+                push(ids);
+                sent = ids.size();
+                lastId = sent > 0 ? ids.get(sent - 1) : lastId;
+            } while (sent == properties.getBatchSize());
+            lastSync = LocalDateTime.now();
+            lastError = null;
+        } catch (IOException | RuntimeException e) {
+            // Los errores de conexión de HttpClient no siempre traen mensaje
+            lastError = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            log.warn("No se pudo sincronizar con la central {}: {}", properties.getCentralUrl(), lastError);
+        }
+        return getStatus();
+    }
+
+    public EdgeStatus getStatus() {
+        EdgeStatus status = new EdgeStatus();
+        status.setNodeId(properties.getNodeId());
+        status.setCentralUrl(properties.getCentralUrl());
+        status.setLastSnapshot(lastSnapshot);
+        status.setLastSync(lastSync);
+        status.setLastError(lastError);
+        status.setPendingInvoices(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM edge_outbox", Long.class));
+        status.setRejectedInvoices(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM edge_outbox WHERE last_error IS NOT NULL", Long.class));
+        status.setNumbersLeft(numbersLeft());
+        return status;
+    }
+
+    private void pullSnapshot() throws IOException {
+        EdgeSnapshot snapshot = call(HttpRequest.newBuilder(centralUri("/snapshot")).GET(), EdgeSnapshot.class);
+        transaction.executeWithoutResult(status -> {
+            // El stock local no se copia: se calcula a partir de lo reservado para el nodo
+            for (Map<String, Object> product : snapshot.getProducts()) {
+                product.put("stock", 0);
+            }
+            upsert("products", snapshot.getProducts(), "stock");
+            priceHistory.recordChanges(null);
+            upsert("clients", snapshot.getClients(), null);
+            // Sin rango propio: la serie local solo emite los bloques concedidos por la central
+            for (Map<String, Object> series : snapshot.getInvoiceSeries()) {
+                series.put("next_block_start", ((Number) series.get("range_to")).longValue() + 1);
+            }
+            upsert("invoice_series", snapshot.getInvoiceSeries(), null);
+            upsert("pricing_rules", snapshot.getPricingRules(), null);
+            Set<Long> ruleIds = new HashSet<>();
+            snapshot.getPricingRules().forEach(rule -> ruleIds.add(((Number) rule.get("id")).longValue()));
+            jdbcTemplate.queryForList("SELECT id FROM pricing_rules", Long.class).stream()
+                    .filter(id -> !ruleIds.contains(id))
+                    .forEach(id -> jdbcTemplate.update("DELETE FROM pricing_rules WHERE id = ?", id));
+            saveAllowances(snapshot.getAllowances());
+        });
+        lastSnapshot = LocalDateTime.now();
+        eventPublisher.publishEvent(ProductsChangedEvent.all());
+        eventPublisher.publishEvent(ClientsChangedEvent.all());
+        eventPublisher.publishEvent(new InvoiceSeriesChangedEvent());
+        eventPublisher.publishEvent(new PricingRulesChangedEvent());
+        log.info("Copia de la central aplicada: {} productos, {} clientes, {} series, {} reglas de precios",
+                snapshot.getProducts().size(), snapshot.getClients().size(), snapshot.getInvoiceSeries().size(),
+                snapshot.getPricingRules().size());
+    }
+
+    private void push(List<Long> invoiceIds) throws IOException {
+        EdgeSyncRequest request = new EdgeSyncRequest();
+        if (!invoiceIds.isEmpty()) {
+            invoiceRepository.findWithDetailsByIdIn(invoiceIds).forEach(invoice -> request.getInvoices().add(EdgeInvoice.of(invoice)));
+        }
+        Map<String, Long> left = numbersLeft();
+        for (String prefix : jdbcTemplate.queryForList("SELECT prefix FROM invoice_series WHERE active = TRUE", String.class)) {
+            if (left.getOrDefault(prefix, 0L) < properties.getBlocksLowWater()) {
+                request.getNumbersWanted().put(prefix, properties.getBlockSize());
+            }
+        }
+        int target = properties.getStockAllowance();
+        stockLedger.getStocks(jdbcTemplate.queryForList("SELECT id FROM products", Long.class)).forEach((productId, stock) -> {
+            if (stock * 2 < target) {
+                request.getStockWanted().put(productId, (int) (target - stock));
+            }
+        });
+
+        EdgeSyncResponse response = call(HttpRequest.newBuilder(centralUri("/sync"))
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .header(HttpHeaders.CONTENT_ENCODING, GzipJson.ENCODING)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(GzipJson.write(mapper, request))), EdgeSyncResponse.class);
+
+        transaction.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate("DELETE FROM edge_outbox WHERE invoice_id = ?",
+                    response.getAccepted().stream().map(id -> new Object[]{id}).toList());
+            jdbcTemplate.batchUpdate("UPDATE edge_outbox SET attempts = attempts + 1, last_error = ? WHERE invoice_id = ?",
+                    response.getRejected().entrySet().stream()
+                            .map(rejected -> new Object[]{truncate(rejected.getValue()), rejected.getKey()})
+                            .toList());
+            saveBlocks(response.getBlocks());
+            saveAllowances(response.getAllowances());
+        });
+        eventPublisher.publishEvent(ProductsChangedEvent.all());
+        if (!response.getRejected().isEmpty()) {
+            log.warn("La central rechazó {} facturas del lote: {}", response.getRejected().size(), response.getRejected());
+        }
+        if (!response.getNumberingErrors().isEmpty()) {
+            log.warn("La central no concedió números: {}", response.getNumberingErrors());
+        }
+        if (!response.getConflicts().isEmpty()) {
+            log.warn("{} ventas sin stock en la central; quedan registradas allí para revisión",
+                    response.getConflicts().size());
+        }
+    }
+
+    /**
+     * Inserta o actualiza las filas por ID; {@code keepColumn} no se modifica en las filas existentes.
+     */
+    private void upsert(String table, List<Map<String, Object>> rows, String keepColumn) {
+        Set<Long> existing = new HashSet<>(jdbcTemplate.queryForList("SELECT id FROM " + table, Long.class));
+        List<Map<String, Object>> inserts = new ArrayList<>();
+        List<Map<String, Object>> updates = new ArrayList<>();
+        for (Map<String, Object> row : rows) {
+            if (existing.contains(((Number) row.get("id")).longValue())) {
+                Map<String, Object> update = new HashMap<>(row);
+                if (keepColumn != null) {
+                    update.remove(keepColumn);
+                }
+                updates.add(update);
+            } else {
+                inserts.add(row);
+            }
+        }
+        SqlRows.updateById(jdbcTemplate, table, updates);
+        SqlRows.insert(jdbcTemplate, table, inserts);
+    }
+
+    /**
+     * Añade como liberados los bloques concedidos que el nodo aún no tenga.
+     */
+    private void saveBlocks(List<EdgeNumberBlock> blocks) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (EdgeNumberBlock block : blocks) {
+            Long known = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM invoice_number_blocks "
+                    + "WHERE series_prefix = ? AND range_start = ?", Long.class, block.getSeriesPrefix(), block.getRangeStart());
+            if (known != null && known > 0) {
+                continue;
+            }
+            int inserted = jdbcTemplate.update("INSERT INTO invoice_number_blocks (series_id, series_prefix, range_start, "
+                            + "range_end, status, created_at) SELECT id, prefix, ?, ?, 'RELEASED', ? FROM invoice_series "
+                            + "WHERE prefix = ?",
+                    block.getRangeStart(), block.getRangeEnd(), now, block.getSeriesPrefix());
+            if (inserted == 0) {
+                log.warn("Bloque {}{}-{} de una serie que aún no está en la copia local", block.getSeriesPrefix(),
+                        block.getRangeStart(), block.getRangeEnd());
+            } else {
+                log.info("Recibido de la central el bloque {}{}-{}", block.getSeriesPrefix(), block.getRangeStart(),
+                        block.getRangeEnd());
+            }
+        }
+    }
+
+    /**
+     * Guarda lo reservado por la central y recalcula el stock local: lo reservado menos lo vendido
+     * que aún no ha llegado a la central. La diferencia con el stock local entra en el libro como ajuste.
+     */
+    private void saveAllowances(Map<Long, Integer> allowances) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.update("DELETE FROM edge_allowances WHERE node_id = ?", properties.getNodeId());
+        jdbcTemplate.batchUpdate("INSERT INTO edge_allowances (node_id, product_id, quantity, updated_at) "
+                        + "SELECT ?, id, ?, ? FROM products WHERE id = ?",
+                allowances.entrySet().stream()
+                        .map(allowance -> new Object[]{properties.getNodeId(), allowance.getValue(), now, allowance.getKey()})
+                        .toList());
+        Map<Long, Integer> targets = new HashMap<>();
+        jdbcTemplate.query("SELECT p.id, GREATEST(0, "
+                + "COALESCE((SELECT a.quantity FROM edge_allowances a WHERE a.node_id = ? AND a.product_id = p.id), 0) "
+                + "- COALESCE((SELECT SUM(ii.quantity) FROM invoice_items ii "
+                + "JOIN edge_outbox o ON o.invoice_id = ii.invoice_id WHERE ii.product_id = p.id), 0)) FROM products p",
+                rs -> {
+                    targets.put(rs.getLong(1), rs.getInt(2));
+                }, properties.getNodeId());
+        stockLedger.adjustTo(targets, "Reserva de la central");
+    }
+
+    /**
+     * Números sin usar por serie en los bloques concedidos al nodo.
+     */
+    private Map<String, Long> numbersLeft() {
+        Map<String, Long> left = new HashMap<>();
+        jdbcTemplate.query("SELECT b.series_prefix, SUM(b.range_end - b.range_start + 1) - SUM((SELECT COUNT(*) "
+                + "FROM invoices i WHERE i.series_prefix = b.series_prefix "
+                + "AND i.invoice_number BETWEEN b.range_start AND b.range_end)) "
+                + "FROM invoice_number_blocks b WHERE b.status <> 'CLOSED' GROUP BY b.series_prefix", rs -> {
+            left.put(rs.getString(1), rs.getLong(2));
+        });
+        return left;
+    }
+
+    private URI centralUri(String action) {
+        String base = properties.getCentralUrl().replaceAll("/+$", "");
+        return URI.create(base + "/api/edge/nodes/" + properties.getNodeId() + action);
+    }
+
+    private <T> T call(HttpRequest.Builder request, Class<T> type) throws IOException {
+        request.timeout(properties.getRequestTimeout()).header(HttpHeaders.ACCEPT_ENCODING, GzipJson.ENCODING);
+        if (authorization != null) {
+            request.header(HttpHeaders.AUTHORIZATION, authorization);
+        }
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Llamada a la central interrumpida", e);
+        }
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new IOException("La central respondió " + response.statusCode() + " a " + response.uri());
+            }
+            return GzipJson.read(mapper, body,
+                    response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).orElse(null), type);
+        }
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return "Rechazada por la central";
+        }
+        return message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message;
+    }
+}
@@ -0,0 +1,336 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.EInvoiceProperties;
+import com.alejandro.facturacion.dto.EInvoiceBatchReport;
+import com.alejandro.facturacion.dto.ElectronicInvoice;
+import com.alejandro.facturacion.dto.TransmissionResult;
+import com.alejandro.facturacion.entity.Invoice;
+import com.alejandro.facturacion.entity.InvoiceSeries;
+import com.alejandro.facturacion.event.InvoicesChangedEvent;
+import com.alejandro.facturacion.repository.InvoiceRepository;
+import com.alejandro.facturacion.repository.InvoiceSeriesRepository;
+import com.alejandro.facturacion.utils.Cufe;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.w3c.dom.Document;
+
+import javax.xml.crypto.MarshalException;
+import javax.xml.crypto.dsig.XMLSignatureException;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayOutputStream;
+import java.security.GeneralSecurityException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Genera, firma y envía facturas electrónicas UBL 2.1.
+ *
+ * <p>El XML se escribe en streaming con {@link UblInvoiceWriter}. Los documentos sin firmar van
+ * directamente a bytes; los firmados se escriben sobre un árbol DOM, porque la firma XML envuelta
+ * necesita canonicalizar el documento completo, y se serializan una sola vez tras firmar.
+ *
+ * <p>Los lotes se procesan en un pool de {@code facturacion.einvoice.signing.threads} hilos: el
+ * hilo que atiende la petición carga las facturas por tramos mientras los hilos del pool generan,
+ * firman y envían cada documento. Como mucho hay cuatro documentos por hilo en vuelo. El coste
+ * por documento (tiempo y memoria) se mide con {@code EInvoiceBenchmark} en {@code src/jmh}.
+ *
+ * <p>Cada envío guarda en la factura su resultado (estado, CUFE e identificador de seguimiento).
+ * Solo cuando cambia el estado se publica {@link InvoicesChangedEvent}; reenviar una factura con el
+ * mismo resultado no invalida cachés ni reportes. Los lotes que envían omiten las facturas ya
+ * aceptadas, así que repetir un lote solo reenvía las pendientes y las rechazadas.
+ *
+ * <p>Con sharding, los lotes recorren todos los shards: los IDs se consultan en paralelo y cada
+ * tramo se carga, y su resultado se guarda, en el shard de sus facturas.
+ */
+@Slf4j
+@Service
+public class ElectronicInvoiceService {
+
+    private static final int LOAD_CHUNK_SIZE = 100;
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    private static final XMLOutputFactory XML_OUTPUT = XMLOutputFactory.newFactory();
+    private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = ThreadLocal.withInitial(() -> {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            return factory.newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+    private static final ThreadLocal<Transformer> SERIALIZER = ThreadLocal.withInitial(() -> {
+        try {
+            return TransformerFactory.newInstance().newTransformer();
+        } catch (TransformerConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final InvoiceService invoiceService;
+    private final InvoiceRepository invoiceRepository;
+    private final InvoiceSeriesRepository seriesRepository;
+    private final UblInvoiceWriter writer;
+    private final XadesSigner signer;
+    private final EInvoiceTransmitter transmitter;
+    private final EInvoiceProperties properties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ShardRouter shardRouter;
+    private final TransactionTemplate transaction;
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final int signingThreads;
+    private final ThreadPoolExecutor signingExecutor;
+
+    public ElectronicInvoiceService(InvoiceService invoiceService,
+                                    InvoiceRepository invoiceRepository,
+                                    InvoiceSeriesRepository seriesRepository,
+                                    UblInvoiceWriter writer,
+                                    XadesSigner signer,
+                                    ObjectProvider<EInvoiceTransmitter> transmitter,
+                                    EInvoiceProperties properties,
+                                    ApplicationEventPublisher eventPublisher,
+                                    ShardRouter shardRouter,
+                                    PlatformTransactionManager transactionManager) {
+        this.invoiceService = invoiceService;
+        this.invoiceRepository = invoiceRepository;
+        this.seriesRepository = seriesRepository;
+        this.writer = writer;
+        this.signer = signer;
+        this.transmitter = transmitter.getIfAvailable();
+        if (this.transmitter == null) {
+            throw new IllegalStateException("facturacion.einvoice.transmitter=" + properties.getTransmitter()
+                    + " no corresponde a ningún transmisor; valores admitidos: local");
+        }
+        this.properties = properties;
+        this.eventPublisher = eventPublisher;
+        this.shardRouter = shardRouter;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+
+        this.signingThreads = Math.max(1, properties.getSigning().getThreads());
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.signingExecutor = new ThreadPoolExecutor(signingThreads, signingThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "einvoice-signer-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Genera el documento UBL de una factura.
+     *
+     * @param sign si se firma con XAdES
+     * @throws IllegalStateException si la factura no tiene número legal o la firma no está configurada
+     */
+    public Optional<ElectronicInvoice> generate(Long invoiceId, boolean sign) {
+        return invoiceService.getInvoiceWithDetails(invoiceId).map(invoice -> build(invoice, seriesOf(invoice), sign));
+    }
+
+    /**
+     * Genera, firma y envía una factura, y guarda el resultado en ella.
+     */
+    public Optional<TransmissionResult> send(Long invoiceId) {
+        return invoiceService.getInvoiceWithDetails(invoiceId).map(invoice -> {
+            ElectronicInvoice document = build(invoice, seriesOf(invoice), true);
+            TransmissionResult result = transmit(document);
+            boolean changed = shardRouter.forClientWrite(invoice.getClient() != null ? invoice.getClient().getId() : null,
+                    () -> record(invoice, document, result));
+            if (changed) {
+                eventPublisher.publishEvent(new InvoicesChangedEvent(List.of(invoiceId)));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Genera y firma, en paralelo, todas las facturas numeradas creadas en el intervalo de todos
+     * los shards y, si se indica, las envía. Al enviar se omiten las ya aceptadas.
+     *
+     * @param from inicio del intervalo (inclusivo)
+     * @param to fin del intervalo (exclusivo)
+     */
+    public EInvoiceBatchReport processBatch(LocalDateTime from, LocalDateTime to, boolean transmit)
+            throws InterruptedException {
+        if (!signer.isEnabled()) {
+            throw new IllegalStateException("La firma de facturas electrónicas no está configurada");
+        }
+        // Una lista de IDs por shard, en orden de shard
+        List<List<Long>> idsByShard = shardRouter.scatter(() -> transmit
+                ? invoiceRepository.findUnacceptedNumberedIdsCreatedBetween(from, to)
+                : invoiceRepository.findNumberedIdsCreatedBetween(from, to));
+        Map<String, InvoiceSeries> series = seriesRepository.findAll().stream()
+                .collect(Collectors.toMap(InvoiceSeries::getPrefix, Function.identity()));
+
+        EInvoiceBatchReport report = new EInvoiceBatchReport();
+        report.setRequested(idsByShard.stream().mapToInt(List::size).sum());
+        report.setSigningThreads(signingThreads);
+        AtomicInteger signed = new AtomicInteger();
+        AtomicInteger transmitted = new AtomicInteger();
+        ConcurrentLinkedQueue<Long> changed = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<EInvoiceBatchReport.Failure> failures = new ConcurrentLinkedQueue<>();
+        int maxInFlight = signingThreads * IN_FLIGHT_PER_THREAD;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+
+        long start = System.nanoTime();
+        for (int shard = 0; shard < idsByShard.size(); shard++) {
+            int invoiceShard = shard;
+            List<Long> ids = idsByShard.get(shard);
+            for (int i = 0; i < ids.size(); i += LOAD_CHUNK_SIZE) {
+                List<Long> chunk = ids.subList(i, Math.min(ids.size(), i + LOAD_CHUNK_SIZE));
+                List<Invoice> invoices = shardRouter.onShard(invoiceShard,
+                        () -> readOnlyTransaction.execute(status -> invoiceRepository.findWithDetailsByIdIn(chunk)));
+                for (Invoice invoice : invoices) {
+                    inFlight.acquire();
+                    try {
+                        signingExecutor.execute(() -> {
+                            try {
+                                ElectronicInvoice document = build(invoice, series.get(invoice.getSeriesPrefix()), true);
+                                signed.incrementAndGet();
+                                if (transmit) {
+                                    TransmissionResult result = transmit(document);
+                                    if (shardRouter.onShard(invoiceShard, () -> record(invoice, document, result))) {
+                                        changed.add(invoice.getId());
+                                    }
+                                    if ("ACCEPTED".equals(result.getStatus())) {
+                                        transmitted.incrementAndGet();
+                                    } else {
+                                        failures.add(new EInvoiceBatchReport.Failure(invoice.getId(), result.getMessage()));
+                                    }
+                                }
+                            } catch (RuntimeException e) {
+                                failures.add(new EInvoiceBatchReport.Failure(invoice.getId(), e.getMessage()));
+                            } finally {
+                                inFlight.release();
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        // Pool detenido (apagado de la aplicación): la tarea nunca devolverá su permiso
+                        inFlight.release();
+                        throw new IllegalStateException("El pool de firma está detenido", e);
+                    }
+                }
+            }
+        }
+        inFlight.acquire(maxInFlight);
+        inFlight.release(maxInFlight);
+        long elapsedNanos = System.nanoTime() - start;
+
+        if (!changed.isEmpty()) {
+            eventPublisher.publishEvent(new InvoicesChangedEvent(new ArrayList<>(changed)));
+        }
+        report.setSigned(signed.get());
+        report.setTransmitted(transmitted.get());
+        report.getFailures().addAll(failures);
+        report.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        log.info("Lote de facturas electrónicas: {} firmadas, {} enviadas, {} errores en {} ms",
+                report.getSigned(), report.getTransmitted(), report.getFailures().size(), report.getElapsedMillis());
+        return report;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        signingExecutor.shutdownNow();
+    }
+
+    /**
+     * Genera (y firma) el documento de una factura ya cargada con su cliente, items y productos.
+     *
+     * @param series serie de la factura, o {@code null} si no está registrada
+     * @throws IllegalStateException si la factura no tiene número legal o la firma no está configurada
+     */
+    public ElectronicInvoice build(Invoice invoice, InvoiceSeries series, boolean sign) {
+        if (invoice.getNumber() == null) {
+            throw new IllegalStateException("La factura " + invoice.getId() + " no tiene número legal");
+        }
+        OffsetDateTime issuedAt = invoice.getCreatedAt().atZone(ZoneId.systemDefault())
+                .withZoneSameInstant(properties.getZone()).toOffsetDateTime();
+        String cufe = Cufe.compute(invoice.getFullNumber(), issuedAt, invoice.getSubtotal(),
+                invoice.taxTotalsByScheme(), invoice.getTotal(), properties.getIssuer().getNit(),
+                invoice.getClient() != null ? invoice.getClient().getIdentificationNumber() : "",
+                properties.getTechnicalKey(), properties.getEnvironment());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+        try {
+            if (!sign) {
+                XMLStreamWriter xml = XML_OUTPUT.createXMLStreamWriter(out, "UTF-8");
+                writer.write(invoice, series, issuedAt, cufe, xml);
+                xml.close();
+            } else {
+                Document document = DOCUMENT_BUILDER.get().newDocument();
+                XMLStreamWriter xml = XML_OUTPUT.createXMLStreamWriter(new DOMResult(document));
+                writer.write(invoice, series, issuedAt, cufe, xml);
+                xml.close();
+                signer.sign(document, document.getElementsByTagNameNS(UblInvoiceWriter.EXT_NS, "ExtensionContent").item(1));
+                SERIALIZER.get().transform(new DOMSource(document), new StreamResult(out));
+            }
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("Error generando el XML de la factura " + invoice.getId(), e);
+        } catch (GeneralSecurityException | MarshalException | XMLSignatureException | TransformerException e) {
+            throw new RuntimeException("Error firmando la factura " + invoice.getId(), e);
+        }
+        return new ElectronicInvoice(invoice.getId(), invoice.getFullNumber(), cufe, sign, out.toByteArray());
+    }
+
+    private InvoiceSeries seriesOf(Invoice invoice) {
+        return invoice.getSeriesPrefix() != null ? seriesRepository.findByPrefix(invoice.getSeriesPrefix()).orElse(null) : null;
+    }
+
+    /**
+     * Guarda el resultado del envío en la factura, en el shard fijado en el hilo.
+     *
+     * @return si cambió el estado electrónico de la factura
+     */
+    private boolean record(Invoice invoice, ElectronicInvoice document, TransmissionResult result) {
+        LocalDateTime sentAt = result.getTransmittedAt() != null
+                ? LocalDateTime.ofInstant(result.getTransmittedAt(), ZoneId.systemDefault()) : LocalDateTime.now();
+        transaction.executeWithoutResult(status -> invoiceRepository.recordTransmission(invoice.getId(),
+                result.getStatus(), document.getCufe(), result.getTrackId(), sentAt));
+        return !Objects.equals(invoice.getEinvoiceStatus(), result.getStatus());
+    }
+
+    private TransmissionResult transmit(ElectronicInvoice document) {
+        try {
+            return transmitter.transmit(document);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error enviando la factura " + document.getNumber(), e);
+        }
+    }
+
+}
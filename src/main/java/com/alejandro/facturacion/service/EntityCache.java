@@ -0,0 +1,339 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.CacheProperties;
+import com.alejandro.facturacion.dto.CacheInvalidation;
+import com.alejandro.facturacion.dto.CacheRegion;
+import com.alejandro.facturacion.dto.CacheStats;
+import com.alejandro.facturacion.entity.Client;
+import com.alejandro.facturacion.entity.Invoice;
+import com.alejandro.facturacion.entity.InvoiceItem;
+import com.alejandro.facturacion.entity.Product;
+import com.alejandro.facturacion.event.ClientsChangedEvent;
+import com.alejandro.facturacion.event.InvoicesChangedEvent;
+import com.alejandro.facturacion.event.ProductsChangedEvent;
+import com.alejandro.facturacion.event.StockChangedEvent;
+import jakarta.annotation.PostConstruct;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Caché en memoria de clientes, productos y facturas, coherente entre instancias.
+ *
+ * <p>Cada cambio confirmado invalida la entrada en esta instancia y se envía a las demás por el
+ * {@link CacheInvalidationBus} configurado. La antigüedad de lo que se sirve está acotada:
+ * <ul>
+ *   <li>ninguna entrada se usa más allá de {@code facturacion.cache.ttl};</li>
+ *   <li>si el bus lleva más de {@code facturacion.cache.max-staleness} sin confirmar que ha recibido
+ *       todo lo de las demás instancias, las lecturas van a la base de datos;</li>
+ *   <li>una lectura que coincide con una invalidación de su región no se guarda, para no volver a
+ *       meter en la caché el valor anterior.</li>
+ * </ul>
+ *
+ * <p>La caché guarda copias desacopladas de las entidades y entrega a cada lectura otra copia: quien
+ * la recibe puede modificarla sin afectar a las demás peticiones ni a la sesión de JPA donde se
+ * cargó. Las facturas se guardan con su cliente, items y productos, y se invalidan también cuando
+ * cambia alguno de ellos o la propia factura ({@link InvoicesChangedEvent}).
+ *
+ * <p>Otros servicios pueden llevar su propia caché en una región registrada con
+ * {@link #registerRegion}: reciben sus invalidaciones y comprueban {@link #isFresh()} antes de servirla.
+ */
+@Service
+public class EntityCache {
+
+    private final CacheInvalidationBus bus;
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final long maxStalenessNanos;
+    private final Map<CacheRegion, Region> regions = new EnumMap<>(CacheRegion.class);
+    private final Map<CacheRegion, Consumer<Long>> externalRegions = new ConcurrentHashMap<>();
+    private final List<Consumer<CacheInvalidation>> remoteObservers = new CopyOnWriteArrayList<>();
+
+    public EntityCache(CacheInvalidationBus bus, CacheProperties properties) {
+        this.bus = bus;
+        this.enabled = properties.isEnabled();
+        this.ttlNanos = properties.getTtl().toNanos();
+        this.maxStalenessNanos = properties.getMaxStaleness().toNanos();
+        regions.put(CacheRegion.CLIENT, new Region(properties.getMaxClients()));
+        regions.put(CacheRegion.PRODUCT, new Region(properties.getMaxProducts()));
+        regions.put(CacheRegion.INVOICE, new Region(properties.getMaxInvoices()));
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            bus.start(invalidation -> {
+                evict(invalidation);
+                remoteObservers.forEach(observer -> observer.accept(invalidation));
+            });
+        }
+    }
+
+    /**
+     * Registra una región cuya caché lleva otro servicio: {@code evictor} recibe las invalidaciones
+     * de esa región, propias o de otras instancias, con {@code null} para vaciarla entera.
+     */
+    public void registerRegion(CacheRegion region, Consumer<Long> evictor) {
+        if (regions.containsKey(region)) {
+            throw new IllegalArgumentException("La región " + region + " la gestiona esta caché");
+        }
+        externalRegions.put(region, evictor);
+    }
+
+    /**
+     * Registra un observador de las invalidaciones recibidas de las demás instancias (ya aplicadas
+     * a la caché), para mantener al día otras estructuras en memoria derivadas de las mismas tablas.
+     * Se llama en el hilo del bus y no debe bloquearlo.
+     */
+    public void addRemoteObserver(Consumer<CacheInvalidation> observer) {
+        remoteObservers.add(observer);
+    }
+
+    /**
+     * Indica si se puede servir lo cacheado: la caché está activa y el bus está al día con las
+     * invalidaciones de las demás instancias.
+     */
+    public boolean isFresh() {
+        return enabled && bus.lagNanos() <= maxStalenessNanos;
+    }
+
+    /** Antigüedad máxima de una entrada, en nanosegundos. */
+    public long getTtlNanos() {
+        return ttlNanos;
+    }
+
+    /**
+     * Devuelve una copia de la entidad de la caché o, si no está, la carga con {@code loader} y
+     * guarda una copia.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> get(CacheRegion region, Long id, Supplier<Optional<T>> loader) {
+        if (!enabled || id == null) {
+            return loader.get();
+        }
+        Region cache = regions.get(region);
+        if (bus.lagNanos() > maxStalenessNanos) {
+            cache.bypassed.incrementAndGet();
+            return loader.get();
+        }
+        Object cached = cache.get(id, System.nanoTime() - ttlNanos);
+        if (cached != null) {
+            cache.hits.incrementAndGet();
+            return Optional.of((T) copy(cached));
+        }
+        cache.misses.incrementAndGet();
+        long version = cache.version.get();
+        long loadedAt = System.nanoTime();
+        Optional<T> loaded = loader.get();
+        loaded.ifPresent(value -> cache.putIfUnchanged(id, copy(value), version, loadedAt));
+        return loaded;
+    }
+
+    /**
+     * Invalida una entrada (o toda la región si {@code id} es {@code null}) en esta instancia y en las demás.
+     */
+    public void invalidate(CacheRegion region, Long id) {
+        if (!enabled) {
+            return;
+        }
+        CacheInvalidation invalidation = new CacheInvalidation(region, id);
+        evict(invalidation);
+        bus.publish(invalidation);
+    }
+
+    /** Vacía la caché en todas las instancias. */
+    public void invalidateAll() {
+        for (CacheRegion region : CacheRegion.values()) {
+            invalidate(region, null);
+        }
+    }
+
+    public List<CacheStats> getStats() {
+        List<CacheStats> stats = new ArrayList<>();
+        regions.forEach((region, cache) -> stats.add(new CacheStats(region, cache.size(), cache.hits.get(),
+                cache.misses.get(), cache.bypassed.get(), cache.invalidations.get())));
+        return stats;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onClientsChanged(ClientsChangedEvent event) {
+        invalidateEach(CacheRegion.CLIENT, event.getClientIds());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductsChanged(ProductsChangedEvent event) {
+        invalidateEach(CacheRegion.PRODUCT, event.getProductIds());
+    }
+
+    /** Los productos cacheados llevan su stock, que cambia con cada movimiento del libro. */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockChanged(StockChangedEvent event) {
+        invalidateEach(CacheRegion.PRODUCT, event.getProductIds());
+    }
+
+    /** Archivado, ingesta de nodos de borde y envíos de factura electrónica. */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInvoicesChanged(InvoicesChangedEvent event) {
+        invalidateEach(CacheRegion.INVOICE, event.getInvoiceIds());
+    }
+
+    private void invalidateEach(CacheRegion region, List<Long> ids) {
+        if (ids == null) {
+            invalidate(region, null);
+        } else {
+            ids.forEach(id -> invalidate(region, id));
+        }
+    }
+
+    /** Aplica una invalidación, propia o recibida por el bus, solo en esta instancia. */
+    private void evict(CacheInvalidation invalidation) {
+        CacheRegion region = invalidation.getRegion();
+        Long id = invalidation.getEntityId();
+        Consumer<Long> external = externalRegions.get(region);
+        if (external != null) {
+            external.accept(id);
+            return;
+        }
+        Region cache = regions.get(region);
+        if (cache == null) {
+            return;
+        }
+        cache.remove(id);
+        // Las facturas incluyen su cliente y sus productos
+        Region invoices = regions.get(CacheRegion.INVOICE);
+        if (region == CacheRegion.CLIENT) {
+            invoices.removeIf(id == null ? invoice -> true : invoice -> isOfClient((Invoice) invoice, id));
+        } else if (region == CacheRegion.PRODUCT) {
+            invoices.removeIf(id == null ? invoice -> true : invoice -> containsProduct((Invoice) invoice, id));
+        }
+    }
+
+    /**
+     * Copia desacoplada de una entidad de las regiones propias: las facturas con su cliente, sus
+     * items y sus productos (los proxies de Hibernate se sustituyen por entidades normales).
+     */
+    static Object copy(Object value) {
+        if (value instanceof Client client) {
+            return client.toBuilder().build();
+        }
+        if (value instanceof Product product) {
+            return product.toBuilder().build();
+        }
+        if (value instanceof Invoice invoice) {
+            List<InvoiceItem> items = null;
+            if (invoice.getItems() != null) {
+                items = new ArrayList<>(invoice.getItems().size());
+                for (InvoiceItem item : invoice.getItems()) {
+                    items.add(item.toBuilder()
+                            .product(item.getProduct() != null ? item.getProduct().toBuilder().build() : null)
+                            .build());
+                }
+            }
+            return invoice.toBuilder()
+                    .client(invoice.getClient() != null ? invoice.getClient().toBuilder().build() : null)
+                    .items(items)
+                    .build();
+        }
+        throw new IllegalArgumentException("Entidad no admitida en la caché: " + value.getClass().getName());
+    }
+
+    private static boolean isOfClient(Invoice invoice, Long clientId) {
+        return invoice.getClient() != null && clientId.equals(invoice.getClient().getId());
+    }
+
+    private static boolean containsProduct(Invoice invoice, Long productId) {
+        for (InvoiceItem item : invoice.getItems()) {
+            if (item.getProduct() != null && productId.equals(item.getProduct().getId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Región de la caché: LRU acotada, con la hora de carga de cada entrada y un contador de
+     * invalidaciones para descartar las lecturas que se solapan con una.
+     */
+    private static class Region {
+
+        private final LinkedHashMap<Long, Entry> entries;
+        private final AtomicLong version = new AtomicLong();
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong bypassed = new AtomicLong();
+        private final AtomicLong invalidations = new AtomicLong();
+
+        Region(int maxEntries) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+
+        synchronized Object get(Long id, long loadedAfter) {
+            Entry entry = entries.get(id);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.loadedAt - loadedAfter < 0) {
+                entries.remove(id);
+                return null;
+            }
+            return entry.value;
+        }
+
+        synchronized void putIfUnchanged(Long id, Object value, long expectedVersion, long loadedAt) {
+            if (version.get() == expectedVersion) {
+                entries.put(id, new Entry(value, loadedAt));
+            }
+        }
+
+        synchronized void remove(Long id) {
+            version.incrementAndGet();
+            invalidations.incrementAndGet();
+            if (id == null) {
+                entries.clear();
+            } else {
+                entries.remove(id);
+            }
+        }
+
+        synchronized void removeIf(Predicate<Object> condition) {
+            version.incrementAndGet();
+            for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+                if (condition.test(it.next().value)) {
+                    it.remove();
+                }
+            }
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    private static class Entry {
+        final Object value;
+        final long loadedAt;
+
+        Entry(Object value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.dto.RecordingInfo;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gestiona grabaciones de Java Flight Recorder de la propia JVM: las inicia con una configuración
+ * de JFR ({@code default} o {@code profile}), las detiene y vuelca su contenido a un fichero
+ * {@code .jfr} en {@code facturacion.diagnostics.jfr.directory} para descargarlo.
+ *
+ * <p>Con {@code facturacion.diagnostics.jfr.always-on} se mantiene además una grabación continua
+ * con la configuración {@code default} (sobrecarga de en torno al 1%), limitada por
+ * {@code max-age} y {@code max-size}, que se puede volcar en cualquier momento tras un incidente.
+ * Los eventos propios de la aplicación están en el paquete {@code com.alejandro.facturacion.jfr}.
+ */
+@Slf4j
+@Service
+public class FlightRecorderService {
+
+    private static final String ALWAYS_ON_NAME = "facturacion-continua";
+
+    private final boolean alwaysOn;
+    private final String defaultSettings;
+    private final Duration maxAge;
+    private final DataSize maxSize;
+    private final Path directory;
+
+    /** Grabaciones iniciadas por este servicio, por id. */
+    private final Map<Long, Recording> recordings = new ConcurrentHashMap<>();
+    private volatile Long alwaysOnId;
+
+    public FlightRecorderService(@Value("${facturacion.diagnostics.jfr.always-on:false}") boolean alwaysOn,
+                                 @Value("${facturacion.diagnostics.jfr.settings:default}") String defaultSettings,
+                                 @Value("${facturacion.diagnostics.jfr.max-age:PT1H}") Duration maxAge,
+                                 @Value("${facturacion.diagnostics.jfr.max-size:250MB}") DataSize maxSize,
+                                 @Value("${facturacion.diagnostics.jfr.directory:./data/jfr}") Path directory) {
+        this.alwaysOn = alwaysOn;
+        this.defaultSettings = defaultSettings;
+        this.maxAge = maxAge;
+        this.maxSize = maxSize;
+        this.directory = directory;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startAlwaysOn() {
+        if (!alwaysOn || !FlightRecorder.isAvailable()) {
+            return;
+        }
+        RecordingInfo info = start(ALWAYS_ON_NAME, "default", null);
+        alwaysOnId = info.getId();
+        log.info("Grabación JFR continua iniciada (id {}, max-age {}, max-size {})", info.getId(), maxAge, maxSize);
+    }
+
+    /**
+     * Inicia una grabación.
+     * @param name Nombre de la grabación
+     * @param settings Configuración de JFR (default o profile); null para la de la aplicación
+     * @param duration Duración tras la que se detiene sola; null para grabar hasta detenerla
+     * @throws IllegalArgumentException si la configuración no existe o JFR no está disponible
+     */
+    public RecordingInfo start(String name, String settings, Duration duration) {
+        if (!FlightRecorder.isAvailable()) {
+            throw new IllegalArgumentException("Java Flight Recorder no está disponible en esta JVM");
+        }
+        if (duration != null && (duration.isNegative() || duration.isZero())) {
+            throw new IllegalArgumentException("La duración debe ser positiva");
+        }
+        Recording recording = new Recording(loadConfiguration(settings != null ? settings : defaultSettings));
+        recording.setName(name != null && !name.isBlank() ? name : "facturacion");
+        recording.setToDisk(true);
+        recording.setMaxAge(maxAge);
+        recording.setMaxSize(maxSize.toBytes());
+        if (duration != null) {
+            recording.setDuration(duration);
+        }
+        recording.start();
+        recordings.put(recording.getId(), recording);
+        log.info("Grabación JFR {} iniciada ({})", recording.getId(), recording.getName());
+        return toInfo(recording);
+    }
+
+    public List<RecordingInfo> getRecordings() {
+        return recordings.values().stream()
+                .sorted(Comparator.comparingLong(Recording::getId))
+                .map(this::toInfo)
+                .toList();
+    }
+
+    public Optional<RecordingInfo> getRecording(long id) {
+        return Optional.ofNullable(recordings.get(id)).map(this::toInfo);
+    }
+
+    /**
+     * Detiene una grabación; sus datos se pueden seguir descargando hasta eliminarla.
+     * @throws IllegalStateException si la grabación no está en curso
+     */
+    public Optional<RecordingInfo> stop(long id) {
+        Recording recording = recordings.get(id);
+        if (recording == null) {
+            return Optional.empty();
+        }
+        if (recording.getState() != RecordingState.RUNNING) {
+            throw new IllegalStateException("La grabación " + id + " no está en curso (" + recording.getState() + ")");
+        }
+        recording.stop();
+        log.info("Grabación JFR {} detenida", id);
+        return Optional.of(toInfo(recording));
+    }
+
+    /**
+     * Vuelca el contenido actual de la grabación (en curso o detenida) a un fichero .jfr.
+     * @return Ruta del fichero, o vacío si la grabación no existe
+     */
+    public Optional<Path> dump(long id) {
+        Recording recording = recordings.get(id);
+        if (recording == null) {
+            return Optional.empty();
+        }
+        if (recording.getState() != RecordingState.RUNNING && recording.getState() != RecordingState.STOPPED) {
+            throw new IllegalStateException("La grabación " + id + " no tiene datos (" + recording.getState() + ")");
+        }
+        try {
+            Files.createDirectories(directory);
+            Path file = directory.resolve("recording-" + id + ".jfr");
+            recording.dump(file);
+            return Optional.of(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo volcar la grabación " + id, e);
+        }
+    }
+
+    /**
+     * Cierra la grabación y borra sus datos y su último volcado.
+     */
+    public boolean close(long id) {
+        Recording recording = recordings.remove(id);
+        if (recording == null) {
+            return false;
+        }
+        recording.close();
+        if (Long.valueOf(id).equals(alwaysOnId)) {
+            alwaysOnId = null;
+        }
+        try {
+            Files.deleteIfExists(directory.resolve("recording-" + id + ".jfr"));
+        } catch (IOException e) {
+            log.warn("No se pudo borrar el volcado de la grabación {}", id, e);
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        recordings.values().forEach(Recording::close);
+        recordings.clear();
+    }
+
+    private Configuration loadConfiguration(String settings) {
+        return Configuration.getConfigurations().stream()
+                .filter(configuration -> configuration.getName().equals(settings))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Configuración de JFR desconocida: " + settings
+                        + " (disponibles: " + Configuration.getConfigurations().stream().map(Configuration::getName).toList() + ")"));
+    }
+
+    private RecordingInfo toInfo(Recording recording) {
+        return new RecordingInfo(recording.getId(), recording.getName(), recording.getState().name(),
+                recording.getStartTime(), recording.getStopTime(), recording.getDuration(), recording.getMaxAge(),
+                recording.getSize(), Long.valueOf(recording.getId()).equals(alwaysOnId));
+    }
+}
@@ -0,0 +1,631 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.dto.ImportFormat;
+import com.alejandro.facturacion.dto.ImportReport;
+import com.alejandro.facturacion.event.ClientsChangedEvent;
+import com.alejandro.facturacion.event.ProductsChangedEvent;
+import com.alejandro.facturacion.utils.CsvReader;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Importación masiva de clientes y productos desde CSV o NDJSON.
+ *
+ * <p>El fichero se procesa en streaming, por lotes de {@code facturacion.import.batch-size} filas.
+ * Para cada lote, los filtros de {@link DuplicateIndex} descartan en memoria las claves que
+ * seguro no existen; solo las posibles coincidencias se confirman con una consulta {@code IN}.
+ * Después las altas y las actualizaciones se escriben con JDBC por lotes en una única transacción.
+ * Si el lote falla (por ejemplo, una clave insertada a la vez por otra petición), se reintenta
+ * fila a fila para informar del error exacto sin perder el resto.
+ *
+ * <p>Semántica de actualización: los clientes se identifican por email y los productos por
+ * nombre. Una fila cuya clave ya existe actualiza el registro; en productos, los campos
+ * opcionales ausentes conservan su valor. El stock no se escribe en el producto: las altas lo
+ * registran como movimiento inicial y las actualizaciones como ajuste en el libro de stock
+ * ({@link StockLedgerService}). Los cambios de precio se anotan en {@link ProductPriceHistory}
+ * dentro de la transacción del lote.
+ */
+@Slf4j
+@Service
+public class ImportService {
+
+    private static final int MAX_TEXT_LENGTH = 255;
+    private static final int MAX_DESCRIPTION_LENGTH = 500;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final DuplicateIndex duplicateIndex;
+    private final MoneyService moneyService;
+    private final StockLedgerService stockLedger;
+    private final ProductPriceHistory priceHistory;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectReader jsonReader;
+    private final int batchSize;
+    private final int maxReportedErrors;
+
+    public ImportService(NamedParameterJdbcTemplate jdbcTemplate,
+                         TransactionTemplate transactionTemplate,
+                         DuplicateIndex duplicateIndex,
+                         MoneyService moneyService,
+                         StockLedgerService stockLedger,
+                         ProductPriceHistory priceHistory,
+                         ApplicationEventPublisher eventPublisher,
+                         ObjectMapper objectMapper,
+                         @Value("${facturacion.import.batch-size:1000}") int batchSize,
+                         @Value("${facturacion.import.max-reported-errors:1000}") int maxReportedErrors) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.duplicateIndex = duplicateIndex;
+        this.moneyService = moneyService;
+        this.stockLedger = stockLedger;
+        this.priceHistory = priceHistory;
+        this.eventPublisher = eventPublisher;
+        this.jsonReader = objectMapper.reader().with(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+        this.batchSize = batchSize;
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    /**
+     * Importa clientes. Columnas: {@code name}, {@code email}, {@code identificationNumber}
+     * (también {@code identification_number}).
+     */
+    public ImportReport importClients(InputStream input, ImportFormat format, char separator) throws IOException {
+        ImportReport report = new ImportReport();
+        long start = System.currentTimeMillis();
+        ClientChunk chunk = new ClientChunk(report);
+        readRows(input, format, separator, report, chunk::add);
+        chunk.flush();
+        if (report.getUpdated() > 0) {
+            eventPublisher.publishEvent(ClientsChangedEvent.all());
+        }
+        report.setDurationMillis(System.currentTimeMillis() - start);
+        log.info("Importación de clientes: {} filas, {} altas, {} actualizaciones, {} errores en {} ms",
+                report.getProcessed(), report.getInserted(), report.getUpdated(), report.getFailed(),
+                report.getDurationMillis());
+        return report;
+    }
+
+    /**
+     * Importa productos. Columnas: {@code name}, {@code price} (obligatorias), {@code description},
+     * {@code taxRate}, {@code stock}, {@code category}.
+     */
+    public ImportReport importProducts(InputStream input, ImportFormat format, char separator) throws IOException {
+        ImportReport report = new ImportReport();
+        long start = System.currentTimeMillis();
+        ProductChunk chunk = new ProductChunk(report);
+        readRows(input, format, separator, report, chunk::add);
+        chunk.flush();
+        if (report.getInserted() + report.getUpdated() > 0) {
+            eventPublisher.publishEvent(ProductsChangedEvent.all());
+        }
+        report.setDurationMillis(System.currentTimeMillis() - start);
+        log.info("Importación de productos: {} filas, {} altas, {} actualizaciones, {} errores en {} ms",
+                report.getProcessed(), report.getInserted(), report.getUpdated(), report.getFailed(),
+                report.getDurationMillis());
+        return report;
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Lectura
+    // ---------------------------------------------------------------------------------------
+
+    private void readRows(InputStream input, ImportFormat format, char separator,
+                          ImportReport report, Consumer<Row> consumer) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), 64 * 1024);
+        if (format == ImportFormat.NDJSON) {
+            readNdjson(reader, report, consumer);
+        } else {
+            readCsv(reader, separator, report, consumer);
+        }
+    }
+
+    private void readCsv(BufferedReader reader, char separator, ImportReport report,
+                         Consumer<Row> consumer) throws IOException {
+        CsvReader csv = new CsvReader(reader, separator);
+        List<String> header = csv.next();
+        if (header == null) {
+            return;
+        }
+        List<String> columns = new ArrayList<>(header.size());
+        for (String column : header) {
+            columns.add(normalizeColumn(column.replace("\uFEFF", "")));
+        }
+
+        while (true) {
+            List<String> values;
+            try {
+                values = csv.next();
+            } catch (IOException e) {
+                // Formato irrecuperable (comillas sin cerrar): se informa y se conserva lo ya importado
+                report.setProcessed(report.getProcessed() + 1);
+                addError(report, csv.getRecordLine(), null, e.getMessage());
+                return;
+            }
+            if (values == null) {
+                return;
+            }
+            report.setProcessed(report.getProcessed() + 1);
+            if (values.size() != columns.size()) {
+                addError(report, csv.getRecordLine(), null,
+                        "Se esperaban " + columns.size() + " columnas y hay " + values.size());
+                continue;
+            }
+            Map<String, String> fields = new HashMap<>();
+            for (int i = 0; i < columns.size(); i++) {
+                String value = values.get(i).trim();
+                fields.put(columns.get(i), value.isEmpty() ? null : value);
+            }
+            consumer.accept(new Row(csv.getRecordLine(), fields));
+        }
+    }
+
+    private void readNdjson(BufferedReader reader, ImportReport report, Consumer<Row> consumer) throws IOException {
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            report.setProcessed(report.getProcessed() + 1);
+            JsonNode node;
+            try {
+                node = jsonReader.readTree(line);
+            } catch (JsonProcessingException e) {
+                addError(report, lineNumber, null, "JSON inválido: " + e.getOriginalMessage());
+                continue;
+            }
+            if (node == null || !node.isObject()) {
+                addError(report, lineNumber, null, "Se esperaba un objeto JSON");
+                continue;
+            }
+            Map<String, String> fields = new HashMap<>();
+            Iterator<Map.Entry<String, JsonNode>> entries = node.fields();
+            while (entries.hasNext()) {
+                Map.Entry<String, JsonNode> entry = entries.next();
+                JsonNode value = entry.getValue();
+                String text = value.isNull() ? null : value.isNumber() ? value.decimalValue().toPlainString() : value.asText().trim();
+                fields.put(normalizeColumn(entry.getKey()), text == null || text.isEmpty() ? null : text);
+            }
+            consumer.accept(new Row(lineNumber, fields));
+        }
+    }
+
+    /** {@code identificationNumber}, {@code identification_number} e {@code Identification Number} son la misma columna. */
+    private static String normalizeColumn(String column) {
+        return column.trim().toLowerCase(Locale.ROOT).replace("_", "").replace("-", "").replace(" ", "");
+    }
+
+    private static String key(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    private void addError(ImportReport report, long line, String key, String message) {
+        report.setFailed(report.getFailed() + 1);
+        if (report.getErrors().size() < maxReportedErrors) {
+            report.getErrors().add(new ImportReport.RowError(line, key, message));
+        } else {
+            report.setErrorsTruncated(true);
+        }
+    }
+
+    private static String rootMessage(Exception e) {
+        Throwable cause = NestedExceptionUtils.getMostSpecificCause(e);
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static final class Row {
+        private final long line;
+        private final Map<String, String> fields;
+
+        String get(String column) {
+            return fields.get(column);
+        }
+    }
+
+    /** Filas de un lote ya escritas, a aplicar en el reporte solo si la transacción confirma. */
+    private static final class ChunkResult {
+        private final List<Object[]> inserted = new ArrayList<>();
+        private int updated;
+        private final List<ImportReport.RowError> errors = new ArrayList<>();
+    }
+
+    /**
+     * Lote de filas pendientes de escribir. Una clave repetida dentro del lote lo vacía antes,
+     * para que la fila posterior se procese como actualización de la anterior.
+     */
+    private abstract class Chunk<T> {
+
+        protected final ImportReport report;
+        private final List<T> rows = new ArrayList<>();
+        private final Set<String> keys = new HashSet<>();
+
+        private Chunk(ImportReport report) {
+            this.report = report;
+        }
+
+        void add(Row row) {
+            T parsed;
+            try {
+                parsed = parse(row);
+            } catch (IllegalArgumentException e) {
+                addError(report, row.getLine(), row.get(keyColumn()), e.getMessage());
+                return;
+            }
+            List<String> rowKeys = keysOf(parsed);
+            if (rowKeys.stream().anyMatch(keys::contains)) {
+                flush();
+            }
+            rows.add(parsed);
+            keys.addAll(rowKeys);
+            if (rows.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (rows.isEmpty()) {
+                return;
+            }
+            List<T> pending = new ArrayList<>(rows);
+            rows.clear();
+            keys.clear();
+            try {
+                apply(transactionTemplate.execute(status -> write(pending)));
+            } catch (DataAccessException e) {
+                log.debug("Lote de importación rechazado; se reintenta fila a fila", e);
+                for (T row : pending) {
+                    try {
+                        apply(transactionTemplate.execute(status -> write(List.of(row))));
+                    } catch (DataAccessException rowError) {
+                        addError(report, lineOf(row), displayKey(row), rootMessage(rowError));
+                    }
+                }
+            }
+        }
+
+        private void apply(ChunkResult result) {
+            report.setInserted(report.getInserted() + result.inserted.size());
+            report.setUpdated(report.getUpdated() + result.updated);
+            result.errors.forEach(error -> addError(report, error.getLine(), error.getKey(), error.getMessage()));
+            result.inserted.forEach(this::registerInserted);
+        }
+
+        abstract String keyColumn();
+
+        abstract T parse(Row row);
+
+        abstract List<String> keysOf(T row);
+
+        abstract long lineOf(T row);
+
+        abstract String displayKey(T row);
+
+        abstract ChunkResult write(List<T> rows);
+
+        abstract void registerInserted(Object[] insertArgs);
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Clientes
+    // ---------------------------------------------------------------------------------------
+
+    @Getter
+    @AllArgsConstructor
+    private static final class ClientRow {
+        private final long line;
+        private final String name;
+        private final String email;
+        private final String identificationNumber;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static final class ExistingClient {
+        private final long id;
+        private final String email;
+        private final String identificationNumber;
+    }
+
+    private final class ClientChunk extends Chunk<ClientRow> {
+
+        private ClientChunk(ImportReport report) {
+            super(report);
+        }
+
+        @Override
+        String keyColumn() {
+            return "email";
+        }
+
+        @Override
+        ClientRow parse(Row row) {
+            String name = required(row, "name");
+            String email = required(row, "email");
+            String identification = required(row, "identificationnumber");
+            if (email.indexOf('@') <= 0) {
+                throw new IllegalArgumentException("Email inválido");
+            }
+            return new ClientRow(row.getLine(), name, email, identification);
+        }
+
+        @Override
+        List<String> keysOf(ClientRow row) {
+            return List.of("email:" + key(row.getEmail()), "id:" + key(row.getIdentificationNumber()));
+        }
+
+        @Override
+        long lineOf(ClientRow row) {
+            return row.getLine();
+        }
+
+        @Override
+        String displayKey(ClientRow row) {
+            return row.getEmail();
+        }
+
+        @Override
+        ChunkResult write(List<ClientRow> rows) {
+            // Solo las posibles coincidencias del filtro se consultan en la base de datos
+            Set<String> candidateEmails = new HashSet<>();
+            Set<String> candidateIdentifications = new HashSet<>();
+            for (ClientRow row : rows) {
+                if (duplicateIndex.mightContainClientEmail(row.getEmail())) {
+                    candidateEmails.add(row.getEmail());
+                }
+                if (duplicateIndex.mightContainClientIdentification(row.getIdentificationNumber())) {
+                    candidateIdentifications.add(row.getIdentificationNumber());
+                }
+            }
+            Map<String, ExistingClient> byEmail = new HashMap<>();
+            Map<String, ExistingClient> byIdentification = new HashMap<>();
+            if (!candidateEmails.isEmpty()) {
+                findClients("email IN (:values)", candidateEmails)
+                        .forEach(client -> byEmail.put(key(client.getEmail()), client));
+            }
+            if (!candidateIdentifications.isEmpty()) {
+                findClients("identification_number IN (:values)", candidateIdentifications)
+                        .forEach(client -> byIdentification.put(key(client.getIdentificationNumber()), client));
+            }
+
+            ChunkResult result = new ChunkResult();
+            List<Object[]> updates = new ArrayList<>();
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            for (ClientRow row : rows) {
+                ExistingClient existing = byEmail.get(key(row.getEmail()));
+                ExistingClient owner = byIdentification.get(key(row.getIdentificationNumber()));
+                if (owner != null && (existing == null || owner.getId() != existing.getId())) {
+                    result.errors.add(new ImportReport.RowError(row.getLine(), row.getEmail(),
+                            "El número de identificación ya pertenece al cliente " + owner.getEmail()));
+                } else if (existing != null) {
+                    updates.add(new Object[]{row.getName(), row.getIdentificationNumber(), existing.getId()});
+                } else {
+                    result.inserted.add(new Object[]{row.getName(), row.getEmail(), row.getIdentificationNumber(), now});
+                }
+            }
+
+            if (!result.inserted.isEmpty()) {
+                jdbcTemplate.getJdbcTemplate().batchUpdate(
+                        "INSERT INTO clients (name, email, identification_number, created_at) VALUES (?, ?, ?, ?)",
+                        result.inserted);
+            }
+            if (!updates.isEmpty()) {
+                jdbcTemplate.getJdbcTemplate().batchUpdate(
+                        "UPDATE clients SET name = ?, identification_number = ? WHERE id = ?", updates);
+                result.updated = updates.size();
+            }
+            return result;
+        }
+
+        @Override
+        void registerInserted(Object[] args) {
+            duplicateIndex.addClient((String) args[1], (String) args[2]);
+        }
+
+        private List<ExistingClient> findClients(String condition, Set<String> values) {
+            return jdbcTemplate.query("SELECT id, email, identification_number FROM clients WHERE " + condition,
+                    Map.of("values", values),
+                    (rs, rowNum) -> new ExistingClient(rs.getLong(1), rs.getString(2), rs.getString(3)));
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Productos
+    // ---------------------------------------------------------------------------------------
+
+    @Getter
+    @AllArgsConstructor
+    private static final class ProductRow {
+        private final long line;
+        private final String name;
+        private final String description;
+        private final BigDecimal price;
+        private final BigDecimal taxRate;
+        private final Integer stock;
+        private final String category;
+    }
+
+    private final class ProductChunk extends Chunk<ProductRow> {
+
+        private ProductChunk(ImportReport report) {
+            super(report);
+        }
+
+        @Override
+        String keyColumn() {
+            return "name";
+        }
+
+        @Override
+        ProductRow parse(Row row) {
+            String name = required(row, "name");
+            String description = row.get("description");
+            if (description != null && description.length() > MAX_DESCRIPTION_LENGTH) {
+                throw new IllegalArgumentException("description supera " + MAX_DESCRIPTION_LENGTH + " caracteres");
+            }
+            BigDecimal price = decimal(row, "price");
+            if (price == null) {
+                throw new IllegalArgumentException("price es obligatorio");
+            }
+            BigDecimal taxRate = decimal(row, "taxrate");
+            if (taxRate != null && (taxRate.signum() < 0 || taxRate.compareTo(BigDecimal.valueOf(100)) > 0)) {
+                throw new IllegalArgumentException("taxRate debe estar entre 0 y 100");
+            }
+            Integer stock = null;
+            if (row.get("stock") != null) {
+                try {
+                    stock = Integer.valueOf(row.get("stock"));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("stock no es un entero: " + row.get("stock"));
+                }
+                if (stock < 0) {
+                    throw new IllegalArgumentException("stock no puede ser negativo: " + stock);
+                }
+            }
+            return new ProductRow(row.getLine(), name, description,
+                    moneyService.toDecimal(moneyService.toMinor(price)), taxRate, stock,
+                    optional(row, "category"));
+        }
+
+        @Override
+        List<String> keysOf(ProductRow row) {
+            return List.of(key(row.getName()));
+        }
+
+        @Override
+        long lineOf(ProductRow row) {
+            return row.getLine();
+        }
+
+        @Override
+        String displayKey(ProductRow row) {
+            return row.getName();
+        }
+
+        @Override
+        ChunkResult write(List<ProductRow> rows) {
+            Set<String> candidates = new HashSet<>();
+            for (ProductRow row : rows) {
+                if (duplicateIndex.mightContainProductName(row.getName())) {
+                    candidates.add(row.getName());
+                }
+            }
+            // El nombre no es único en la tabla: se actualizan todos los productos con ese nombre
+            Map<String, List<Long>> idsByName = new HashMap<>();
+            if (!candidates.isEmpty()) {
+                jdbcTemplate.query("SELECT id, name FROM products WHERE name IN (:names)",
+                        Map.of("names", candidates),
+                        rs -> {
+                            idsByName.computeIfAbsent(key(rs.getString(2)), n -> new ArrayList<>()).add(rs.getLong(1));
+                        });
+            }
+
+            ChunkResult result = new ChunkResult();
+            List<Object[]> updates = new ArrayList<>();
+            Map<Long, Integer> stockTargets = new HashMap<>();
+            for (ProductRow row : rows) {
+                List<Long> ids = idsByName.get(key(row.getName()));
+                if (ids == null) {
+                    result.inserted.add(new Object[]{row.getName(), row.getDescription(), row.getPrice(),
+                            row.getTaxRate(), row.getStock() != null ? row.getStock() : 0, row.getCategory()});
+                } else {
+                    for (Long id : ids) {
+                        updates.add(new Object[]{row.getDescription(), row.getPrice(), row.getTaxRate(),
+                                row.getCategory(), id});
+                        if (row.getStock() != null) {
+                            stockTargets.put(id, row.getStock());
+                        }
+                    }
+                    result.updated++;
+                }
+            }
+
+            if (!result.inserted.isEmpty()) {
+                jdbcTemplate.getJdbcTemplate().batchUpdate(
+                        "INSERT INTO products (name, description, price, tax_rate, stock, category) VALUES (?, ?, ?, ?, ?, ?)",
+                        result.inserted);
+                // Estos nombres no existían antes del lote, así que todos sus productos son altas de ahora
+                List<String> names = result.inserted.stream().map(args -> (String) args[0]).distinct().toList();
+                List<Long> insertedIds = jdbcTemplate.queryForList(
+                        "SELECT id FROM products WHERE name IN (:names)", Map.of("names", names), Long.class);
+                stockLedger.recordInitialStock(insertedIds);
+                priceHistory.recordChanges(insertedIds);
+            }
+            if (!updates.isEmpty()) {
+                jdbcTemplate.getJdbcTemplate().batchUpdate(
+                        "UPDATE products SET description = COALESCE(?, description), price = ?, "
+                                + "tax_rate = COALESCE(?, tax_rate), category = COALESCE(?, category) WHERE id = ?",
+                        updates);
+                stockLedger.adjustTo(stockTargets, "Importación de productos");
+                priceHistory.recordChanges(updates.stream().map(args -> (Long) args[4]).toList());
+            }
+            return result;
+        }
+
+        @Override
+        void registerInserted(Object[] args) {
+            duplicateIndex.addProduct((String) args[0]);
+        }
+    }
+
+    private static String required(Row row, String column) {
+        String value = optional(row, column);
+        if (value == null) {
+            throw new IllegalArgumentException(column + " es obligatorio");
+        }
+        return value;
+    }
+
+    private static String optional(Row row, String column) {
+        String value = row.get(column);
+        if (value != null && value.length() > MAX_TEXT_LENGTH) {
+            throw new IllegalArgumentException(column + " supera " + MAX_TEXT_LENGTH + " caracteres");
+        }
+        return value;
+    }
+
+    private static BigDecimal decimal(Row row, String column) {
+        String value = row.get(column);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return new BigDecimal(value.replace(',', '.'));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(column + " no es un número: " + value);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.ShardRoutingDataSource;
+import com.alejandro.facturacion.dto.ArchivedInvoice;
+import com.alejandro.facturacion.dto.InvoiceNumber;
+import com.alejandro.facturacion.entity.Invoice;
+import com.alejandro.facturacion.event.InvoicesArchivedEvent;
+import com.alejandro.facturacion.event.InvoicesChangedEvent;
+import com.alejandro.facturacion.repository.InvoiceArchiveRepository;
+import com.alejandro.facturacion.repository.InvoiceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Mueve al archivo frío ({@link InvoiceArchiveRepository}) las facturas más antiguas que
+ * {@code facturacion.archive.max-age}, liberando las tablas {@code invoices} e {@code invoice_items}.
+ *
+ * <p>Cada lote se escribe y sincroniza en disco antes de borrarse de la base de datos, por lo
+ * que un fallo intermedio nunca pierde facturas. Si la transacción del borrado no se confirma,
+ * los bloques escritos se anulan en el archivo; si el proceso cae antes, las facturas quedan en
+ * ambos sitios hasta el siguiente archivado, que las borra de la base de datos sin volver a
+ * escribirlas (el archivo omite los IDs que ya tiene). Las lecturas por ID priorizan la copia de
+ * la base de datos.
+ *
+ * <p>Nunca se archivan facturas cuyo número pertenece a un bloque de numeración no cerrado: los
+ * números libres de esos bloques se recalculan a partir de las facturas guardadas. Con sharding se
+ * archiva shard a shard; los bloques solo existen en el shard principal, así que en los demás los
+ * números se comprueban allí ({@link InvoiceNumberingService#inOpenBlocks}) antes de borrar.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "facturacion.archive.enabled", havingValue = "true")
+public class InvoiceArchiveService {
+
+    private final InvoiceRepository invoiceRepository;
+    private final InvoiceArchiveRepository archiveRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final InvoiceNumberingService numberingService;
+    private final ShardRouter shardRouter;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Duration maxAge;
+    private final int batchSize;
+
+    public InvoiceArchiveService(InvoiceRepository invoiceRepository,
+                                 InvoiceArchiveRepository archiveRepository,
+                                 TransactionTemplate transactionTemplate,
+                                 InvoiceNumberingService numberingService,
+                                 ShardRouter shardRouter,
+                                 ApplicationEventPublisher eventPublisher,
+                                 @Value("${facturacion.archive.max-age:P730D}") Duration maxAge,
+                                 @Value("${facturacion.archive.batch-size:500}") int batchSize) {
+        this.invoiceRepository = invoiceRepository;
+        this.archiveRepository = archiveRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.numberingService = numberingService;
+        this.shardRouter = shardRouter;
+        this.eventPublisher = eventPublisher;
+        this.maxAge = maxAge;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Archiva por lotes todas las facturas anteriores a la fecha de corte.
+     *
+     * @return número de facturas archivadas
+     */
+    @Scheduled(cron = "${facturacion.archive.cron:0 30 2 * * *}")
+    public synchronized int archiveOldInvoices() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(maxAge);
+        int archived = 0;
+        for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+            int current = shard;
+            // Facturas de otros shards con el número en un bloque abierto; se reintentan en la siguiente ejecución
+            Set<Long> skipped = new HashSet<>();
+            Batch batch;
+            do {
+                batch = shardRouter.onShard(current,
+                        () -> transactionTemplate.execute(status -> archiveBatch(cutoff, current, skipped)));
+                archived += batch.archived();
+            } while (batch.reviewed() > 0);
+        }
+
+        if (archived > 0) {
+            log.info("{} facturas anteriores a {} movidas al archivo", archived, cutoff);
+        }
+        return archived;
+    }
+
+    /**
+     * Archiva un lote del shard actual.
+     *
+     * @return facturas revisadas (ninguna si no quedan candidatas) y archivadas
+     */
+    private Batch archiveBatch(LocalDateTime cutoff, int shard, Set<Long> skipped) {
+        PageRequest page = PageRequest.of(0, batchSize);
+        List<Long> ids = shard == ShardRoutingDataSource.HOME_SHARD
+                ? invoiceRepository.findIdsCreatedBefore(cutoff, page)
+                : invoiceRepository.findIdsCreatedBeforeExcluding(cutoff, skipped.isEmpty() ? Set.of(-1L) : skipped, page);
+        if (ids.isEmpty()) {
+            return new Batch(0, 0);
+        }
+        List<Invoice> invoices = invoiceRepository.findWithDetailsByIdIn(ids);
+        int candidates = invoices.size();
+        if (shard != ShardRoutingDataSource.HOME_SHARD) {
+            List<InvoiceNumber> numbers = invoices.stream()
+                    .filter(invoice -> invoice.getSeriesPrefix() != null && invoice.getNumber() != null)
+                    .map(invoice -> new InvoiceNumber(invoice.getSeriesPrefix(), invoice.getNumber()))
+                    .toList();
+            Set<InvoiceNumber> open = numberingService.inOpenBlocks(numbers);
+            if (!open.isEmpty()) {
+                invoices = new ArrayList<>(invoices);
+                invoices.removeIf(invoice -> invoice.getSeriesPrefix() != null && invoice.getNumber() != null
+                        && open.contains(new InvoiceNumber(invoice.getSeriesPrefix(), invoice.getNumber()))
+                        && skipped.add(invoice.getId()));
+            }
+            if (invoices.isEmpty()) {
+                return new Batch(candidates, 0);
+            }
+        }
+        List<Long> archivedIds = invoices.stream().map(Invoice::getId).toList();
+
+        // Un bloque por mes: los agregados del índice alimentan directamente el reporte mensual
+        Map<YearMonth, List<ArchivedInvoice>> byMonth = new TreeMap<>();
+        for (Invoice invoice : invoices) {
+            byMonth.computeIfAbsent(YearMonth.from(invoice.getCreatedAt()), m -> new ArrayList<>())
+                    .add(ArchivedInvoice.from(invoice));
+        }
+        List<InvoiceArchiveRepository.BlockIndexEntry> written = new ArrayList<>();
+        byMonth.forEach((month, archived) -> {
+            InvoiceArchiveRepository.BlockIndexEntry entry = archiveRepository.append(month, archived);
+            if (entry != null) {
+                written.add(entry);
+            }
+        });
+        if (!written.isEmpty()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        written.forEach(archiveRepository::discard);
+                    }
+                }
+            });
+        }
+
+        invoiceRepository.deleteAll(invoices);
+        eventPublisher.publishEvent(new InvoicesChangedEvent(archivedIds));
+        eventPublisher.publishEvent(new InvoicesArchivedEvent(archivedIds));
+        return new Batch(candidates, invoices.size());
+    }
+
+    private record Batch(int reviewed, int archived) {
+    }
+}
@@ -0,0 +1,786 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.ShardRoutingDataSource;
+import com.alejandro.facturacion.dto.EdgeNumberBlock;
+import com.alejandro.facturacion.dto.InvoiceNumber;
+import com.alejandro.facturacion.entity.InvoiceSeries;
+import com.alejandro.facturacion.entity.NumberBlockStatus;
+import com.alejandro.facturacion.event.InvoiceSeriesChangedEvent;
+import com.alejandro.facturacion.repository.InvoiceSeriesRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asigna números legales consecutivos por serie sin serializar la creación de facturas.
+ *
+ * <p>Cada nodo reserva bloques de números ({@code block_size} de la serie) con una transacción
+ * corta sobre un pool de conexiones propio ({@code facturacion.numbering.pool-size}); dentro del bloque los números se reparten con un contador atómico en
+ * memoria. La reserva se persiste en {@code invoice_number_blocks} con una concesión que el nodo
+ * renueva periódicamente, así que ningún número se pierde:
+ * <ul>
+ *   <li>Si la transacción de la factura no se confirma, su número vuelve a una cola local y es
+ *       el siguiente en asignarse.</li>
+ *   <li>Al apagarse, el nodo libera sus bloques; si se cae, la concesión vence. En ambos casos el
+ *       siguiente nodo que necesite números recupera primero esos bloques y emite sus números
+ *       libres, calculados a partir de las facturas guardadas.</li>
+ *   <li>Un nodo solo emite números de un bloque mientras le quedan más de
+ *       {@code facturacion.numbering.lease-margin} de concesión, medidos con su propio reloj
+ *       monotónico desde antes de la sentencia que la obtuvo o renovó. Cerca del vencimiento la
+ *       renueva antes de emitir y, al confirmar la factura, vuelve a comprobarla: si la ha perdido
+ *       (pausa larga, base de datos inaccesible), la factura no se guarda. El margen cubre la
+ *       duración de la transacción y el desfase entre los relojes de los nodos.</li>
+ * </ul>
+ * La restricción única {@code (series_prefix, invoice_number)} es solo una red de seguridad: no
+ * existe entre shards y, con {@code invoices} particionada, la sustituye la tabla
+ * {@code invoice_numbers}.
+ *
+ * <p>Con sharding, los bloques se reservan en el shard principal y los números usados se buscan
+ * en las facturas de todos los shards.
+ *
+ * <p>Los nodos de borde reciben bloques propios ({@link NumberBlockStatus#EDGE}) que emiten sin
+ * conexión; la central los cierra cuando recibe todas sus facturas y solo los recupera si el nodo
+ * se da de baja.
+ *
+ * <p>Los números no tienen huecos permanentes, pero entre nodos no siguen el orden cronológico
+ * estricto: mientras un bloque está en uso pueden existir números posteriores ya emitidos por
+ * otro nodo.
+ */
+@Slf4j
+@Service
+public class InvoiceNumberingService {
+
+    /** Como mucho una recarga por segundo al pedir una serie desconocida. */
+    private static final long SERIES_RELOAD_MIN_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final InvoiceSeriesRepository seriesRepository;
+    private final HikariDataSource blockDataSource;
+    private final NamedParameterJdbcTemplate blockJdbc;
+    private final TransactionTemplate blockTransaction;
+    /** Con sharding, el resto de shards, donde también hay facturas numeradas. */
+    private final List<NamedParameterJdbcTemplate> otherShards = new ArrayList<>();
+    private final Duration leaseDuration;
+    private final long leaseNanos;
+    private final long leaseMarginNanos;
+    private final String nodeId;
+
+    private final Map<String, SeriesAllocator> allocators = new ConcurrentHashMap<>();
+    private volatile Map<String, InvoiceSeries> activeSeries;
+    private volatile String defaultPrefix;
+    private volatile long lastReloadNanos;
+
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "invoice-number-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public InvoiceNumberingService(InvoiceSeriesRepository seriesRepository,
+                                   DataSourceProperties dataSourceProperties,
+                                   ObjectProvider<ShardRoutingDataSource> shards,
+                                   @Value("${facturacion.numbering.pool-size:2}") int poolSize,
+                                   @Value("${facturacion.numbering.lease-duration:PT2M}") Duration leaseDuration,
+                                   @Value("${facturacion.numbering.lease-margin:PT30S}") Duration leaseMargin,
+                                   @Value("${facturacion.numbering.node-id:}") String nodeId) {
+        if (leaseMargin.compareTo(leaseDuration) >= 0) {
+            throw new IllegalStateException("facturacion.numbering.lease-margin (" + leaseMargin
+                    + ") debe ser menor que facturacion.numbering.lease-duration (" + leaseDuration + ")");
+        }
+        this.seriesRepository = seriesRepository;
+        // Pool propio: un hilo que ya tiene conexión del pool principal (la transacción de la
+        // factura) nunca espera a otra conexión de ese mismo pool para reservar un bloque
+        this.blockDataSource = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        this.blockDataSource.setPoolName("numbering");
+        this.blockDataSource.setMaximumPoolSize(poolSize);
+        this.blockDataSource.setMinimumIdle(0);
+        this.blockDataSource.setInitializationFailTimeout(-1);
+        this.blockJdbc = new NamedParameterJdbcTemplate(blockDataSource);
+        this.blockTransaction = new TransactionTemplate(new DataSourceTransactionManager(blockDataSource));
+        ShardRoutingDataSource sharded = shards.getIfAvailable();
+        if (sharded != null) {
+            for (int shard = 1; shard < sharded.getShardCount(); shard++) {
+                otherShards.add(new NamedParameterJdbcTemplate(sharded.getShard(shard)));
+            }
+        }
+        this.leaseDuration = leaseDuration;
+        this.leaseNanos = leaseDuration.toNanos();
+        this.leaseMarginNanos = leaseMargin.toNanos();
+        this.nodeId = nodeId.isBlank()
+                ? ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8)
+                : nodeId;
+    }
+
+    /**
+     * Asigna el siguiente número de la serie. Debe llamarse dentro de la transacción que guarda
+     * la factura: si esa transacción no se confirma, el número se devuelve para reutilizarse, y
+     * antes de confirmarla se comprueba que el nodo conserva la concesión del bloque.
+     *
+     * @param prefix prefijo de la serie, o {@code null} para la serie por defecto
+     * @return el número asignado, o {@code null} si no se indicó serie y no hay ninguna configurada
+     * @throws IllegalArgumentException si la serie no existe o está inactiva
+     * @throws IllegalStateException si la resolución no está vigente o el rango está agotado; al
+     *         confirmar la transacción, si se ha perdido la concesión del bloque
+     */
+    public InvoiceNumber assign(String prefix) {
+        Map<String, InvoiceSeries> series = activeSeries();
+        String key = prefix != null ? prefix : defaultPrefix;
+        if ((key == null || !series.containsKey(key)) && reloadIfStale()) {
+            // Serie creada en otro nodo después de la última recarga
+            series = activeSeries;
+            key = prefix != null ? prefix : defaultPrefix;
+        }
+        if (key == null) {
+            return null;
+        }
+        InvoiceSeries definition = series.get(key);
+        if (definition == null) {
+            throw new IllegalArgumentException("Serie de numeración no encontrada o inactiva: " + key);
+        }
+        LocalDate today = LocalDate.now();
+        if ((definition.getValidFrom() != null && today.isBefore(definition.getValidFrom()))
+                || (definition.getValidTo() != null && today.isAfter(definition.getValidTo()))) {
+            throw new IllegalStateException("La resolución de la serie " + key + " no está vigente");
+        }
+
+        SeriesAllocator allocator = allocators.computeIfAbsent(key, k -> new SeriesAllocator(definition));
+        long number = allocator.take();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    allocator.checkLease(number);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        allocator.giveBack(number);
+                    }
+                }
+            });
+        }
+        return new InvoiceNumber(key, number);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        reloadSeries();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSeriesChanged(InvoiceSeriesChangedEvent event) {
+        reloadSeries();
+    }
+
+    /**
+     * Recoge los cambios de series hechos desde otros nodos.
+     */
+    @Scheduled(fixedDelayString = "${facturacion.numbering.series-refresh-interval:PT1M}")
+    public void refreshSeries() {
+        reloadSeries();
+    }
+
+    private boolean reloadIfStale() {
+        if (System.nanoTime() - lastReloadNanos < SERIES_RELOAD_MIN_INTERVAL_NANOS) {
+            return false;
+        }
+        reloadSeries();
+        return true;
+    }
+
+    /**
+     * Recarga las series activas y la serie por defecto (la marcada, o la única activa).
+     */
+    public synchronized void reloadSeries() {
+        List<InvoiceSeries> series = seriesRepository.findByActiveTrue();
+        Map<String, InvoiceSeries> byPrefix = new ConcurrentHashMap<>();
+        String defaultSeries = null;
+        for (InvoiceSeries s : series) {
+            byPrefix.put(s.getPrefix(), s);
+            if (s.isDefaultSeries()) {
+                defaultSeries = s.getPrefix();
+            }
+        }
+        if (defaultSeries == null && series.size() == 1) {
+            defaultSeries = series.get(0).getPrefix();
+        }
+        byPrefix.forEach((prefix, s) -> {
+            SeriesAllocator allocator = allocators.get(prefix);
+            if (allocator != null) {
+                allocator.update(s);
+            }
+        });
+        activeSeries = byPrefix;
+        defaultPrefix = defaultSeries;
+        lastReloadNanos = System.nanoTime();
+    }
+
+    /**
+     * Renueva las concesiones de los bloques propios y cierra los que ya están completamente usados.
+     */
+    @Scheduled(fixedDelayString = "${facturacion.numbering.renew-interval:PT30S}")
+    public void maintainBlocks() {
+        for (SeriesAllocator allocator : allocators.values()) {
+            try {
+                allocator.renewLeases();
+                allocator.closeUsedBlocks();
+            } catch (RuntimeException e) {
+                log.warn("Error renovando los bloques de numeración de la serie {}", allocator.prefix, e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+        for (SeriesAllocator allocator : allocators.values()) {
+            try {
+                allocator.releaseAll();
+            } catch (RuntimeException e) {
+                log.warn("No se pudieron liberar los bloques de la serie {}; se recuperarán al vencer la concesión",
+                        allocator.prefix, e);
+            }
+        }
+        blockDataSource.close();
+    }
+
+    /**
+     * Concede a un nodo de borde un bloque nuevo al final de la serie. El bloque queda en estado
+     * {@link NumberBlockStatus#EDGE}: ningún nodo central lo recupera mientras el nodo de borde no
+     * se dé de baja.
+     *
+     * @throws IllegalArgumentException si la serie no existe o está inactiva
+     * @throws IllegalStateException si el rango está agotado
+     */
+    public EdgeNumberBlock grantEdgeBlock(String prefix, String edgeNode, int size) {
+        return blockTransaction.execute(status -> {
+            Long seriesId = blockJdbc.query("SELECT id FROM invoice_series WHERE prefix = :prefix AND active = TRUE",
+                    Map.of("prefix", prefix), rs -> rs.next() ? rs.getLong(1) : null);
+            if (seriesId == null) {
+                throw new IllegalArgumentException("Serie de numeración no encontrada o inactiva: " + prefix);
+            }
+            long[] block = reserveNewBlock(seriesId, prefix, size, NumberBlockStatus.EDGE, edgeNode, null);
+            log.info("Concedido el bloque {}{}-{} al nodo de borde {}", prefix, block[1], block[2], edgeNode);
+            return new EdgeNumberBlock(prefix, block[1], block[2]);
+        });
+    }
+
+    /**
+     * Bloques concedidos a un nodo de borde cuyas facturas aún no han llegado todas a la central.
+     */
+    public List<EdgeNumberBlock> getEdgeBlocks(String edgeNode) {
+        return blockJdbc.query("SELECT series_prefix, range_start, range_end FROM invoice_number_blocks "
+                        + "WHERE status = 'EDGE' AND owner_node = :node ORDER BY series_prefix, range_start",
+                Map.of("node", edgeNode),
+                (rs, i) -> new EdgeNumberBlock(rs.getString(1), rs.getLong(2), rs.getLong(3)));
+    }
+
+    /**
+     * Indica si el número pertenece a un bloque concedido al nodo de borde.
+     */
+    public boolean isEdgeNumber(String prefix, long number, String edgeNode) {
+        Long blocks = blockJdbc.queryForObject("SELECT COUNT(*) FROM invoice_number_blocks WHERE series_prefix = :prefix "
+                        + "AND owner_node = :node AND status IN ('EDGE', 'CLOSED') AND :number BETWEEN range_start AND range_end",
+                Map.of("prefix", prefix, "node", edgeNode, "number", number), Long.class);
+        return blocks != null && blocks > 0;
+    }
+
+    /**
+     * Cierra los bloques del nodo de borde cuyas facturas están ya todas en la central. Los bloques
+     * cerrados conservan el nodo, para validar los lotes que se reenvíen.
+     */
+    public void closeEdgeBlocks(String edgeNode) {
+        List<Map<String, Object>> blocks = blockJdbc.queryForList("SELECT id, series_prefix, range_start, range_end "
+                + "FROM invoice_number_blocks WHERE status = 'EDGE' AND owner_node = :node", Map.of("node", edgeNode));
+        for (Map<String, Object> block : blocks) {
+            long start = ((Number) block.get("range_start")).longValue();
+            long end = ((Number) block.get("range_end")).longValue();
+            if (countSaved((String) block.get("series_prefix"), start, end) == end - start + 1) {
+                blockJdbc.update("UPDATE invoice_number_blocks SET status = 'CLOSED' WHERE id = :id AND status = 'EDGE'",
+                        Map.of("id", block.get("id")));
+            }
+        }
+    }
+
+    /**
+     * Cierra los bloques de un nodo de borde dado de baja. Sus números sin facturas en la central no
+     * vuelven a emitirse: el nodo pudo usarlos en facturas que aún no ha enviado, y otro nodo los
+     * repetiría. Los bloques conservan el nodo, de modo que esas facturas se siguen aceptando si
+     * llegan después; los números que queden sin usar se registran en el log para anularlos.
+     *
+     * @return bloques cerrados
+     */
+    public int closeDecommissionedEdgeBlocks(String edgeNode) {
+        List<Map<String, Object>> blocks = blockJdbc.queryForList("SELECT id, series_prefix, range_start, range_end "
+                + "FROM invoice_number_blocks WHERE status = 'EDGE' AND owner_node = :node", Map.of("node", edgeNode));
+        int closed = 0;
+        for (Map<String, Object> block : blocks) {
+            String prefix = (String) block.get("series_prefix");
+            long start = ((Number) block.get("range_start")).longValue();
+            long end = ((Number) block.get("range_end")).longValue();
+            closed += blockJdbc.update("UPDATE invoice_number_blocks SET status = 'CLOSED' WHERE id = :id AND status = 'EDGE'",
+                    Map.of("id", block.get("id")));
+            long unused = end - start + 1 - countSaved(prefix, start, end);
+            if (unused > 0) {
+                log.warn("Bloque {}{}-{} del nodo de borde {} cerrado con {} números sin facturas en la central",
+                        prefix, start, end, edgeNode, unused);
+            }
+        }
+        return closed;
+    }
+
+    /**
+     * Números de la lista que pertenecen a un bloque no cerrado. Sus facturas no pueden borrarse
+     * (archivarse), porque los números libres de esos bloques se calculan a partir de las facturas
+     * guardadas. Los bloques solo están en el shard principal; un bloque cerrado no vuelve a abrirse.
+     */
+    public Set<InvoiceNumber> inOpenBlocks(Collection<InvoiceNumber> numbers) {
+        Map<String, long[]> bounds = new HashMap<>();
+        for (InvoiceNumber number : numbers) {
+            bounds.merge(number.getSeriesPrefix(), new long[]{number.getNumber(), number.getNumber()},
+                    (a, b) -> new long[]{Math.min(a[0], b[0]), Math.max(a[1], b[1])});
+        }
+        Map<String, List<long[]>> openRanges = new HashMap<>();
+        bounds.forEach((prefix, range) -> openRanges.put(prefix, blockJdbc.query(
+                "SELECT range_start, range_end FROM invoice_number_blocks WHERE series_prefix = :prefix "
+                        + "AND status <> 'CLOSED' AND range_end >= :from AND range_start <= :to",
+                Map.of("prefix", prefix, "from", range[0], "to", range[1]),
+                (rs, i) -> new long[]{rs.getLong(1), rs.getLong(2)})));
+        Set<InvoiceNumber> open = new HashSet<>();
+        for (InvoiceNumber number : numbers) {
+            for (long[] range : openRanges.get(number.getSeriesPrefix())) {
+                if (number.getNumber() >= range[0] && number.getNumber() <= range[1]) {
+                    open.add(number);
+                    break;
+                }
+            }
+        }
+        return open;
+    }
+
+    /**
+     * Reserva un bloque nuevo al final de la serie, dentro de la transacción de {@link #blockTransaction}.
+     *
+     * @return {@code {id del bloque, inicio, fin}}, o {@code null} si la serie no existe
+     * @throws IllegalStateException si el rango está agotado
+     */
+    private long[] reserveNewBlock(long seriesId, String prefix, int size, NumberBlockStatus status,
+                                   String owner, LocalDateTime leaseUntil) {
+        long[] series = blockJdbc.query(
+                "SELECT next_block_start, range_to FROM invoice_series WHERE id = :id FOR UPDATE",
+                Map.of("id", seriesId),
+                rs -> rs.next() ? new long[]{rs.getLong(1), rs.getLong(2)} : null);
+        if (series == null) {
+            return null;
+        }
+        long start = series[0];
+        if (start > series[1]) {
+            throw new IllegalStateException("Rango de numeración agotado para la serie " + prefix);
+        }
+        long end = Math.min(series[1], start + size - 1);
+        blockJdbc.update("UPDATE invoice_series SET next_block_start = :next WHERE id = :id",
+                Map.of("next", end + 1, "id", seriesId));
+
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        blockJdbc.update("INSERT INTO invoice_number_blocks (series_id, series_prefix, range_start, range_end, "
+                        + "status, owner_node, lease_expires_at, created_at) VALUES (:seriesId, :prefix, "
+                        + ":start, :end, :status, :node, :leaseUntil, :now)",
+                new MapSqlParameterSource()
+                        .addValue("seriesId", seriesId)
+                        .addValue("prefix", prefix)
+                        .addValue("start", start)
+                        .addValue("end", end)
+                        .addValue("status", status.name())
+                        .addValue("node", owner)
+                        .addValue("leaseUntil", leaseUntil != null ? Timestamp.valueOf(leaseUntil) : null)
+                        .addValue("now", Timestamp.valueOf(LocalDateTime.now())),
+                keyHolder, new String[]{"id"});
+        return new long[]{keyHolder.getKey().longValue(), start, end};
+    }
+
+    /**
+     * Facturas guardadas con números del rango, en todos los shards.
+     */
+    private long countSaved(String prefix, long from, long to) {
+        String sql = "SELECT COUNT(*) FROM invoices WHERE series_prefix = :prefix "
+                + "AND invoice_number BETWEEN :from AND :to";
+        Map<String, Object> params = Map.of("prefix", prefix, "from", from, "to", to);
+        long saved = blockJdbc.queryForObject(sql, params, Long.class);
+        for (NamedParameterJdbcTemplate shard : otherShards) {
+            saved += shard.queryForObject(sql, params, Long.class);
+        }
+        return saved;
+    }
+
+    private Map<String, InvoiceSeries> activeSeries() {
+        Map<String, InvoiceSeries> series = activeSeries;
+        if (series == null) {
+            reloadSeries();
+            series = activeSeries;
+        }
+        return series;
+    }
+
+    /**
+     * Bloque reservado por este nodo.
+     */
+    private static final class OwnedBlock {
+        private final long id;
+        private final long start;
+        private final long end;
+        /** Siguiente número por emitir con el contador; {@code end + 1} en bloques recuperados. */
+        private final AtomicLong next;
+        /**
+         * Vencimiento de la concesión según {@link System#nanoTime()}: el instante previo a la
+         * sentencia que la obtuvo o renovó más su duración, nunca después del de la base de datos.
+         */
+        private volatile long leaseDeadlineNanos;
+
+        private OwnedBlock(long id, long start, long end, long next, long leaseDeadlineNanos) {
+            this.id = id;
+            this.start = start;
+            this.end = end;
+            this.next = new AtomicLong(next);
+            this.leaseDeadlineNanos = leaseDeadlineNanos;
+        }
+
+        private boolean contains(long number) {
+            return number >= start && number <= end;
+        }
+
+        private boolean counterExhausted() {
+            return next.get() > end;
+        }
+    }
+
+    /**
+     * Estado de numeración de una serie en este nodo.
+     */
+    private final class SeriesAllocator {
+
+        private final long seriesId;
+        private final String prefix;
+        private volatile int blockSize;
+
+        /** Números libres (devueltos por transacciones fallidas o recuperados); se emiten primero. */
+        private final ConcurrentSkipListSet<Long> free = new ConcurrentSkipListSet<>();
+        private final Map<Long, OwnedBlock> owned = new ConcurrentHashMap<>();
+        private volatile OwnedBlock current;
+        private volatile OwnedBlock prefetched;
+        private final AtomicBoolean prefetching = new AtomicBoolean();
+
+        private SeriesAllocator(InvoiceSeries series) {
+            this.seriesId = series.getId();
+            this.prefix = series.getPrefix();
+            this.blockSize = series.getBlockSize();
+        }
+
+        private void update(InvoiceSeries series) {
+            this.blockSize = series.getBlockSize();
+        }
+
+        long take() {
+            while (true) {
+                Long recycled = free.pollFirst();
+                if (recycled != null) {
+                    OwnedBlock block = blockOf(recycled);
+                    if (block != null && holdsLease(block)) {
+                        return recycled;
+                    }
+                    continue; // bloque perdido: sus números ya no son nuestros
+                }
+                OwnedBlock block = current;
+                if (block != null && holdsLease(block)) {
+                    long number = block.next.getAndIncrement();
+                    if (number <= block.end) {
+                        if (block.end - number == Math.max(1, (block.end - block.start + 1) / 4)) {
+                            prefetch();
+                        }
+                        return number;
+                    }
+                }
+                synchronized (this) {
+                    if (current == block && free.isEmpty()) {
+                        OwnedBlock next = prefetched;
+                        prefetched = null;
+                        current = next != null ? next : acquire();
+                    }
+                }
+            }
+        }
+
+        void giveBack(long number) {
+            // Si el bloque ya no es nuestro, el nodo que lo recupere verá el número como libre
+            if (blockOf(number) != null) {
+                free.add(number);
+            }
+        }
+
+        /**
+         * Comprobación al confirmar la factura con el número indicado.
+         *
+         * @throws IllegalStateException si el bloque ya no es de este nodo
+         */
+        void checkLease(long number) {
+            OwnedBlock block = blockOf(number);
+            if (block == null || !holdsLease(block)) {
+                throw new IllegalStateException("Perdida la concesión del bloque de numeración del número "
+                        + prefix + number + "; la factura no se guarda");
+            }
+        }
+
+        private OwnedBlock blockOf(long number) {
+            for (OwnedBlock block : owned.values()) {
+                if (block.contains(number)) {
+                    return block;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Indica si quedan más de {@code lease-margin} de concesión del bloque; si no, la renueva
+         * en el momento. Si la concesión se ha perdido, olvida el bloque.
+         */
+        private boolean holdsLease(OwnedBlock block) {
+            if (leaseValid(block)) {
+                return true;
+            }
+            synchronized (block) {
+                if (leaseValid(block)) {
+                    return true;
+                }
+                long started = System.nanoTime();
+                int renewed = blockJdbc.update(
+                        "UPDATE invoice_number_blocks SET lease_expires_at = :leaseUntil WHERE id = :id "
+                                + "AND owner_node = :node AND status = 'LEASED'",
+                        Map.of("leaseUntil", Timestamp.valueOf(LocalDateTime.now().plus(leaseDuration)),
+                                "id", block.id, "node", nodeId));
+                if (renewed == 1) {
+                    block.leaseDeadlineNanos = started + leaseNanos;
+                    return true;
+                }
+            }
+            forget(block.id);
+            log.warn("Perdida la concesión del bloque {} de la serie {}", block.id, prefix);
+            return false;
+        }
+
+        private boolean leaseValid(OwnedBlock block) {
+            return System.nanoTime() - (block.leaseDeadlineNanos - leaseMarginNanos) < 0;
+        }
+
+        private void prefetch() {
+            if (!prefetching.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                prefetchExecutor.execute(() -> {
+                    try {
+                        synchronized (this) {
+                            if (prefetched == null) {
+                                prefetched = acquire();
+                            }
+                        }
+                    } catch (RuntimeException e) {
+                        log.warn("No se pudo reservar por adelantado un bloque de la serie {}", prefix, e);
+                    } finally {
+                        prefetching.set(false);
+                    }
+                });
+            } catch (RuntimeException e) {
+                prefetching.set(false);
+            }
+        }
+
+        /**
+         * Recupera un bloque abandonado (sus números libres pasan a {@link #free} y devuelve
+         * {@code null}) o, si no hay, reserva un bloque nuevo al final de la serie.
+         */
+        private OwnedBlock acquire() {
+            long started = System.nanoTime();
+            return blockTransaction.execute(status -> {
+                LocalDateTime now = LocalDateTime.now();
+                LocalDateTime leaseUntil = now.plus(leaseDuration);
+
+                List<long[]> abandoned = blockJdbc.query(
+                        "SELECT id, range_start, range_end FROM invoice_number_blocks WHERE series_id = :seriesId AND "
+                                + "(status = 'RELEASED' OR (status = 'LEASED' AND lease_expires_at < :now)) "
+                                + "ORDER BY range_start LIMIT 5",
+                        Map.of("seriesId", seriesId, "now", Timestamp.valueOf(now)),
+                        (rs, i) -> new long[]{rs.getLong(1), rs.getLong(2), rs.getLong(3)});
+                for (long[] block : abandoned) {
+                    long blockId = block[0];
+                    long start = block[1];
+                    long end = block[2];
+                    int claimed = blockJdbc.update(
+                            "UPDATE invoice_number_blocks SET status = 'LEASED', owner_node = :node, "
+                                    + "lease_expires_at = :leaseUntil WHERE id = :id AND (status = 'RELEASED' OR "
+                                    + "(status = 'LEASED' AND lease_expires_at < :now))",
+                            Map.of("node", nodeId, "leaseUntil", Timestamp.valueOf(leaseUntil), "id", blockId,
+                                    "now", Timestamp.valueOf(now)));
+                    if (claimed == 0) {
+                        continue; // otro nodo se adelantó
+                    }
+                    Set<Long> used = usedNumbers(start, end);
+                    List<Long> available = new ArrayList<>();
+                    for (long n = start; n <= end; n++) {
+                        if (!used.contains(n)) {
+                            available.add(n);
+                        }
+                    }
+                    if (available.isEmpty()) {
+                        release(blockId, NumberBlockStatus.CLOSED);
+                        continue;
+                    }
+                    owned.put(blockId, new OwnedBlock(blockId, start, end, end + 1, started + leaseNanos));
+                    free.addAll(available);
+                    log.info("Recuperado el bloque {}{}-{} con {} números libres", prefix, start, end, available.size());
+                    return null;
+                }
+
+                long[] block = reserveNewBlock(seriesId, prefix, blockSize, NumberBlockStatus.LEASED, nodeId, leaseUntil);
+                if (block == null) {
+                    throw new IllegalStateException("Serie eliminada: " + prefix);
+                }
+                long blockId = block[0];
+                long start = block[1];
+                long end = block[2];
+                OwnedBlock ownedBlock = new OwnedBlock(blockId, start, end, start, started + leaseNanos);
+                owned.put(blockId, ownedBlock);
+                log.debug("Reservado el bloque {}{}-{}", prefix, start, end);
+                return ownedBlock;
+            });
+        }
+
+        void renewLeases() {
+            if (owned.isEmpty()) {
+                return;
+            }
+            Set<Long> ids = new HashSet<>(owned.keySet());
+            long started = System.nanoTime();
+            int renewed = blockJdbc.update(
+                    "UPDATE invoice_number_blocks SET lease_expires_at = :leaseUntil WHERE owner_node = :node "
+                            + "AND status = 'LEASED' AND id IN (:ids)",
+                    Map.of("leaseUntil", Timestamp.valueOf(LocalDateTime.now().plus(leaseDuration)),
+                            "node", nodeId, "ids", ids));
+            Set<Long> stillOwned = ids;
+            if (renewed < ids.size()) {
+                // Concesión perdida (p. ej. pausa larga): otro nodo pudo recuperar esos bloques
+                stillOwned = new HashSet<>(blockJdbc.queryForList(
+                        "SELECT id FROM invoice_number_blocks WHERE owner_node = :node AND status = 'LEASED' "
+                                + "AND id IN (:ids)",
+                        Map.of("node", nodeId, "ids", ids), Long.class));
+                for (Long id : ids) {
+                    if (!stillOwned.contains(id)) {
+                        forget(id);
+                        log.warn("Perdida la concesión del bloque {} de la serie {}", id, prefix);
+                    }
+                }
+            }
+            for (Long id : stillOwned) {
+                OwnedBlock block = owned.get(id);
+                if (block != null) {
+                    block.leaseDeadlineNanos = started + leaseNanos;
+                }
+            }
+        }
+
+        void closeUsedBlocks() {
+            for (OwnedBlock block : List.copyOf(owned.values())) {
+                // Si faltan facturas, hay transacciones en curso: se comprueba en la siguiente pasada
+                if (fullyIssued(block) && allSaved(block)) {
+                    release(block.id, NumberBlockStatus.CLOSED);
+                    owned.remove(block.id);
+                }
+            }
+        }
+
+        synchronized void releaseAll() {
+            for (OwnedBlock block : List.copyOf(owned.values())) {
+                boolean used = fullyIssued(block) && allSaved(block);
+                release(block.id, used ? NumberBlockStatus.CLOSED : NumberBlockStatus.RELEASED);
+                forget(block.id);
+            }
+        }
+
+        private boolean allSaved(OwnedBlock block) {
+            return countSaved(prefix, block.start, block.end) == block.end - block.start + 1;
+        }
+
+        private Set<Long> usedNumbers(long from, long to) {
+            String sql = "SELECT invoice_number FROM invoices WHERE series_prefix = :prefix "
+                    + "AND invoice_number BETWEEN :from AND :to";
+            Map<String, Object> params = Map.of("prefix", prefix, "from", from, "to", to);
+            Set<Long> used = new HashSet<>(blockJdbc.queryForList(sql, params, Long.class));
+            for (NamedParameterJdbcTemplate shard : otherShards) {
+                used.addAll(shard.queryForList(sql, params, Long.class));
+            }
+            return used;
+        }
+
+        private void release(long blockId, NumberBlockStatus status) {
+            blockJdbc.update("UPDATE invoice_number_blocks SET status = :status, owner_node = NULL, "
+                            + "lease_expires_at = NULL WHERE id = :id AND owner_node = :node",
+                    Map.of("status", status.name(), "id", blockId, "node", nodeId));
+        }
+
+        private boolean fullyIssued(OwnedBlock block) {
+            return block.counterExhausted() && free.subSet(block.start, true, block.end, true).isEmpty();
+        }
+
+        private synchronized void forget(long blockId) {
+            OwnedBlock block = owned.remove(blockId);
+            if (block == null) {
+                return;
+            }
+            free.subSet(block.start, true, block.end, true).clear();
+            if (current == block) {
+                current = null;
+            }
+            if (prefetched == block) {
+                prefetched = null;
+            }
+        }
+    }
+}
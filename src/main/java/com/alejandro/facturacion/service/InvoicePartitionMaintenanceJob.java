@@ -0,0 +1,98 @@
+package com.alejandro.facturacion.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tarea de mantenimiento de las particiones mensuales de la tabla {@code invoices}.
+ *
+ * <p>Solo actúa si la tabla fue particionada con el script
+ * {@code db/partitioning/invoices_particionado_mensual.sql}: divide la partición
+ * comodín {@code p_max} para que siempre existan particiones para el mes actual
+ * y los {@code facturacion.partitioning.months-ahead} meses siguientes. Así las
+ * consultas por rango de fechas descartan las particiones que no necesitan.
+ *
+ * <p>Nunca elimina particiones: el histórico se gestiona con el archivado de facturas.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "facturacion.partitioning.enabled", havingValue = "true")
+public class InvoicePartitionMaintenanceJob {
+
+    private static final String CATCH_ALL_PARTITION = "p_max";
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyy_MM");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int monthsAhead;
+
+    public InvoicePartitionMaintenanceJob(JdbcTemplate jdbcTemplate,
+                                          @Value("${facturacion.partitioning.months-ahead:3}") int monthsAhead) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.monthsAhead = monthsAhead;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        ensureFuturePartitions();
+    }
+
+    /**
+     * Crea las particiones que falten hasta {@code months-ahead} meses en el futuro.
+     */
+    @Scheduled(cron = "${facturacion.partitioning.cron:0 0 3 * * *}")
+    public void ensureFuturePartitions() {
+        List<String> boundaries = jdbcTemplate.queryForList("""
+                SELECT PARTITION_DESCRIPTION FROM information_schema.PARTITIONS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'invoices'
+                  AND PARTITION_NAME IS NOT NULL AND PARTITION_NAME <> ?
+                ORDER BY PARTITION_ORDINAL_POSITION
+                """, String.class, CATCH_ALL_PARTITION);
+
+        if (boundaries.isEmpty()) {
+            log.warn("La tabla invoices no está particionada; se omite el mantenimiento de particiones");
+            return;
+        }
+
+        // La última frontera tiene la forma '2024-01-01' (comillas incluidas)
+        String lastBoundary = boundaries.get(boundaries.size() - 1).replace("'", "");
+        YearMonth next = YearMonth.from(LocalDate.parse(lastBoundary.substring(0, 10)));
+        YearMonth limit = YearMonth.now().plusMonths(monthsAhead);
+
+        List<YearMonth> missing = new ArrayList<>();
+        for (; !next.isAfter(limit); next = next.plusMonths(1)) {
+            missing.add(next);
+        }
+        if (!missing.isEmpty()) {
+            splitCatchAllPartition(missing);
+        }
+    }
+
+    /**
+     * Divide {@code p_max} en una sola sentencia: cada REORGANIZE reescribe la partición comodín,
+     * así que tras una parada larga (o en el primer arranque) no se repite por cada mes que falte.
+     */
+    private void splitCatchAllPartition(List<YearMonth> months) {
+        StringBuilder sql = new StringBuilder("ALTER TABLE invoices REORGANIZE PARTITION ")
+                .append(CATCH_ALL_PARTITION).append(" INTO (");
+        for (YearMonth month : months) {
+            sql.append("PARTITION ").append(PARTITION_NAME.format(month.atDay(1)))
+                    .append(" VALUES LESS THAN ('").append(month.plusMonths(1).atDay(1)).append("'), ");
+        }
+        sql.append("PARTITION ").append(CATCH_ALL_PARTITION).append(" VALUES LESS THAN (MAXVALUE))");
+        jdbcTemplate.execute(sql.toString());
+        log.info("Particiones {} a {} creadas en invoices", PARTITION_NAME.format(months.get(0).atDay(1)),
+                PARTITION_NAME.format(months.get(months.size() - 1).atDay(1)));
+    }
+}
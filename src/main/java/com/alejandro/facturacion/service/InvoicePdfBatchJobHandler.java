@@ -0,0 +1,63 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.entity.Invoice;
+import com.alejandro.facturacion.entity.JobType;
+import com.alejandro.facturacion.utils.InvoicePdfExporter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Trabajo que exporta varias facturas a PDF y las empaqueta en un ZIP.
+ *
+ * <p>Parámetro obligatorio: {@code invoiceIds}, lista de IDs de factura. Las facturas
+ * inexistentes se omiten.
+ */
+@Component
+@RequiredArgsConstructor
+public class InvoicePdfBatchJobHandler implements JobHandler {
+
+    private final InvoiceService invoiceService;
+
+    @Override
+    public JobType getType() {
+        return JobType.INVOICE_PDF_BATCH;
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/zip";
+    }
+
+    @Override
+    public String getFileExtension() {
+        return "zip";
+    }
+
+    @Override
+    public void execute(Map<String, Object> params, JobContext context, OutputStream out) throws Exception {
+        Object rawIds = params.get("invoiceIds");
+        if (!(rawIds instanceof List<?> ids) || ids.isEmpty()) {
+            throw new IllegalArgumentException("El parámetro invoiceIds es obligatorio");
+        }
+
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (int i = 0; i < ids.size(); i++) {
+                context.checkCancelled();
+                Long id = ((Number) ids.get(i)).longValue();
+                Invoice invoice = invoiceService.getInvoiceWithDetails(id).orElse(null);
+                if (invoice != null) {
+                    zip.putNextEntry(new ZipEntry("factura_" + id + ".pdf"));
+                    InvoicePdfExporter.exportInvoiceToPdf(invoice).transferTo(zip);
+                    zip.closeEntry();
+                }
+                context.reportProgress((i + 1) * 100 / ids.size());
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.alejandro.facturacion.service;
 
 import com.alejandro.facturacion.entity.Invoice;
+import com.alejandro.facturacion.jfr.PdfRenderEvent;
 import com.lowagie.text.*;
 import com.lowagie.text.pdf.PdfPTable;
 import com.lowagie.text.pdf.PdfWriter;
@@ -17,9 +18,11 @@ public class InvoicePdfService {
     public ByteArrayInputStream generatePdf(Invoice invoice) {
         Document document = new Document();
         ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PdfRenderEvent renderEvent = PdfRenderEvent.start("openpdf", "invoice");
+        int pages = 0;
 
         try {
-            PdfWriter.getInstance(document, out);
+            PdfWriter writer = PdfWriter.getInstance(document, out);
             document.open();
 
             // Título
@@ -43,26 +46,48 @@ public class InvoicePdfService {
                 invoice.getItems().forEach(item -> {
                     table.addCell(item.getProduct() != null ? item.getProduct().getName() : "");
                     table.addCell(String.valueOf(item.getQuantity()));
-                    table.addCell("$" + (item.getProduct() != null ? item.getProduct().getPrice() : item.getPrice()));
-                    BigDecimal subtotal = item.getSubtotal() != null ? item.getSubtotal() : (item.getProduct() != null && item.getProduct().getPrice() != null ? item.getProduct().getPrice().multiply(BigDecimal.valueOf(item.getQuantity())) : BigDecimal.ZERO);
+                    // El precio facturado en la línea; el actual del producto solo si la línea no lo guarda
+                    BigDecimal unitPrice = item.getPrice() != null ? item.getPrice()
+                            : item.getProduct() != null ? item.getProduct().getPrice() : null;
+                    table.addCell("$" + unitPrice);
+                    BigDecimal subtotal = item.getSubtotal() != null ? item.getSubtotal() : (unitPrice != null ? unitPrice.multiply(BigDecimal.valueOf(item.getQuantity())) : BigDecimal.ZERO);
                     table.addCell("$" + subtotal);
                 });
             }
 
             document.add(table);
 
-            // Total
+            // Desglose de totales
             document.add(new Paragraph(" "));
+            if (invoice.getSubtotal() != null) {
+                addSummaryLine(document, "Subtotal: $" + invoice.getSubtotal());
+            }
+            if (invoice.getDiscountTotal() != null && invoice.getDiscountTotal().signum() != 0) {
+                addSummaryLine(document, "Descuentos: -$" + invoice.getDiscountTotal());
+            }
+            if (invoice.getTaxTotal() != null) {
+                addSummaryLine(document, "IVA: $" + invoice.getTaxTotal());
+            }
+
+            // Total
             Font totalFont = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 14);
             Paragraph total = new Paragraph("Total: $" + (invoice.getTotal() != null ? invoice.getTotal() : ""), totalFont);
             total.setAlignment(Element.ALIGN_RIGHT);
             document.add(total);
 
+            pages = writer.getPageNumber();
             document.close();
         } catch (Exception e) {
             e.printStackTrace();
         }
 
+        renderEvent.finish(pages, out.size());
         return new ByteArrayInputStream(out.toByteArray());
     }
-} 
\ No newline at end of file
+
+    private void addSummaryLine(Document document, String text) {
+        Paragraph line = new Paragraph(text);
+        line.setAlignment(Element.ALIGN_RIGHT);
+        document.add(line);
+    }
+}
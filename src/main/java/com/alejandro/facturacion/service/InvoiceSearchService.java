@@ -0,0 +1,452 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.dto.InvoiceSearchCriteria;
+import com.alejandro.facturacion.dto.InvoiceSearchHit;
+import com.alejandro.facturacion.dto.InvoiceSearchResult;
+import com.alejandro.facturacion.dto.InvoiceSearchSort;
+import com.alejandro.facturacion.entity.Client;
+import com.alejandro.facturacion.entity.Invoice;
+import com.alejandro.facturacion.entity.InvoiceItem;
+import com.alejandro.facturacion.entity.Product;
+import com.alejandro.facturacion.event.InvoiceCreatedEvent;
+import com.alejandro.facturacion.event.InvoicesArchivedEvent;
+import com.alejandro.facturacion.repository.ClientRepository;
+import com.alejandro.facturacion.repository.ProductRepository;
+import com.alejandro.facturacion.utils.InvoiceSearchIndex;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Búsqueda de facturas por cliente (ID, nombre o identificación), producto, importe, fecha y número
+ * legal, sobre un índice en memoria ({@link InvoiceSearchIndex}) en lugar de consultas sobre la tabla.
+ *
+ * <p>Un único hilo mantiene el índice:
+ * <ul>
+ *   <li>al arrancar carga las facturas de todos los shards por lotes de {@code facturacion.search.batch-size};</li>
+ *   <li>las facturas creadas en esta instancia se añaden en cuanto se confirman;</li>
+ *   <li>cada {@code facturacion.search.refresh-interval} recoge de cada shard las facturas con ID mayor
+ *       que las ya vistas, que incluyen las creadas en otras instancias y las recibidas de los nodos de borde.</li>
+ * </ul>
+ * Como un ID menor puede confirmarse después que uno mayor, cada sondeo vuelve a mirar los IDs de
+ * los últimos {@code facturacion.search.overlap}: una transacción de creación más larga que ese
+ * margen podría no indexarse hasta el siguiente arranque.
+ *
+ * <p>Los nombres de cliente y de producto se buscan en sus tablas, mucho menores que la de
+ * facturas, y se cruzan con el índice. Las facturas ya archivadas no se indexan, y las que archiva
+ * esta instancia se quitan del índice en cuanto se confirma el lote; las archivadas desde otra
+ * instancia siguen apareciendo en esta hasta que se reinicia.
+ */
+@Slf4j
+@Service
+public class InvoiceSearchService {
+
+    private static final int MAX_LIMIT = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+    private final ClientRepository clientRepository;
+    private final ProductRepository productRepository;
+    private final ClientService clientService;
+    private final MoneyService moneyService;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration refreshInterval;
+    private final Duration overlap;
+
+    private final InvoiceSearchIndex index = new InvoiceSearchIndex();
+    /** Estado de lectura de cada shard; solo lo toca el hilo del índice. */
+    private final Map<Integer, ShardCursor> cursors = new HashMap<>();
+    private final ScheduledExecutorService indexer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "invoice-search-indexer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean ready;
+
+    public InvoiceSearchService(JdbcTemplate jdbcTemplate,
+                                ShardRouter shardRouter,
+                                ClientRepository clientRepository,
+                                ProductRepository productRepository,
+                                ClientService clientService,
+                                MoneyService moneyService,
+                                @Value("${facturacion.search.enabled:true}") boolean enabled,
+                                @Value("${facturacion.search.batch-size:5000}") int batchSize,
+                                @Value("${facturacion.search.refresh-interval:PT2S}") Duration refreshInterval,
+                                @Value("${facturacion.search.overlap:PT1M}") Duration overlap) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
+        this.clientRepository = clientRepository;
+        this.productRepository = productRepository;
+        this.clientService = clientService;
+        this.moneyService = moneyService;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.refreshInterval = refreshInterval;
+        this.overlap = overlap;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        indexer.execute(this::load);
+        indexer.scheduleWithFixedDelay(this::catchUp, refreshInterval.toMillis(), refreshInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        indexer.shutdownNow();
+    }
+
+    /**
+     * Añade al índice la factura recién confirmada, sin esperar al siguiente sondeo.
+     */
+    @TransactionalEventListener
+    public void onInvoiceCreated(InvoiceCreatedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        Invoice invoice = event.getInvoice();
+        IndexRow row = new IndexRow(invoice.getId(), invoice.getClient().getId(), invoice.getCreatedAt(),
+                invoice.getTotal(), invoice.getSeriesPrefix(), invoice.getNumber());
+        for (InvoiceItem item : invoice.getItems()) {
+            row.productIds.add(item.getProduct().getId());
+        }
+        int shard = shardRouter.shardOfId(invoice.getId());
+        indexer.execute(() -> {
+            ShardCursor cursor = cursors.get(shard);
+            // Antes de terminar la carga inicial la recogen la carga o los sondeos; por debajo del margen de
+            // relectura (una transacción más larga que overlap) no se sabe si ya se indexó y se omite
+            if (cursor != null && row.id > cursor.lowerBound && cursor.recent.add(row.id)) {
+                addToIndex(row);
+                cursor.watermark = Math.max(cursor.watermark, row.id);
+            }
+        });
+    }
+
+    /**
+     * Quita del índice las facturas archivadas, que ya no están en la tabla.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInvoicesArchived(InvoicesArchivedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        long[] ids = event.getInvoiceIds().stream().mapToLong(Long::longValue).toArray();
+        // Detrás de la carga inicial si aún no ha terminado: la carga pudo leerlas antes del borrado
+        indexer.execute(() -> index.remove(ids));
+    }
+
+    /**
+     * Busca facturas con los filtros indicados.
+     *
+     * @throws IllegalArgumentException si los filtros o el cursor no son válidos
+     * @throws IllegalStateException si la búsqueda está desactivada
+     */
+    public InvoiceSearchResult search(InvoiceSearchCriteria criteria) {
+        if (!enabled) {
+            throw new IllegalStateException("La búsqueda de facturas está desactivada");
+        }
+        InvoiceSearchSort sort = criteria.getSort() != null ? criteria.getSort() : InvoiceSearchSort.CREATED_AT_DESC;
+        if (criteria.getLimit() < 1 || criteria.getLimit() > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit debe estar entre 1 y " + MAX_LIMIT);
+        }
+        if (criteria.getFrom() != null && criteria.getTo() != null && criteria.getFrom().isAfter(criteria.getTo())) {
+            throw new IllegalArgumentException("from no puede ser posterior a to");
+        }
+        if (criteria.getMinTotal() != null && criteria.getMaxTotal() != null
+                && criteria.getMinTotal().compareTo(criteria.getMaxTotal()) > 0) {
+            throw new IllegalArgumentException("minTotal no puede ser mayor que maxTotal");
+        }
+
+        InvoiceSearchIndex.Query query = new InvoiceSearchIndex.Query().page(sort, criteria.getLimit());
+        Set<Long> clientIds = resolveClients(criteria);
+        if (clientIds != null) {
+            query.clientIds(toArray(clientIds));
+        }
+        if (hasText(criteria.getProductName())) {
+            query.productIds(productRepository.findByNameContainingIgnoreCase(criteria.getProductName().trim()).stream()
+                    .mapToLong(Product::getId).toArray());
+        }
+        query.createdBetween(
+                criteria.getFrom() != null ? toSeconds(criteria.getFrom().atStartOfDay()) : Long.MIN_VALUE,
+                criteria.getTo() != null ? toSeconds(criteria.getTo().plusDays(1).atStartOfDay()) : Long.MAX_VALUE);
+        query.totalBetween(
+                criteria.getMinTotal() != null ? moneyService.toMinor(criteria.getMinTotal()) : Long.MIN_VALUE,
+                criteria.getMaxTotal() != null ? moneyService.toMinor(criteria.getMaxTotal()) : Long.MAX_VALUE);
+        if (hasText(criteria.getSeries()) || criteria.getNumber() != null) {
+            query.number(hasText(criteria.getSeries()) ? criteria.getSeries().trim() : null, criteria.getNumber());
+        }
+        if (hasText(criteria.getAfter())) {
+            long[] cursor = decodeCursor(criteria.getAfter(), sort);
+            query.after(cursor[0], cursor[1]);
+        }
+
+        InvoiceSearchIndex.Page page = index.search(query);
+        List<InvoiceSearchHit> hits = new ArrayList<>(page.entries.size());
+        Map<Long, String> clientNames = new HashMap<>();
+        for (InvoiceSearchIndex.Entry entry : page.entries) {
+            String clientName = clientNames.computeIfAbsent(entry.clientId,
+                    id -> clientService.getClientById(id).map(Client::getName).orElse(null));
+            hits.add(new InvoiceSearchHit(entry.id,
+                    entry.number != null ? entry.seriesPrefix + entry.number : null,
+                    entry.clientId, clientName,
+                    LocalDateTime.ofEpochSecond(entry.createdAtSeconds, 0, ZoneOffset.UTC),
+                    moneyService.toDecimal(entry.totalMinor)));
+        }
+        String nextCursor = null;
+        if (page.hasMore) {
+            InvoiceSearchIndex.Entry last = page.entries.get(page.entries.size() - 1);
+            nextCursor = encodeCursor(sort, sort.byTotal() ? last.totalMinor : last.createdAtSeconds, last.id);
+        }
+        return new InvoiceSearchResult(hits, nextCursor, page.matches, ready, index.size());
+    }
+
+    /**
+     * Clientes admitidos por los filtros de cliente (intersección de los indicados), o null si no hay ninguno.
+     */
+    private Set<Long> resolveClients(InvoiceSearchCriteria criteria) {
+        Set<Long> clientIds = null;
+        if (criteria.getClientId() != null) {
+            clientIds = new HashSet<>(Set.of(criteria.getClientId()));
+        }
+        if (hasText(criteria.getClientName())) {
+            String name = criteria.getClientName().trim();
+            Set<Long> byName = new HashSet<>();
+            shardRouter.scatter(() -> clientRepository.findIdsByNameContaining(name)).forEach(byName::addAll);
+            clientIds = intersect(clientIds, byName);
+        }
+        if (hasText(criteria.getIdentificationNumber())) {
+            String identification = criteria.getIdentificationNumber().trim();
+            Set<Long> byIdentification = shardRouter.scatter(() -> clientRepository.findByIdentificationNumber(identification))
+                    .stream().flatMap(Optional::stream).map(Client::getId).collect(Collectors.toSet());
+            clientIds = intersect(clientIds, byIdentification);
+        }
+        return clientIds;
+    }
+
+    /** Carga inicial de todos los shards, por lotes en orden de ID. */
+    private void load() {
+        long started = System.nanoTime();
+        for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+            int currentShard = shard;
+            LocalDateTime loadStart = LocalDateTime.now();
+            ShardCursor cursor = new ShardCursor();
+            // Las facturas de los últimos overlap se releen en los sondeos: pueden faltar las de
+            // transacciones que aún no se habían confirmado mientras se cargaba
+            Long firstRecent = shardRouter.onShard(shard, () -> jdbcTemplate.queryForObject(
+                    "SELECT MIN(id) FROM invoices WHERE created_at >= ?", Long.class,
+                    Timestamp.valueOf(loadStart.minus(overlap))));
+            Long lastAtStart = shardRouter.onShard(shard, () -> jdbcTemplate.queryForObject(
+                    "SELECT MAX(id) FROM invoices", Long.class));
+            long recentFrom = firstRecent != null ? firstRecent - 1 : lastAtStart != null ? lastAtStart : 0;
+            long after = 0;
+            while (true) {
+                long from = after;
+                List<IndexRow> rows = shardRouter.onShard(shard, () -> readRows(
+                        "SELECT id, client_id, created_at, total, series_prefix, invoice_number FROM invoices"
+                                + " WHERE id > ? ORDER BY id LIMIT ?", from, batchSize));
+                if (rows.isEmpty()) {
+                    break;
+                }
+                long to = rows.get(rows.size() - 1).id;
+                shardRouter.onShard(currentShard, () -> readProducts(rows,
+                        "SELECT invoice_id, product_id FROM invoice_items WHERE invoice_id > ? AND invoice_id <= ?", from, to));
+                for (IndexRow row : rows) {
+                    addToIndex(row);
+                }
+                cursor.watermark = to;
+                after = to;
+            }
+            cursor.lowerBound = Math.min(recentFrom, cursor.watermark);
+            cursor.history.add(new long[]{System.nanoTime(), cursor.lowerBound});
+            long lowerBound = cursor.lowerBound;
+            cursor.recent.addAll(shardRouter.onShard(shard, () -> jdbcTemplate.queryForList(
+                    "SELECT id FROM invoices WHERE id > ? AND id <= ?", Long.class, lowerBound, cursor.watermark)));
+            cursors.put(shard, cursor);
+        }
+        ready = true;
+        log.info("Índice de búsqueda de facturas cargado: {} facturas en {} ms", index.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    /** Recoge de cada shard las facturas que aún no están en el índice. */
+    private void catchUp() {
+        if (!ready) {
+            return;
+        }
+        for (Map.Entry<Integer, ShardCursor> shardCursor : cursors.entrySet()) {
+            try {
+                catchUp(shardCursor.getKey(), shardCursor.getValue());
+            } catch (RuntimeException e) {
+                log.warn("No se pudo actualizar el índice de búsqueda del shard {}: {}", shardCursor.getKey(), e.getMessage());
+            }
+        }
+    }
+
+    private void catchUp(int shard, ShardCursor cursor) {
+        long now = System.nanoTime();
+        // Nuevo límite inferior: lo visto hasta el último sondeo de hace al menos overlap
+        while (cursor.history.size() > 1 && now - cursor.history.get(1)[0] >= overlap.toNanos()) {
+            cursor.history.remove(0);
+        }
+        if (now - cursor.history.get(0)[0] >= overlap.toNanos()) {
+            cursor.lowerBound = Math.max(cursor.lowerBound, cursor.history.get(0)[1]);
+        }
+        cursor.recent.headSet(cursor.lowerBound, true).clear();
+
+        long lowerBound = cursor.lowerBound;
+        List<Long> ids = shardRouter.onShard(shard, () -> jdbcTemplate.queryForList(
+                "SELECT id FROM invoices WHERE id > ? ORDER BY id", Long.class, lowerBound));
+        List<Long> missing = ids.stream().filter(id -> !cursor.recent.contains(id)).toList();
+        for (int start = 0; start < missing.size(); start += batchSize) {
+            List<Long> batch = missing.subList(start, Math.min(missing.size(), start + batchSize));
+            String in = batch.stream().map(id -> "?").collect(Collectors.joining(", "));
+            Object[] args = batch.toArray();
+            List<IndexRow> rows = shardRouter.onShard(shard, () -> readRows(
+                    "SELECT id, client_id, created_at, total, series_prefix, invoice_number FROM invoices"
+                            + " WHERE id IN (" + in + ") ORDER BY id", args));
+            shardRouter.onShard(shard, () -> readProducts(rows,
+                    "SELECT invoice_id, product_id FROM invoice_items WHERE invoice_id IN (" + in + ")", args));
+            for (IndexRow row : rows) {
+                if (cursor.recent.add(row.id)) {
+                    addToIndex(row);
+                }
+            }
+        }
+        if (!ids.isEmpty()) {
+            cursor.watermark = Math.max(cursor.watermark, ids.get(ids.size() - 1));
+        }
+        cursor.history.add(new long[]{now, cursor.watermark});
+    }
+
+    private List<IndexRow> readRows(String sql, Object... args) {
+        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+            Timestamp createdAt = rs.getTimestamp("created_at");
+            long number = rs.getLong("invoice_number");
+            Long legalNumber = rs.wasNull() ? null : number;
+            return new IndexRow(rs.getLong("id"), rs.getLong("client_id"),
+                    createdAt != null ? createdAt.toLocalDateTime() : null, rs.getBigDecimal("total"),
+                    rs.getString("series_prefix"), legalNumber);
+        }, args);
+    }
+
+    private Void readProducts(List<IndexRow> rows, String sql, Object... args) {
+        Map<Long, IndexRow> byId = new HashMap<>();
+        rows.forEach(row -> byId.put(row.id, row));
+        jdbcTemplate.query(sql, rs -> {
+            IndexRow row = byId.get(rs.getLong("invoice_id"));
+            long productId = rs.getLong("product_id");
+            if (row != null && !rs.wasNull()) {
+                row.productIds.add(productId);
+            }
+        }, args);
+        return null;
+    }
+
+    private void addToIndex(IndexRow row) {
+        index.add(row.id, row.clientId, row.createdAt != null ? toSeconds(row.createdAt) : 0,
+                row.total != null ? moneyService.toMinor(row.total) : 0,
+                row.seriesPrefix, row.number, row.productIds.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    private static String encodeCursor(InvoiceSearchSort sort, long key, long id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((sort.name() + ":" + key + ":" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long[] decodeCursor(String cursor, InvoiceSearchSort sort) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            if (parts.length != 3 || !parts[0].equals(sort.name())) {
+                throw new IllegalArgumentException("El cursor no corresponde al orden " + sort);
+            }
+            return new long[]{Long.parseLong(parts[1]), Long.parseLong(parts[2])};
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException y los errores de Base64 también son IllegalArgumentException
+            throw new IllegalArgumentException("Cursor no válido: " + e.getMessage());
+        }
+    }
+
+    private static long toSeconds(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static Set<Long> intersect(Set<Long> current, Set<Long> other) {
+        if (current == null) {
+            return other;
+        }
+        current.retainAll(other);
+        return current;
+    }
+
+    private static long[] toArray(Set<Long> ids) {
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isBlank();
+    }
+
+    /** Factura leída para indexarla. */
+    private static final class IndexRow {
+
+        final long id;
+        final long clientId;
+        final LocalDateTime createdAt;
+        final BigDecimal total;
+        final String seriesPrefix;
+        final Long number;
+        final List<Long> productIds = new ArrayList<>();
+
+        IndexRow(long id, long clientId, LocalDateTime createdAt, BigDecimal total, String seriesPrefix, Long number) {
+            this.id = id;
+            this.clientId = clientId;
+            this.createdAt = createdAt;
+            this.total = total;
+            this.seriesPrefix = seriesPrefix;
+            this.number = number;
+        }
+    }
+
+    /**
+     * Hasta dónde se ha leído un shard. Se relee todo lo posterior a {@code lowerBound}; los IDs ya
+     * indexados de ese tramo están en {@code recent}.
+     */
+    private static final class ShardCursor {
+
+        long watermark;
+        long lowerBound;
+        final TreeSet<Long> recent = new TreeSet<>();
+        /** Pares (instante del sondeo, watermark tras el sondeo), del más antiguo al más reciente. */
+        final List<long[]> history = new ArrayList<>();
+    }
+}
@@ -0,0 +1,227 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.ShardRoutingDataSource;
+import com.alejandro.facturacion.dto.NumberingAudit;
+import com.alejandro.facturacion.entity.InvoiceNumberBlock;
+import com.alejandro.facturacion.entity.InvoiceSeries;
+import com.alejandro.facturacion.entity.NumberBlockStatus;
+import com.alejandro.facturacion.event.InvoiceSeriesChangedEvent;
+import com.alejandro.facturacion.repository.InvoiceNumberBlockRepository;
+import com.alejandro.facturacion.repository.InvoiceSeriesRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.LongConsumer;
+
+@Service
+@Transactional
+public class InvoiceSeriesService {
+
+    private static final int MAX_REPORTED_GAPS = 1000;
+
+    private final InvoiceSeriesRepository seriesRepository;
+    private final InvoiceNumberBlockRepository blockRepository;
+    private final JdbcTemplate jdbcTemplate;
+    /** Con sharding, un JdbcTemplate por shard: las facturas numeradas están repartidas. */
+    private final List<JdbcTemplate> invoiceShards = new ArrayList<>();
+    private final ApplicationEventPublisher eventPublisher;
+    private final int defaultBlockSize;
+
+    public InvoiceSeriesService(InvoiceSeriesRepository seriesRepository,
+                                InvoiceNumberBlockRepository blockRepository,
+                                JdbcTemplate jdbcTemplate,
+                                ObjectProvider<ShardRoutingDataSource> shards,
+                                ApplicationEventPublisher eventPublisher,
+                                @Value("${facturacion.numbering.block-size:50}") int defaultBlockSize) {
+        this.seriesRepository = seriesRepository;
+        this.blockRepository = blockRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        ShardRoutingDataSource sharded = shards.getIfAvailable();
+        if (sharded != null) {
+            for (int shard = 0; shard < sharded.getShardCount(); shard++) {
+                invoiceShards.add(new JdbcTemplate(sharded.getShard(shard)));
+            }
+        }
+        this.eventPublisher = eventPublisher;
+        this.defaultBlockSize = defaultBlockSize;
+    }
+
+    /**
+     * Registra una serie autorizada. La numeración empieza en {@code rangeFrom}.
+     *
+     * @throws IllegalArgumentException si el prefijo ya existe o el rango es inválido
+     */
+    public InvoiceSeries createSeries(InvoiceSeries series) {
+        if (series.getPrefix() == null || series.getPrefix().isBlank() || series.getPrefix().length() > 10) {
+            throw new IllegalArgumentException("El prefijo es obligatorio (máximo 10 caracteres)");
+        }
+        if (seriesRepository.existsByPrefix(series.getPrefix())) {
+            throw new IllegalArgumentException("Ya existe la serie " + series.getPrefix());
+        }
+        if (series.getRangeFrom() == null || series.getRangeTo() == null
+                || series.getRangeFrom() < 1 || series.getRangeFrom() > series.getRangeTo()) {
+            throw new IllegalArgumentException("Rango autorizado inválido");
+        }
+        series.setId(null);
+        series.setNextBlockStart(series.getRangeFrom());
+        if (series.getBlockSize() == null || series.getBlockSize() < 1) {
+            series.setBlockSize(defaultBlockSize);
+        }
+        return saveAndNotify(series);
+    }
+
+    /**
+     * Actualiza los datos modificables de una serie: resolución, vigencia, ampliación del rango,
+     * tamaño de bloque, serie por defecto y estado. El inicio del rango y la posición de
+     * numeración no se modifican.
+     */
+    public Optional<InvoiceSeries> updateSeries(Long id, InvoiceSeries changes) {
+        return seriesRepository.findByIdForUpdate(id).map(series -> {
+            if (changes.getRangeTo() != null) {
+                if (changes.getRangeTo() < series.getNextBlockStart() - 1) {
+                    throw new IllegalArgumentException("El rango no puede reducirse por debajo de los números ya reservados");
+                }
+                series.setRangeTo(changes.getRangeTo());
+            }
+            if (changes.getBlockSize() != null && changes.getBlockSize() > 0) {
+                series.setBlockSize(changes.getBlockSize());
+            }
+            series.setResolutionNumber(changes.getResolutionNumber());
+            series.setValidFrom(changes.getValidFrom());
+            series.setValidTo(changes.getValidTo());
+            series.setDefaultSeries(changes.isDefaultSeries());
+            series.setActive(changes.isActive());
+            return saveAndNotify(series);
+        });
+    }
+
+    @Transactional(readOnly = true)
+    public List<InvoiceSeries> getAllSeries() {
+        return seriesRepository.findAll();
+    }
+
+    /**
+     * Recorre en orden los números emitidos de una serie y detecta duplicados y huecos.
+     *
+     * @param from primer número a revisar; por defecto el menor presente en la base de datos
+     *             (los números de facturas archivadas quedan por debajo)
+     * @param to último número a revisar; por defecto el último reservado
+     */
+    @Transactional(readOnly = true)
+    public Optional<NumberingAudit> audit(String prefix, Long from, Long to) {
+        return seriesRepository.findByPrefix(prefix).map(series -> {
+            long auditTo = to != null ? to : series.getNextBlockStart() - 1;
+            long auditFrom = from != null ? from : minIssuedNumber(prefix).orElse(series.getRangeFrom());
+
+            List<InvoiceNumberBlock> openBlocks = new ArrayList<>();
+            openBlocks.addAll(blockRepository.findBySeriesPrefixAndStatus(prefix, NumberBlockStatus.LEASED));
+            openBlocks.addAll(blockRepository.findBySeriesPrefixAndStatus(prefix, NumberBlockStatus.RELEASED));
+            openBlocks.addAll(blockRepository.findBySeriesPrefixAndStatus(prefix, NumberBlockStatus.EDGE));
+            openBlocks.sort(Comparator.comparing(InvoiceNumberBlock::getRangeStart));
+
+            NumberingAudit audit = new NumberingAudit();
+            audit.setPrefix(prefix);
+            audit.setAuditedFrom(auditFrom);
+            audit.setAuditedTo(auditTo);
+            audit.setNextBlockStart(series.getNextBlockStart());
+
+            long[] expected = {auditFrom};
+            LongConsumer visit = number -> {
+                audit.setIssued(audit.getIssued() + 1);
+                if (number < expected[0]) {
+                    audit.getDuplicates().add(number);
+                    return;
+                }
+                if (number > expected[0]) {
+                    addGap(audit, openBlocks, expected[0], number - 1);
+                }
+                expected[0] = number + 1;
+            };
+            String issuedQuery = "SELECT invoice_number FROM invoices WHERE series_prefix = ? "
+                    + "AND invoice_number BETWEEN ? AND ? ORDER BY invoice_number";
+            if (invoiceShards.isEmpty()) {
+                jdbcTemplate.query(issuedQuery, rs -> {
+                    visit.accept(rs.getLong(1));
+                }, prefix, auditFrom, auditTo);
+            } else {
+                // Con sharding se juntan y ordenan los números de todos los shards
+                invoiceShards.stream()
+                        .flatMapToLong(shard -> shard.queryForList(issuedQuery, Long.class, prefix, auditFrom, auditTo)
+                                .stream().mapToLong(Long::longValue))
+                        .sorted()
+                        .forEach(visit);
+            }
+            if (expected[0] <= auditTo) {
+                addGap(audit, openBlocks, expected[0], auditTo);
+            }
+            return audit;
+        });
+    }
+
+    private Optional<Long> minIssuedNumber(String prefix) {
+        String sql = "SELECT MIN(invoice_number) FROM invoices WHERE series_prefix = ?";
+        if (invoiceShards.isEmpty()) {
+            return Optional.ofNullable(jdbcTemplate.queryForObject(sql, Long.class, prefix));
+        }
+        return invoiceShards.stream()
+                .map(shard -> shard.queryForObject(sql, Long.class, prefix))
+                .filter(Objects::nonNull)
+                .min(Long::compare);
+    }
+
+    /**
+     * Divide un hueco según los bloques abiertos que atraviesa y clasifica cada tramo.
+     */
+    private void addGap(NumberingAudit audit, List<InvoiceNumberBlock> openBlocks, long from, long to) {
+        LocalDateTime now = LocalDateTime.now();
+        long cursor = from;
+        for (InvoiceNumberBlock block : openBlocks) {
+            if (block.getRangeEnd() < cursor || block.getRangeStart() > to) {
+                continue;
+            }
+            if (block.getRangeStart() > cursor) {
+                addGapSegment(audit, cursor, block.getRangeStart() - 1, "MISSING");
+            }
+            // Los bloques de un nodo de borde se facturan sin conexión y llegan a la central por lotes
+            boolean pending = block.getStatus() == NumberBlockStatus.EDGE
+                    || (block.getStatus() == NumberBlockStatus.LEASED
+                    && block.getLeaseExpiresAt() != null && block.getLeaseExpiresAt().isAfter(now));
+            long segmentEnd = Math.min(to, block.getRangeEnd());
+            addGapSegment(audit, Math.max(cursor, block.getRangeStart()), segmentEnd, pending ? "PENDING" : "RECOVERABLE");
+            cursor = segmentEnd + 1;
+            if (cursor > to) {
+                return;
+            }
+        }
+        addGapSegment(audit, cursor, to, "MISSING");
+    }
+
+    private void addGapSegment(NumberingAudit audit, long from, long to, String status) {
+        if (audit.getGaps().size() >= MAX_REPORTED_GAPS) {
+            audit.setGapsTruncated(true);
+            return;
+        }
+        audit.getGaps().add(new NumberingAudit.Gap(from, to, status));
+    }
+
+    private InvoiceSeries saveAndNotify(InvoiceSeries series) {
+        if (series.isDefaultSeries()) {
+            seriesRepository.findAll().stream()
+                    .filter(other -> other.isDefaultSeries() && !other.getPrefix().equals(series.getPrefix()))
+                    .forEach(other -> other.setDefaultSeries(false));
+        }
+        InvoiceSeries saved = seriesRepository.save(series);
+        eventPublisher.publishEvent(new InvoiceSeriesChangedEvent());
+        return saved;
+    }
+}
@@ -1,17 +1,32 @@
 package com.alejandro.facturacion.service;
 
+import com.alejandro.facturacion.dto.EdgeInvoice;
 import com.alejandro.facturacion.dto.InvoiceItemRequest;
+import com.alejandro.facturacion.dto.InvoiceNumber;
 import com.alejandro.facturacion.entity.Invoice;
 import com.alejandro.facturacion.entity.InvoiceItem;
 import com.alejandro.facturacion.entity.Product;
+import com.alejandro.facturacion.entity.TaxScheme;
+import com.alejandro.facturacion.dto.ArchivedInvoice;
+import com.alejandro.facturacion.dto.CacheRegion;
 import com.alejandro.facturacion.repository.ClientRepository;
+import com.alejandro.facturacion.repository.InvoiceArchiveRepository;
 import com.alejandro.facturacion.repository.InvoiceRepository;
 import com.alejandro.facturacion.repository.ProductRepository;
+import com.alejandro.facturacion.event.InvoiceCreatedEvent;
+import com.alejandro.facturacion.jfr.InvoiceCreationEvent;
+import com.alejandro.facturacion.utils.CompiledPricingRules;
+import com.alejandro.facturacion.utils.InvoiceCalculation;
+import com.alejandro.facturacion.utils.MoneyMath;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 
@@ -22,9 +37,11 @@ import java.util.Optional;
  * <ul>
  *   <li>Creación de facturas con validaciones de negocio</li>
  *   <li>Gestión de items de factura</li>
- *   <li>Cálculo automático de totales</li>
- *   <li>Validación de stock de productos</li>
+ *   <li>Cálculo automático de subtotales, descuentos, IVA y totales</li>
+ *   <li>Venta de las unidades facturadas en el libro de stock ({@link StockLedgerService})</li>
  *   <li>Consulta de facturas por cliente</li>
+ *   <li>Actualización del resumen de cuenta del cliente ({@link ClientSummaryService})</li>
+ *   <li>Auditoría de la factura ({@link AuditService})</li>
  * </ul>
  * 
  * <p>Utiliza transacciones para garantizar la consistencia de datos
@@ -39,9 +56,22 @@ import java.util.Optional;
 @Transactional
 public class InvoiceService {
 
+    /** Descuento manual máximo de una línea, en porcentaje. */
+    private static final BigDecimal MAX_DISCOUNT_PERCENT = BigDecimal.valueOf(100);
+
     private final InvoiceRepository invoiceRepository;
     private final ClientRepository clientRepository;
     private final ProductRepository productRepository;
+    private final InvoiceArchiveRepository invoiceArchiveRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MoneyService moneyService;
+    private final PricingRuleEngine pricingRuleEngine;
+    private final InvoiceNumberingService numberingService;
+    private final ShardRouter shardRouter;
+    private final EntityCache entityCache;
+    private final ClientSummaryService clientSummaryService;
+    private final AuditService auditService;
+    private final StockLedgerService stockLedger;
 
     /**
      * Crea una nueva factura para un cliente con los productos especificados.
@@ -50,8 +80,9 @@ public class InvoiceService {
      * <ul>
      *   <li>Verifica que el cliente exista</li>
      *   <li>Valida que los productos existan</li>
-     *   <li>Verifica disponibilidad de stock</li>
-     *   <li>Calcula automáticamente los subtotales y total</li>
+     *   <li>Registra la venta en el libro de stock, que verifica su disponibilidad</li>
+     *   <li>Aplica precios negociados, descuentos por volumen y promociones por categoría</li>
+     *   <li>Calcula automáticamente descuentos, IVA, subtotales y total en punto fijo</li>
      * </ul>
      * 
      * @param clientId ID del cliente para el cual se crea la factura
@@ -60,6 +91,29 @@ public class InvoiceService {
      * @throws IllegalArgumentException si el cliente no existe, productos no encontrados o stock insuficiente
      */
     public Invoice createInvoice(Long clientId, List<InvoiceItemRequest> items) {
+        return createInvoice(clientId, items, null);
+    }
+
+    /**
+     * Crea una factura numerada en la serie indicada.
+     *
+     * @param clientId ID del cliente para el cual se crea la factura
+     * @param items Lista de productos y cantidades a facturar
+     * @param seriesPrefix Prefijo de la serie de numeración, o {@code null} para la serie por defecto
+     * @return Factura creada con su número legal
+     * @throws IllegalArgumentException si los datos no son válidos o la serie no existe
+     * @throws IllegalStateException si la resolución de la serie no está vigente o su rango está agotado,
+     *         o si el cliente se está moviendo de shard
+     */
+    public Invoice createInvoice(Long clientId, List<InvoiceItemRequest> items, String seriesPrefix) {
+        // Con sharding, la factura se guarda en el shard del cliente
+        return shardRouter.forClientWrite(clientId, () -> buildAndSave(clientId, items, seriesPrefix));
+    }
+
+    private Invoice buildAndSave(Long clientId, List<InvoiceItemRequest> items, String seriesPrefix) {
+        InvoiceCreationEvent creationEvent = InvoiceCreationEvent.start(clientId, items.size());
+        creationEvent.commitAfterTransaction();
+
         // Validar que el cliente existe
         var client = clientRepository.findById(clientId)
                 .orElseThrow(() -> new IllegalArgumentException("Cliente no encontrado"));
@@ -67,42 +121,138 @@ public class InvoiceService {
         // Crear la factura
         Invoice invoice = Invoice.builder()
                 .client(client)
-                .total(BigDecimal.ZERO)
+                .items(new ArrayList<>(items.size()))
                 .build();
 
+        // Los importes se calculan en unidades mínimas (long); BigDecimal solo al persistir
+        InvoiceCalculation calculation = moneyService.newCalculation();
+        // Todas las líneas se valoran con la misma versión de las reglas de precios
+        CompiledPricingRules pricingRules = pricingRuleEngine.getRules();
+
         // Procesar cada item de la factura
         for (InvoiceItemRequest itemRequest : items) {
             Product product = productRepository.findById(itemRequest.getProductId())
                     .orElseThrow(() -> new IllegalArgumentException("Producto no encontrado: " + itemRequest.getProductId()));
 
-            // Validar stock disponible
-            if (product.getStock() < itemRequest.getQuantity()) {
-                throw new IllegalArgumentException("Stock insuficiente para el producto: " + product.getName());
+            if (itemRequest.getQuantity() == null || itemRequest.getQuantity() <= 0) {
+                throw new IllegalArgumentException("Cantidad inválida para el producto: " + product.getName());
             }
+            BigDecimal discountPercent = itemRequest.getDiscountPercent();
+            if (discountPercent != null
+                    && (discountPercent.signum() < 0 || discountPercent.compareTo(MAX_DISCOUNT_PERCENT) > 0)) {
+                throw new IllegalArgumentException("Descuento inválido para el producto " + product.getName()
+                        + ": debe estar entre 0 y 100");
+            }
+
+            long unitPrice = pricingRules.unitPrice(clientId, product.getId(), moneyService.toMinor(product.getPrice()));
+            // Se aplica el mayor entre el descuento manual y el de las reglas; no se acumulan
+            int discountRate = Math.max(MoneyMath.toBasisPoints(itemRequest.getDiscountPercent()),
+                    pricingRules.discountBasisPoints(product.getId(), product.getCategory(), itemRequest.getQuantity()));
+            int taxRate = MoneyMath.toBasisPoints(product.getTaxRate());
+            calculation.addLine(unitPrice, itemRequest.getQuantity(), discountRate, taxRate);
 
             // Crear item de factura
             InvoiceItem invoiceItem = InvoiceItem.builder()
                     .product(product)
                     .quantity(itemRequest.getQuantity())
-                    .price(product.getPrice())
-                    .subtotal(product.getPrice().multiply(BigDecimal.valueOf(itemRequest.getQuantity())))
+                    .price(moneyService.toDecimal(unitPrice))
+                    .discountRate(MoneyMath.fromBasisPoints(discountRate))
+                    .discountAmount(moneyService.toDecimal(calculation.getLineDiscount()))
+                    .subtotal(moneyService.toDecimal(calculation.getLineNet()))
+                    .taxRate(MoneyMath.fromBasisPoints(taxRate))
+                    .taxScheme(TaxScheme.orDefault(product.getTaxScheme()))
+                    .taxAmount(moneyService.toDecimal(calculation.getLineTax()))
                     .build();
 
-            // Actualizar stock del producto
-            product.setStock(product.getStock() - itemRequest.getQuantity());
-            productRepository.save(product);
-
             // Agregar item a la factura
             invoice.getItems().add(invoiceItem);
         }
 
-        // Calcular total de la factura
-        BigDecimal total = invoice.getItems().stream()
-                .map(InvoiceItem::getSubtotal)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        invoice.setTotal(total);
+        // Totales de la factura: suma exacta de los importes redondeados de cada línea
+        invoice.setSubtotal(moneyService.toDecimal(calculation.getSubtotal()));
+        invoice.setDiscountTotal(moneyService.toDecimal(calculation.getDiscountTotal()));
+        invoice.setTaxTotal(moneyService.toDecimal(calculation.getTaxTotal()));
+        invoice.setTotal(moneyService.toDecimal(calculation.getTotal()));
+
+        // El número se asigna al final, tras todas las validaciones; si la transacción falla se reutiliza
+        long numberingMark = creationEvent.mark();
+        InvoiceNumber number = numberingService.assign(seriesPrefix);
+        creationEvent.addNumberingTime(numberingMark);
+        if (number != null) {
+            invoice.setSeriesPrefix(number.getSeriesPrefix());
+            invoice.setNumber(number.getNumber());
+            creationEvent.setSeriesPrefix(number.getSeriesPrefix());
+        }
+
+        Invoice saved = invoiceRepository.save(invoice);
+        clientSummaryService.recordInvoice(saved);
+        // La venta se registra lo último: bloquea los productos solo hasta que la factura se confirma
+        long stockMark = creationEvent.mark();
+        stockLedger.recordSale(saved);
+        creationEvent.addStockTime(stockMark);
+        auditService.invoiceCreated(saved);
+        eventPublisher.publishEvent(new InvoiceCreatedEvent(saved));
+        return saved;
+    }
 
-        return invoiceRepository.save(invoice);
+    /**
+     * Guarda en el shard del cliente una factura emitida por un nodo de borde, con su número, su
+     * fecha y sus importes tal como se emitió: ya es un documento legal, así que no se recalcula ni
+     * se valida el stock (lo concilia {@link EdgeIngestService}).
+     *
+     * @param edgeInvoice Factura recibida del nodo
+     * @return la factura guardada, o la que ya estaba guardada con ese número
+     * @throws IllegalArgumentException si el cliente o algún producto no existen en la central
+     * @throws IllegalStateException si el cliente se está moviendo de shard
+     */
+    public Invoice saveEdgeInvoice(EdgeInvoice edgeInvoice) {
+        Long clientId = edgeInvoice.getClientId();
+        return shardRouter.forClientWrite(clientId, () -> {
+            Optional<Invoice> existing = invoiceRepository.findBySeriesPrefixAndNumber(
+                    edgeInvoice.getSeriesPrefix(), edgeInvoice.getNumber());
+            if (existing.isPresent()) {
+                // Reenvío de la misma factura; si no coincide (cliente, importes o líneas), el número lo usó otra
+                Invoice saved = existing.get();
+                if (!edgeInvoice.sameAs(saved)) {
+                    throw new IllegalStateException("El número " + saved.getFullNumber() + " ya está usado por otra factura");
+                }
+                return saved;
+            }
+            var client = clientRepository.findById(clientId)
+                    .orElseThrow(() -> new IllegalArgumentException("Cliente no encontrado: " + clientId));
+            Invoice invoice = Invoice.builder()
+                    .client(client)
+                    .createdAt(edgeInvoice.getCreatedAt())
+                    .seriesPrefix(edgeInvoice.getSeriesPrefix())
+                    .number(edgeInvoice.getNumber())
+                    .subtotal(edgeInvoice.getSubtotal())
+                    .discountTotal(edgeInvoice.getDiscountTotal())
+                    .taxTotal(edgeInvoice.getTaxTotal())
+                    .total(edgeInvoice.getTotal())
+                    .items(new ArrayList<>(edgeInvoice.getItems().size()))
+                    .build();
+            for (EdgeInvoice.Item item : edgeInvoice.getItems()) {
+                Product product = productRepository.findById(item.getProductId())
+                        .orElseThrow(() -> new IllegalArgumentException("Producto no encontrado: " + item.getProductId()));
+                invoice.getItems().add(InvoiceItem.builder()
+                        .product(product)
+                        .quantity(item.getQuantity())
+                        .price(item.getPrice())
+                        .discountRate(item.getDiscountRate())
+                        .discountAmount(item.getDiscountAmount())
+                        .subtotal(item.getSubtotal())
+                        .taxRate(item.getTaxRate())
+                        .taxScheme(TaxScheme.orDefault(item.getTaxScheme()))
+                        .taxAmount(item.getTaxAmount())
+                        .build());
+            }
+            Invoice saved = invoiceRepository.save(invoice);
+            clientSummaryService.recordInvoice(saved);
+            // El stock de las facturas de borde lo registra EdgeIngestService al conciliarlo
+            auditService.invoiceCreated(saved);
+            eventPublisher.publishEvent(new InvoiceCreatedEvent(saved));
+            return saved;
+        });
     }
 
     /**
@@ -112,18 +262,46 @@ public class InvoiceService {
      */
     @Transactional(readOnly = true)
     public List<Invoice> getAllInvoices() {
-        return invoiceRepository.findAll();
+        if (!shardRouter.isSharded()) {
+            return invoiceRepository.findAll();
+        }
+        List<Invoice> invoices = new ArrayList<>();
+        shardRouter.scatter(invoiceRepository::findAllWithDetails).forEach(invoices::addAll);
+        invoices.sort(Comparator.comparing(Invoice::getId));
+        return invoices;
     }
 
     /**
      * Busca una factura por su ID.
      * 
+     * <p>Si la factura ya no está en la base de datos se busca en el archivo frío;
+     * en ese caso se devuelve una copia desacoplada, no gestionada por JPA. Con sharding se busca
+     * primero en el shard donde se creó y después en los demás (su cliente pudo moverse).
+     * La factura se devuelve con sus asociaciones ya cargadas y pasa por {@link EntityCache}: un
+     * acierto devuelve una copia propia de la petición.
+     * 
      * @param id ID de la factura a buscar
      * @return Optional con la factura si existe, vacío en caso contrario
      */
-    @Transactional(readOnly = true)
+    // Sin transacción propia, para que un acierto de la caché no tome una conexión
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public Optional<Invoice> getInvoiceById(Long id) {
-        return invoiceRepository.findById(id);
+        return entityCache.get(CacheRegion.INVOICE, id,
+                () -> shardRouter.findFirst(shardRouter.shardOfId(id), () -> invoiceRepository.findWithDetailsById(id))
+                        .or(() -> invoiceArchiveRepository.findById(id).map(ArchivedInvoice::toInvoice)));
+    }
+
+    /**
+     * Busca una factura con su cliente, items y productos ya cargados, para poder
+     * usarla fuera de la transacción (por ejemplo, al renderizarla en otro hilo).
+     * 
+     * @param id ID de la factura a buscar
+     * @return Optional con la factura si existe, vacío en caso contrario
+     */
+    @Transactional(readOnly = true)
+    public Optional<Invoice> getInvoiceWithDetails(Long id) {
+        return shardRouter.findFirst(shardRouter.shardOfId(id), () -> invoiceRepository.findWithDetailsById(id))
+                .or(() -> invoiceArchiveRepository.findById(id).map(ArchivedInvoice::toInvoice));
     }
 
     /**
@@ -134,7 +312,7 @@ public class InvoiceService {
      */
     @Transactional(readOnly = true)
     public List<Invoice> getInvoicesByClientId(Long clientId) {
-        return invoiceRepository.findByClientId(clientId);
+        return shardRouter.forClient(clientId, () -> invoiceRepository.findByClientId(clientId));
     }
 }
 
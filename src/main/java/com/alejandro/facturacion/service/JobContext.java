@@ -0,0 +1,52 @@
+package com.alejandro.facturacion.service;
+
+import java.util.concurrent.CancellationException;
+import java.util.function.IntPredicate;
+
+/**
+ * Contexto de ejecución de un trabajo: progreso y cancelación cooperativa.
+ */
+public class JobContext {
+
+    /** Persiste el progreso; devuelve {@code false} si el trabajo ya no está en ejecución. */
+    private final IntPredicate progressListener;
+    private volatile boolean cancelled;
+    private int lastReported = -1;
+
+    JobContext(IntPredicate progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Informa el progreso (0-100). Solo se persisten los cambios de al menos un 5%; si al
+     * persistirlo el trabajo ya no está en ejecución (se canceló desde otra instancia), se marca
+     * como cancelado.
+     */
+    public void reportProgress(int percent) {
+        int bounded = Math.max(0, Math.min(100, percent));
+        if (bounded == 100 || bounded - lastReported >= 5) {
+            lastReported = bounded;
+            if (!progressListener.test(bounded)) {
+                cancelled = true;
+            }
+        }
+    }
+
+    /**
+     * Lanza {@link CancellationException} si el trabajo fue cancelado.
+     * Los handlers deben llamarlo entre unidades de trabajo.
+     */
+    public void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Trabajo cancelado");
+        }
+    }
+
+    public boolean isCancelRequested() {
+        return cancelled;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+}
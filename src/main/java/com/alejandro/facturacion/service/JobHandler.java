@@ -0,0 +1,29 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.entity.JobType;
+
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * Implementación de un tipo de trabajo asíncrono ejecutado por {@link JobService}.
+ */
+public interface JobHandler {
+
+    JobType getType();
+
+    /** Tipo MIME del resultado. */
+    String getContentType();
+
+    /** Extensión del fichero de resultado, sin punto. */
+    String getFileExtension();
+
+    /**
+     * Genera el resultado del trabajo.
+     *
+     * @param params parámetros recibidos en la petición
+     * @param context permite informar el progreso y detectar cancelaciones
+     * @param out destino del resultado
+     */
+    void execute(Map<String, Object> params, JobContext context, OutputStream out) throws Exception;
+}
@@ -0,0 +1,380 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.ReadYourWritesTaskDecorator;
+import com.alejandro.facturacion.dto.JobRequest;
+import com.alejandro.facturacion.entity.Job;
+import com.alejandro.facturacion.entity.JobStatus;
+import com.alejandro.facturacion.entity.JobType;
+import com.alejandro.facturacion.repository.JobRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ejecuta trabajos de larga duración fuera de los hilos de petición HTTP.
+ *
+ * <p>Los trabajos se ejecutan en un pool acotado ({@code facturacion.jobs.workers}) con una cola
+ * por prioridad; si ya hay {@code facturacion.jobs.max-queued} trabajos esperando, los nuevos se
+ * rechazan. El estado se guarda en la tabla {@code jobs} y el resultado en
+ * {@code facturacion.jobs.storage-dir}.
+ *
+ * <p>Cada trabajo pendiente pertenece a la instancia que lo encoló, que lo renueva cada
+ * {@code facturacion.jobs.heartbeat-interval}. Al arrancar, y en cada renovación, se reclaman (con
+ * un UPDATE condicional, así que solo una instancia lo consigue) los trabajos pendientes o a medias
+ * de esta instancia o de instancias que llevan más de {@code facturacion.jobs.lease} sin renovar, y
+ * se vuelven a encolar desde el principio. Los cambios de estado son UPDATE condicionales: una
+ * cancelación, aunque llegue por otra instancia, nunca se sobrescribe con el resultado.
+ *
+ * <p>Los trabajos terminados hace más de {@code facturacion.jobs.retention} se borran, con su
+ * resultado, según {@code facturacion.jobs.purge-cron}.
+ *
+ * <p>Un trabajo encolado por una petición que debe leer del primario (read-your-writes) se ejecuta
+ * también contra el primario ({@link ReadYourWritesTaskDecorator}); los que se reclaman de otra
+ * instancia o al arrancar ya no tienen esa petición y leen como cualquier tarea de fondo.
+ */
+@Slf4j
+@Service
+public class JobService {
+
+    private static final TaskDecorator TASK_DECORATOR = new ReadYourWritesTaskDecorator();
+
+    private final JobRepository jobRepository;
+    private final ObjectMapper objectMapper;
+    private final Map<JobType, JobHandler> handlers = new EnumMap<>(JobType.class);
+    private final Path storageDir;
+    private final int maxQueued;
+    private final Duration lease;
+    private final Duration retention;
+    private final String nodeId;
+
+    private final ThreadPoolExecutor executor;
+    private final Map<String, JobTask> activeTasks = new ConcurrentHashMap<>();
+    private final AtomicLong submissionOrder = new AtomicLong();
+    /** Trabajos encolados que aún no han empezado; se reserva el hueco antes de guardar el trabajo. */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    public JobService(JobRepository jobRepository,
+                      ObjectMapper objectMapper,
+                      List<JobHandler> jobHandlers,
+                      @Value("${facturacion.jobs.storage-dir:./data/jobs}") Path storageDir,
+                      @Value("${facturacion.jobs.workers:2}") int workers,
+                      @Value("${facturacion.jobs.max-queued:100}") int maxQueued,
+                      @Value("${facturacion.jobs.heartbeat-interval:PT30S}") Duration heartbeatInterval,
+                      @Value("${facturacion.jobs.lease:PT2M}") Duration lease,
+                      @Value("${facturacion.jobs.retention:P7D}") Duration retention,
+                      @Value("${facturacion.jobs.node-id:}") String nodeId) {
+        if (heartbeatInterval.compareTo(lease) >= 0) {
+            throw new IllegalStateException("facturacion.jobs.heartbeat-interval (" + heartbeatInterval
+                    + ") debe ser menor que facturacion.jobs.lease (" + lease + ")");
+        }
+        this.jobRepository = jobRepository;
+        this.objectMapper = objectMapper;
+        this.storageDir = storageDir;
+        this.maxQueued = maxQueued;
+        this.lease = lease;
+        this.retention = retention;
+        this.nodeId = nodeId.isBlank()
+                ? ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8)
+                : nodeId;
+        jobHandlers.forEach(handler -> handlers.put(handler.getType(), handler));
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "job-worker-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Registra un trabajo y lo encola.
+     *
+     * @throws IllegalArgumentException si el tipo no tiene implementación
+     * @throws RejectedExecutionException si la cola está llena
+     */
+    public Job submit(JobRequest request) {
+        if (!handlers.containsKey(request.getType())) {
+            throw new IllegalArgumentException("Tipo de trabajo no soportado: " + request.getType());
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            throw new RejectedExecutionException("Cola de trabajos llena");
+        }
+        try {
+            Job job = Job.builder()
+                    .id(UUID.randomUUID().toString())
+                    .type(request.getType())
+                    .status(JobStatus.QUEUED)
+                    .priority(request.getPriority())
+                    .params(writeParams(request.getParams()))
+                    .owner(nodeId)
+                    .heartbeatAt(LocalDateTime.now())
+                    .build();
+            job = jobRepository.save(job);
+            enqueue(job);
+            return job;
+        } catch (RuntimeException e) {
+            queued.decrementAndGet();
+            throw e;
+        }
+    }
+
+    public Optional<Job> getJob(String id) {
+        return jobRepository.findById(id);
+    }
+
+    /**
+     * Ruta del resultado de un trabajo completado.
+     */
+    public Optional<Path> getResult(Job job) {
+        if (job.getStatus() != JobStatus.COMPLETED || job.getResultPath() == null) {
+            return Optional.empty();
+        }
+        Path path = Path.of(job.getResultPath());
+        return Files.exists(path) ? Optional.of(path) : Optional.empty();
+    }
+
+    /**
+     * Cancela un trabajo en cola o en ejecución, en esta o en otra instancia. Un trabajo terminado
+     * no se modifica. Un trabajo en ejecución se detiene en su siguiente {@code checkCancelled()}
+     * (en otra instancia, en su siguiente informe de progreso) y su resultado se descarta.
+     *
+     * @return el trabajo con su estado actualizado
+     */
+    public Optional<Job> cancel(String id) {
+        JobTask task = activeTasks.get(id);
+        if (task != null) {
+            task.context.cancel();
+            if (executor.remove(task)) {
+                activeTasks.remove(id);
+                queued.decrementAndGet();
+            }
+        }
+        finish(id, JobStatus.CANCELLED, null, null, null);
+        return jobRepository.findById(id);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePendingJobs() {
+        int resumed = claimPendingJobs();
+        if (resumed > 0) {
+            log.info("{} trabajos pendientes reencolados tras el arranque", resumed);
+        }
+    }
+
+    /**
+     * Renueva los trabajos de esta instancia y reclama los de instancias que han dejado de hacerlo.
+     */
+    @Scheduled(fixedDelayString = "${facturacion.jobs.heartbeat-interval:PT30S}")
+    public void heartbeat() {
+        jobRepository.heartbeat(nodeId, LocalDateTime.now());
+        int claimed = claimPendingJobs();
+        if (claimed > 0) {
+            log.warn("{} trabajos de instancias sin renovar reencolados en {}", claimed, nodeId);
+        }
+    }
+
+    /**
+     * Borra los trabajos terminados hace más de {@code facturacion.jobs.retention} y sus resultados.
+     *
+     * @return número de trabajos borrados
+     */
+    @Scheduled(cron = "${facturacion.jobs.purge-cron:0 45 3 * * *}")
+    public int purgeFinishedJobs() {
+        List<Job> expired = jobRepository.findByStatusInAndFinishedAtBefore(
+                List.of(JobStatus.COMPLETED, JobStatus.FAILED, JobStatus.CANCELLED), LocalDateTime.now().minus(retention));
+        if (expired.isEmpty()) {
+            return 0;
+        }
+        // Primero el fichero: una fila sin resultado se sirve como "sin resultado", nunca al revés
+        expired.stream().map(Job::getResultPath).filter(Objects::nonNull).map(Path::of).forEach(JobService::deleteQuietly);
+        jobRepository.deleteAllInBatch(expired);
+        log.info("{} trabajos terminados hace más de {} borrados", expired.size(), retention);
+        return expired.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Los trabajos interrumpidos quedan en RUNNING: los reclama otra instancia cuando caduca su
+        // renovación, o esta misma al arrancar si conserva facturacion.jobs.node-id
+        executor.shutdownNow();
+    }
+
+    /** Número de trabajos esperando turno. */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Reclama y encola los trabajos pendientes que no están ya en la cola de esta instancia.
+     */
+    private int claimPendingJobs() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Job> pending = jobRepository.findByStatusInOrderByPriorityDescCreatedAtAsc(
+                List.of(JobStatus.QUEUED, JobStatus.RUNNING));
+        int claimed = 0;
+        for (Job job : pending) {
+            if (activeTasks.containsKey(job.getId())
+                    || jobRepository.claim(job.getId(), nodeId, now, now.minus(lease)) == 0) {
+                continue;
+            }
+            queued.incrementAndGet();
+            enqueue(job);
+            claimed++;
+        }
+        return claimed;
+    }
+
+    private void enqueue(Job job) {
+        JobTask task = new JobTask(job.getId(), job.getType(), job.getPriority(), submissionOrder.incrementAndGet(),
+                new JobContext(progress -> jobRepository.updateProgress(job.getId(), progress) > 0));
+        activeTasks.put(job.getId(), task);
+        executor.execute(task);
+    }
+
+    private void run(JobTask task) {
+        // Cancelado o reclamado por otra instancia mientras esperaba en la cola
+        if (task.context.isCancelRequested() || jobRepository.markRunning(task.jobId, nodeId, LocalDateTime.now()) == 0) {
+            return;
+        }
+        Job job = jobRepository.findById(task.jobId).orElse(null);
+        if (job == null) {
+            return;
+        }
+
+        JobHandler handler = handlers.get(task.type);
+        Path result = storageDir.resolve(job.getId() + "." + handler.getFileExtension());
+        Path partial = storageDir.resolve(job.getId() + ".part");
+        try {
+            Files.createDirectories(storageDir);
+            try (OutputStream out = Files.newOutputStream(partial)) {
+                handler.execute(readParams(job.getParams()), task.context, out);
+            }
+            task.context.checkCancelled();
+            Files.move(partial, result, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            task.context.reportProgress(100);
+            if (!finish(job.getId(), JobStatus.COMPLETED, result.toString(), handler.getContentType(), null)) {
+                deleteQuietly(result); // cancelado mientras terminaba
+            }
+        } catch (CancellationException e) {
+            finish(job.getId(), JobStatus.CANCELLED, null, null, null);
+        } catch (Exception e) {
+            if (executor.isShutdown()) {
+                // Apagado de la aplicación: se deja en RUNNING para reencolarlo al arrancar
+                return;
+            }
+            if (task.context.isCancelRequested()) {
+                finish(job.getId(), JobStatus.CANCELLED, null, null, null);
+            } else {
+                log.error("Error ejecutando el trabajo {} ({})", job.getId(), job.getType(), e);
+                finish(job.getId(), JobStatus.FAILED, null, null, e.getMessage());
+            }
+        } finally {
+            deleteQuietly(partial);
+        }
+    }
+
+    /**
+     * Termina el trabajo si sigue pendiente.
+     *
+     * @return {@code false} si ya estaba terminado
+     */
+    private boolean finish(String jobId, JobStatus status, String resultPath, String contentType, String error) {
+        String truncated = error != null && error.length() > 1000 ? error.substring(0, 1000) : error;
+        return jobRepository.finish(jobId, status, LocalDateTime.now(), resultPath, contentType, truncated) > 0;
+    }
+
+    private String writeParams(Map<String, Object> params) {
+        try {
+            return objectMapper.writeValueAsString(params == null ? Map.of() : params);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Parámetros de trabajo inválidos", e);
+        }
+    }
+
+    private Map<String, Object> readParams(String params) throws IOException {
+        if (params == null || params.isBlank()) {
+            return Map.of();
+        }
+        return objectMapper.readValue(params, new TypeReference<Map<String, Object>>() { });
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // Un fichero parcial huérfano no afecta a los resultados
+        }
+    }
+
+    /**
+     * Entrada de la cola: ordena por prioridad descendente y, a igual prioridad, por orden de llegada.
+     */
+    private final class JobTask implements Runnable, Comparable<JobTask> {
+
+        private final String jobId;
+        private final JobType type;
+        private final int priority;
+        private final long order;
+        private final JobContext context;
+        /** Se decora al crearse, en el hilo que encola, para llevar su contexto de lectura. */
+        private final Runnable body;
+
+        private JobTask(String jobId, JobType type, int priority, long order, JobContext context) {
+            this.jobId = jobId;
+            this.type = type;
+            this.priority = priority;
+            this.order = order;
+            this.context = context;
+            this.body = TASK_DECORATOR.decorate(() -> JobService.this.run(this));
+        }
+
+        @Override
+        public void run() {
+            queued.decrementAndGet();
+            try {
+                body.run();
+            } finally {
+                activeTasks.remove(jobId);
+            }
+        }
+
+        @Override
+        public int compareTo(JobTask other) {
+            int byPriority = Integer.compare(other.priority, priority);
+            return byPriority != 0 ? byPriority : Long.compare(order, other.order);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.dto.CacheInvalidation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Consumer;
+
+/**
+ * Bus para una sola instancia: no hay nadie a quien avisar ni de quien esperar invalidaciones.
+ */
+@Component
+@ConditionalOnProperty(name = "facturacion.cache.transport", havingValue = "none")
+public class LocalCacheInvalidationBus implements CacheInvalidationBus {
+
+    @Override
+    public void start(Consumer<CacheInvalidation> listener) {
+    }
+
+    @Override
+    public void publish(CacheInvalidation invalidation) {
+    }
+
+    @Override
+    public long lagNanos() {
+        return 0;
+    }
+}
@@ -0,0 +1,44 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.EInvoiceProperties;
+import com.alejandro.facturacion.dto.ElectronicInvoice;
+import com.alejandro.facturacion.dto.TransmissionResult;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Transmisor de desarrollo: acepta cualquier documento firmado y lo deja en
+ * {@code facturacion.einvoice.outbox-dir} con el número de la factura como nombre.
+ */
+@Component
+@ConditionalOnProperty(name = "facturacion.einvoice.transmitter", havingValue = "local", matchIfMissing = true)
+public class LocalEInvoiceTransmitter implements EInvoiceTransmitter {
+
+    private final Path outboxDir;
+
+    public LocalEInvoiceTransmitter(EInvoiceProperties properties) {
+        this.outboxDir = properties.getOutboxDir();
+    }
+
+    @Override
+    public TransmissionResult transmit(ElectronicInvoice document) throws IOException {
+        if (!document.isSigned()) {
+            return new TransmissionResult(document.getInvoiceId(), document.getNumber(), document.getCufe(),
+                    "REJECTED", null, "El documento no está firmado", Instant.now());
+        }
+        Files.createDirectories(outboxDir);
+        Path target = outboxDir.resolve(document.getNumber() + ".xml");
+        Path partial = outboxDir.resolve(document.getNumber() + ".xml.part");
+        Files.write(partial, document.getXml());
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new TransmissionResult(document.getInvoiceId(), document.getNumber(), document.getCufe(),
+                "ACCEPTED", UUID.randomUUID().toString(), null, Instant.now());
+    }
+}
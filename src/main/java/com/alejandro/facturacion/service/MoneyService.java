@@ -0,0 +1,52 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.utils.InvoiceCalculation;
+import com.alejandro.facturacion.utils.MoneyMath;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Política monetaria de la aplicación: escala de la moneda y modo de redondeo.
+ *
+ * <p>Los cálculos internos se hacen en unidades mínimas ({@code long}) con {@link MoneyMath}
+ * e {@link InvoiceCalculation}; este servicio concentra las conversiones de frontera entre
+ * esos valores y los {@code BigDecimal} de la API y la base de datos.
+ */
+@Getter
+@Service
+public class MoneyService {
+
+    /** Escala máxima admitida por las columnas monetarias (DECIMAL(38, 2)). */
+    private static final int MAX_SCALE = 2;
+
+    private final String currency;
+    private final int scale;
+    private final RoundingMode roundingMode;
+
+    public MoneyService(@Value("${facturacion.money.currency:COP}") String currency,
+                        @Value("${facturacion.money.scale:2}") int scale,
+                        @Value("${facturacion.money.rounding-mode:HALF_UP}") RoundingMode roundingMode) {
+        if (scale < 0 || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("facturacion.money.scale debe estar entre 0 y " + MAX_SCALE);
+        }
+        this.currency = currency;
+        this.scale = scale;
+        this.roundingMode = roundingMode;
+    }
+
+    public InvoiceCalculation newCalculation() {
+        return new InvoiceCalculation(roundingMode);
+    }
+
+    public long toMinor(BigDecimal amount) {
+        return MoneyMath.toMinor(amount, scale, roundingMode);
+    }
+
+    public BigDecimal toDecimal(long minor) {
+        return MoneyMath.toDecimal(minor, scale);
+    }
+}
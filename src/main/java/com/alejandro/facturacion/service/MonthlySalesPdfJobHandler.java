@@ -0,0 +1,45 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.dto.MonthlySalesReportDTO;
+import com.alejandro.facturacion.entity.JobType;
+import com.alejandro.facturacion.utils.PdfReportGenerator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trabajo que genera el reporte mensual de ventas en PDF.
+ */
+@Component
+@RequiredArgsConstructor
+public class MonthlySalesPdfJobHandler implements JobHandler {
+
+    private final ReportService reportService;
+
+    @Override
+    public JobType getType() {
+        return JobType.MONTHLY_SALES_PDF;
+    }
+
+    @Override
+    public String getContentType() {
+        return MediaType.APPLICATION_PDF_VALUE;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return "pdf";
+    }
+
+    @Override
+    public void execute(Map<String, Object> params, JobContext context, OutputStream out) throws Exception {
+        List<MonthlySalesReportDTO> report = reportService.getMonthlySales();
+        context.reportProgress(50);
+        context.checkCancelled();
+        PdfReportGenerator.generateMonthlySalesReport(report).transferTo(out);
+    }
+}
@@ -0,0 +1,46 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.dto.MonthlySalesReportDTO;
+import com.alejandro.facturacion.entity.JobType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trabajo que genera el reporte mensual de ventas en JSON.
+ */
+@Component
+@RequiredArgsConstructor
+public class MonthlySalesReportJobHandler implements JobHandler {
+
+    private final ReportService reportService;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public JobType getType() {
+        return JobType.MONTHLY_SALES_REPORT;
+    }
+
+    @Override
+    public String getContentType() {
+        return MediaType.APPLICATION_JSON_VALUE;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return "json";
+    }
+
+    @Override
+    public void execute(Map<String, Object> params, JobContext context, OutputStream out) throws Exception {
+        List<MonthlySalesReportDTO> report = reportService.getMonthlySales();
+        context.reportProgress(50);
+        context.checkCancelled();
+        objectMapper.writeValue(out, report);
+    }
+}
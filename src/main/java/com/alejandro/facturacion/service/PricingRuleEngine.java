@@ -0,0 +1,154 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.entity.PricingRule;
+import com.alejandro.facturacion.event.PricingRulesChangedEvent;
+import com.alejandro.facturacion.repository.PricingRuleRepository;
+import com.alejandro.facturacion.utils.CompiledPricingRules;
+import com.alejandro.facturacion.utils.MoneyMath;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * Compila las reglas de precios activas en un {@link CompiledPricingRules} y lo publica
+ * de forma atómica.
+ *
+ * <p>La creación de facturas solo lee la referencia actual (sin bloqueos); las modificaciones
+ * de reglas construyen una versión nueva completa y la sustituyen. Se recompila al arrancar,
+ * tras cada cambio confirmado, cuando empieza o termina la vigencia de alguna regla y
+ * periódicamente, para recoger cambios hechos desde otras instancias.
+ */
+@Slf4j
+@Service
+public class PricingRuleEngine {
+
+    private final PricingRuleRepository pricingRuleRepository;
+    private final MoneyService moneyService;
+
+    private volatile CompiledPricingRules rules = CompiledPricingRules.EMPTY;
+
+    public PricingRuleEngine(PricingRuleRepository pricingRuleRepository, MoneyService moneyService) {
+        this.pricingRuleRepository = pricingRuleRepository;
+        this.moneyService = moneyService;
+    }
+
+    /**
+     * Versión compilada vigente. Una factura debe obtenerla una sola vez para que todas
+     * sus líneas se valoren con las mismas reglas.
+     */
+    public CompiledPricingRules getRules() {
+        return rules;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        recompile();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRulesChanged(PricingRulesChangedEvent event) {
+        recompile();
+    }
+
+    @Scheduled(fixedDelayString = "${facturacion.pricing.refresh-interval:PT1M}")
+    public void refresh() {
+        recompile();
+    }
+
+    /**
+     * Comprueba cada pocos segundos si alguna regla entra o sale de vigencia.
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void recompileOnValidityChange() {
+        if (!Instant.now().isBefore(rules.getNextChangeAt())) {
+            recompile();
+        }
+    }
+
+    public synchronized void recompile() {
+        LocalDateTime now = LocalDateTime.now();
+        List<PricingRule> active = pricingRuleRepository.findByActiveTrue();
+
+        CompiledPricingRules.Builder builder = new CompiledPricingRules.Builder();
+        LocalDateTime nextChange = null;
+        int compiled = 0;
+        for (PricingRule rule : active) {
+            if (rule.getValidFrom() != null && rule.getValidFrom().isAfter(now)) {
+                nextChange = earliest(nextChange, rule.getValidFrom());
+                continue;
+            }
+            if (rule.getValidTo() != null) {
+                if (!rule.getValidTo().isAfter(now)) {
+                    continue;
+                }
+                nextChange = earliest(nextChange, rule.getValidTo());
+            }
+            try {
+                if (add(builder, rule)) {
+                    compiled++;
+                }
+            } catch (ArithmeticException e) {
+                // Filas escritas sin pasar por PricingRuleService: una regla mala no impide compilar las demás
+                log.warn("Regla de precios {} ({}) con valores fuera de rango; se ignora", rule.getId(), rule.getType());
+            }
+        }
+
+        Instant nextChangeAt = nextChange == null ? Instant.MAX : nextChange.atZone(ZoneId.systemDefault()).toInstant();
+        rules = builder.build(nextChangeAt, compiled);
+        log.debug("Reglas de precios compiladas: {} vigentes de {} activas", compiled, active.size());
+    }
+
+    private boolean add(CompiledPricingRules.Builder builder, PricingRule rule) {
+        switch (rule.getType()) {
+            case VOLUME_TIER -> {
+                if (rule.getProductId() == null || rule.getMinQuantity() == null || rule.getDiscountPercent() == null) {
+                    return invalid(rule);
+                }
+                builder.volumeTier(rule.getProductId(), rule.getMinQuantity(), discountBasisPoints(rule));
+            }
+            case CATEGORY_PROMOTION -> {
+                if (rule.getCategory() == null || rule.getDiscountPercent() == null) {
+                    return invalid(rule);
+                }
+                builder.categoryPromotion(rule.getCategory(), discountBasisPoints(rule));
+            }
+            case CLIENT_PRICE -> {
+                if (rule.getClientId() == null || rule.getProductId() == null || rule.getFixedPrice() == null) {
+                    return invalid(rule);
+                }
+                builder.clientPrice(rule.getClientId(), rule.getProductId(), moneyService.toMinor(rule.getFixedPrice()));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Descuento de la regla en puntos básicos.
+     *
+     * @throws ArithmeticException si está fuera de 0-100%
+     */
+    private static int discountBasisPoints(PricingRule rule) {
+        int basisPoints = MoneyMath.toBasisPoints(rule.getDiscountPercent());
+        if (basisPoints < 0 || basisPoints > MoneyMath.BASIS_POINTS) {
+            throw new ArithmeticException("Descuento fuera de rango: " + rule.getDiscountPercent());
+        }
+        return basisPoints;
+    }
+
+    private boolean invalid(PricingRule rule) {
+        log.warn("Regla de precios {} ({}) incompleta; se ignora", rule.getId(), rule.getType());
+        return false;
+    }
+
+    private static LocalDateTime earliest(LocalDateTime current, LocalDateTime candidate) {
+        return current == null || candidate.isBefore(current) ? candidate : current;
+    }
+}
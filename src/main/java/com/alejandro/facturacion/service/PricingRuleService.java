@@ -0,0 +1,80 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.entity.PricingRule;
+import com.alejandro.facturacion.event.PricingRulesChangedEvent;
+import com.alejandro.facturacion.repository.PricingRuleRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+@Service
+@RequiredArgsConstructor
+@Transactional
+public class PricingRuleService {
+
+    private static final BigDecimal MAX_DISCOUNT_PERCENT = BigDecimal.valueOf(100);
+
+    private final PricingRuleRepository pricingRuleRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * Guarda una regla después de validarla: una regla guardada siempre puede compilarse.
+     *
+     * @throws IllegalArgumentException si le faltan los campos de su tipo o algún valor está fuera de rango
+     */
+    public PricingRule saveRule(PricingRule rule) {
+        validate(rule);
+        PricingRule saved = pricingRuleRepository.save(rule);
+        eventPublisher.publishEvent(new PricingRulesChangedEvent());
+        return saved;
+    }
+
+    @Transactional(readOnly = true)
+    public List<PricingRule> getAllRules() {
+        return pricingRuleRepository.findAll();
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<PricingRule> getRuleById(Long id) {
+        return pricingRuleRepository.findById(id);
+    }
+
+    public void deleteRule(Long id) {
+        pricingRuleRepository.deleteById(id);
+        eventPublisher.publishEvent(new PricingRulesChangedEvent());
+    }
+
+    private static void validate(PricingRule rule) {
+        if (rule.getType() == null) {
+            throw new IllegalArgumentException("La regla no tiene tipo");
+        }
+        boolean complete = switch (rule.getType()) {
+            case VOLUME_TIER -> rule.getProductId() != null && rule.getMinQuantity() != null
+                    && rule.getDiscountPercent() != null;
+            case CATEGORY_PROMOTION -> rule.getCategory() != null && rule.getDiscountPercent() != null;
+            case CLIENT_PRICE -> rule.getClientId() != null && rule.getProductId() != null
+                    && rule.getFixedPrice() != null;
+        };
+        if (!complete) {
+            throw new IllegalArgumentException("Faltan campos obligatorios para una regla " + rule.getType());
+        }
+        if (rule.getDiscountPercent() != null && (rule.getDiscountPercent().signum() < 0
+                || rule.getDiscountPercent().compareTo(MAX_DISCOUNT_PERCENT) > 0)) {
+            throw new IllegalArgumentException("El descuento debe estar entre 0 y 100");
+        }
+        if (rule.getMinQuantity() != null && rule.getMinQuantity() < 0) {
+            throw new IllegalArgumentException("La cantidad mínima no puede ser negativa");
+        }
+        if (rule.getFixedPrice() != null && rule.getFixedPrice().signum() < 0) {
+            throw new IllegalArgumentException("El precio negociado no puede ser negativo");
+        }
+        if (rule.getValidFrom() != null && rule.getValidTo() != null && !rule.getValidTo().isAfter(rule.getValidFrom())) {
+            throw new IllegalArgumentException("El fin de vigencia debe ser posterior al inicio");
+        }
+    }
+}
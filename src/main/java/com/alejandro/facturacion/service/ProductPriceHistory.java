@@ -0,0 +1,329 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.dto.ProductPrice;
+import com.alejandro.facturacion.event.ProductsChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Historial de precios de los productos ({@code product_prices}) y consulta del precio vigente en
+ * cualquier instante.
+ *
+ * <p>Cada escritura del catálogo llama a {@link #recordChanges(Collection)} en su misma transacción:
+ * una sola sentencia añade una fila por cada producto cuyo precio ya no coincide con el último del
+ * historial, así que ningún camino de escritura tiene que saber qué precios cambió. Los productos
+ * se bloquean antes ({@code SELECT ... FOR UPDATE}, en orden de ID) para que dos escrituras
+ * simultáneas no añadan el mismo precio dos veces; la clave única {@code (product_id, valid_from)}
+ * lo garantiza en cualquier caso.
+ *
+ * <p>En memoria se guardan los {@code facturacion.prices.max-per-product} precios más recientes de
+ * cada producto: dos arrays ordenados con el inicio de cada precio (microsegundos) y el precio (en
+ * céntimos, la escala de la columna), unos 16 bytes por cambio. El precio en un instante se busca
+ * por bisección, sin consultas, y cada array se sustituye entero al cambiar, de modo que las
+ * lecturas no se bloquean; solo los instantes anteriores al primer precio guardado de un producto
+ * con más cambios se consultan en la base de datos. Se carga al arrancar, se actualiza tras cada
+ * cambio confirmado y cada {@code facturacion.prices.refresh-interval} relee las filas recientes
+ * (con un margen de {@code facturacion.prices.overlap}) para recoger los cambios de otras
+ * instancias.
+ */
+@Slf4j
+@Service
+public class ProductPriceHistory {
+
+    /** Escala de {@code products.price} y {@code product_prices.price}. */
+    private static final int SCALE = 2;
+
+    private static final int CHUNK_SIZE = 1000;
+
+    private static final String RECORD_CHANGES = """
+            INSERT INTO product_prices (product_id, price, valid_from)
+            SELECT p.id, p.price, :now
+            FROM products p
+            WHERE p.price IS NOT NULL%s
+              AND NOT EXISTS (SELECT 1 FROM product_prices h
+                              WHERE h.product_id = p.id AND h.price = p.price
+                                AND h.valid_from = (SELECT MAX(l.valid_from) FROM product_prices l
+                                                    WHERE l.product_id = p.id))
+            """;
+
+    private static final String PRICE_AT = """
+            SELECT h.price, h.valid_from,
+                   (SELECT MIN(n.valid_from) FROM product_prices n
+                    WHERE n.product_id = h.product_id AND n.valid_from > h.valid_from) AS valid_to
+            FROM product_prices h
+            WHERE h.product_id = :id AND h.valid_from <= :at
+            ORDER BY h.valid_from DESC
+            LIMIT 1
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final Duration overlap;
+    private final int maxPerProduct;
+    private final Map<Long, Timeline> timelines = new ConcurrentHashMap<>();
+
+    /**
+     * Mayor {@code valid_from} leído; nulo hasta la primera carga. Se escribe en {@link #refresh()} y
+     * {@link #scheduledRefresh()} lo lee sin el bloqueo.
+     */
+    private volatile LocalDateTime loadedUpTo;
+
+    public ProductPriceHistory(JdbcTemplate jdbcTemplate,
+                               @Value("${facturacion.prices.overlap:PT1M}") Duration overlap,
+                               @Value("${facturacion.prices.max-per-product:32}") int maxPerProduct) {
+        if (maxPerProduct < 1) {
+            throw new IllegalArgumentException("facturacion.prices.max-per-product debe ser al menos 1");
+        }
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.overlap = overlap;
+        this.maxPerProduct = maxPerProduct;
+    }
+
+    /**
+     * Registra el precio actual de los productos cuyo precio ha cambiado desde su última entrada
+     * del historial (o que no tienen ninguna). Debe llamarse en la transacción que cambia el catálogo.
+     *
+     * @param productIds Productos a comprobar, o {@code null} para todo el catálogo
+     * @return Número de precios registrados
+     */
+    public int recordChanges(Collection<Long> productIds) {
+        if (productIds != null && productIds.isEmpty()) {
+            return 0;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        if (productIds == null) {
+            jdbcTemplate.getJdbcTemplate().queryForList("SELECT id FROM products ORDER BY id FOR UPDATE", Long.class);
+            return jdbcTemplate.update(String.format(RECORD_CHANGES, ""), Map.of("now", now));
+        }
+        List<Long> ids = new ArrayList<>(new TreeSet<>(productIds));
+        int recorded = 0;
+        for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+            Map<String, Object> params = Map.of("now", now, "ids", ids.subList(from, Math.min(ids.size(), from + CHUNK_SIZE)));
+            jdbcTemplate.queryForList("SELECT id FROM products WHERE id IN (:ids) ORDER BY id FOR UPDATE", params, Long.class);
+            recorded += jdbcTemplate.update(String.format(RECORD_CHANGES, " AND p.id IN (:ids)"), params);
+        }
+        return recorded;
+    }
+
+    /**
+     * Precio de un producto en un instante.
+     *
+     * @param productId ID del producto
+     * @param at Instante a consultar
+     * @return Precio vigente con su intervalo, o vacío si el producto no tenía precio entonces
+     */
+    public Optional<ProductPrice> getPriceAt(long productId, LocalDateTime at) {
+        Timeline timeline = timelines.get(productId);
+        if (timeline == null) {
+            return Optional.empty();
+        }
+        int index = timeline.indexAt(toMicros(at));
+        if (index >= 0) {
+            return Optional.of(timeline.get(productId, index));
+        }
+        if (!timeline.truncated) {
+            return Optional.empty();
+        }
+        // Anterior a los precios en memoria
+        return jdbcTemplate.query(PRICE_AT, Map.of("id", productId, "at", Timestamp.valueOf(at)), (rs, row) -> {
+            Timestamp validTo = rs.getTimestamp("valid_to");
+            return new ProductPrice(productId, rs.getBigDecimal("price"), rs.getTimestamp("valid_from").toLocalDateTime(),
+                    validTo != null ? validTo.toLocalDateTime() : null);
+        }).stream().findFirst();
+    }
+
+    /**
+     * Historial completo de un producto, del precio más antiguo al vigente.
+     *
+     * @param productId ID del producto
+     * @return Precios con su intervalo, vacío si el producto no tiene historial
+     */
+    public List<ProductPrice> getHistory(long productId) {
+        Timeline timeline = timelines.get(productId);
+        if (timeline == null) {
+            return List.of();
+        }
+        if (timeline.truncated) {
+            TreeMap<Long, Long> entries = new TreeMap<>();
+            jdbcTemplate.query("SELECT price, valid_from FROM product_prices WHERE product_id = :id",
+                    Map.of("id", productId), rs -> {
+                        entries.put(toMicros(rs.getTimestamp("valid_from").toLocalDateTime()), toCents(rs.getBigDecimal("price")));
+                    });
+            timeline = Timeline.of(entries, false, Integer.MAX_VALUE);
+        }
+        List<ProductPrice> history = new ArrayList<>(timeline.size());
+        for (int i = 0; i < timeline.size(); i++) {
+            history.add(timeline.get(productId, i));
+        }
+        return history;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        refresh();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductsChanged(ProductsChangedEvent event) {
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${facturacion.prices.refresh-interval:PT5S}")
+    public void scheduledRefresh() {
+        if (loadedUpTo != null) {
+            refresh();
+        }
+    }
+
+    /**
+     * Lee las filas nuevas del historial (todas en la primera carga) y las incorpora al índice,
+     * quedándose con las {@code maxPerProduct} más recientes de cada producto. Releer una fila ya
+     * cargada no cambia nada.
+     */
+    public synchronized void refresh() {
+        String sql = "SELECT product_id, price, valid_from FROM product_prices";
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        if (loadedUpTo != null) {
+            sql += " WHERE valid_from >= :since";
+            params.addValue("since", Timestamp.valueOf(loadedUpTo.minus(overlap)));
+        }
+        Map<Long, TreeMap<Long, Long>> changes = new HashMap<>();
+        Set<Long> truncated = new HashSet<>();
+        LocalDateTime[] latest = {loadedUpTo};
+        jdbcTemplate.query(sql, params, rs -> {
+            long productId = rs.getLong("product_id");
+            LocalDateTime validFrom = rs.getTimestamp("valid_from").toLocalDateTime();
+            TreeMap<Long, Long> entries = changes.computeIfAbsent(productId, id -> new TreeMap<>());
+            entries.put(toMicros(validFrom), toCents(rs.getBigDecimal("price")));
+            // Las filas llegan sin orden: se descarta siempre la más antigua de las leídas
+            if (entries.size() > maxPerProduct) {
+                entries.pollFirstEntry();
+                truncated.add(productId);
+            }
+            if (latest[0] == null || validFrom.isAfter(latest[0])) {
+                latest[0] = validFrom;
+            }
+        });
+        changes.forEach((productId, entries) -> timelines.merge(productId,
+                Timeline.of(entries, truncated.contains(productId), maxPerProduct),
+                (current, newer) -> current.merge(newer, maxPerProduct)));
+        if (loadedUpTo == null) {
+            log.info("Historial de precios cargado: {} productos", timelines.size());
+        }
+        loadedUpTo = latest[0] != null ? latest[0] : LocalDateTime.now();
+    }
+
+    private static long toMicros(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + time.getNano() / 1_000;
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
+    private static long toCents(BigDecimal price) {
+        return price.setScale(SCALE).unscaledValue().longValueExact();
+    }
+
+    /** Precios más recientes de un producto, ordenados por inicio; inmutable. */
+    private static final class Timeline {
+        private final long[] validFrom;
+        private final long[] cents;
+        /** Hay precios anteriores al primero que no están en memoria. */
+        private final boolean truncated;
+
+        private Timeline(long[] validFrom, long[] cents, boolean truncated) {
+            this.validFrom = validFrom;
+            this.cents = cents;
+            this.truncated = truncated;
+        }
+
+        /** Los {@code max} precios más recientes de {@code entries}. */
+        static Timeline of(TreeMap<Long, Long> entries, boolean truncated, int max) {
+            int skip = Math.max(0, entries.size() - max);
+            long[] validFrom = new long[entries.size() - skip];
+            long[] cents = new long[validFrom.length];
+            int i = -skip;
+            for (Map.Entry<Long, Long> entry : entries.entrySet()) {
+                if (i >= 0) {
+                    validFrom[i] = entry.getKey();
+                    cents[i] = entry.getValue();
+                }
+                i++;
+            }
+            return new Timeline(validFrom, cents, truncated || skip > 0);
+        }
+
+        /**
+         * Incorpora las entradas de {@code newer} (normalmente unas pocas releídas); si coinciden en
+         * un inicio prevalece la suya. Si todas están ya, con el mismo precio, devuelve este mismo.
+         */
+        Timeline merge(Timeline newer, int max) {
+            if (containsAll(newer)) {
+                return this;
+            }
+            TreeMap<Long, Long> entries = new TreeMap<>();
+            for (int i = 0; i < size(); i++) {
+                entries.put(validFrom[i], cents[i]);
+            }
+            for (int i = 0; i < newer.size(); i++) {
+                entries.put(newer.validFrom[i], newer.cents[i]);
+            }
+            return of(entries, truncated || newer.truncated, max);
+        }
+
+        private boolean containsAll(Timeline newer) {
+            for (int i = 0; i < newer.size(); i++) {
+                int index = Arrays.binarySearch(validFrom, newer.validFrom[i]);
+                // Las anteriores al primer precio de un historial recortado ya se descartaron
+                boolean known = index >= 0 ? cents[index] == newer.cents[i]
+                        : truncated && size() > 0 && newer.validFrom[i] < validFrom[0];
+                if (!known) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Posición del precio vigente en {@code micros}, o -1 si es anterior al primero. */
+        int indexAt(long micros) {
+            int index = Arrays.binarySearch(validFrom, micros);
+            return index >= 0 ? index : -index - 2;
+        }
+
+        int size() {
+            return validFrom.length;
+        }
+
+        ProductPrice get(long productId, int index) {
+            return new ProductPrice(productId, BigDecimal.valueOf(cents[index], SCALE), fromMicros(validFrom[index]),
+                    index + 1 < size() ? fromMicros(validFrom[index + 1]) : null);
+        }
+    }
+}
@@ -1,12 +1,17 @@
 package com.alejandro.facturacion.service;
 
+import com.alejandro.facturacion.dto.CacheRegion;
 import com.alejandro.facturacion.entity.Product;
+import com.alejandro.facturacion.event.ProductsChangedEvent;
 import com.alejandro.facturacion.repository.ProductRepository;
-import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -15,29 +20,72 @@ import java.util.Optional;
 public class ProductService {
 
     private final ProductRepository productRepository;
+    private final DuplicateIndex duplicateIndex;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EntityCache entityCache;
+    private final StockLedgerService stockLedger;
+    private final ProductPriceHistory priceHistory;
 
+    /**
+     * Crea o modifica un producto. El stock del alta entra en el libro como movimiento inicial; al
+     * modificarlo, un stock distinto del actual se registra como ajuste, como en la importación.
+     *
+     * @throws IllegalArgumentException si el stock es negativo
+     */
     public Product saveProduct(Product product) {
-        return productRepository.save(product);
+        Integer stock = product.getStock();
+        if (stock != null && stock < 0) {
+            throw new IllegalArgumentException("stock no puede ser negativo: " + stock);
+        }
+        // Con flush, para que el historial de precios vea el precio nuevo al modificar un producto
+        Product saved = productRepository.saveAndFlush(product);
+        stockLedger.recordInitialStock(List.of(saved.getId()));
+        if (stock != null) {
+            stockLedger.adjustTo(Map.of(saved.getId(), stock), "Modificación del producto");
+        }
+        priceHistory.recordChanges(List.of(saved.getId()));
+        duplicateIndex.addProduct(saved.getName());
+        eventPublisher.publishEvent(new ProductsChangedEvent(List.of(saved.getId())));
+        return withStock(List.of(saved)).get(0);
     }
 
+    @Transactional(readOnly = true)
     public List<Product> getAllProducts() {
-        return productRepository.findAll();
+        return withStock(productRepository.findAll());
     }
 
+    // Sin transacción propia, para que un acierto de la caché no tome una conexión
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public Optional<Product> getProductById(Long id) {
-        return productRepository.findById(id);
+        return entityCache.get(CacheRegion.PRODUCT, id,
+                () -> productRepository.findById(id).map(product -> withStock(List.of(product)).get(0)));
     }
 
+    @Transactional(readOnly = true)
     public List<Product> searchByName(String name) {
-        return productRepository.findByNameContainingIgnoreCase(name);
+        return withStock(productRepository.findByNameContainingIgnoreCase(name));
     }
 
+    @Transactional(readOnly = true)
     public boolean existsByName(String name) {
-        return productRepository.existsByName(name);
+        return duplicateIndex.mightContainProductName(name) && productRepository.existsByName(name);
     }
 
     public void deleteProduct(Long id) {
         productRepository.deleteById(id);
+        eventPublisher.publishEvent(new ProductsChangedEvent(List.of(id)));
+    }
+
+    /** Sustituye el stock guardado en los productos por el actual del libro de movimientos. */
+    private List<Product> withStock(List<Product> products) {
+        Map<Long, Long> stocks = stockLedger.getStocks(products.stream().map(Product::getId).toList());
+        for (Product product : products) {
+            Long stock = stocks.get(product.getId());
+            if (stock != null) {
+                product.setStock(Math.toIntExact(stock));
+            }
+        }
+        return products;
     }
 }
 
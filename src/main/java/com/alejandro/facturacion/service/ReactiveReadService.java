@@ -0,0 +1,101 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.dto.InvoiceView;
+import com.alejandro.facturacion.dto.MonthlySalesReportDTO;
+import com.alejandro.facturacion.repository.InvoiceArchiveRepository;
+import com.alejandro.facturacion.repository.ReactiveInvoiceRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Lecturas de la API reactiva ({@code /api/reactive}): listados de facturas y reporte mensual
+ * servidos como flujos, sin ocupar hilos mientras se espera a la base de datos.
+ *
+ * <p>Los datos se leen directamente de la base de datos, sin pasar por {@link EntityCache} ni por
+ * los reportes precalculados de {@link ReportSnapshotService}: reflejan las escrituras
+ * confirmadas en cuanto se hacen.
+ */
+@Service
+@ConditionalOnProperty(name = "facturacion.reactive.enabled", havingValue = "true")
+public class ReactiveReadService {
+
+    private static final Comparator<MonthlySalesReportDTO> BY_MONTH =
+            Comparator.comparingInt(MonthlySalesReportDTO::getYear).thenComparingInt(MonthlySalesReportDTO::getMonth);
+
+    private final ReactiveInvoiceRepository reactiveInvoiceRepository;
+    private final InvoiceArchiveRepository invoiceArchiveRepository;
+
+    public ReactiveReadService(ReactiveInvoiceRepository reactiveInvoiceRepository,
+                               InvoiceArchiveRepository invoiceArchiveRepository) {
+        this.reactiveInvoiceRepository = reactiveInvoiceRepository;
+        this.invoiceArchiveRepository = invoiceArchiveRepository;
+    }
+
+    /**
+     * Facturas de un cliente, de la más antigua a la más reciente.
+     * Como {@link InvoiceService#getInvoicesByClientId(Long)}, no incluye las archivadas.
+     *
+     * @param clientId ID del cliente
+     * @return Facturas del cliente con sus líneas
+     */
+    public Flux<InvoiceView> getInvoicesByClientId(Long clientId) {
+        return reactiveInvoiceRepository.findByClientId(clientId);
+    }
+
+    /**
+     * Facturas creadas entre dos fechas, por ID. Sin fechas se emiten todas las facturas activas.
+     *
+     * @param from Primer día (inclusivo, opcional)
+     * @param to Último día (exclusivo, opcional)
+     * @return Facturas del intervalo con sus líneas
+     * @throws IllegalArgumentException si {@code from} no es anterior a {@code to}
+     */
+    public Flux<InvoiceView> getInvoices(LocalDate from, LocalDate to) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new IllegalArgumentException("La fecha inicial debe ser anterior a la final");
+        }
+        return reactiveInvoiceRepository.findByCreatedAtBetween(
+                from != null ? from.atStartOfDay() : null,
+                to != null ? to.atStartOfDay() : null);
+    }
+
+    /**
+     * Reporte mensual de ventas calculado en el momento, combinando las facturas activas con los
+     * agregados del archivo. Ambos flujos llegan ordenados por mes, así que se intercalan y se suman
+     * los meses repetidos sin reunir el reporte completo.
+     *
+     * @return Un reporte por mes, ordenados por año y mes
+     */
+    public Flux<MonthlySalesReportDTO> getMonthlySales() {
+        Flux<MonthlySalesReportDTO> active = reactiveInvoiceRepository.getMonthlySalesReport();
+        if (invoiceArchiveRepository.isEmpty()) {
+            return active;
+        }
+        Flux<MonthlySalesReportDTO> archived = Flux.defer(() -> Flux.fromIterable(invoiceArchiveRepository.getMonthlySalesReport()));
+        return Flux.mergeComparing(BY_MONTH, archived, active)
+                .bufferUntilChanged(report -> report.getYear() * 12 + report.getMonth())
+                .map(ReactiveReadService::sum);
+    }
+
+    private static MonthlySalesReportDTO sum(List<MonthlySalesReportDTO> reports) {
+        MonthlySalesReportDTO first = reports.get(0);
+        if (reports.size() == 1) {
+            return first;
+        }
+        long invoices = 0;
+        BigDecimal sales = null;
+        for (MonthlySalesReportDTO report : reports) {
+            invoices += report.getTotalInvoices();
+            if (report.getTotalSales() != null) {
+                sales = sales == null ? report.getTotalSales() : sales.add(report.getTotalSales());
+            }
+        }
+        return new MonthlySalesReportDTO(first.getYear(), first.getMonth(), invoices, sales);
+    }
+}
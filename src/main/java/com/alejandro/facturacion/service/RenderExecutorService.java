@@ -0,0 +1,187 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.ReadYourWritesTaskDecorator;
+import com.alejandro.facturacion.dto.RenderPool;
+import com.alejandro.facturacion.dto.RenderPoolStats;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pools de hilos acotados para el trabajo de CPU (renderizado de PDF y reportes), para que una
+ * ráfaga de descargas no ocupe los hilos de Tomcat que atienden el resto de la API.
+ *
+ * <p>Cada {@link RenderPool} tiene sus propios hilos ({@code threads}, por defecto según los
+ * procesadores) y una cola acotada ({@code queue-capacity}). Con la cola llena la tarea se rechaza
+ * en el acto con {@link RejectedExecutionException}, en lugar de hacer esperar a la petición; y si
+ * no termina en {@code timeout} (contando la espera en cola) el resultado falla con
+ * {@link TimeoutException} y la tarea se cancela si aún no había empezado.
+ *
+ * <p>Las tareas se ejecutan con el {@link ReadYourWritesTaskDecorator}: si la petición que las encola
+ * debe leer del primario, también lo hacen ellas.
+ */
+@Slf4j
+@Service
+public class RenderExecutorService {
+
+    private final Map<RenderPool, Bulkhead> bulkheads = new EnumMap<>(RenderPool.class);
+
+    public RenderExecutorService(@Value("${facturacion.render.pdf.threads:0}") int pdfThreads,
+                                 @Value("${facturacion.render.pdf.queue-capacity:50}") int pdfQueueCapacity,
+                                 @Value("${facturacion.render.pdf.timeout:PT20S}") Duration pdfTimeout,
+                                 @Value("${facturacion.render.report.threads:1}") int reportThreads,
+                                 @Value("${facturacion.render.report.queue-capacity:4}") int reportQueueCapacity,
+                                 @Value("${facturacion.render.report.timeout:PT60S}") Duration reportTimeout) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        bulkheads.put(RenderPool.PDF, new Bulkhead(RenderPool.PDF,
+                pdfThreads > 0 ? pdfThreads : processors, pdfQueueCapacity, pdfTimeout));
+        bulkheads.put(RenderPool.REPORT, new Bulkhead(RenderPool.REPORT,
+                reportThreads > 0 ? reportThreads : Math.max(1, processors / 2), reportQueueCapacity, reportTimeout));
+    }
+
+    /**
+     * Ejecuta una tarea en el pool indicado.
+     *
+     * @return resultado de la tarea; falla con {@link RejectedExecutionException} si el pool está
+     * saturado o con {@link TimeoutException} si no termina a tiempo
+     */
+    public <T> CompletableFuture<T> submit(RenderPool pool, Callable<T> task) {
+        return bulkheads.get(pool).submit(task);
+    }
+
+    public List<RenderPoolStats> getStats() {
+        return Arrays.stream(RenderPool.values()).map(pool -> bulkheads.get(pool).stats()).toList();
+    }
+
+    /**
+     * Calcula la utilización de cada pool en el último intervalo.
+     */
+    @Scheduled(fixedRateString = "${facturacion.render.metrics-interval:PT10S}")
+    public void sampleUtilization() {
+        bulkheads.values().forEach(Bulkhead::sample);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        bulkheads.values().forEach(bulkhead -> bulkhead.executor.shutdownNow());
+    }
+
+    private static final class Bulkhead {
+
+        private static final TaskDecorator TASK_DECORATOR = new ReadYourWritesTaskDecorator();
+
+        private final RenderPool pool;
+        private final int threads;
+        private final int queueCapacity;
+        private final Duration timeout;
+        private final ThreadPoolExecutor executor;
+
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong timedOut = new AtomicLong();
+        private final AtomicLong queueNanos = new AtomicLong();
+        private final AtomicLong runNanos = new AtomicLong();
+
+        /** Tiempo ocupado y instante del último muestreo, para la utilización por intervalo. */
+        private long sampledRunNanos;
+        private long sampledAt = System.nanoTime();
+        private volatile double utilization;
+
+        Bulkhead(RenderPool pool, int threads, int queueCapacity, Duration timeout) {
+            this.pool = pool;
+            this.threads = threads;
+            this.queueCapacity = queueCapacity;
+            this.timeout = timeout;
+            String prefix = "render-" + pool.name().toLowerCase() + "-";
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+                        Thread thread = new Thread(r, prefix + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }, new ThreadPoolExecutor.AbortPolicy());
+        }
+
+        <T> CompletableFuture<T> submit(Callable<T> task) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            long queuedAt = System.nanoTime();
+            Future<?> running;
+            try {
+                running = executor.submit(TASK_DECORATOR.decorate(() -> {
+                    if (result.isDone()) {
+                        return;
+                    }
+                    long startedAt = System.nanoTime();
+                    queueNanos.addAndGet(startedAt - queuedAt);
+                    try {
+                        result.complete(task.call());
+                        completed.incrementAndGet();
+                    } catch (Throwable e) {
+                        failed.incrementAndGet();
+                        result.completeExceptionally(e);
+                    } finally {
+                        runNanos.addAndGet(System.nanoTime() - startedAt);
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                rejected.incrementAndGet();
+                return CompletableFuture.failedFuture(new RejectedExecutionException(
+                        "El pool de renderizado " + pool + " está saturado; inténtelo más tarde"));
+            }
+            submitted.incrementAndGet();
+            CompletableFuture.delayedExecutor(timeout.toMillis(), TimeUnit.MILLISECONDS).execute(() -> {
+                if (result.completeExceptionally(new TimeoutException(
+                        "La tarea de " + pool + " no terminó en " + timeout))) {
+                    timedOut.incrementAndGet();
+                    // Si aún estaba en cola deja de ocupar sitio; si ya corría, el renderizado no atiende
+                    // interrupciones y solo se descarta su resultado
+                    running.cancel(false);
+                    executor.remove((Runnable) running);
+                }
+            });
+            return result;
+        }
+
+        synchronized void sample() {
+            long now = System.nanoTime();
+            long run = runNanos.get();
+            long elapsed = now - sampledAt;
+            if (elapsed > 0) {
+                utilization = Math.min(1.0, (double) (run - sampledRunNanos) / ((double) elapsed * threads));
+            }
+            sampledRunNanos = run;
+            sampledAt = now;
+        }
+
+        RenderPoolStats stats() {
+            long started = completed.get() + failed.get();
+            return new RenderPoolStats(pool, threads, queueCapacity, timeout.toMillis(),
+                    executor.getActiveCount(), executor.getQueue().size(),
+                    submitted.get(), completed.get(), failed.get(), rejected.get(), timedOut.get(),
+                    utilization,
+                    started > 0 ? queueNanos.get() / 1e6 / started : 0,
+                    started > 0 ? runNanos.get() / 1e6 / started : 0);
+        }
+    }
+}
@@ -1,21 +1,65 @@
 package com.alejandro.facturacion.service;
 
 import com.alejandro.facturacion.dto.MonthlySalesReportDTO;
+import com.alejandro.facturacion.jfr.ReportQueryEvent;
+import com.alejandro.facturacion.repository.InvoiceArchiveRepository;
 import com.alejandro.facturacion.repository.InvoiceRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 @Service
+@Transactional(readOnly = true)
 public class ReportService {
 
     private final InvoiceRepository invoiceRepository;
+    private final InvoiceArchiveRepository invoiceArchiveRepository;
+    private final ShardRouter shardRouter;
 
-    public ReportService(InvoiceRepository invoiceRepository) {
+    public ReportService(InvoiceRepository invoiceRepository, InvoiceArchiveRepository invoiceArchiveRepository,
+                         ShardRouter shardRouter) {
         this.invoiceRepository = invoiceRepository;
+        this.invoiceArchiveRepository = invoiceArchiveRepository;
+        this.shardRouter = shardRouter;
     }
 
+    /**
+     * Reporte mensual de ventas, combinando las facturas activas con los agregados del archivo.
+     * Con sharding, cada shard agrega sus facturas en paralelo y los resultados se suman por mes.
+     */
     public List<MonthlySalesReportDTO> getMonthlySales() {
-        return invoiceRepository.getMonthlySalesReport();
+        ReportQueryEvent queryEvent = ReportQueryEvent.start("monthly-sales");
+        List<List<MonthlySalesReportDTO>> partials = shardRouter.scatter(invoiceRepository::getMonthlySalesReport);
+        if (partials.size() == 1 && invoiceArchiveRepository.isEmpty()) {
+            queryEvent.finish(1, partials.get(0).size(), false);
+            return partials.get(0);
+        }
+
+        Map<YearMonth, MonthlySalesReportDTO> merged = new TreeMap<>();
+        merge(merged, invoiceArchiveRepository.getMonthlySalesReport());
+        for (List<MonthlySalesReportDTO> partial : partials) {
+            merge(merged, partial);
+        }
+        queryEvent.finish(partials.size(), merged.size(), true);
+        return new ArrayList<>(merged.values());
+    }
+
+    private static void merge(Map<YearMonth, MonthlySalesReportDTO> merged, List<MonthlySalesReportDTO> reports) {
+        for (MonthlySalesReportDTO report : reports) {
+            merged.merge(YearMonth.of(report.getYear(), report.getMonth()), report, (previous, current) ->
+                    new MonthlySalesReportDTO(previous.getYear(), previous.getMonth(),
+                            previous.getTotalInvoices() + current.getTotalInvoices(),
+                            add(previous.getTotalSales(), current.getTotalSales())));
+        }
+    }
+
+    private static BigDecimal add(BigDecimal a, BigDecimal b) {
+        return a == null ? b : b == null ? a : a.add(b);
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,197 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.dto.MonthlySalesReportDTO;
+import com.alejandro.facturacion.dto.MonthlySalesSnapshot;
+import com.alejandro.facturacion.dto.RenderPool;
+import com.alejandro.facturacion.event.InvoiceCreatedEvent;
+import com.alejandro.facturacion.event.InvoicesChangedEvent;
+import com.alejandro.facturacion.utils.PdfReportGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Precalcula el reporte mensual de ventas (JSON y PDF) para servirlo sin esperar
+ * a la consulta agregada ni al renderizado.
+ *
+ * <p>El reporte se regenera:
+ * <ul>
+ *   <li>al arrancar la aplicación,</li>
+ *   <li>según {@code facturacion.reports.warm-cron},</li>
+ *   <li>poco después de que cambien los datos (crear, archivar o recibir facturas de un nodo de
+ *       borde marca el reporte como obsoleto; el stock no interviene en él),</li>
+ *   <li>bajo demanda; las peticiones concurrentes comparten una única regeneración, que siempre
+ *       empieza después de la última petición a la que responde.</li>
+ * </ul>
+ *
+ * <p>Se conservan las últimas {@code facturacion.reports.snapshot-history} versiones.
+ */
+@Slf4j
+@Service
+public class ReportSnapshotService {
+
+    private final ReportService reportService;
+    private final RenderExecutorService renderExecutors;
+    private final int historySize;
+
+    private final AtomicReference<Generation> inFlight = new AtomicReference<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicBoolean stale = new AtomicBoolean(true);
+    private final AtomicLong versions = new AtomicLong();
+    private final Deque<MonthlySalesSnapshot> history = new ArrayDeque<>();
+    private volatile MonthlySalesSnapshot current;
+
+    public ReportSnapshotService(ReportService reportService,
+                                 RenderExecutorService renderExecutors,
+                                 @Value("${facturacion.reports.snapshot-history:5}") int historySize) {
+        this.reportService = reportService;
+        this.renderExecutors = renderExecutors;
+        this.historySize = historySize;
+    }
+
+    /**
+     * Devuelve la última versión disponible. Solo hay que esperar si todavía no se ha generado ninguna;
+     * si la versión actual está obsoleta, se devuelve igualmente y se regenera en segundo plano.
+     */
+    public CompletableFuture<MonthlySalesSnapshot> getLatest() {
+        MonthlySalesSnapshot snapshot = current;
+        if (snapshot == null) {
+            return refreshCovering(0);
+        }
+        if (stale.get()) {
+            refreshCovering(0);
+        }
+        return CompletableFuture.completedFuture(snapshot);
+    }
+
+    /**
+     * Busca una versión concreta entre las conservadas en el historial.
+     */
+    public Optional<MonthlySalesSnapshot> getVersion(long version) {
+        synchronized (history) {
+            return history.stream().filter(s -> s.getVersion() == version).findFirst();
+        }
+    }
+
+    /**
+     * Regenera el reporte con datos leídos después de esta llamada: se une a la regeneración en
+     * curso solo si empezó después de la petición; si no, espera a que termine y lanza otra (que
+     * comparten todas las peticiones llegadas mientras tanto). Si el pool {@link RenderPool#REPORT}
+     * está saturado, el resultado falla con {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    public CompletableFuture<MonthlySalesSnapshot> refresh() {
+        return refreshCovering(requests.incrementAndGet());
+    }
+
+    /**
+     * Lanza una regeneración que cubra la petición {@code requested}, o devuelve la que ya la cubre.
+     * Con {@code requested = 0} sirve cualquier regeneración en curso.
+     */
+    private CompletableFuture<MonthlySalesSnapshot> refreshCovering(long requested) {
+        while (true) {
+            Generation running = inFlight.get();
+            if (running != null) {
+                if (running.covers() >= requested) {
+                    return running.future();
+                }
+                return running.future().handle((snapshot, e) -> requested)
+                        .thenCompose(this::refreshCovering);
+            }
+            Generation next = new Generation(requests.get(), new CompletableFuture<>());
+            if (inFlight.compareAndSet(null, next)) {
+                start(next);
+                return next.future();
+            }
+        }
+    }
+
+    private void start(Generation generation) {
+        CompletableFuture<MonthlySalesSnapshot> future = generation.future();
+        CompletableFuture<MonthlySalesSnapshot> rendered;
+        try {
+            rendered = renderExecutors.submit(RenderPool.REPORT, this::generate);
+        } catch (RuntimeException e) {
+            inFlight.compareAndSet(generation, null);
+            future.completeExceptionally(e);
+            return;
+        }
+        rendered.whenComplete((snapshot, e) -> {
+            // Se quita antes de completar: quien espera para lanzar otra regeneración ya no la encuentra
+            inFlight.compareAndSet(generation, null);
+            if (e != null) {
+                log.error("Error regenerando el reporte mensual de ventas", e);
+                stale.set(true);
+                future.completeExceptionally(e);
+            } else {
+                future.complete(snapshot);
+            }
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInvoiceCreated(InvoiceCreatedEvent event) {
+        stale.set(true);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInvoicesChanged(InvoicesChangedEvent event) {
+        stale.set(true);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmOnStartup() {
+        refreshCovering(0);
+    }
+
+    @Scheduled(cron = "${facturacion.reports.warm-cron:0 0 * * * *}")
+    public void warmOnSchedule() {
+        refreshCovering(0);
+    }
+
+    /**
+     * Agrupa los cambios de datos: como mucho una regeneración por intervalo aunque lleguen muchas facturas.
+     */
+    @Scheduled(fixedDelayString = "${facturacion.reports.refresh-delay:PT30S}")
+    public void refreshIfStale() {
+        if (stale.get() && current != null) {
+            refreshCovering(0);
+        }
+    }
+
+    private MonthlySalesSnapshot generate() throws Exception {
+        // Se marca como vigente antes de consultar: un cambio durante el cálculo vuelve a marcarlo obsoleto
+        stale.set(false);
+        Instant generatedAt = Instant.now();
+        List<MonthlySalesReportDTO> report = reportService.getMonthlySales();
+        byte[] pdf = PdfReportGenerator.generateMonthlySalesReport(report).readAllBytes();
+
+        MonthlySalesSnapshot snapshot = new MonthlySalesSnapshot(versions.incrementAndGet(), generatedAt,
+                List.copyOf(report), pdf);
+        synchronized (history) {
+            history.addFirst(snapshot);
+            while (history.size() > historySize) {
+                history.removeLast();
+            }
+        }
+        current = snapshot;
+        return snapshot;
+    }
+
+    /** Regeneración en curso y última petición de {@link #refresh()} anterior a su inicio. */
+    private record Generation(long covers, CompletableFuture<MonthlySalesSnapshot> future) {
+    }
+}
@@ -0,0 +1,139 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.ShardRoutingDataSource;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Directorio de shards: a qué shard pertenece cada cliente.
+ *
+ * <p>Un cliente vive en el shard de su serie de IDs salvo que el rebalanceo lo haya movido;
+ * solo esas excepciones se guardan en {@code client_shards} (shard principal), y se mantienen en
+ * memoria con una recarga periódica. Los clientes que se están moviendo se consultan siempre en
+ * la base de datos, de modo que el cambio de shard se ve en todos los nodos en cuanto se confirma.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "facturacion.sharding.enabled", havingValue = "true")
+public class ShardDirectory {
+
+    static final String ACTIVE = "ACTIVE";
+    static final String MOVING = "MOVING";
+
+    private final ShardRoutingDataSource shards;
+    private final NamedParameterJdbcTemplate jdbc;
+    private volatile Map<Long, Placement> overrides = Map.of();
+    private volatile boolean loaded;
+
+    public ShardDirectory(ShardRoutingDataSource shards) {
+        this.shards = shards;
+        this.jdbc = new NamedParameterJdbcTemplate(shards.getShard(ShardRoutingDataSource.HOME_SHARD));
+    }
+
+    /**
+     * Shard actual de un cliente.
+     */
+    public Placement locate(long clientId) {
+        if (!loaded) {
+            return load(clientId);
+        }
+        Placement cached = overrides.get(clientId);
+        if (cached == null) {
+            return new Placement(shards.shardOfId(clientId), false);
+        }
+        // Movimiento en curso en la última recarga: se consulta el estado actual
+        return cached.isMoving() ? load(clientId) : cached;
+    }
+
+    @Scheduled(fixedDelayString = "${facturacion.sharding.directory-refresh-interval:PT5S}")
+    public void refresh() {
+        try {
+            Map<Long, Placement> next = new HashMap<>();
+            jdbc.query("SELECT client_id, shard_id, status FROM client_shards", rs -> {
+                next.put(rs.getLong(1), new Placement(rs.getInt(2), MOVING.equals(rs.getString(3))));
+            });
+            overrides = next;
+            loaded = true;
+        } catch (Exception e) {
+            log.warn("No se pudo recargar el directorio de shards: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Marca el cliente como en movimiento: deja de aceptar escrituras y sus lecturas siguen
+     * yendo al shard actual.
+     *
+     * @return {@code false} si ya lo estaba moviendo otro proceso
+     */
+    boolean markMoving(long clientId, int currentShard) {
+        Map<String, Object> params = Map.of("id", clientId, "shard", currentShard,
+                "now", Timestamp.valueOf(LocalDateTime.now()));
+        int updated = jdbc.update("UPDATE client_shards SET shard_id = :shard, status = 'MOVING', updated_at = :now "
+                + "WHERE client_id = :id AND status <> 'MOVING'", params);
+        if (updated == 0) {
+            try {
+                jdbc.update("INSERT INTO client_shards (client_id, shard_id, status, updated_at) "
+                        + "VALUES (:id, :shard, 'MOVING', :now)", params);
+            } catch (DuplicateKeyException e) {
+                return false;
+            }
+        }
+        cache(clientId, new Placement(currentShard, true));
+        return true;
+    }
+
+    /**
+     * Fija el shard del cliente y termina su movimiento.
+     */
+    void assign(long clientId, int shard) {
+        if (shard == shards.shardOfId(clientId)) {
+            jdbc.update("DELETE FROM client_shards WHERE client_id = :id", Map.of("id", clientId));
+            cache(clientId, null);
+            return;
+        }
+        Map<String, Object> params = Map.of("id", clientId, "shard", shard,
+                "now", Timestamp.valueOf(LocalDateTime.now()));
+        int updated = jdbc.update("UPDATE client_shards SET shard_id = :shard, status = 'ACTIVE', updated_at = :now "
+                + "WHERE client_id = :id", params);
+        if (updated == 0) {
+            jdbc.update("INSERT INTO client_shards (client_id, shard_id, status, updated_at) "
+                    + "VALUES (:id, :shard, 'ACTIVE', :now)", params);
+        }
+        cache(clientId, new Placement(shard, false));
+    }
+
+    private Placement load(long clientId) {
+        List<Placement> rows = jdbc.query("SELECT shard_id, status FROM client_shards WHERE client_id = :id",
+                Map.of("id", clientId), (rs, i) -> new Placement(rs.getInt(1), MOVING.equals(rs.getString(2))));
+        return rows.isEmpty() ? new Placement(shards.shardOfId(clientId), false) : rows.get(0);
+    }
+
+    private synchronized void cache(long clientId, Placement placement) {
+        Map<Long, Placement> next = new HashMap<>(overrides);
+        if (placement == null) {
+            next.remove(clientId);
+        } else {
+            next.put(clientId, placement);
+        }
+        overrides = next;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Placement {
+        private final int shard;
+        private final boolean moving;
+    }
+}
@@ -0,0 +1,290 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.ShardDataSources;
+import com.alejandro.facturacion.config.ShardRoutingDataSource;
+import com.alejandro.facturacion.config.ShardingProperties;
+import com.alejandro.facturacion.dto.ClientMove;
+import com.alejandro.facturacion.dto.RebalanceReport;
+import com.alejandro.facturacion.dto.ShardStats;
+import com.alejandro.facturacion.utils.SqlRows;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Mueve clientes, con sus facturas, items y resumen de cuenta, de un shard a otro.
+ *
+ * <p>Cada movimiento:
+ * <ol>
+ *   <li>Marca el cliente como en movimiento en el directorio y espera dos recargas del directorio,
+ *       para que todos los nodos dejen de aceptar escrituras del cliente.</li>
+ *   <li>En el shard de origen bloquea la fila del cliente (las facturas que aún se estén insertando
+ *       terminan antes) y lee sus datos.</li>
+ *   <li>Los copia en el shard de destino conservando los IDs, confirma y devuelve los contadores
+ *       de IDs del destino a su propia serie.</li>
+ *   <li>Cambia el shard del cliente en el directorio y borra los datos del origen.</li>
+ * </ol>
+ * Si falla antes del paso 4, el cliente sigue en el origen. Entre la confirmación en el destino y
+ * el borrado en el origen, los reportes que recorren todos los shards pueden contar dos veces al
+ * cliente durante unos milisegundos.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "facturacion.sharding.enabled", havingValue = "true")
+public class ShardRebalancer {
+
+    /** El rebalanceo se detiene cuando la diferencia entre shards es menor que esta fracción de la media. */
+    private static final double IMBALANCE_TOLERANCE = 0.10;
+    private static final int CHUNK_SIZE = 1000;
+
+    private final ShardRoutingDataSource shards;
+    private final ShardDirectory directory;
+    private final ShardedCatalogService catalog;
+    private final Duration directoryRefreshInterval;
+    private final List<NamedParameterJdbcTemplate> jdbc = new ArrayList<>();
+    private final List<TransactionTemplate> transactions = new ArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public ShardRebalancer(ShardRoutingDataSource shards, ShardDirectory directory, ShardedCatalogService catalog,
+                           ShardingProperties properties) {
+        this.shards = shards;
+        this.directory = directory;
+        this.catalog = catalog;
+        this.directoryRefreshInterval = properties.getDirectoryRefreshInterval();
+        for (int shard = 0; shard < shards.getShardCount(); shard++) {
+            jdbc.add(new NamedParameterJdbcTemplate(shards.getShard(shard)));
+            transactions.add(new TransactionTemplate(new DataSourceTransactionManager(shards.getShard(shard))));
+        }
+    }
+
+    public List<ShardStats> getStats() {
+        List<ShardStats> stats = new ArrayList<>(shards.getShardCount());
+        for (int shard = 0; shard < shards.getShardCount(); shard++) {
+            Long clients = jdbc.get(shard).getJdbcTemplate().queryForObject("SELECT COUNT(*) FROM clients", Long.class);
+            Long invoices = jdbc.get(shard).getJdbcTemplate().queryForObject("SELECT COUNT(*) FROM invoices", Long.class);
+            stats.add(new ShardStats(shard, clients, invoices));
+        }
+        return stats;
+    }
+
+    /**
+     * Mueve un cliente al shard indicado.
+     *
+     * @throws IllegalArgumentException si el shard no existe, el cliente no existe o ya está en ese shard
+     * @throws IllegalStateException si hay otro movimiento en curso
+     */
+    public ClientMove moveClient(long clientId, int targetShard) {
+        if (targetShard < 0 || targetShard >= shards.getShardCount()) {
+            throw new IllegalArgumentException("Shard no válido: " + targetShard);
+        }
+        ShardDirectory.Placement placement = directory.locate(clientId);
+        if (placement.isMoving()) {
+            throw new IllegalStateException("El cliente " + clientId + " ya se está moviendo de shard");
+        }
+        int source = placement.getShard();
+        if (source == targetShard) {
+            throw new IllegalArgumentException("El cliente " + clientId + " ya está en el shard " + targetShard);
+        }
+        Long invoices = jdbc.get(source).queryForObject(
+                "SELECT COUNT(*) FROM invoices WHERE client_id = :id", Map.of("id", clientId), Long.class);
+        if (jdbc.get(source).queryForList("SELECT id FROM clients WHERE id = :id", Map.of("id", clientId), Long.class)
+                .isEmpty()) {
+            throw new IllegalArgumentException("Cliente no encontrado");
+        }
+        return execute(List.of(new ClientMove(clientId, source, targetShard, invoices))).get(0);
+    }
+
+    /**
+     * Planifica (y, si no es simulación, ejecuta) movimientos de clientes desde el shard con más
+     * facturas hacia el que tiene menos, hasta igualarlos o llegar a {@code maxMoves}.
+     */
+    public RebalanceReport rebalance(int maxMoves, boolean dryRun) {
+        RebalanceReport report = new RebalanceReport();
+        report.setDryRun(dryRun);
+        report.setBefore(getStats());
+
+        long[] load = report.getBefore().stream().mapToLong(ShardStats::getInvoices).toArray();
+        List<List<long[]>> candidates = new ArrayList<>();
+        for (int shard = 0; shard < load.length; shard++) {
+            candidates.add(null);
+        }
+        double tolerance = Math.max(1, IMBALANCE_TOLERANCE * (double) Arrays.stream(load).sum() / load.length);
+        List<ClientMove> plan = new ArrayList<>();
+        while (plan.size() < maxMoves) {
+            int heavy = 0;
+            int light = 0;
+            for (int shard = 1; shard < load.length; shard++) {
+                if (load[shard] > load[heavy]) {
+                    heavy = shard;
+                }
+                if (load[shard] < load[light]) {
+                    light = shard;
+                }
+            }
+            long gap = load[heavy] - load[light];
+            if (gap <= tolerance) {
+                break;
+            }
+            if (candidates.get(heavy) == null) {
+                candidates.set(heavy, clientLoads(heavy));
+            }
+            // El cliente más grande que cabe en la mitad de la diferencia: la reduce sin invertirla
+            long[] chosen = candidates.get(heavy).stream()
+                    .filter(client -> client[1] > 0 && client[1] <= gap / 2)
+                    .findFirst()
+                    .orElse(null);
+            if (chosen == null) {
+                break;
+            }
+            candidates.get(heavy).remove(chosen);
+            plan.add(new ClientMove(chosen[0], heavy, light, chosen[1]));
+            load[heavy] -= chosen[1];
+            load[light] += chosen[1];
+        }
+
+        if (dryRun || plan.isEmpty()) {
+            report.setMoves(plan);
+            return report;
+        }
+        report.setMoves(execute(plan));
+        report.setAfter(getStats());
+        return report;
+    }
+
+    /** Clientes del shard con su número de facturas, de mayor a menor. */
+    private List<long[]> clientLoads(int shard) {
+        List<long[]> loads = new ArrayList<>(jdbc.get(shard).getJdbcTemplate().query(
+                "SELECT c.id, COUNT(i.id) FROM clients c LEFT JOIN invoices i ON i.client_id = c.id GROUP BY c.id",
+                (rs, i) -> new long[]{rs.getLong(1), rs.getLong(2)}));
+        loads.sort(Comparator.comparingLong((long[] client) -> client[1]).reversed());
+        return loads;
+    }
+
+    private List<ClientMove> execute(List<ClientMove> moves) {
+        if (!lock.tryLock()) {
+            throw new IllegalStateException("Ya hay un movimiento de clientes entre shards en curso");
+        }
+        try {
+            List<ClientMove> marked = new ArrayList<>();
+            for (ClientMove move : moves) {
+                if (directory.markMoving(move.getClientId(), move.getFromShard())) {
+                    marked.add(move);
+                } else {
+                    move.setError("Otro proceso está moviendo el cliente");
+                }
+            }
+            if (marked.isEmpty()) {
+                return moves;
+            }
+            try {
+                // Todos los nodos recargan el directorio y dejan de escribir en estos clientes
+                Thread.sleep(directoryRefreshInterval.multipliedBy(2).toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                marked.forEach(move -> directory.assign(move.getClientId(), move.getFromShard()));
+                throw new IllegalStateException("Movimiento de clientes interrumpido", e);
+            }
+            for (ClientMove move : marked) {
+                transfer(move);
+            }
+            return moves;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void transfer(ClientMove move) {
+        long start = System.currentTimeMillis();
+        long clientId = move.getClientId();
+        int source = move.getFromShard();
+        int target = move.getToShard();
+        boolean[] switched = {false};
+        try {
+            // Los productos de sus facturas deben existir ya en el destino (clave foránea de los items)
+            catalog.replicate(jdbc.get(source).queryForList("SELECT DISTINCT ii.product_id FROM invoice_items ii "
+                            + "JOIN invoices i ON i.id = ii.invoice_id WHERE i.client_id = :id AND ii.product_id IS NOT NULL",
+                    Map.of("id", clientId), Long.class));
+
+            transactions.get(source).executeWithoutResult(status -> {
+                NamedParameterJdbcTemplate from = jdbc.get(source);
+                Map<String, Object> params = Map.of("id", clientId);
+                List<Map<String, Object>> client = from.queryForList("SELECT * FROM clients WHERE id = :id FOR UPDATE", params);
+                if (client.isEmpty()) {
+                    throw new IllegalArgumentException("Cliente no encontrado");
+                }
+                List<Map<String, Object>> invoices = from.queryForList("SELECT * FROM invoices WHERE client_id = :id", params);
+                List<Long> invoiceIds = invoices.stream().map(row -> ((Number) row.get("id")).longValue()).toList();
+                List<Map<String, Object>> items = new ArrayList<>();
+                for (List<Long> chunk : chunks(invoiceIds)) {
+                    items.addAll(from.queryForList("SELECT * FROM invoice_items WHERE invoice_id IN (:ids)",
+                            Map.of("ids", chunk)));
+                }
+                List<Map<String, Object>> summary = from.queryForList(
+                        "SELECT * FROM client_summaries WHERE client_id = :id", params);
+
+                transactions.get(target).executeWithoutResult(targetStatus -> {
+                    SqlRows.insert(jdbc.get(target).getJdbcTemplate(), "clients", client);
+                    for (List<Map<String, Object>> chunk : chunks(invoices)) {
+                        SqlRows.insert(jdbc.get(target).getJdbcTemplate(), "invoices", chunk);
+                    }
+                    for (List<Map<String, Object>> chunk : chunks(items)) {
+                        SqlRows.insert(jdbc.get(target).getJdbcTemplate(), "invoice_items", chunk);
+                    }
+                    if (!summary.isEmpty()) {
+                        SqlRows.insert(jdbc.get(target).getJdbcTemplate(), "client_summaries", summary);
+                    }
+                });
+                ShardDataSources.alignIds(shards.getShard(target), target);
+                try {
+                    directory.assign(clientId, target);
+                    switched[0] = true;
+                } catch (RuntimeException e) {
+                    deleteClientData(jdbc.get(target), clientId, invoiceIds);
+                    throw e;
+                }
+                deleteClientData(from, clientId, invoiceIds);
+                move.setInvoices(invoices.size());
+                move.setItems((long) items.size());
+            });
+            move.setDurationMillis(System.currentTimeMillis() - start);
+            log.info("Cliente {} movido del shard {} al {} en {} ms", clientId, source, target, move.getDurationMillis());
+        } catch (RuntimeException e) {
+            move.setError(e.getMessage());
+            if (switched[0]) {
+                log.error("Cliente {} copiado al shard {}, pero no se pudieron borrar sus datos del shard {}; "
+                        + "deben borrarse a mano", clientId, target, source, e);
+            } else {
+                directory.assign(clientId, source);
+                log.warn("No se pudo mover el cliente {} del shard {} al {}", clientId, source, target, e);
+            }
+        }
+    }
+
+    private static void deleteClientData(NamedParameterJdbcTemplate jdbc, long clientId, List<Long> invoiceIds) {
+        for (List<Long> chunk : chunks(invoiceIds)) {
+            jdbc.update("DELETE FROM invoice_items WHERE invoice_id IN (:ids)", Map.of("ids", chunk));
+        }
+        jdbc.update("DELETE FROM invoices WHERE client_id = :id", Map.of("id", clientId));
+        jdbc.update("DELETE FROM client_summaries WHERE client_id = :id", Map.of("id", clientId));
+        jdbc.update("DELETE FROM clients WHERE id = :id", Map.of("id", clientId));
+    }
+
+    private static <T> List<List<T>> chunks(List<T> values) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < values.size(); from += CHUNK_SIZE) {
+            chunks.add(values.subList(from, Math.min(values.size(), from + CHUNK_SIZE)));
+        }
+        return chunks;
+    }
+}
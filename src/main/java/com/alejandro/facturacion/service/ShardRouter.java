@@ -0,0 +1,209 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.ShardContext;
+import com.alejandro.facturacion.config.ShardRoutingDataSource;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Decide en qué shard se ejecuta cada operación de los servicios.
+ *
+ * <p>Sin sharding ({@code facturacion.sharding.enabled=false}) todo se ejecuta tal cual en el
+ * hilo y la transacción del llamante, y los métodos de recorrido devuelven un único resultado.
+ *
+ * <p>Con sharding:
+ * <ul>
+ *   <li>Las operaciones de un cliente ({@link #forClient}, {@link #forClientWrite}) se ejecutan en
+ *       el hilo del llamante con el shard del cliente fijado. Deben llamarse dentro de la
+ *       transacción del servicio pero antes de su primera sentencia SQL: la conexión se obtiene
+ *       en ese momento y queda en ese shard hasta el final de la transacción. Por eso el sharding
+ *       desactiva open-in-view ({@code ShardingEnvironmentPostProcessor}): con él, la conexión
+ *       abierta por una sentencia anterior de la petición se reutilizaría en el shard equivocado.</li>
+ *   <li>Las operaciones sobre todos los shards ({@link #scatter}, {@link #findFirst}) se ejecutan
+ *       en hilos propios, cada una en su propia transacción de solo lectura; las entidades que
+ *       devuelven están desacopladas, así que deben cargar ya sus asociaciones.</li>
+ * </ul>
+ */
+@Service
+public class ShardRouter {
+
+    private final ShardRoutingDataSource shards;
+    private final ShardDirectory directory;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ExecutorService scatterExecutor;
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    public ShardRouter(ObjectProvider<ShardRoutingDataSource> shards,
+                       ObjectProvider<ShardDirectory> directory,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${facturacion.sharding.scatter-threads:8}") int scatterThreads) {
+        this.shards = shards.getIfAvailable();
+        this.directory = directory.getIfAvailable();
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        if (this.shards == null) {
+            this.scatterExecutor = null;
+            return;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        this.scatterExecutor = Executors.newFixedThreadPool(scatterThreads, r -> {
+            Thread thread = new Thread(r, "shard-scatter-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public boolean isSharded() {
+        return shards != null;
+    }
+
+    public int getShardCount() {
+        return shards != null ? shards.getShardCount() : 1;
+    }
+
+    /**
+     * Shard donde se creó un registro, según su ID (una factura de un cliente movido puede estar en otro).
+     */
+    public int shardOfId(long id) {
+        return shards != null ? shards.shardOfId(id) : ShardRoutingDataSource.HOME_SHARD;
+    }
+
+    /**
+     * Shard para un cliente nuevo: se reparten por turnos; el rebalanceo corrige después el desequilibrio.
+     */
+    public int shardForNewClient() {
+        return Math.floorMod(nextShard.getAndIncrement(), getShardCount());
+    }
+
+    /**
+     * Ejecuta una lectura en el shard del cliente.
+     */
+    public <T> T forClient(Long clientId, Supplier<T> action) {
+        if (shards == null || clientId == null) {
+            return action.get();
+        }
+        return onShard(directory.locate(clientId).getShard(), action);
+    }
+
+    /**
+     * Ejecuta una escritura en el shard del cliente.
+     *
+     * @throws IllegalStateException si el cliente se está moviendo de shard
+     */
+    public <T> T forClientWrite(Long clientId, Supplier<T> action) {
+        if (shards == null || clientId == null) {
+            return action.get();
+        }
+        ShardDirectory.Placement placement = directory.locate(clientId);
+        if (placement.isMoving()) {
+            throw new IllegalStateException("El cliente " + clientId
+                    + " se está moviendo de shard; reintente en unos segundos");
+        }
+        return onShard(placement.getShard(), action);
+    }
+
+    /**
+     * Ejecuta la acción con el shard fijado en el hilo actual.
+     *
+     * @throws IllegalStateException si el hilo ya trabaja en otro shard
+     */
+    public <T> T onShard(int shard, Supplier<T> action) {
+        if (shards == null) {
+            return action.get();
+        }
+        Integer previous = ShardContext.current();
+        if (previous != null && previous != shard) {
+            throw new IllegalStateException("Operación en el shard " + shard + " dentro de una transacción del shard "
+                    + previous);
+        }
+        ShardContext.set(shard);
+        try {
+            return action.get();
+        } finally {
+            ShardContext.set(previous);
+        }
+    }
+
+    /**
+     * Ejecuta la consulta en todos los shards en paralelo y devuelve los resultados en orden de shard.
+     */
+    public <T> List<T> scatter(Supplier<T> query) {
+        if (shards == null) {
+            return List.of(query.get());
+        }
+        List<Future<T>> futures = new ArrayList<>(shards.getShardCount());
+        for (int shard = 0; shard < shards.getShardCount(); shard++) {
+            futures.add(submit(shard, query));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        for (Future<T> future : futures) {
+            results.add(await(future));
+        }
+        return results;
+    }
+
+    /**
+     * Busca en el shard indicado y, si no está allí, en los demás por orden.
+     */
+    public <T> Optional<T> findFirst(int preferredShard, Supplier<Optional<T>> query) {
+        if (shards == null) {
+            return query.get();
+        }
+        for (int i = 0; i < shards.getShardCount(); i++) {
+            int shard = (preferredShard + i) % shards.getShardCount();
+            Optional<T> result = await(submit(shard, query));
+            if (result.isPresent()) {
+                return result;
+            }
+        }
+        return Optional.empty();
+    }
+
+    private <T> Future<T> submit(int shard, Supplier<T> query) {
+        return scatterExecutor.submit(() -> {
+            ShardContext.set(shard);
+            try {
+                return readOnlyTransaction.execute(status -> query.get());
+            } finally {
+                ShardContext.clear();
+            }
+        });
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Consulta entre shards interrumpida", e);
+        } catch (ExecutionException e) {
+            Throwable cause = Objects.requireNonNullElse(e.getCause(), e);
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Error en la consulta entre shards", cause);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scatterExecutor != null) {
+            scatterExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.ShardRoutingDataSource;
+import com.alejandro.facturacion.event.ProductsChangedEvent;
+import com.alejandro.facturacion.utils.SqlRows;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Catálogo de productos con sharding.
+ *
+ * <p>El catálogo maestro está en el shard principal; el resto de shards tienen una copia para
+ * que las facturas de sus clientes lean precios e IVA (y cumplan la clave foránea de los items)
+ * sin salir del shard. Los cambios se replican al confirmarse ({@link ProductsChangedEvent}) y,
+ * por si alguno se pierde, el catálogo completo se resincroniza periódicamente.
+ *
+ * <p>El stock de las copias es solo informativo: los movimientos de stock se registran siempre en el
+ * libro del shard principal ({@link StockLedgerService}).
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "facturacion.sharding.enabled", havingValue = "true")
+public class ShardedCatalogService {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    private final NamedParameterJdbcTemplate home;
+    private final List<NamedParameterJdbcTemplate> replicas = new ArrayList<>();
+    private final List<TransactionTemplate> replicaTransactions = new ArrayList<>();
+
+    public ShardedCatalogService(ShardRoutingDataSource shards) {
+        this.home = new NamedParameterJdbcTemplate(shards.getShard(ShardRoutingDataSource.HOME_SHARD));
+        for (int shard = 1; shard < shards.getShardCount(); shard++) {
+            replicas.add(new NamedParameterJdbcTemplate(shards.getShard(shard)));
+            replicaTransactions.add(new TransactionTemplate(new DataSourceTransactionManager(shards.getShard(shard))));
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductsChanged(ProductsChangedEvent event) {
+        if (event.getProductIds() == null) {
+            resync();
+        } else {
+            replicate(event.getProductIds());
+        }
+    }
+
+    /**
+     * Copia los productos indicados del maestro a los demás shards (y borra los que ya no existen).
+     */
+    public synchronized void replicate(Collection<Long> productIds) {
+        if (replicas.isEmpty()) {
+            return;
+        }
+        List<Long> ids = List.copyOf(productIds);
+        for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + CHUNK_SIZE));
+            List<Map<String, Object>> rows = home.queryForList("SELECT * FROM products WHERE id IN (:ids)",
+                    Map.of("ids", chunk));
+            Set<Long> deleted = new HashSet<>(chunk);
+            rows.forEach(row -> deleted.remove(((Number) row.get("id")).longValue()));
+            for (int i = 0; i < replicas.size(); i++) {
+                upsert(i, rows);
+                delete(i, deleted);
+            }
+        }
+    }
+
+    /**
+     * Resincroniza el catálogo completo en todos los shards. Se ejecuta también al arrancar,
+     * de modo que un shard nuevo recibe el catálogo antes de tener clientes.
+     */
+    @Scheduled(fixedDelayString = "${facturacion.sharding.catalog-resync-interval:PT10M}")
+    public synchronized void resync() {
+        if (replicas.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Set<Long> homeIds = new HashSet<>();
+        long after = 0;
+        while (true) {
+            List<Map<String, Object>> rows = home.queryForList(
+                    "SELECT * FROM products WHERE id > :after ORDER BY id LIMIT " + CHUNK_SIZE, Map.of("after", after));
+            if (rows.isEmpty()) {
+                break;
+            }
+            for (int i = 0; i < replicas.size(); i++) {
+                upsert(i, rows);
+            }
+            for (Map<String, Object> row : rows) {
+                after = ((Number) row.get("id")).longValue();
+                homeIds.add(after);
+            }
+        }
+        for (int i = 0; i < replicas.size(); i++) {
+            Set<Long> stale = new HashSet<>(replicas.get(i).getJdbcTemplate()
+                    .queryForList("SELECT id FROM products", Long.class));
+            stale.removeAll(homeIds);
+            delete(i, stale);
+        }
+        log.info("Catálogo resincronizado en {} shards: {} productos en {} ms",
+                replicas.size(), homeIds.size(), System.currentTimeMillis() - start);
+    }
+
+    private void upsert(int replica, List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<Long> ids = rows.stream().map(row -> ((Number) row.get("id")).longValue()).toList();
+        replicaTransactions.get(replica).executeWithoutResult(status -> {
+            NamedParameterJdbcTemplate jdbc = replicas.get(replica);
+            Set<Long> existing = new HashSet<>(jdbc.queryForList(
+                    "SELECT id FROM products WHERE id IN (:ids)", Map.of("ids", ids), Long.class));
+            List<Map<String, Object>> updates = new ArrayList<>();
+            List<Map<String, Object>> inserts = new ArrayList<>();
+            for (Map<String, Object> row : rows) {
+                (existing.contains(((Number) row.get("id")).longValue()) ? updates : inserts).add(row);
+            }
+            JdbcTemplate plain = jdbc.getJdbcTemplate();
+            SqlRows.updateById(plain, "products", updates);
+            SqlRows.insert(plain, "products", inserts);
+        });
+    }
+
+    private void delete(int replica, Set<Long> ids) {
+        for (Long id : ids) {
+            try {
+                replicas.get(replica).update("DELETE FROM products WHERE id = :id", Map.of("id", id));
+            } catch (DataIntegrityViolationException e) {
+                // Quedan items de factura de ese shard que lo referencian
+                log.warn("El producto {} se eliminó del catálogo pero sigue en uso en el shard {}", id, replica + 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,689 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.ShardContext;
+import com.alejandro.facturacion.config.ShardRoutingDataSource;
+import com.alejandro.facturacion.dto.StockLevel;
+import com.alejandro.facturacion.dto.StockMovement;
+import com.alejandro.facturacion.dto.StockMovementRequest;
+import com.alejandro.facturacion.dto.StockMovementType;
+import com.alejandro.facturacion.entity.Invoice;
+import com.alejandro.facturacion.entity.InvoiceItem;
+import com.alejandro.facturacion.event.StockChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Libro de movimientos de stock: cada venta, devolución, ajuste o reserva para un nodo de borde
+ * añade una fila inmutable a {@code stock_movements}, y el stock de un producto es el de su último
+ * snapshot ({@code stock_snapshots}) más los movimientos posteriores.
+ *
+ * <p>Los movimientos de una operación se insertan en un solo lote JDBC, con las filas de sus
+ * productos bloqueadas ({@code SELECT ... FOR UPDATE}, siempre en orden de ID). Las facturas lo
+ * hacen al final, justo antes de confirmarse, así que el bloqueo dura lo que la confirmación y no
+ * toda la factura, y solo esperan entre sí las operaciones sobre un mismo producto. El bloqueo se
+ * toma también para los movimientos que suman, aunque no puedan dejar el stock en negativo: con él
+ * los movimientos de un producto se confirman en el orden de sus IDs, que es lo que permite que un
+ * snapshot cubra "hasta el movimiento N". Sin él, un movimiento con ID menor que el del snapshot
+ * podría confirmarse después y no contar nunca. Los movimientos posteriores al snapshot se leen
+ * también con bloqueo: en MySQL una lectura normal vería la foto del inicio de la transacción, sin
+ * las ventas confirmadas mientras esperaba el bloqueo.
+ *
+ * <p>Cuando un producto acumula {@code facturacion.stock.snapshot-every} movimientos desde su
+ * último snapshot se toma otro en la misma operación, y cada
+ * {@code facturacion.stock.compaction-interval} se toman los de todos los productos con movimientos
+ * nuevos; así la lectura del stock nunca suma más que unos cientos de filas. Al tomar un snapshot
+ * se copia también en {@code products.stock}. Pasada {@code facturacion.stock.snapshot-retention}
+ * solo se conserva el último snapshot de cada día, suficiente para consultar el stock de cualquier
+ * momento sumando como mucho un día de movimientos.
+ *
+ * <p>El bloqueo por producto sigue serializando las ventas de un mismo producto: es lo que
+ * permite comprobar que el stock no queda en negativo y que los snapshots sean exactos. Solo se ha
+ * acortado, no eliminado; las ventas de productos distintos no esperan entre sí.
+ *
+ * <p>Con sharding el libro está en el shard principal, junto al catálogo maestro. Una factura de
+ * otro shard registra su venta en una transacción aparte del principal, junto con una marca en
+ * {@code stock_pending_sales}. Al confirmarse la factura se borra la marca; si no se confirma, la
+ * venta se devuelve con un movimiento {@link StockMovementType#CANCELLATION}. Si la instancia cae
+ * entre las dos transacciones, la marca queda: cada {@code facturacion.stock.pending-sale-check}
+ * (también al arrancar) se revisan las de más de {@code facturacion.stock.pending-sale-timeout} y
+ * se devuelven las ventas cuya factura no existe en ningún shard.
+ */
+@Slf4j
+@Service
+public class StockLedgerService {
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final int COMPACTION_CHUNK = 100;
+    private static final int MAX_LIMIT = 1000;
+
+    private static final String INSERT_MOVEMENT = "INSERT INTO stock_movements "
+            + "(product_id, movement_type, quantity, invoice_id, reference, created_at) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String CURRENT_STOCK = """
+            SELECT p.id,
+                   COALESCE(s.stock, 0) + COALESCE((SELECT SUM(m.quantity) FROM stock_movements m
+                                                    WHERE m.product_id = p.id AND m.id > COALESCE(s.movement_id, 0)), 0)
+            FROM products p
+            LEFT JOIN stock_snapshots s ON s.product_id = p.id
+                AND s.movement_id = (SELECT MAX(l.movement_id) FROM stock_snapshots l WHERE l.product_id = p.id)
+            WHERE p.id IN (:ids)
+            """;
+
+    private final NamedParameterJdbcTemplate routed;
+    private final NamedParameterJdbcTemplate home;
+    private final ShardRoutingDataSource shards;
+    private final TransactionTemplate homeTransaction;
+    private final ApplicationEventPublisher eventPublisher;
+    private final AuditService auditService;
+    private final int snapshotEvery;
+    private final Duration snapshotRetention;
+    private final Duration pendingSaleTimeout;
+
+    // Solo los usa la compactación programada
+    private long compactedUpTo = -1;
+    private LocalDate thinnedDay;
+
+    public StockLedgerService(JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager,
+                              ObjectProvider<ShardRoutingDataSource> shards,
+                              ApplicationEventPublisher eventPublisher,
+                              AuditService auditService,
+                              @Value("${facturacion.stock.snapshot-every:500}") int snapshotEvery,
+                              @Value("${facturacion.stock.snapshot-retention:P30D}") Duration snapshotRetention,
+                              @Value("${facturacion.stock.pending-sale-timeout:PT5M}") Duration pendingSaleTimeout) {
+        this.routed = new NamedParameterJdbcTemplate(jdbcTemplate);
+        ShardRoutingDataSource routing = shards.getIfAvailable();
+        this.shards = routing;
+        if (routing != null) {
+            DataSource homeShard = routing.getShard(ShardRoutingDataSource.HOME_SHARD);
+            this.home = new NamedParameterJdbcTemplate(homeShard);
+            this.homeTransaction = new TransactionTemplate(new DataSourceTransactionManager(homeShard));
+        } else {
+            this.home = routed;
+            this.homeTransaction = new TransactionTemplate(transactionManager);
+        }
+        this.homeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.eventPublisher = eventPublisher;
+        this.auditService = auditService;
+        this.snapshotEvery = Math.max(1, snapshotEvery);
+        this.snapshotRetention = snapshotRetention;
+        this.pendingSaleTimeout = pendingSaleTimeout;
+    }
+
+    /**
+     * Registra la venta de las unidades de una factura recién guardada. Se llama al final de la
+     * transacción de la factura, para tener bloqueados sus productos el menor tiempo posible.
+     *
+     * @throws IllegalArgumentException si algún producto no tiene stock suficiente
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordSale(Invoice invoice) {
+        Map<Long, Integer> quantities = new TreeMap<>();
+        Map<Long, String> names = new HashMap<>();
+        for (InvoiceItem item : invoice.getItems()) {
+            quantities.merge(item.getProduct().getId(), item.getQuantity(), Integer::sum);
+            names.put(item.getProduct().getId(), item.getProduct().getName());
+        }
+        long invoiceId = invoice.getId();
+        String reference = invoice.getNumber() != null ? invoice.getFullNumber() : null;
+        if (onHomeShard()) {
+            sell(routed, invoiceId, reference, quantities, names);
+            return;
+        }
+        int shard = ShardContext.current();
+        homeTransaction.executeWithoutResult(status -> {
+            sell(home, invoiceId, reference, quantities, names);
+            home.getJdbcTemplate().update("INSERT INTO stock_pending_sales (invoice_id, shard, created_at) VALUES (?, ?, ?)",
+                    invoiceId, shard, Timestamp.valueOf(LocalDateTime.now()));
+        });
+        // La factura está en otro shard: si no llega a confirmarse, sus unidades vuelven al stock
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    confirmSale(invoiceId);
+                } else {
+                    cancelSale(invoiceId);
+                }
+            }
+        });
+    }
+
+    /**
+     * Saca hasta {@code wanted} unidades, las que haya, con un movimiento del tipo indicado.
+     *
+     * @return unidades sacadas
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int take(long productId, int wanted, StockMovementType type, Long invoiceId, String reference) {
+        requireHomeShard();
+        Map<Long, Level> levels = lock(routed, List.of(productId));
+        Level level = levels.get(productId);
+        int taken = level != null ? (int) Math.max(0, Math.min(level.stock, wanted)) : 0;
+        if (taken > 0) {
+            append(routed, levels, List.of(new Movement(productId, type, -taken, invoiceId, reference)));
+        }
+        return taken;
+    }
+
+    /**
+     * Registra un movimiento.
+     *
+     * @return el stock resultante
+     * @throws IllegalArgumentException si el producto no existe o el stock quedaría en negativo
+     */
+    @Transactional
+    public long record(long productId, StockMovementType type, int quantity, Long invoiceId, String reference) {
+        requireHomeShard();
+        Map<Long, Level> levels = lock(routed, List.of(productId));
+        Level level = levels.get(productId);
+        if (level == null) {
+            throw new IllegalArgumentException("Producto no encontrado: " + productId);
+        }
+        if (level.stock + quantity < 0) {
+            throw new IllegalArgumentException("Stock insuficiente para el producto " + productId
+                    + ": hay " + level.stock + " unidades");
+        }
+        append(routed, levels, List.of(new Movement(productId, type, quantity, invoiceId, reference)));
+        return level.stock;
+    }
+
+    /**
+     * Registra una devolución o un ajuste hecho a mano.
+     *
+     * @throws IllegalArgumentException si el movimiento no es válido, el producto no existe o el
+     *         stock quedaría en negativo
+     */
+    @Transactional
+    public StockLevel recordManual(long productId, StockMovementRequest request) {
+        StockMovementType type = request.getType();
+        Integer quantity = request.getQuantity();
+        if (type != StockMovementType.RETURN && type != StockMovementType.ADJUSTMENT) {
+            throw new IllegalArgumentException("Solo se pueden registrar movimientos RETURN o ADJUSTMENT");
+        }
+        if (quantity == null || quantity == 0 || (type == StockMovementType.RETURN && quantity < 0)) {
+            throw new IllegalArgumentException(type == StockMovementType.RETURN
+                    ? "Una devolución debe tener una cantidad positiva" : "Un ajuste debe tener una cantidad distinta de cero");
+        }
+        if (request.getReference() != null && request.getReference().length() > 255) {
+            throw new IllegalArgumentException("reference supera 255 caracteres");
+        }
+        long stock = record(productId, type, quantity, request.getInvoiceId(), request.getReference());
+        return new StockLevel(productId, stock, LocalDateTime.now());
+    }
+
+    /**
+     * Lleva el stock de cada producto al valor indicado con movimientos
+     * {@link StockMovementType#ADJUSTMENT}; los productos que ya lo tienen no se tocan.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void adjustTo(Map<Long, Integer> targets, String reference) {
+        requireHomeShard();
+        // Primero sin bloqueo, para bloquear solo los productos que cambian
+        Map<Long, Long> current = getStocks(targets.keySet());
+        List<Long> changed = new ArrayList<>();
+        targets.forEach((productId, target) -> {
+            Long stock = current.get(productId);
+            if (stock != null && target != null && stock != target.longValue()) {
+                changed.add(productId);
+            }
+        });
+        for (int from = 0; from < changed.size(); from += CHUNK_SIZE) {
+            Map<Long, Level> levels = lock(routed, changed.subList(from, Math.min(changed.size(), from + CHUNK_SIZE)));
+            List<Movement> movements = new ArrayList<>();
+            levels.forEach((productId, level) -> {
+                long difference = targets.get(productId) - level.stock;
+                if (difference != 0) {
+                    movements.add(new Movement(productId, StockMovementType.ADJUSTMENT, Math.toIntExact(difference),
+                            null, reference));
+                }
+            });
+            append(routed, levels, movements);
+        }
+    }
+
+    /**
+     * Registra como movimiento {@link StockMovementType#INITIAL} el stock con el que se dieron de
+     * alta los productos indicados que aún no tienen ningún movimiento.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordInitialStock(Collection<Long> productIds) {
+        requireHomeShard();
+        List<Long> ids = List.copyOf(productIds);
+        for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+            Map<Long, Level> levels = lock(routed, ids.subList(from, Math.min(ids.size(), from + CHUNK_SIZE)));
+            List<Movement> movements = new ArrayList<>();
+            levels.forEach((productId, level) -> {
+                if (level.lastMovementId == 0 && level.recorded != 0) {
+                    movements.add(new Movement(productId, StockMovementType.INITIAL, level.recorded, null, null));
+                }
+            });
+            append(routed, levels, movements);
+        }
+    }
+
+    /**
+     * Stock actual de los productos indicados; los que no existen no aparecen.
+     */
+    public Map<Long, Long> getStocks(Collection<Long> productIds) {
+        Map<Long, Long> stocks = new HashMap<>();
+        List<Long> ids = List.copyOf(productIds);
+        NamedParameterJdbcTemplate jdbc = reader();
+        for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+            jdbc.query(CURRENT_STOCK, Map.of("ids", ids.subList(from, Math.min(ids.size(), from + CHUNK_SIZE))),
+                    rs -> {
+                        stocks.put(rs.getLong(1), rs.getLong(2));
+                    });
+        }
+        return stocks;
+    }
+
+    /**
+     * Stock actual de un producto.
+     *
+     * @return el stock, o vacío si el producto no existe
+     */
+    public Optional<StockLevel> getStock(long productId) {
+        LocalDateTime now = LocalDateTime.now();
+        return Optional.ofNullable(getStocks(List.of(productId)).get(productId))
+                .map(stock -> new StockLevel(productId, stock, now));
+    }
+
+    /**
+     * Stock de un producto en un momento dado: el último snapshot anterior más los movimientos
+     * hasta ese momento.
+     *
+     * @return el stock, o vacío si el producto no existe
+     */
+    public Optional<StockLevel> getStockAt(long productId, LocalDateTime at) {
+        NamedParameterJdbcTemplate jdbc = reader();
+        JdbcTemplate plain = jdbc.getJdbcTemplate();
+        Long exists = plain.queryForObject("SELECT COUNT(*) FROM products WHERE id = ?", Long.class, productId);
+        if (exists == null || exists == 0) {
+            return Optional.empty();
+        }
+        Timestamp timestamp = Timestamp.valueOf(at);
+        long[] base = new long[2];
+        plain.query("SELECT movement_id, stock FROM stock_snapshots WHERE product_id = ? AND taken_at <= ? "
+                + "ORDER BY taken_at DESC, movement_id DESC LIMIT 1", rs -> {
+            base[0] = rs.getLong(1);
+            base[1] = rs.getLong(2);
+        }, productId, timestamp);
+        // Las fechas las pone cada instancia con su reloj, así que no tienen por qué seguir el orden
+        // de los IDs: se suman los movimientos posteriores al snapshot hasta la fecha pedida y se
+        // restan los que cubre el snapshot pero tienen fecha posterior
+        Long after = plain.queryForObject("SELECT COALESCE(SUM(quantity), 0) FROM stock_movements "
+                + "WHERE product_id = ? AND id > ? AND created_at <= ?", Long.class, productId, base[0], timestamp);
+        Long covered = plain.queryForObject("SELECT COALESCE(SUM(quantity), 0) FROM stock_movements "
+                + "WHERE product_id = ? AND id <= ? AND created_at > ?", Long.class, productId, base[0], timestamp);
+        long stock = base[1] + (after != null ? after : 0) - (covered != null ? covered : 0);
+        return Optional.of(new StockLevel(productId, stock, at));
+    }
+
+    /**
+     * Movimientos de un producto en orden.
+     *
+     * @param from Desde (incluido), o null
+     * @param to Hasta (excluido), o null
+     * @param after ID del último movimiento ya recibido, o null
+     * @throws IllegalArgumentException si el límite no es válido
+     */
+    public List<StockMovement> getMovements(long productId, LocalDateTime from, LocalDateTime to, Long after, int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit debe estar entre 1 y " + MAX_LIMIT);
+        }
+        StringBuilder sql = new StringBuilder("SELECT * FROM stock_movements WHERE product_id = :productId");
+        MapSqlParameterSource params = new MapSqlParameterSource("productId", productId);
+        if (from != null) {
+            sql.append(" AND created_at >= :from");
+            params.addValue("from", Timestamp.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(" AND created_at < :to");
+            params.addValue("to", Timestamp.valueOf(to));
+        }
+        if (after != null) {
+            sql.append(" AND id > :after");
+            params.addValue("after", after);
+        }
+        sql.append(" ORDER BY id LIMIT :limit");
+        params.addValue("limit", limit);
+        return reader().query(sql.toString(), params, (rs, rowNum) -> toMovement(rs));
+    }
+
+    /**
+     * Toma un snapshot de cada producto con movimientos desde la última pasada y aclara los
+     * snapshots que ya han superado {@code facturacion.stock.snapshot-retention}.
+     */
+    @Scheduled(fixedDelayString = "${facturacion.stock.compaction-interval:PT10M}")
+    public synchronized void compact() {
+        long start = System.currentTimeMillis();
+        JdbcTemplate plain = home.getJdbcTemplate();
+        if (compactedUpTo < 0) {
+            Long compacted = plain.queryForObject("SELECT COALESCE(MAX(movement_id), 0) FROM stock_snapshots", Long.class);
+            compactedUpTo = compacted != null ? compacted : 0;
+        }
+        Long upTo = plain.queryForObject("SELECT COALESCE(MAX(id), 0) FROM stock_movements", Long.class);
+        List<Long> moved = plain.queryForList("SELECT DISTINCT product_id FROM stock_movements WHERE id > ? AND id <= ? "
+                + "ORDER BY product_id", Long.class, compactedUpTo, upTo);
+        int taken = 0;
+        for (int from = 0; from < moved.size(); from += COMPACTION_CHUNK) {
+            List<Long> chunk = moved.subList(from, Math.min(moved.size(), from + COMPACTION_CHUNK));
+            Integer chunkTaken = homeTransaction.execute(status -> {
+                Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+                int count = 0;
+                for (Level level : lock(home, chunk).values()) {
+                    if (level.sinceSnapshot > 0) {
+                        snapshot(home, level, now);
+                        count++;
+                    }
+                }
+                return count;
+            });
+            taken += chunkTaken != null ? chunkTaken : 0;
+        }
+        compactedUpTo = upTo != null ? upTo : compactedUpTo;
+        int thinned = thin();
+        if (taken + thinned > 0) {
+            log.info("Libro de stock compactado: {} snapshots nuevos, {} snapshots antiguos eliminados en {} ms",
+                    taken, thinned, System.currentTimeMillis() - start);
+        }
+    }
+
+    private void sell(NamedParameterJdbcTemplate jdbc, long invoiceId, String reference,
+                      Map<Long, Integer> quantities, Map<Long, String> names) {
+        Map<Long, Level> levels = lock(jdbc, quantities.keySet());
+        List<Movement> movements = new ArrayList<>(quantities.size());
+        quantities.forEach((productId, quantity) -> {
+            Level level = levels.get(productId);
+            if (level == null) {
+                throw new IllegalArgumentException("Producto no encontrado: " + productId);
+            }
+            if (level.stock < quantity) {
+                throw new IllegalArgumentException("Stock insuficiente para el producto: " + names.get(productId));
+            }
+            movements.add(new Movement(productId, StockMovementType.SALE, -quantity, invoiceId, reference));
+        });
+        append(jdbc, levels, movements);
+    }
+
+    private void confirmSale(long invoiceId) {
+        try {
+            home.getJdbcTemplate().update("DELETE FROM stock_pending_sales WHERE invoice_id = ?", invoiceId);
+        } catch (RuntimeException e) {
+            // La revisión de ventas pendientes la borrará al encontrar la factura
+            log.warn("No se pudo borrar la marca de venta pendiente de la factura {}: {}", invoiceId, e.getMessage());
+        }
+    }
+
+    private void cancelSale(long invoiceId) {
+        try {
+            homeTransaction.executeWithoutResult(status -> cancelPending(invoiceId));
+        } catch (RuntimeException e) {
+            // La marca sigue ahí: la revisión de ventas pendientes volverá a intentarlo
+            log.error("No se pudo devolver al stock la venta de la factura no confirmada {}", invoiceId, e);
+        }
+    }
+
+    /**
+     * Devuelve al stock la venta de una factura que no llegó a confirmarse y borra su marca, en la
+     * transacción actual del shard principal. Si otra instancia ya la resolvió no hace nada.
+     */
+    private void cancelPending(long invoiceId) {
+        JdbcTemplate plain = home.getJdbcTemplate();
+        // Borrar la marca bloquea su fila: solo una instancia devuelve cada venta
+        if (plain.update("DELETE FROM stock_pending_sales WHERE invoice_id = ?", invoiceId) == 0) {
+            return;
+        }
+        Map<Long, Integer> quantities = new TreeMap<>();
+        plain.query("SELECT product_id, SUM(quantity) FROM stock_movements WHERE invoice_id = ? AND movement_type = ? "
+                + "GROUP BY product_id", rs -> {
+            quantities.put(rs.getLong(1), -rs.getInt(2));
+        }, invoiceId, StockMovementType.SALE.name());
+        Map<Long, Level> levels = lock(home, quantities.keySet());
+        List<Movement> movements = new ArrayList<>();
+        levels.keySet().forEach(productId -> movements.add(new Movement(productId,
+                StockMovementType.CANCELLATION, quantities.get(productId), invoiceId, "Factura no confirmada")));
+        append(home, levels, movements);
+    }
+
+    /**
+     * Resuelve las ventas de otros shards que siguen pendientes pasado
+     * {@code facturacion.stock.pending-sale-timeout}, por ejemplo tras una caída entre la
+     * transacción del libro y la de la factura: si la factura existe se borra la marca y, si no,
+     * se devuelve la venta al stock.
+     */
+    @Scheduled(fixedDelayString = "${facturacion.stock.pending-sale-check:PT1M}")
+    public void reconcilePendingSales() {
+        if (shards == null) {
+            return;
+        }
+        JdbcTemplate plain = home.getJdbcTemplate();
+        List<Long> pending = plain.queryForList("SELECT invoice_id FROM stock_pending_sales WHERE created_at < ? "
+                + "ORDER BY invoice_id", Long.class, Timestamp.valueOf(LocalDateTime.now().minus(pendingSaleTimeout)));
+        int cancelled = 0;
+        for (Long invoiceId : pending) {
+            if (invoiceExists(invoiceId)) {
+                plain.update("DELETE FROM stock_pending_sales WHERE invoice_id = ?", invoiceId);
+            } else {
+                homeTransaction.executeWithoutResult(status -> cancelPending(invoiceId));
+                cancelled++;
+            }
+        }
+        if (cancelled > 0) {
+            log.warn("{} ventas de facturas que no llegaron a confirmarse devueltas al stock", cancelled);
+        }
+    }
+
+    /** Si la factura está en algún shard (la de un cliente movido puede no estar en el de origen). */
+    private boolean invoiceExists(long invoiceId) {
+        for (int shard = 0; shard < shards.getShardCount(); shard++) {
+            Long count = new JdbcTemplate(shards.getShard(shard))
+                    .queryForObject("SELECT COUNT(*) FROM invoices WHERE id = ?", Long.class, invoiceId);
+            if (count != null && count > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Bloquea las filas de los productos, en orden de ID, y lee su stock actual. Los productos que
+     * no existen no aparecen.
+     */
+    private Map<Long, Level> lock(NamedParameterJdbcTemplate jdbc, Collection<Long> productIds) {
+        Map<Long, Level> levels = new TreeMap<>();
+        List<Long> ids = new ArrayList<>(new TreeSet<>(productIds));
+        for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+            jdbc.query("SELECT id, stock FROM products WHERE id IN (:ids) ORDER BY id FOR UPDATE",
+                    Map.of("ids", ids.subList(from, Math.min(ids.size(), from + CHUNK_SIZE))), rs -> {
+                        levels.put(rs.getLong(1), new Level(rs.getLong(1), rs.getInt(2)));
+                    });
+        }
+        JdbcTemplate plain = jdbc.getJdbcTemplate();
+        for (Level level : levels.values()) {
+            // Un snapshot algo antiguo da el mismo resultado, así que este puede leerse sin bloqueo
+            plain.query("SELECT movement_id, stock FROM stock_snapshots WHERE product_id = ? "
+                    + "ORDER BY movement_id DESC LIMIT 1", rs -> {
+                level.lastMovementId = rs.getLong(1);
+                level.stock = rs.getLong(2);
+            }, level.productId);
+            plain.query("SELECT id, quantity FROM stock_movements WHERE product_id = ? AND id > ? ORDER BY id FOR UPDATE",
+                    rs -> {
+                        level.lastMovementId = rs.getLong(1);
+                        level.stock += rs.getInt(2);
+                        level.sinceSnapshot++;
+                    }, level.productId, level.lastMovementId);
+        }
+        return levels;
+    }
+
+    /**
+     * Inserta los movimientos en un lote; los productos deben estar bloqueados con {@link #lock}.
+     */
+    private void append(NamedParameterJdbcTemplate jdbc, Map<Long, Level> levels, List<Movement> movements) {
+        if (movements.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(movements.size());
+        Set<Long> touched = new TreeSet<>();
+        for (Movement movement : movements) {
+            Level level = levels.get(movement.productId);
+            level.stock += movement.quantity;
+            level.sinceSnapshot++;
+            touched.add(movement.productId);
+            rows.add(new Object[]{movement.productId, movement.type.name(), movement.quantity, movement.invoiceId,
+                    movement.reference, now});
+            auditService.stockMovement(movement.productId, movement.quantity, level.stock, movement.invoiceId,
+                    movement.reference != null ? movement.type + " " + movement.reference : movement.type.name());
+        }
+        jdbc.getJdbcTemplate().batchUpdate(INSERT_MOVEMENT, rows);
+        for (Long productId : touched) {
+            Level level = levels.get(productId);
+            if (level.sinceSnapshot >= snapshotEvery) {
+                snapshot(jdbc, level, now);
+            }
+        }
+        eventPublisher.publishEvent(new StockChangedEvent(List.copyOf(touched)));
+    }
+
+    /**
+     * Guarda el stock del producto, bloqueado con {@link #lock}, como snapshot de su último movimiento.
+     */
+    private void snapshot(NamedParameterJdbcTemplate jdbc, Level level, Timestamp now) {
+        JdbcTemplate plain = jdbc.getJdbcTemplate();
+        // Con el producto bloqueado nadie más añade movimientos suyos: el último es el de mayor ID
+        Long lastMovementId = plain.queryForObject("SELECT MAX(id) FROM stock_movements WHERE product_id = ?",
+                Long.class, level.productId);
+        if (lastMovementId == null) {
+            return;
+        }
+        int stock = Math.toIntExact(level.stock);
+        plain.update("INSERT INTO stock_snapshots (product_id, movement_id, stock, taken_at) VALUES (?, ?, ?, ?)",
+                level.productId, lastMovementId, stock, now);
+        plain.update("UPDATE products SET stock = ? WHERE id = ?", stock, level.productId);
+        level.lastMovementId = lastMovementId;
+        level.sinceSnapshot = 0;
+    }
+
+    /**
+     * Del último día que ha superado la retención, deja solo el último snapshot de cada producto.
+     */
+    private int thin() {
+        if (snapshotRetention.isZero() || snapshotRetention.isNegative()) {
+            return 0;
+        }
+        LocalDate day = LocalDateTime.now().minus(snapshotRetention).toLocalDate().minusDays(1);
+        if (day.equals(thinnedDay)) {
+            return 0;
+        }
+        List<Object[]> deletes = new ArrayList<>();
+        Set<Long> kept = new HashSet<>();
+        // Por producto, del más reciente al más antiguo: se conserva el primero
+        home.getJdbcTemplate().query("SELECT product_id, movement_id FROM stock_snapshots "
+                + "WHERE taken_at >= ? AND taken_at < ? ORDER BY product_id, movement_id DESC", rs -> {
+            long productId = rs.getLong(1);
+            if (!kept.add(productId)) {
+                deletes.add(new Object[]{productId, rs.getLong(2)});
+            }
+        }, Timestamp.valueOf(day.atStartOfDay()), Timestamp.valueOf(day.plusDays(1).atStartOfDay()));
+        for (int from = 0; from < deletes.size(); from += CHUNK_SIZE) {
+            List<Object[]> chunk = deletes.subList(from, Math.min(deletes.size(), from + CHUNK_SIZE));
+            homeTransaction.executeWithoutResult(status -> home.getJdbcTemplate().batchUpdate(
+                    "DELETE FROM stock_snapshots WHERE product_id = ? AND movement_id = ?", chunk));
+        }
+        thinnedDay = day;
+        return deletes.size();
+    }
+
+    /** En el shard principal se usa la transacción del llamante; desde otro shard, una conexión del principal. */
+    private NamedParameterJdbcTemplate reader() {
+        return onHomeShard() ? routed : home;
+    }
+
+    private static boolean onHomeShard() {
+        Integer shard = ShardContext.current();
+        return shard == null || shard == ShardRoutingDataSource.HOME_SHARD;
+    }
+
+    private static void requireHomeShard() {
+        if (!onHomeShard()) {
+            throw new IllegalStateException("Los movimientos de stock se registran en el shard principal");
+        }
+    }
+
+    private static StockMovement toMovement(ResultSet rs) throws SQLException {
+        long invoiceId = rs.getLong("invoice_id");
+        Long invoice = rs.wasNull() ? null : invoiceId;
+        return new StockMovement(rs.getLong("id"), rs.getLong("product_id"),
+                StockMovementType.valueOf(rs.getString("movement_type")), rs.getInt("quantity"), invoice,
+                rs.getString("reference"), rs.getTimestamp("created_at").toLocalDateTime());
+    }
+
+    /** Stock de un producto bloqueado, según se va leyendo y modificando. */
+    private static final class Level {
+
+        final long productId;
+        /** Valor de {@code products.stock}: el del alta o el del último snapshot. */
+        final int recorded;
+        long stock;
+        long lastMovementId;
+        int sinceSnapshot;
+
+        Level(long productId, int recorded) {
+            this.productId = productId;
+            this.recorded = recorded;
+        }
+    }
+
+    private static final class Movement {
+
+        final long productId;
+        final StockMovementType type;
+        final int quantity;
+        final Long invoiceId;
+        final String reference;
+
+        Movement(long productId, StockMovementType type, int quantity, Long invoiceId, String reference) {
+            this.productId = productId;
+            this.type = type;
+            this.quantity = quantity;
+            this.invoiceId = invoiceId;
+            this.reference = reference;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.EInvoiceProperties;
+import com.alejandro.facturacion.entity.Client;
+import com.alejandro.facturacion.entity.Invoice;
+import com.alejandro.facturacion.entity.InvoiceItem;
+import com.alejandro.facturacion.entity.InvoiceSeries;
+import com.alejandro.facturacion.entity.TaxScheme;
+import com.alejandro.facturacion.utils.Cufe;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Escribe una factura como documento UBL 2.1 (Invoice) con las extensiones de la DIAN.
+ *
+ * <p>Escribe directamente sobre un {@link XMLStreamWriter}, sin construir un árbol intermedio.
+ * El documento lleva dos {@code ext:UBLExtension}: la primera con {@code sts:DianExtensions} y
+ * la segunda vacía, reservada para la firma XAdES.
+ */
+@Component
+public class UblInvoiceWriter {
+
+    public static final String INVOICE_NS = "urn:oasis:names:specification:ubl:schema:xsd:Invoice-2";
+    public static final String CAC_NS = "urn:oasis:names:specification:ubl:schema:xsd:CommonAggregateComponents-2";
+    public static final String CBC_NS = "urn:oasis:names:specification:ubl:schema:xsd:CommonBasicComponents-2";
+    public static final String EXT_NS = "urn:oasis:names:specification:ubl:schema:xsd:CommonExtensionComponents-2";
+    public static final String STS_NS = "dian:gov:co:facturaelectronica:Structures-2-1";
+
+    /** NIT de la DIAN como proveedor de autorizaciones. */
+    private static final String DIAN_NIT = "800197268";
+
+    private final EInvoiceProperties properties;
+    private final String currency;
+
+    public UblInvoiceWriter(EInvoiceProperties properties, MoneyService moneyService) {
+        this.properties = properties;
+        this.currency = moneyService.getCurrency();
+    }
+
+    /**
+     * @param invoice factura con cliente, items y productos cargados
+     * @param series serie de la factura, o {@code null} si no está registrada
+     * @param issuedAt fecha y hora de emisión en la zona de la DIAN
+     * @param cufe CUFE ya calculado para la factura
+     */
+    public void write(Invoice invoice, InvoiceSeries series, OffsetDateTime issuedAt, String cufe,
+                      XMLStreamWriter xml) throws XMLStreamException {
+        String number = invoice.getFullNumber();
+        Client client = invoice.getClient();
+        List<InvoiceItem> items = invoice.getItems() != null ? invoice.getItems() : List.of();
+
+        xml.writeStartDocument("UTF-8", "1.0");
+        start(xml, INVOICE_NS, "Invoice");
+        xml.writeDefaultNamespace(INVOICE_NS);
+        xml.writeNamespace("cac", CAC_NS);
+        xml.writeNamespace("cbc", CBC_NS);
+        xml.writeNamespace("ext", EXT_NS);
+        xml.writeNamespace("sts", STS_NS);
+
+        start(xml, EXT_NS, "UBLExtensions");
+        start(xml, EXT_NS, "UBLExtension");
+        start(xml, EXT_NS, "ExtensionContent");
+        writeDianExtensions(xml, invoice, series, issuedAt, cufe);
+        xml.writeEndElement();
+        xml.writeEndElement();
+        start(xml, EXT_NS, "UBLExtension");
+        start(xml, EXT_NS, "ExtensionContent");
+        xml.writeEndElement();
+        xml.writeEndElement();
+        xml.writeEndElement();
+
+        cbc(xml, "UBLVersionID", "UBL 2.1");
+        cbc(xml, "CustomizationID", "10");
+        cbc(xml, "ProfileID", "DIAN 2.1: Factura Electrónica de Venta");
+        cbc(xml, "ProfileExecutionID", properties.getEnvironment());
+        cbc(xml, "ID", number);
+        start(xml, CBC_NS, "UUID");
+        xml.writeAttribute("schemeID", properties.getEnvironment());
+        xml.writeAttribute("schemeName", "CUFE-SHA384");
+        xml.writeCharacters(cufe);
+        xml.writeEndElement();
+        cbc(xml, "IssueDate", Cufe.DATE.format(issuedAt));
+        cbc(xml, "IssueTime", Cufe.TIME.format(issuedAt));
+        cbc(xml, "InvoiceTypeCode", "01");
+        cbc(xml, "DocumentCurrencyCode", currency);
+        cbc(xml, "LineCountNumeric", String.valueOf(items.size()));
+
+        writeSupplier(xml);
+        writeCustomer(xml, client);
+        writeTaxTotal(xml, items);
+
+        start(xml, CAC_NS, "LegalMonetaryTotal");
+        amount(xml, "LineExtensionAmount", invoice.getSubtotal());
+        amount(xml, "TaxExclusiveAmount", invoice.getSubtotal());
+        amount(xml, "TaxInclusiveAmount", invoice.getTotal());
+        amount(xml, "PayableAmount", invoice.getTotal());
+        xml.writeEndElement();
+
+        int line = 1;
+        for (InvoiceItem item : items) {
+            writeLine(xml, line++, item);
+        }
+
+        xml.writeEndElement();
+        xml.writeEndDocument();
+        xml.flush();
+    }
+
+    private void writeDianExtensions(XMLStreamWriter xml, Invoice invoice, InvoiceSeries series,
+                                     OffsetDateTime issuedAt, String cufe) throws XMLStreamException {
+        EInvoiceProperties.Software software = properties.getSoftware();
+        String providerNit = software.getProviderNit() != null ? software.getProviderNit() : properties.getIssuer().getNit();
+
+        start(xml, STS_NS, "DianExtensions");
+        if (series != null) {
+            start(xml, STS_NS, "InvoiceControl");
+            element(xml, STS_NS, "InvoiceAuthorization", series.getResolutionNumber());
+            start(xml, STS_NS, "AuthorizationPeriod");
+            cbc(xml, "StartDate", series.getValidFrom() != null ? series.getValidFrom().toString() : null);
+            cbc(xml, "EndDate", series.getValidTo() != null ? series.getValidTo().toString() : null);
+            xml.writeEndElement();
+            start(xml, STS_NS, "AuthorizedInvoices");
+            element(xml, STS_NS, "Prefix", series.getPrefix());
+            element(xml, STS_NS, "From", String.valueOf(series.getRangeFrom()));
+            element(xml, STS_NS, "To", String.valueOf(series.getRangeTo()));
+            xml.writeEndElement();
+            xml.writeEndElement();
+        }
+
+        start(xml, STS_NS, "InvoiceSource");
+        start(xml, CBC_NS, "IdentificationCode");
+        xml.writeAttribute("listAgencyID", "6");
+        xml.writeAttribute("listAgencyName", "United Nations Economic Commission for Europe");
+        xml.writeAttribute("listSchemeURI", "urn:oasis:names:specification:ubl:codelist:gc:CountryIdentificationCode-2.1");
+        xml.writeCharacters("CO");
+        xml.writeEndElement();
+        xml.writeEndElement();
+
+        start(xml, STS_NS, "SoftwareProvider");
+        nit(xml, STS_NS, "ProviderID", providerNit, null);
+        nit(xml, STS_NS, "SoftwareID", software.getId(), null);
+        xml.writeEndElement();
+        start(xml, STS_NS, "SoftwareSecurityCode");
+        xml.writeAttribute("schemeAgencyID", "195");
+        xml.writeCharacters(Cufe.sha384Hex(software.getId() + software.getPin() + invoice.getFullNumber()));
+        xml.writeEndElement();
+        start(xml, STS_NS, "AuthorizationProvider");
+        nit(xml, STS_NS, "AuthorizationProviderID", DIAN_NIT, "4");
+        xml.writeEndElement();
+        element(xml, STS_NS, "QRCode", qrCode(invoice, issuedAt, cufe));
+        xml.writeEndElement();
+    }
+
+    private String qrCode(Invoice invoice, OffsetDateTime issuedAt, String cufe) {
+        Map<TaxScheme, BigDecimal> taxes = invoice.taxTotalsByScheme();
+        String host = "1".equals(properties.getEnvironment()) ? "catalogo-vpfe.dian.gov.co" : "catalogo-vpfe-hab.dian.gov.co";
+        return "NumFac: " + invoice.getFullNumber()
+                + "\nFecFac: " + Cufe.DATE.format(issuedAt)
+                + "\nHorFac: " + Cufe.TIME.format(issuedAt)
+                + "\nNitFac: " + properties.getIssuer().getNit()
+                + "\nDocAdq: " + (invoice.getClient() != null ? invoice.getClient().getIdentificationNumber() : "")
+                + "\nValFac: " + Cufe.amount(invoice.getSubtotal())
+                + "\nValIva: " + Cufe.amount(taxes.get(TaxScheme.IVA))
+                + "\nValOtroIm: " + Cufe.amount(taxes.get(TaxScheme.INC).add(taxes.get(TaxScheme.ICA)))
+                + "\nValTolFac: " + Cufe.amount(invoice.getTotal())
+                + "\nCUFE: " + cufe
+                + "\nhttps://" + host + "/document/searchqr?documentkey=" + cufe;
+    }
+
+    private void writeSupplier(XMLStreamWriter xml) throws XMLStreamException {
+        EInvoiceProperties.Issuer issuer = properties.getIssuer();
+        start(xml, CAC_NS, "AccountingSupplierParty");
+        cbc(xml, "AdditionalAccountID", "1");
+        start(xml, CAC_NS, "Party");
+        start(xml, CAC_NS, "PartyName");
+        cbc(xml, "Name", issuer.getName());
+        xml.writeEndElement();
+        start(xml, CAC_NS, "PartyTaxScheme");
+        cbc(xml, "RegistrationName", issuer.getName());
+        nit(xml, CBC_NS, "CompanyID", issuer.getNit(), issuer.getCheckDigit());
+        cbc(xml, "TaxLevelCode", issuer.getTaxLevelCode());
+        writeTaxScheme(xml, TaxScheme.IVA);
+        xml.writeEndElement();
+        start(xml, CAC_NS, "PartyLegalEntity");
+        cbc(xml, "RegistrationName", issuer.getName());
+        nit(xml, CBC_NS, "CompanyID", issuer.getNit(), issuer.getCheckDigit());
+        xml.writeEndElement();
+        xml.writeEndElement();
+        xml.writeEndElement();
+    }
+
+    private void writeCustomer(XMLStreamWriter xml, Client client) throws XMLStreamException {
+        String name = client != null ? client.getName() : null;
+        String identification = client != null ? client.getIdentificationNumber() : null;
+        start(xml, CAC_NS, "AccountingCustomerParty");
+        cbc(xml, "AdditionalAccountID", "2");
+        start(xml, CAC_NS, "Party");
+        start(xml, CAC_NS, "PartyName");
+        cbc(xml, "Name", name);
+        xml.writeEndElement();
+        start(xml, CAC_NS, "PartyTaxScheme");
+        cbc(xml, "RegistrationName", name);
+        start(xml, CBC_NS, "CompanyID");
+        xml.writeAttribute("schemeAgencyID", "195");
+        xml.writeAttribute("schemeName", "13");
+        xml.writeCharacters(identification != null ? identification : "");
+        xml.writeEndElement();
+        cbc(xml, "TaxLevelCode", "R-99-PN");
+        writeTaxScheme(xml, TaxScheme.IVA);
+        xml.writeEndElement();
+        if (client != null && client.getEmail() != null) {
+            start(xml, CAC_NS, "Contact");
+            cbc(xml, "ElectronicMail", client.getEmail());
+            xml.writeEndElement();
+        }
+        xml.writeEndElement();
+        xml.writeEndElement();
+    }
+
+    private void writeTaxTotal(XMLStreamWriter xml, List<InvoiceItem> items) throws XMLStreamException {
+        // Un TaxTotal por tributo y, dentro, un subtotal por tarifa
+        Map<TaxScheme, Map<BigDecimal, BigDecimal[]>> bySchemeAndRate = new EnumMap<>(TaxScheme.class);
+        for (InvoiceItem item : items) {
+            BigDecimal rate = item.getTaxRate() != null ? item.getTaxRate().stripTrailingZeros() : BigDecimal.ZERO;
+            BigDecimal[] sums = bySchemeAndRate.computeIfAbsent(TaxScheme.orDefault(item.getTaxScheme()), s -> new TreeMap<>())
+                    .computeIfAbsent(rate, r -> new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ZERO});
+            sums[0] = sums[0].add(orZero(item.getSubtotal()));
+            sums[1] = sums[1].add(orZero(item.getTaxAmount()));
+        }
+        if (bySchemeAndRate.isEmpty()) {
+            bySchemeAndRate.put(TaxScheme.IVA, Map.of());
+        }
+        for (Map.Entry<TaxScheme, Map<BigDecimal, BigDecimal[]>> scheme : bySchemeAndRate.entrySet()) {
+            BigDecimal totalTax = BigDecimal.ZERO;
+            for (BigDecimal[] sums : scheme.getValue().values()) {
+                totalTax = totalTax.add(sums[1]);
+            }
+            start(xml, CAC_NS, "TaxTotal");
+            amount(xml, "TaxAmount", totalTax);
+            for (Map.Entry<BigDecimal, BigDecimal[]> entry : scheme.getValue().entrySet()) {
+                writeTaxSubtotal(xml, entry.getValue()[0], entry.getValue()[1], entry.getKey(), scheme.getKey());
+            }
+            xml.writeEndElement();
+        }
+    }
+
+    private void writeLine(XMLStreamWriter xml, int line, InvoiceItem item) throws XMLStreamException {
+        start(xml, CAC_NS, "InvoiceLine");
+        cbc(xml, "ID", String.valueOf(line));
+        start(xml, CBC_NS, "InvoicedQuantity");
+        xml.writeAttribute("unitCode", "94");
+        xml.writeCharacters(String.valueOf(item.getQuantity()));
+        xml.writeEndElement();
+        amount(xml, "LineExtensionAmount", item.getSubtotal());
+
+        if (item.getDiscountAmount() != null && item.getDiscountAmount().signum() != 0) {
+            start(xml, CAC_NS, "AllowanceCharge");
+            cbc(xml, "ID", "1");
+            cbc(xml, "ChargeIndicator", "false");
+            cbc(xml, "MultiplierFactorNumeric", Cufe.amount(item.getDiscountRate()));
+            amount(xml, "Amount", item.getDiscountAmount());
+            amount(xml, "BaseAmount", item.getSubtotal().add(item.getDiscountAmount()));
+            xml.writeEndElement();
+        }
+
+        start(xml, CAC_NS, "TaxTotal");
+        amount(xml, "TaxAmount", item.getTaxAmount());
+        writeTaxSubtotal(xml, item.getSubtotal(), item.getTaxAmount(), item.getTaxRate(),
+                TaxScheme.orDefault(item.getTaxScheme()));
+        xml.writeEndElement();
+
+        start(xml, CAC_NS, "Item");
+        cbc(xml, "Description", item.getProduct() != null ? item.getProduct().getName() : null);
+        if (item.getProduct() != null) {
+            start(xml, CAC_NS, "StandardItemIdentification");
+            start(xml, CBC_NS, "ID");
+            xml.writeAttribute("schemeID", "999");
+            xml.writeCharacters(String.valueOf(item.getProduct().getId()));
+            xml.writeEndElement();
+            xml.writeEndElement();
+        }
+        xml.writeEndElement();
+
+        start(xml, CAC_NS, "Price");
+        amount(xml, "PriceAmount", item.getPrice());
+        start(xml, CBC_NS, "BaseQuantity");
+        xml.writeAttribute("unitCode", "94");
+        xml.writeCharacters("1");
+        xml.writeEndElement();
+        xml.writeEndElement();
+        xml.writeEndElement();
+    }
+
+    private void writeTaxSubtotal(XMLStreamWriter xml, BigDecimal taxable, BigDecimal tax, BigDecimal rate,
+                                  TaxScheme scheme) throws XMLStreamException {
+        start(xml, CAC_NS, "TaxSubtotal");
+        amount(xml, "TaxableAmount", taxable);
+        amount(xml, "TaxAmount", tax);
+        start(xml, CAC_NS, "TaxCategory");
+        cbc(xml, "Percent", Cufe.amount(rate));
+        writeTaxScheme(xml, scheme);
+        xml.writeEndElement();
+        xml.writeEndElement();
+    }
+
+    private void writeTaxScheme(XMLStreamWriter xml, TaxScheme scheme) throws XMLStreamException {
+        start(xml, CAC_NS, "TaxScheme");
+        cbc(xml, "ID", scheme.getCode());
+        cbc(xml, "Name", scheme.getLabel());
+        xml.writeEndElement();
+    }
+
+    private void nit(XMLStreamWriter xml, String namespace, String name, String nit, String checkDigit)
+            throws XMLStreamException {
+        start(xml, namespace, name);
+        xml.writeAttribute("schemeAgencyID", "195");
+        xml.writeAttribute("schemeAgencyName", "CO, DIAN (Dirección de Impuestos y Aduanas Nacionales)");
+        if (checkDigit != null && !checkDigit.isEmpty()) {
+            xml.writeAttribute("schemeID", checkDigit);
+        }
+        xml.writeAttribute("schemeName", "31");
+        xml.writeCharacters(nit != null ? nit : "");
+        xml.writeEndElement();
+    }
+
+    private void amount(XMLStreamWriter xml, String name, BigDecimal value) throws XMLStreamException {
+        start(xml, CBC_NS, name);
+        xml.writeAttribute("currencyID", currency);
+        xml.writeCharacters(Cufe.amount(value));
+        xml.writeEndElement();
+    }
+
+    private static void cbc(XMLStreamWriter xml, String name, String value) throws XMLStreamException {
+        element(xml, CBC_NS, name, value);
+    }
+
+    private static void element(XMLStreamWriter xml, String namespace, String name, String value)
+            throws XMLStreamException {
+        start(xml, namespace, name);
+        if (value != null) {
+            xml.writeCharacters(value);
+        }
+        xml.writeEndElement();
+    }
+
+    /**
+     * Abre un elemento con su prefijo explícito: el escritor sobre DOM del JDK no resuelve los
+     * prefijos registrados con {@code setPrefix}/{@code setDefaultNamespace}.
+     */
+    private static void start(XMLStreamWriter xml, String namespace, String name) throws XMLStreamException {
+        xml.writeStartElement(prefix(namespace), name, namespace);
+    }
+
+    private static String prefix(String namespace) {
+        return switch (namespace) {
+            case CAC_NS -> "cac";
+            case CBC_NS -> "cbc";
+            case EXT_NS -> "ext";
+            case STS_NS -> "sts";
+            default -> "";
+        };
+    }
+
+    private static BigDecimal orZero(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+}
@@ -0,0 +1,210 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.CacheProperties;
+import com.alejandro.facturacion.dto.CacheInvalidation;
+import com.alejandro.facturacion.dto.CacheRegion;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Bus de invalidaciones por UDP entre las instancias de {@code facturacion.cache.udp.peers}.
+ *
+ * <p>Cada instancia numera sus invalidaciones y envía periódicamente un latido con el último
+ * número. Si llega un número salteado, o un latido con un número que no se ha recibido, se perdió
+ * algún datagrama y se invalidan todas las regiones. Si una instancia de la lista no se oye desde
+ * hace más de {@code facturacion.cache.max-staleness}, la caché deja de usarse hasta que vuelva (o
+ * se quite de la lista). Para probarlo en una sola máquina basta con un puerto por instancia:
+ * <pre>
+ * --facturacion.cache.udp.port=7701 --facturacion.cache.udp.peers=localhost:7702
+ * --facturacion.cache.udp.port=7702 --facturacion.cache.udp.peers=localhost:7701
+ * </pre>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "facturacion.cache.transport", havingValue = "udp")
+public class UdpCacheInvalidationBus implements CacheInvalidationBus {
+
+    private static final int MAX_DATAGRAM = 512;
+
+    private final String origin;
+    private final int port;
+    private final Duration heartbeatInterval;
+    private final List<InetSocketAddress> peers;
+    private final Map<SocketAddress, PeerState> states = new LinkedHashMap<>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cache-bus-udp-send");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private DatagramSocket socket;
+    private Consumer<CacheInvalidation> listener;
+    /** Número de la última invalidación enviada; solo lo usa el hilo de envío. */
+    private long sequence;
+
+    public UdpCacheInvalidationBus(CacheProperties properties) {
+        this.origin = properties.getNodeId() != null ? properties.getNodeId() : UUID.randomUUID().toString();
+        this.port = properties.getUdp().getPort();
+        this.heartbeatInterval = properties.getUdp().getHeartbeatInterval();
+        this.peers = properties.getUdp().getPeers().stream().map(UdpCacheInvalidationBus::parsePeer).toList();
+        for (InetSocketAddress peer : peers) {
+            states.put(peer, new PeerState());
+        }
+        if (heartbeatInterval.multipliedBy(2).compareTo(properties.getMaxStaleness()) > 0) {
+            log.warn("facturacion.cache.max-staleness ({}) debería ser al menos el doble del latido ({}); "
+                    + "la caché se usará poco", properties.getMaxStaleness(), heartbeatInterval);
+        }
+    }
+
+    @Override
+    public void start(Consumer<CacheInvalidation> listener) {
+        this.listener = listener;
+        try {
+            socket = new DatagramSocket(port);
+        } catch (SocketException e) {
+            throw new UncheckedIOException("No se pudo abrir el puerto UDP " + port + " del bus de caché", e);
+        }
+        Thread receiver = new Thread(this::receive, "cache-bus-udp");
+        receiver.setDaemon(true);
+        receiver.start();
+        executor.scheduleWithFixedDelay(() -> send("H|" + origin + "|" + sequence),
+                0, heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS);
+        log.info("Bus de invalidaciones de caché por UDP en el puerto {} (instancia {}, {} instancias más)",
+                port, origin, peers.size());
+    }
+
+    @Override
+    public void publish(CacheInvalidation invalidation) {
+        executor.execute(() -> {
+            sequence++;
+            send("I|" + origin + "|" + sequence + "|" + invalidation.getRegion().name() + "|"
+                    + (invalidation.getEntityId() != null ? invalidation.getEntityId() : ""));
+        });
+    }
+
+    @Override
+    public long lagNanos() {
+        long now = System.nanoTime();
+        long lag = 0;
+        synchronized (states) {
+            for (InetSocketAddress peer : peers) {
+                PeerState state = states.get(peer);
+                lag = Math.max(lag, state.origin == null ? Long.MAX_VALUE : now - state.lastHeard);
+            }
+        }
+        return lag;
+    }
+
+    private void send(String message) {
+        byte[] data = message.getBytes(StandardCharsets.UTF_8);
+        for (InetSocketAddress peer : peers) {
+            try {
+                socket.send(new DatagramPacket(data, data.length, peer));
+            } catch (IOException e) {
+                log.debug("No se pudo enviar al bus de caché de {}: {}", peer, e.getMessage());
+            }
+        }
+    }
+
+    private void receive() {
+        byte[] buffer = new byte[MAX_DATAGRAM];
+        while (!socket.isClosed()) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+                handle(packet.getSocketAddress(),
+                        new String(packet.getData(), packet.getOffset(), packet.getLength(), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    log.warn("Error leyendo el bus de caché: {}", e.getMessage());
+                }
+            } catch (RuntimeException e) {
+                log.warn("Mensaje no válido en el bus de caché de {}: {}", packet.getSocketAddress(), e.getMessage());
+            }
+        }
+    }
+
+    private void handle(SocketAddress from, String message) {
+        String[] parts = message.split("\\|", -1);
+        boolean invalidation = parts[0].equals("I");
+        String sender = parts[1];
+        long seq = Long.parseLong(parts[2]);
+        if (sender.equals(origin)) {
+            return;
+        }
+        boolean lost;
+        synchronized (states) {
+            PeerState state = states.computeIfAbsent(from, address -> new PeerState());
+            if (!sender.equals(state.origin)) {
+                // Una instancia nueva, o la misma reiniciada: lo que enviara antes pudo perderse
+                lost = state.origin != null;
+                state.origin = sender;
+                state.lastSeq = invalidation ? seq - 1 : seq;
+            } else {
+                lost = invalidation ? seq > state.lastSeq + 1 : seq > state.lastSeq;
+            }
+            if (lost) {
+                log.warn("Se perdieron invalidaciones de caché de {}; se vacía la caché", from);
+                for (CacheRegion region : CacheRegion.values()) {
+                    listener.accept(CacheInvalidation.all(region));
+                }
+            }
+            if (invalidation) {
+                CacheRegion region = CacheRegion.valueOf(parts[3]);
+                listener.accept(new CacheInvalidation(region, parts[4].isEmpty() ? null : Long.parseLong(parts[4])));
+            }
+            state.lastSeq = Math.max(state.lastSeq, seq);
+            state.lastHeard = System.nanoTime();
+        }
+    }
+
+    private static InetSocketAddress parsePeer(String peer) {
+        int colon = peer.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("facturacion.cache.udp.peers: se esperaba host:puerto y no " + peer);
+        }
+        return new InetSocketAddress(peer.substring(0, colon).trim(), Integer.parseInt(peer.substring(colon + 1).trim()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (socket != null) {
+            socket.close();
+        }
+    }
+
+    /**
+     * Lo último recibido de una instancia.
+     */
+    private static class PeerState {
+        String origin;
+        long lastSeq;
+        long lastHeard;
+    }
+}
@@ -0,0 +1,204 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.EInvoiceProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.security.auth.x500.X500Principal;
+import javax.xml.XMLConstants;
+import javax.xml.crypto.MarshalException;
+import javax.xml.crypto.dom.DOMStructure;
+import javax.xml.crypto.dsig.CanonicalizationMethod;
+import javax.xml.crypto.dsig.DigestMethod;
+import javax.xml.crypto.dsig.Reference;
+import javax.xml.crypto.dsig.SignatureMethod;
+import javax.xml.crypto.dsig.SignedInfo;
+import javax.xml.crypto.dsig.Transform;
+import javax.xml.crypto.dsig.XMLObject;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureException;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMSignContext;
+import javax.xml.crypto.dsig.keyinfo.KeyInfo;
+import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
+import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
+import javax.xml.crypto.dsig.spec.TransformParameterSpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Firma documentos UBL con XAdES-EPES (firma XML envuelta con la política de firma de la DIAN).
+ *
+ * <p>Usa la API estándar de firma XML del JDK (JSR 105). La clave y el certificado se cargan
+ * una vez desde {@code facturacion.einvoice.signing.keystore}; si no está configurado, la firma
+ * queda deshabilitada. Es seguro usarlo desde varios hilos: cada hilo tiene su propia fábrica.
+ */
+@Slf4j
+@Component
+public class XadesSigner {
+
+    public static final String XADES_NS = "http://uri.etsi.org/01903/v1.3.2#";
+    private static final String SIGNED_PROPERTIES_TYPE = "http://uri.etsi.org/01903#SignedProperties";
+
+    private static final ThreadLocal<XMLSignatureFactory> FACTORY =
+            ThreadLocal.withInitial(() -> XMLSignatureFactory.getInstance("DOM"));
+
+    private final EInvoiceProperties.Signing properties;
+    private final ZoneId zone;
+    private final PrivateKey privateKey;
+    private final X509Certificate certificate;
+    private final String signatureMethod;
+    private final String certificateDigest;
+
+    public XadesSigner(EInvoiceProperties properties) throws IOException, GeneralSecurityException {
+        this.properties = properties.getSigning();
+        this.zone = properties.getZone();
+        if (this.properties.getKeystore() == null) {
+            log.info("Firma de facturas electrónicas deshabilitada: no hay facturacion.einvoice.signing.keystore");
+            this.privateKey = null;
+            this.certificate = null;
+            this.signatureMethod = null;
+            this.certificateDigest = null;
+            return;
+        }
+
+        char[] storePassword = this.properties.getKeystorePassword().toCharArray();
+        KeyStore keyStore = KeyStore.getInstance(this.properties.getKeystoreType());
+        try (InputStream in = Files.newInputStream(this.properties.getKeystore())) {
+            keyStore.load(in, storePassword);
+        }
+        String alias = this.properties.getKeyAlias();
+        if (alias == null) {
+            alias = Collections.list(keyStore.aliases()).stream()
+                    .filter(a -> isKeyEntry(keyStore, a))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("El almacén de firma no contiene ninguna clave privada"));
+        }
+        char[] keyPassword = this.properties.getKeyPassword() != null
+                ? this.properties.getKeyPassword().toCharArray() : storePassword;
+        this.privateKey = (PrivateKey) keyStore.getKey(alias, keyPassword);
+        this.certificate = (X509Certificate) keyStore.getCertificate(alias);
+        if (privateKey == null || certificate == null) {
+            throw new IllegalStateException("No se encontró la clave de firma '" + alias + "'");
+        }
+        this.signatureMethod = "EC".equals(privateKey.getAlgorithm())
+                ? SignatureMethod.ECDSA_SHA256 : SignatureMethod.RSA_SHA256;
+        this.certificateDigest = Base64.getEncoder().encodeToString(
+                MessageDigest.getInstance("SHA-256").digest(certificate.getEncoded()));
+        log.info("Firma de facturas electrónicas con el certificado {}", certificate.getSubjectX500Principal().getName());
+    }
+
+    public boolean isEnabled() {
+        return privateKey != null;
+    }
+
+    /**
+     * Firma el documento dentro del elemento indicado (en UBL, la segunda {@code ext:ExtensionContent}).
+     */
+    public void sign(Document document, Node signatureParent)
+            throws GeneralSecurityException, MarshalException, XMLSignatureException {
+        if (!isEnabled()) {
+            throw new IllegalStateException("La firma de facturas electrónicas no está configurada");
+        }
+        XMLSignatureFactory factory = FACTORY.get();
+        String signatureId = "xmldsig-" + UUID.randomUUID();
+        String keyInfoId = signatureId + "-keyinfo";
+        String signedPropertiesId = signatureId + "-signedprops";
+
+        DigestMethod sha256 = factory.newDigestMethod(DigestMethod.SHA256, null);
+        Reference documentReference = factory.newReference("", sha256,
+                List.of(factory.newTransform(Transform.ENVELOPED, (TransformParameterSpec) null)),
+                null, signatureId + "-ref0");
+        Reference keyInfoReference = factory.newReference("#" + keyInfoId, sha256);
+        Reference propertiesReference = factory.newReference("#" + signedPropertiesId, sha256,
+                null, SIGNED_PROPERTIES_TYPE, null);
+        SignedInfo signedInfo = factory.newSignedInfo(
+                factory.newCanonicalizationMethod(CanonicalizationMethod.INCLUSIVE, (C14NMethodParameterSpec) null),
+                factory.newSignatureMethod(signatureMethod, null),
+                List.of(documentReference, keyInfoReference, propertiesReference));
+
+        KeyInfoFactory keyInfoFactory = factory.getKeyInfoFactory();
+        KeyInfo keyInfo = keyInfoFactory.newKeyInfo(
+                List.of(keyInfoFactory.newX509Data(List.of(certificate))), keyInfoId);
+
+        Element signedProperties = document.createElementNS(XADES_NS, "xades:SignedProperties");
+        Element qualifyingProperties = qualifyingProperties(document, signatureId, signedPropertiesId, signedProperties);
+        XMLObject object = factory.newXMLObject(List.of(new DOMStructure(qualifyingProperties)), null, null, null);
+
+        XMLSignature signature = factory.newXMLSignature(signedInfo, keyInfo, List.of(object),
+                signatureId, signatureId + "-sigvalue");
+        DOMSignContext context = new DOMSignContext(privateKey, signatureParent);
+        context.setDefaultNamespacePrefix("ds");
+        context.setIdAttributeNS(signedProperties, null, "Id");
+        signature.sign(context);
+    }
+
+    private Element qualifyingProperties(Document document, String signatureId, String signedPropertiesId,
+                                         Element signedProperties) {
+        Element qualifying = document.createElementNS(XADES_NS, "xades:QualifyingProperties");
+        qualifying.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, "xmlns:xades", XADES_NS);
+        qualifying.setAttribute("Target", "#" + signatureId);
+        qualifying.appendChild(signedProperties);
+        signedProperties.setAttribute("Id", signedPropertiesId);
+
+        Element signatureProperties = append(document, signedProperties, XADES_NS, "xades:SignedSignatureProperties");
+        append(document, signatureProperties, XADES_NS, "xades:SigningTime").setTextContent(
+                DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(OffsetDateTime.now(zone).truncatedTo(ChronoUnit.SECONDS)));
+
+        Element cert = append(document, append(document, signatureProperties, XADES_NS, "xades:SigningCertificate"),
+                XADES_NS, "xades:Cert");
+        Element certDigest = append(document, cert, XADES_NS, "xades:CertDigest");
+        append(document, certDigest, XMLSignature.XMLNS, "ds:DigestMethod").setAttribute("Algorithm", DigestMethod.SHA256);
+        append(document, certDigest, XMLSignature.XMLNS, "ds:DigestValue").setTextContent(certificateDigest);
+        Element issuerSerial = append(document, cert, XADES_NS, "xades:IssuerSerial");
+        append(document, issuerSerial, XMLSignature.XMLNS, "ds:X509IssuerName")
+                .setTextContent(certificate.getIssuerX500Principal().getName(X500Principal.RFC2253));
+        append(document, issuerSerial, XMLSignature.XMLNS, "ds:X509SerialNumber")
+                .setTextContent(certificate.getSerialNumber().toString());
+
+        Element policyId = append(document,
+                append(document, signatureProperties, XADES_NS, "xades:SignaturePolicyIdentifier"),
+                XADES_NS, "xades:SignaturePolicyId");
+        append(document, append(document, policyId, XADES_NS, "xades:SigPolicyId"), XADES_NS, "xades:Identifier")
+                .setTextContent(properties.getPolicyId());
+        Element policyHash = append(document, policyId, XADES_NS, "xades:SigPolicyHash");
+        append(document, policyHash, XMLSignature.XMLNS, "ds:DigestMethod").setAttribute("Algorithm", DigestMethod.SHA256);
+        append(document, policyHash, XMLSignature.XMLNS, "ds:DigestValue").setTextContent(properties.getPolicyDigest());
+
+        Element roles = append(document, append(document, signatureProperties, XADES_NS, "xades:SignerRole"),
+                XADES_NS, "xades:ClaimedRoles");
+        append(document, roles, XADES_NS, "xades:ClaimedRole").setTextContent("supplier");
+        return qualifying;
+    }
+
+    private static Element append(Document document, Element parent, String namespace, String qualifiedName) {
+        Element child = document.createElementNS(namespace, qualifiedName);
+        parent.appendChild(child);
+        return child;
+    }
+
+    private static boolean isKeyEntry(KeyStore keyStore, String alias) {
+        try {
+            return keyStore.isKeyEntry(alias);
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+}
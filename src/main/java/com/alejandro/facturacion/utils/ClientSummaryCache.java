@@ -0,0 +1,208 @@
+package com.alejandro.facturacion.utils;
+
+/**
+ * Caché acotada de resúmenes de cuenta de clientes, guardados en arrays de primitivos (unos 130
+ * bytes por cliente, sin objetos por entrada) e indexados por ID de cliente con un
+ * {@link LongIntHashMap}.
+ *
+ * <p>Cuando está llena se desaloja con el algoritmo del reloj: cada lectura marca su entrada y la
+ * aguja recorre las entradas desmarcándolas hasta encontrar una sin marca. Como en
+ * {@code EntityCache}, cada entrada guarda su hora de carga y un contador de invalidaciones permite
+ * descartar las lecturas que se solapan con una.
+ */
+public final class ClientSummaryCache {
+
+    private final int capacity;
+    private final LongIntHashMap slots;
+    private final long[] clientIds;
+    private final long[] invoiceCounts;
+    private final long[] lifetimeTotals;
+    private final long[] firstInvoiceAt;
+    private final long[] lastInvoiceIds;
+    private final long[] lastInvoiceAt;
+    private final int[] periodMonths;
+    private final long[] monthCounts;
+    private final long[] monthTotals;
+    private final int[] periodYears;
+    private final long[] yearCounts;
+    private final long[] yearTotals;
+    private final long[] loadedAt;
+    private final boolean[] referenced;
+
+    /** Posiciones libres (por invalidaciones), en pila. */
+    private final int[] free;
+    private int freeCount;
+    /** Posiciones usadas alguna vez: las siguientes aún no se han ocupado. */
+    private int used;
+    private int hand;
+    private long version;
+    private long evictions;
+
+    public ClientSummaryCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("La capacidad debe ser positiva");
+        }
+        this.capacity = capacity;
+        this.slots = new LongIntHashMap(capacity, -1);
+        this.clientIds = new long[capacity];
+        this.invoiceCounts = new long[capacity];
+        this.lifetimeTotals = new long[capacity];
+        this.firstInvoiceAt = new long[capacity];
+        this.lastInvoiceIds = new long[capacity];
+        this.lastInvoiceAt = new long[capacity];
+        this.periodMonths = new int[capacity];
+        this.monthCounts = new long[capacity];
+        this.monthTotals = new long[capacity];
+        this.periodYears = new int[capacity];
+        this.yearCounts = new long[capacity];
+        this.yearTotals = new long[capacity];
+        this.loadedAt = new long[capacity];
+        this.referenced = new boolean[capacity];
+        this.free = new int[capacity];
+    }
+
+    /**
+     * Devuelve el resumen del cliente si está y se cargó después de {@code loadedAfter} (en
+     * {@link System#nanoTime()}); si es anterior lo descarta.
+     */
+    public synchronized Totals get(long clientId, long loadedAfter) {
+        int slot = slots.get(clientId);
+        if (slot < 0) {
+            return null;
+        }
+        if (loadedAt[slot] - loadedAfter < 0) {
+            release(clientId, slot);
+            return null;
+        }
+        referenced[slot] = true;
+        return new Totals(clientIds[slot], invoiceCounts[slot], lifetimeTotals[slot], firstInvoiceAt[slot],
+                lastInvoiceIds[slot], lastInvoiceAt[slot], periodMonths[slot], monthCounts[slot], monthTotals[slot],
+                periodYears[slot], yearCounts[slot], yearTotals[slot]);
+    }
+
+    /** Número de invalidaciones hasta ahora; se lee antes de cargar un resumen de la base de datos. */
+    public synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Guarda un resumen leído de la base de datos, salvo que haya habido alguna invalidación desde
+     * que se leyó {@code expectedVersion}.
+     */
+    public synchronized void putIfUnchanged(Totals totals, long expectedVersion, long loadedAtNanos) {
+        if (version != expectedVersion) {
+            return;
+        }
+        int slot = slots.get(totals.clientId);
+        if (slot < 0) {
+            slot = allocate();
+            slots.put(totals.clientId, slot);
+        }
+        clientIds[slot] = totals.clientId;
+        invoiceCounts[slot] = totals.invoiceCount;
+        lifetimeTotals[slot] = totals.lifetimeTotal;
+        firstInvoiceAt[slot] = totals.firstInvoiceAt;
+        lastInvoiceIds[slot] = totals.lastInvoiceId;
+        lastInvoiceAt[slot] = totals.lastInvoiceAt;
+        periodMonths[slot] = totals.periodMonth;
+        monthCounts[slot] = totals.monthCount;
+        monthTotals[slot] = totals.monthTotal;
+        periodYears[slot] = totals.periodYear;
+        yearCounts[slot] = totals.yearCount;
+        yearTotals[slot] = totals.yearTotal;
+        loadedAt[slot] = loadedAtNanos;
+        referenced[slot] = false;
+    }
+
+    /** Invalida el resumen de un cliente. */
+    public synchronized void remove(long clientId) {
+        version++;
+        int slot = slots.get(clientId);
+        if (slot >= 0) {
+            release(clientId, slot);
+        }
+    }
+
+    /** Invalida todos los resúmenes. */
+    public synchronized void clear() {
+        version++;
+        slots.clear();
+        freeCount = 0;
+        used = 0;
+        hand = 0;
+    }
+
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    private int allocate() {
+        if (freeCount > 0) {
+            return free[--freeCount];
+        }
+        if (used < capacity) {
+            return used++;
+        }
+        // Llena y sin huecos: todas las posiciones están ocupadas, así que la aguja siempre encuentra una
+        while (referenced[hand]) {
+            referenced[hand] = false;
+            hand = (hand + 1) % capacity;
+        }
+        int victim = hand;
+        hand = (hand + 1) % capacity;
+        slots.remove(clientIds[victim]);
+        evictions++;
+        return victim;
+    }
+
+    private void release(long clientId, int slot) {
+        slots.remove(clientId);
+        referenced[slot] = false;
+        free[freeCount++] = slot;
+    }
+
+    /**
+     * Valores de un resumen tal como se guardan: importes en unidades mínimas de la moneda, fechas
+     * en microsegundos (LocalDateTime codificada como UTC) y {@link #NONE} en las fechas y el ID de
+     * la última factura si el cliente no tiene facturas. Los del mes y el año son los del periodo
+     * indicado (aaaamm y aaaa), que puede no ser el actual.
+     */
+    public static final class Totals {
+
+        public static final long NONE = Long.MIN_VALUE;
+
+        public final long clientId;
+        public final long invoiceCount;
+        public final long lifetimeTotal;
+        public final long firstInvoiceAt;
+        public final long lastInvoiceId;
+        public final long lastInvoiceAt;
+        public final int periodMonth;
+        public final long monthCount;
+        public final long monthTotal;
+        public final int periodYear;
+        public final long yearCount;
+        public final long yearTotal;
+
+        public Totals(long clientId, long invoiceCount, long lifetimeTotal, long firstInvoiceAt, long lastInvoiceId,
+                      long lastInvoiceAt, int periodMonth, long monthCount, long monthTotal, int periodYear,
+                      long yearCount, long yearTotal) {
+            this.clientId = clientId;
+            this.invoiceCount = invoiceCount;
+            this.lifetimeTotal = lifetimeTotal;
+            this.firstInvoiceAt = firstInvoiceAt;
+            this.lastInvoiceId = lastInvoiceId;
+            this.lastInvoiceAt = lastInvoiceAt;
+            this.periodMonth = periodMonth;
+            this.monthCount = monthCount;
+            this.monthTotal = monthTotal;
+            this.periodYear = periodYear;
+            this.yearCount = yearCount;
+            this.yearTotal = yearTotal;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.alejandro.facturacion.utils;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reglas de precios compiladas en estructuras indexadas e inmutables.
+ *
+ * <p>Se construye con {@link Builder} y se publica completa; los lectores nunca ven un
+ * estado intermedio y no necesitan sincronización. Cada consulta es un acceso a un
+ * {@code HashMap} más, para los descuentos por volumen, una búsqueda binaria sobre los
+ * tramos del producto.
+ */
+public final class CompiledPricingRules {
+
+    /** Reglas vacías: precio de lista y sin descuentos. */
+    public static final CompiledPricingRules EMPTY = new Builder().build(Instant.MAX, 0);
+
+    private final Map<Long, Tiers> tiersByProduct;
+    private final Map<String, Integer> discountByCategory;
+    private final Map<Long, Map<Long, Long>> pricesByClient;
+    private final Instant nextChangeAt;
+    private final int ruleCount;
+
+    private CompiledPricingRules(Map<Long, Tiers> tiersByProduct, Map<String, Integer> discountByCategory,
+                                 Map<Long, Map<Long, Long>> pricesByClient, Instant nextChangeAt, int ruleCount) {
+        this.tiersByProduct = tiersByProduct;
+        this.discountByCategory = discountByCategory;
+        this.pricesByClient = pricesByClient;
+        this.nextChangeAt = nextChangeAt;
+        this.ruleCount = ruleCount;
+    }
+
+    /**
+     * Precio unitario para un cliente: el negociado si existe, si no el precio de lista.
+     */
+    public long unitPrice(Long clientId, Long productId, long listPriceMinor) {
+        Map<Long, Long> clientPrices = pricesByClient.get(clientId);
+        if (clientPrices == null) {
+            return listPriceMinor;
+        }
+        Long negotiated = clientPrices.get(productId);
+        return negotiated != null ? negotiated : listPriceMinor;
+    }
+
+    /**
+     * Mejor descuento aplicable (en puntos básicos) entre el tramo de volumen del producto
+     * y la promoción de su categoría. Los descuentos no se acumulan.
+     */
+    public int discountBasisPoints(Long productId, String category, int quantity) {
+        int best = 0;
+        Tiers tiers = tiersByProduct.get(productId);
+        if (tiers != null) {
+            best = tiers.discountFor(quantity);
+        }
+        if (category != null) {
+            Integer categoryDiscount = discountByCategory.get(category);
+            if (categoryDiscount != null && categoryDiscount > best) {
+                best = categoryDiscount;
+            }
+        }
+        return best;
+    }
+
+    /** Momento en que empieza o termina la vigencia de alguna regla y hay que recompilar. */
+    public Instant getNextChangeAt() {
+        return nextChangeAt;
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * Tramos de volumen de un producto, ordenados por cantidad mínima.
+     */
+    private static final class Tiers {
+        private final int[] minQuantities;
+        private final int[] discounts;
+
+        private Tiers(int[] minQuantities, int[] discounts) {
+            this.minQuantities = minQuantities;
+            this.discounts = discounts;
+        }
+
+        int discountFor(int quantity) {
+            int index = Arrays.binarySearch(minQuantities, quantity);
+            if (index < 0) {
+                index = -index - 2; // último tramo con mínimo <= cantidad
+            }
+            return index >= 0 ? discounts[index] : 0;
+        }
+    }
+
+    /**
+     * Acumula reglas y genera la versión compilada.
+     */
+    public static final class Builder {
+
+        private final Map<Long, List<int[]>> tiers = new HashMap<>();
+        private final Map<String, Integer> categories = new HashMap<>();
+        private final Map<Long, Map<Long, Long>> clientPrices = new HashMap<>();
+
+        public Builder volumeTier(long productId, int minQuantity, int discountBasisPoints) {
+            tiers.computeIfAbsent(productId, id -> new ArrayList<>()).add(new int[]{minQuantity, discountBasisPoints});
+            return this;
+        }
+
+        public Builder categoryPromotion(String category, int discountBasisPoints) {
+            categories.merge(category, discountBasisPoints, Math::max);
+            return this;
+        }
+
+        public Builder clientPrice(long clientId, long productId, long priceMinor) {
+            clientPrices.computeIfAbsent(clientId, id -> new HashMap<>()).merge(productId, priceMinor, Math::min);
+            return this;
+        }
+
+        public CompiledPricingRules build(Instant nextChangeAt, int ruleCount) {
+            Map<Long, Tiers> compiledTiers = new HashMap<>();
+            tiers.forEach((productId, entries) -> {
+                entries.sort((a, b) -> Integer.compare(a[0], b[0]));
+                // Un mínimo repetido se queda con el mayor descuento; cada tramo hereda el mejor anterior
+                List<int[]> merged = new ArrayList<>();
+                int best = 0;
+                for (int[] entry : entries) {
+                    best = Math.max(best, entry[1]);
+                    if (!merged.isEmpty() && merged.get(merged.size() - 1)[0] == entry[0]) {
+                        merged.get(merged.size() - 1)[1] = best;
+                    } else {
+                        merged.add(new int[]{entry[0], best});
+                    }
+                }
+                int[] minQuantities = new int[merged.size()];
+                int[] discounts = new int[merged.size()];
+                for (int i = 0; i < merged.size(); i++) {
+                    minQuantities[i] = merged.get(i)[0];
+                    discounts[i] = merged.get(i)[1];
+                }
+                compiledTiers.put(productId, new Tiers(minQuantities, discounts));
+            });
+
+            Map<Long, Map<Long, Long>> compiledPrices = new HashMap<>();
+            clientPrices.forEach((clientId, prices) ->
+                    compiledPrices.put(clientId, Collections.unmodifiableMap(new HashMap<>(prices))));
+
+            // HashMap admite get(null), a diferencia de Map.copyOf
+            return new CompiledPricingRules(Collections.unmodifiableMap(compiledTiers),
+                    Collections.unmodifiableMap(new HashMap<>(categories)),
+                    Collections.unmodifiableMap(compiledPrices), nextChangeAt, ruleCount);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.alejandro.facturacion.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lector de CSV (RFC 4180) en streaming: campos entre comillas, comillas dobladas ({@code ""}),
+ * separadores y saltos de línea dentro de campos entrecomillados, y finales de línea LF o CRLF.
+ */
+public final class CsvReader {
+
+    private final Reader reader;
+    private final char separator;
+    private long line = 1;
+    private long recordLine;
+    private int pushback = -2;
+
+    /**
+     * @param reader lector de entrada; conviene que tenga buffer
+     * @param separator separador de campos (normalmente {@code ,} o {@code ;})
+     */
+    public CsvReader(Reader reader, char separator) {
+        this.reader = reader;
+        this.separator = separator;
+    }
+
+    /**
+     * Lee el siguiente registro.
+     *
+     * @return los campos del registro, o {@code null} al final de la entrada
+     * @throws IOException si falla la lectura o hay comillas sin cerrar al final
+     */
+    public List<String> next() throws IOException {
+        int c = read();
+        // Se ignoran líneas vacías entre registros
+        while (c == '\r' || c == '\n') {
+            c = read();
+        }
+        if (c == -1) {
+            return null;
+        }
+        recordLine = line;
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean afterQuote = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Comillas sin cerrar en el registro de la línea " + recordLine);
+                }
+                if (c == '"') {
+                    int following = read();
+                    if (following == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        afterQuote = true;
+                        c = following;
+                        continue;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == separator) {
+                fields.add(field.toString());
+                field.setLength(0);
+                afterQuote = false;
+            } else if (c == '\n' || c == '\r' || c == -1) {
+                if (c == '\r') {
+                    int following = read();
+                    if (following != '\n') {
+                        unread(following);
+                    }
+                }
+                fields.add(field.toString());
+                return fields;
+            } else if (c == '"' && field.length() == 0 && !afterQuote) {
+                quoted = true;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    /** Línea física (desde 1) en la que empieza el último registro leído. */
+    public long getRecordLine() {
+        return recordLine;
+    }
+
+    private int read() throws IOException {
+        int c;
+        if (pushback != -2) {
+            c = pushback;
+            pushback = -2;
+        } else {
+            c = reader.read();
+        }
+        if (c == '\n') {
+            line++;
+        }
+        return c;
+    }
+
+    private void unread(int c) {
+        if (c == '\n') {
+            line--;
+        }
+        pushback = c;
+    }
+}
@@ -0,0 +1,68 @@
+package com.alejandro.facturacion.utils;
+
+import com.alejandro.facturacion.entity.TaxScheme;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Código Único de Factura Electrónica (CUFE) según el anexo técnico de la DIAN.
+ *
+ * <p>Es el SHA-384, en hexadecimal, de la concatenación sin separadores de: número, fecha,
+ * hora, valor antes de impuestos, código y valor de IVA (01), INC (04) e ICA (03), total,
+ * NIT del emisor, identificación del adquiriente, clave técnica y ambiente. Los tres tributos
+ * aparecen siempre, con 0.00 si la factura no tiene impuestos de ese tipo.
+ */
+public final class Cufe {
+
+    public static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    public static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ssXXX");
+
+    private Cufe() {
+    }
+
+    /**
+     * @param taxes impuestos de la factura por tributo; los que falten cuentan como 0.00
+     */
+    public static String compute(String number, OffsetDateTime issuedAt, BigDecimal subtotal,
+                                 Map<TaxScheme, BigDecimal> taxes, BigDecimal total, String issuerNit, String buyerId, String technicalKey,
+                                 String environment) {
+        StringBuilder source = new StringBuilder(256)
+                .append(number)
+                .append(DATE.format(issuedAt))
+                .append(TIME.format(issuedAt))
+                .append(amount(subtotal))
+                .append(TaxScheme.IVA.getCode()).append(amount(taxes.get(TaxScheme.IVA)))
+                .append(TaxScheme.INC.getCode()).append(amount(taxes.get(TaxScheme.INC)))
+                .append(TaxScheme.ICA.getCode()).append(amount(taxes.get(TaxScheme.ICA)))
+                .append(amount(total))
+                .append(issuerNit)
+                .append(buyerId)
+                .append(technicalKey)
+                .append(environment);
+        return sha384Hex(source.toString());
+    }
+
+    /**
+     * Importe con dos decimales y punto, como lo exige el CUFE y el XML UBL.
+     */
+    public static String amount(BigDecimal value) {
+        return value == null ? "0.00" : value.setScale(2, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    public static String sha384Hex(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-384");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-384 no disponible", e);
+        }
+    }
+}
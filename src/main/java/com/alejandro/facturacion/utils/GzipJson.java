@@ -0,0 +1,51 @@
+package com.alejandro.facturacion.utils;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * JSON comprimido con gzip, para los lotes entre los nodos de borde y la central.
+ *
+ * <p>Los decimales se leen como {@link java.math.BigDecimal} para que los importes y las filas
+ * genéricas (sin tipo en el destino) no pasen por {@code double}.
+ */
+public final class GzipJson {
+
+    public static final String ENCODING = "gzip";
+
+    private GzipJson() {
+    }
+
+    /**
+     * Copia del mapper de la aplicación que lee los decimales como {@link java.math.BigDecimal}.
+     */
+    public static ObjectMapper mapper(ObjectMapper objectMapper) {
+        return objectMapper.copy().enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+    }
+
+    public static byte[] write(ObjectMapper mapper, Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes, 64 * 1024)) {
+            mapper.writeValue(out, value);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Lee el cuerpo, descomprimiéndolo si viene con {@code Content-Encoding: gzip}.
+     */
+    public static <T> T read(ObjectMapper mapper, InputStream in, String contentEncoding, Class<T> type)
+            throws IOException {
+        boolean gzipped = contentEncoding != null && contentEncoding.trim().equalsIgnoreCase(ENCODING);
+        try (InputStream body = gzipped ? new GZIPInputStream(in, 64 * 1024) : in) {
+            return mapper.readValue(body, type);
+        }
+    }
+}
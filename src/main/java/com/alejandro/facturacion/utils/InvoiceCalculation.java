@@ -0,0 +1,113 @@
+package com.alejandro.facturacion.utils;
+
+import java.math.RoundingMode;
+
+/**
+ * Acumulador de los importes de una factura en unidades mínimas ({@code long}).
+ *
+ * <p>Por cada línea se calcula, en este orden:
+ * <ol>
+ *   <li>bruto = precio unitario × cantidad</li>
+ *   <li>descuento = bruto × tasa de descuento (redondeado)</li>
+ *   <li>neto (subtotal de la línea) = bruto − descuento</li>
+ *   <li>impuesto = neto × tasa de impuesto (redondeado por línea)</li>
+ * </ol>
+ * Los totales de la factura son la suma exacta de los importes redondeados de cada línea,
+ * de modo que siempre cuadran con el detalle impreso.
+ *
+ * <p>No crea objetos por línea: los importes de la última línea añadida quedan en los
+ * getters {@code line*} hasta la siguiente llamada a {@link #addLine}. No es thread-safe;
+ * se usa una instancia por factura.
+ */
+public final class InvoiceCalculation {
+
+    private final RoundingMode roundingMode;
+
+    private long lineGross;
+    private long lineDiscount;
+    private long lineNet;
+    private long lineTax;
+
+    private long grossTotal;
+    private long discountTotal;
+    private long subtotal;
+    private long taxTotal;
+    private int lineCount;
+
+    public InvoiceCalculation(RoundingMode roundingMode) {
+        this.roundingMode = roundingMode;
+    }
+
+    /**
+     * Añade una línea a la factura.
+     *
+     * @param unitPriceMinor precio unitario en unidades mínimas
+     * @param quantity cantidad (mayor que cero)
+     * @param discountBasisPoints descuento en puntos básicos (0-10000)
+     * @param taxBasisPoints impuesto en puntos básicos (0 o mayor)
+     */
+    public void addLine(long unitPriceMinor, int quantity, int discountBasisPoints, int taxBasisPoints) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("La cantidad debe ser mayor que cero");
+        }
+        if (discountBasisPoints < 0 || discountBasisPoints > MoneyMath.BASIS_POINTS) {
+            throw new IllegalArgumentException("El descuento debe estar entre 0% y 100%");
+        }
+        if (taxBasisPoints < 0) {
+            throw new IllegalArgumentException("El impuesto no puede ser negativo");
+        }
+
+        lineGross = MoneyMath.multiply(unitPriceMinor, quantity);
+        lineDiscount = MoneyMath.applyRate(lineGross, discountBasisPoints, roundingMode);
+        lineNet = lineGross - lineDiscount;
+        lineTax = MoneyMath.applyRate(lineNet, taxBasisPoints, roundingMode);
+
+        grossTotal = Math.addExact(grossTotal, lineGross);
+        discountTotal = Math.addExact(discountTotal, lineDiscount);
+        subtotal = Math.addExact(subtotal, lineNet);
+        taxTotal = Math.addExact(taxTotal, lineTax);
+        lineCount++;
+    }
+
+    public long getLineGross() {
+        return lineGross;
+    }
+
+    public long getLineDiscount() {
+        return lineDiscount;
+    }
+
+    public long getLineNet() {
+        return lineNet;
+    }
+
+    public long getLineTax() {
+        return lineTax;
+    }
+
+    public long getGrossTotal() {
+        return grossTotal;
+    }
+
+    public long getDiscountTotal() {
+        return discountTotal;
+    }
+
+    /** Suma de los netos de las líneas (después de descuentos, antes de impuestos). */
+    public long getSubtotal() {
+        return subtotal;
+    }
+
+    public long getTaxTotal() {
+        return taxTotal;
+    }
+
+    /** Total a pagar: subtotal + impuestos. */
+    public long getTotal() {
+        return Math.addExact(subtotal, taxTotal);
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+}
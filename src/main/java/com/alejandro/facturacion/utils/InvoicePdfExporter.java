@@ -2,6 +2,7 @@ package com.alejandro.facturacion.utils;
 
 import com.alejandro.facturacion.entity.Invoice;
 import com.alejandro.facturacion.entity.InvoiceItem;
+import com.alejandro.facturacion.jfr.PdfRenderEvent;
 import com.itextpdf.kernel.pdf.PdfDocument;
 import com.itextpdf.kernel.pdf.PdfWriter;
 import com.itextpdf.layout.Document;
@@ -18,6 +19,7 @@ public class InvoicePdfExporter {
 
     public static ByteArrayInputStream exportInvoiceToPdf(Invoice invoice) {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PdfRenderEvent renderEvent = PdfRenderEvent.start("itext", "invoice");
 
         PdfWriter writer = new PdfWriter(out);
         PdfDocument pdf = new PdfDocument(writer);
@@ -52,24 +54,39 @@ public class InvoicePdfExporter {
             for (InvoiceItem item : invoice.getItems()) {
                 table.addCell(item.getProduct() != null ? item.getProduct().getName() : "");
                 table.addCell(String.valueOf(item.getQuantity()));
-                table.addCell("$" + (item.getProduct() != null ? item.getProduct().getPrice() : item.getPrice()));
+                // El precio facturado en la línea; el actual del producto solo si la línea no lo guarda
+                BigDecimal price = item.getPrice() != null ? item.getPrice()
+                        : item.getProduct() != null ? item.getProduct().getPrice() : null;
+                table.addCell("$" + price);
                 BigDecimal subtotal = item.getSubtotal() != null ? item.getSubtotal() : 
-                    (item.getProduct() != null && item.getProduct().getPrice() != null ? 
-                     item.getProduct().getPrice().multiply(BigDecimal.valueOf(item.getQuantity())) : BigDecimal.ZERO);
+                    (price != null ? price.multiply(BigDecimal.valueOf(item.getQuantity())) : BigDecimal.ZERO);
                 table.addCell("$" + subtotal);
             }
         }
 
         document.add(table);
 
-        // Total
+        // Desglose de totales
         document.add(new Paragraph(" "));
+        if (invoice.getSubtotal() != null) {
+            document.add(new Paragraph("Subtotal: $" + invoice.getSubtotal()));
+        }
+        if (invoice.getDiscountTotal() != null && invoice.getDiscountTotal().signum() != 0) {
+            document.add(new Paragraph("Descuentos: -$" + invoice.getDiscountTotal()));
+        }
+        if (invoice.getTaxTotal() != null) {
+            document.add(new Paragraph("IVA: $" + invoice.getTaxTotal()));
+        }
+
+        // Total
         if (invoice.getTotal() != null) {
             document.add(new Paragraph("Total: $" + invoice.getTotal()).setBold());
         }
 
+        int pages = pdf.getNumberOfPages();
         document.close();
 
+        renderEvent.finish(pages, out.size());
         return new ByteArrayInputStream(out.toByteArray());
     }
 } 
\ No newline at end of file
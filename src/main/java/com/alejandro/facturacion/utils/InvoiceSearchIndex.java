@@ -0,0 +1,370 @@
+package com.alejandro.facturacion.utils;
+
+import com.alejandro.facturacion.dto.InvoiceSearchSort;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice en memoria de las facturas para la búsqueda con filtros combinables.
+ *
+ * <p>Cada factura es un documento, identificado por su posición de alta, con sus datos guardados
+ * en arrays de primitivos (fecha, total, cliente, serie y número: unos 50 bytes por factura). Dos
+ * índices invertidos, por cliente y por producto, dan la lista de documentos de cada uno; los
+ * filtros de cliente y producto se resuelven uniendo e intersectando esas listas y el resto
+ * (fechas, importes, número) se comprueba sobre los candidatos. Sin filtros de cliente ni de
+ * producto se recorren todos los documentos, que en arrays de primitivos son unos milisegundos
+ * por millón.
+ *
+ * <p>La paginación es por cursor (clave de orden e ID de la última factura devuelta): cada página
+ * cuesta lo mismo, sin importar lo lejos que esté. Un único hilo escribe; las búsquedas pueden ser
+ * concurrentes.
+ *
+ * <p>Quitar facturas solo las marca como borradas: las búsquedas las saltan, pero sus datos siguen
+ * ocupando sitio hasta que se reconstruye el índice.
+ */
+public final class InvoiceSearchIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int size;
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] clientIds = new long[INITIAL_CAPACITY];
+    /** Fecha de creación en segundos (LocalDateTime codificada como UTC). */
+    private long[] createdAt = new long[INITIAL_CAPACITY];
+    /** Total en unidades mínimas de la moneda. */
+    private long[] totals = new long[INITIAL_CAPACITY];
+    private long[] numbers = new long[INITIAL_CAPACITY];
+    /** Código de la serie en {@link #seriesNames}, o -1 si la factura no tiene número. */
+    private int[] series = new int[INITIAL_CAPACITY];
+
+    private final List<String> seriesNames = new ArrayList<>();
+    private final Map<String, Integer> seriesCodes = new HashMap<>();
+    private final Map<Long, Postings> byClient = new HashMap<>();
+    private final Map<Long, Postings> byProduct = new HashMap<>();
+    /** Documentos quitados del índice. */
+    private final BitSet removed = new BitSet();
+    private int removedCount;
+
+    /**
+     * Añade una factura. Quien llama garantiza que no estaba ya en el índice.
+     */
+    public void add(long id, long clientId, long createdAtSeconds, long totalMinor,
+                    String seriesPrefix, Long number, long[] productIds) {
+        lock.writeLock().lock();
+        try {
+            if (size == ids.length) {
+                grow();
+            }
+            int doc = size;
+            ids[doc] = id;
+            clientIds[doc] = clientId;
+            createdAt[doc] = createdAtSeconds;
+            totals[doc] = totalMinor;
+            numbers[doc] = number != null ? number : 0;
+            series[doc] = number != null ? seriesCode(seriesPrefix != null ? seriesPrefix : "") : -1;
+            byClient.computeIfAbsent(clientId, key -> new Postings()).add(doc);
+            for (long productId : productIds) {
+                Postings postings = byProduct.computeIfAbsent(productId, key -> new Postings());
+                // Una factura con varias líneas del mismo producto aparece una sola vez
+                if (postings.last() != doc) {
+                    postings.add(doc);
+                }
+            }
+            size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Quita facturas del índice.
+     *
+     * @return facturas que estaban en el índice y se han quitado
+     */
+    public int remove(long[] invoiceIds) {
+        long[] sorted = invoiceIds.clone();
+        Arrays.sort(sorted);
+        // Como solo escribe un hilo, los documentos encontrados con el bloqueo de lectura siguen
+        // siendo los mismos al marcarlos; las búsquedas solo esperan al marcado
+        BitSet docs = new BitSet();
+        lock.readLock().lock();
+        try {
+            for (int doc = 0; doc < size; doc++) {
+                if (!removed.get(doc) && Arrays.binarySearch(sorted, ids[doc]) >= 0) {
+                    docs.set(doc);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (docs.isEmpty()) {
+            return 0;
+        }
+        lock.writeLock().lock();
+        try {
+            removed.or(docs);
+            removedCount += docs.cardinality();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return docs.cardinality();
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size - removedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Busca una página de facturas.
+     */
+    public Page search(Query query) {
+        lock.readLock().lock();
+        try {
+            BitSet candidates = null;
+            if (query.clientIds != null) {
+                candidates = union(byClient, query.clientIds);
+            }
+            if (query.productIds != null) {
+                BitSet withProducts = union(byProduct, query.productIds);
+                if (candidates == null) {
+                    candidates = withProducts;
+                } else {
+                    candidates.and(withProducts);
+                }
+            }
+            int seriesCode = -1;
+            if (query.seriesPrefix != null) {
+                Integer code = seriesCodes.get(query.seriesPrefix);
+                if (code == null) {
+                    return new Page(List.of(), 0, false);
+                }
+                seriesCode = code;
+            }
+
+            boolean byTotal = query.sort.byTotal();
+            boolean descending = query.sort.descending();
+            // La peor de las mejores limit + 1 queda en la cabeza para descartarla al llegar una mejor
+            PriorityQueue<Integer> best = new PriorityQueue<>(query.limit + 1,
+                    (a, b) -> compare(b, a, byTotal, descending));
+            int matches = 0;
+            for (int doc = candidates != null ? candidates.nextSetBit(0) : 0;
+                 doc >= 0 && doc < size;
+                 doc = candidates != null ? candidates.nextSetBit(doc + 1) : doc + 1) {
+                if (removed.get(doc)
+                        || createdAt[doc] < query.fromSeconds || createdAt[doc] >= query.toSeconds
+                        || totals[doc] < query.minTotal || totals[doc] > query.maxTotal
+                        || (query.seriesPrefix != null && series[doc] != seriesCode)
+                        || (query.number != null && (series[doc] < 0 || numbers[doc] != query.number))) {
+                    continue;
+                }
+                matches++;
+                if (query.hasCursor && !isAfterCursor(doc, query, byTotal, descending)) {
+                    continue;
+                }
+                if (best.size() <= query.limit) {
+                    best.add(doc);
+                } else if (compare(doc, best.peek(), byTotal, descending) < 0) {
+                    best.poll();
+                    best.add(doc);
+                }
+            }
+
+            boolean more = best.size() > query.limit;
+            if (more) {
+                best.poll();
+            }
+            Entry[] page = new Entry[best.size()];
+            for (int i = page.length - 1; i >= 0; i--) {
+                int doc = best.poll();
+                page[i] = new Entry(ids[doc], clientIds[doc], createdAt[doc], totals[doc],
+                        series[doc] >= 0 ? seriesNames.get(series[doc]) : null,
+                        series[doc] >= 0 ? numbers[doc] : null);
+            }
+            return new Page(Arrays.asList(page), matches, more);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int compare(int a, int b, boolean byTotal, boolean descending) {
+        long[] keys = byTotal ? totals : createdAt;
+        int result = keys[a] != keys[b] ? Long.compare(keys[a], keys[b]) : Long.compare(ids[a], ids[b]);
+        return descending ? -result : result;
+    }
+
+    private boolean isAfterCursor(int doc, Query query, boolean byTotal, boolean descending) {
+        long key = byTotal ? totals[doc] : createdAt[doc];
+        int result = key != query.cursorKey ? Long.compare(key, query.cursorKey) : Long.compare(ids[doc], query.cursorId);
+        return descending ? result < 0 : result > 0;
+    }
+
+    private static BitSet union(Map<Long, Postings> index, long[] keys) {
+        BitSet docs = new BitSet();
+        for (long key : keys) {
+            Postings postings = index.get(key);
+            if (postings != null) {
+                postings.addTo(docs);
+            }
+        }
+        return docs;
+    }
+
+    private int seriesCode(String prefix) {
+        return seriesCodes.computeIfAbsent(prefix, key -> {
+            seriesNames.add(key);
+            return seriesNames.size() - 1;
+        });
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        clientIds = Arrays.copyOf(clientIds, capacity);
+        createdAt = Arrays.copyOf(createdAt, capacity);
+        totals = Arrays.copyOf(totals, capacity);
+        numbers = Arrays.copyOf(numbers, capacity);
+        series = Arrays.copyOf(series, capacity);
+    }
+
+    /**
+     * Filtros de una búsqueda, ya traducidos a los valores del índice. Los rangos sin límite
+     * quedan en {@code Long.MIN_VALUE}/{@code Long.MAX_VALUE}.
+     */
+    public static final class Query {
+
+        /** Clientes admitidos, o null para cualquiera. */
+        long[] clientIds;
+        /** Productos de los que la factura debe tener alguno, o null para cualquiera. */
+        long[] productIds;
+        long fromSeconds = Long.MIN_VALUE;
+        /** Límite exclusivo. */
+        long toSeconds = Long.MAX_VALUE;
+        long minTotal = Long.MIN_VALUE;
+        long maxTotal = Long.MAX_VALUE;
+        String seriesPrefix;
+        Long number;
+        InvoiceSearchSort sort = InvoiceSearchSort.CREATED_AT_DESC;
+        int limit = 50;
+        boolean hasCursor;
+        long cursorKey;
+        long cursorId;
+
+        public Query clientIds(long[] clientIds) {
+            this.clientIds = clientIds;
+            return this;
+        }
+
+        public Query productIds(long[] productIds) {
+            this.productIds = productIds;
+            return this;
+        }
+
+        public Query createdBetween(long fromSeconds, long toSecondsExclusive) {
+            this.fromSeconds = fromSeconds;
+            this.toSeconds = toSecondsExclusive;
+            return this;
+        }
+
+        public Query totalBetween(long minTotal, long maxTotal) {
+            this.minTotal = minTotal;
+            this.maxTotal = maxTotal;
+            return this;
+        }
+
+        public Query number(String seriesPrefix, Long number) {
+            this.seriesPrefix = seriesPrefix;
+            this.number = number;
+            return this;
+        }
+
+        public Query page(InvoiceSearchSort sort, int limit) {
+            this.sort = sort;
+            this.limit = limit;
+            return this;
+        }
+
+        /** Devuelve solo las facturas posteriores, en el orden pedido, a la clave e ID indicados. */
+        public Query after(long cursorKey, long cursorId) {
+            this.hasCursor = true;
+            this.cursorKey = cursorKey;
+            this.cursorId = cursorId;
+            return this;
+        }
+    }
+
+    /**
+     * Factura de una página de resultados, con los valores tal como están en el índice.
+     */
+    public static final class Entry {
+
+        public final long id;
+        public final long clientId;
+        public final long createdAtSeconds;
+        public final long totalMinor;
+        public final String seriesPrefix;
+        public final Long number;
+
+        Entry(long id, long clientId, long createdAtSeconds, long totalMinor, String seriesPrefix, Long number) {
+            this.id = id;
+            this.clientId = clientId;
+            this.createdAtSeconds = createdAtSeconds;
+            this.totalMinor = totalMinor;
+            this.seriesPrefix = seriesPrefix;
+            this.number = number;
+        }
+    }
+
+    /**
+     * Página de resultados: las facturas, cuántas cumplen los filtros en total y si hay más.
+     */
+    public static final class Page {
+
+        public final List<Entry> entries;
+        public final int matches;
+        public final boolean hasMore;
+
+        Page(List<Entry> entries, int matches, boolean hasMore) {
+            this.entries = entries;
+            this.matches = matches;
+            this.hasMore = hasMore;
+        }
+    }
+
+    /** Lista creciente de documentos (ordenada, porque los documentos se añaden en orden). */
+    private static final class Postings {
+
+        private int[] docs = new int[2];
+        private int size;
+
+        void add(int doc) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+
+        int last() {
+            return size > 0 ? docs[size - 1] : -1;
+        }
+
+        void addTo(BitSet set) {
+            for (int i = 0; i < size; i++) {
+                set.set(docs[i]);
+            }
+        }
+    }
+}
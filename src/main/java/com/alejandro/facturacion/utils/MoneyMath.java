@@ -0,0 +1,101 @@
+package com.alejandro.facturacion.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Aritmética monetaria en punto fijo sobre {@code long} (unidades mínimas de la moneda).
+ *
+ * <p>Un importe de 1.234,56 con escala 2 se representa como {@code 123456}. Las tasas
+ * (IVA, descuentos) se expresan en puntos básicos: 19% = {@code 1900}.
+ *
+ * <p>Todas las operaciones son exactas o redondean explícitamente con el {@link RoundingMode}
+ * indicado, y lanzan {@link ArithmeticException} ante desbordamiento. No crean objetos:
+ * {@code BigDecimal} solo aparece en las conversiones de frontera ({@link #toMinor}, {@link #toDecimal}).
+ */
+public final class MoneyMath {
+
+    /** Denominador de las tasas en puntos básicos (100% = 10 000). */
+    public static final int BASIS_POINTS = 10_000;
+
+    private MoneyMath() {
+    }
+
+    /**
+     * Convierte un importe decimal a unidades mínimas, redondeando a la escala de la moneda.
+     */
+    public static long toMinor(BigDecimal amount, int scale, RoundingMode roundingMode) {
+        if (amount == null) {
+            return 0L;
+        }
+        return amount.setScale(scale, roundingMode).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Convierte unidades mínimas a un importe decimal con la escala de la moneda.
+     */
+    public static BigDecimal toDecimal(long minor, int scale) {
+        return BigDecimal.valueOf(minor, scale);
+    }
+
+    /**
+     * Convierte un porcentaje decimal (19.00) a puntos básicos (1900).
+     */
+    public static int toBasisPoints(BigDecimal percent) {
+        if (percent == null) {
+            return 0;
+        }
+        return percent.movePointRight(2).setScale(0, RoundingMode.HALF_UP).intValueExact();
+    }
+
+    /**
+     * Convierte puntos básicos (1900) a un porcentaje decimal (19.00).
+     */
+    public static BigDecimal fromBasisPoints(int basisPoints) {
+        return BigDecimal.valueOf(basisPoints, 2);
+    }
+
+    /**
+     * Precio unitario por cantidad.
+     */
+    public static long multiply(long unitMinor, int quantity) {
+        return Math.multiplyExact(unitMinor, (long) quantity);
+    }
+
+    /**
+     * Aplica una tasa en puntos básicos a un importe: {@code amount * basisPoints / 10000}, redondeado.
+     */
+    public static long applyRate(long amountMinor, int basisPoints, RoundingMode roundingMode) {
+        if (basisPoints == 0 || amountMinor == 0) {
+            return 0L;
+        }
+        return divide(Math.multiplyExact(amountMinor, (long) basisPoints), BASIS_POINTS, roundingMode);
+    }
+
+    /**
+     * División entera con redondeo explícito, equivalente a
+     * {@code BigDecimal.valueOf(dividend).divide(BigDecimal.valueOf(divisor), 0, mode)}.
+     */
+    public static long divide(long dividend, long divisor, RoundingMode roundingMode) {
+        long quotient = dividend / divisor;
+        long remainder = dividend % divisor;
+        if (remainder == 0) {
+            return quotient;
+        }
+
+        int sign = Long.signum(dividend) * Long.signum(divisor);
+        long twiceRemainder = Math.abs(remainder) * 2;
+        long absDivisor = Math.abs(divisor);
+        boolean roundAway = switch (roundingMode) {
+            case UP -> true;
+            case DOWN -> false;
+            case CEILING -> sign > 0;
+            case FLOOR -> sign < 0;
+            case HALF_UP -> twiceRemainder >= absDivisor;
+            case HALF_DOWN -> twiceRemainder > absDivisor;
+            case HALF_EVEN -> twiceRemainder > absDivisor || (twiceRemainder == absDivisor && (quotient & 1) != 0);
+            case UNNECESSARY -> throw new ArithmeticException("Se requiere redondeo");
+        };
+        return roundAway ? quotient + sign : quotient;
+    }
+}
@@ -1,6 +1,7 @@
 package com.alejandro.facturacion.utils;
 
 import com.alejandro.facturacion.dto.MonthlySalesReportDTO;
+import com.alejandro.facturacion.jfr.PdfRenderEvent;
 import com.itextpdf.kernel.pdf.PdfDocument;
 import com.itextpdf.kernel.pdf.PdfWriter;
 import com.itextpdf.layout.Document;
@@ -15,6 +16,7 @@ public class PdfReportGenerator {
 
     public static ByteArrayInputStream generateMonthlySalesReport(List<MonthlySalesReportDTO> reportList) {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PdfRenderEvent renderEvent = PdfRenderEvent.start("itext", "monthly-sales");
 
         PdfWriter writer = new PdfWriter(out);
         PdfDocument pdf = new PdfDocument(writer);
@@ -43,8 +45,10 @@ public class PdfReportGenerator {
         }
 
         document.add(table);
+        int pages = pdf.getNumberOfPages();
         document.close();
 
+        renderEvent.finish(pages, out.size());
         return new ByteArrayInputStream(out.toByteArray());
     }
 } 
\ No newline at end of file
@@ -0,0 +1,101 @@
+package com.alejandro.facturacion.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Búfer circular sin bloqueos para muchos productores y un único consumidor, con las entradas
+ * creadas de antemano (como en el Disruptor de LMAX): publicar no reserva memoria ni toma cerrojos.
+ *
+ * <p>Un productor reserva una posición con {@link #tryClaim()}, rellena la entrada de
+ * {@link #get(long)} y la publica con {@link #publish(long)}; entre la reserva y la publicación no
+ * debe poder fallar, porque el consumidor espera a cada posición en orden. Si el búfer está lleno,
+ * {@code tryClaim} devuelve -1 en lugar de esperar.
+ */
+public final class RingBuffer<E> {
+
+    private final int mask;
+    private final Object[] entries;
+    /** Por posición, la secuencia publicada más uno (0: nunca publicada). */
+    private final AtomicLongArray published;
+    /** Siguiente secuencia a reservar. */
+    private final AtomicLong claimed = new AtomicLong();
+    /** Siguiente secuencia a consumir; solo la escribe el consumidor. */
+    private volatile long consumed;
+
+    /**
+     * @param capacity Número de entradas, potencia de dos
+     * @param factory Crea cada entrada, que se reutiliza en todas las vueltas
+     */
+    public RingBuffer(int capacity, Supplier<E> factory) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("La capacidad del búfer debe ser una potencia de dos: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.entries = new Object[capacity];
+        for (int i = 0; i < capacity; i++) {
+            entries[i] = factory.get();
+        }
+        this.published = new AtomicLongArray(capacity);
+    }
+
+    /**
+     * Reserva la siguiente posición.
+     *
+     * @return la secuencia reservada, o -1 si el búfer está lleno
+     */
+    public long tryClaim() {
+        while (true) {
+            long sequence = claimed.get();
+            if (sequence - consumed > mask) {
+                return -1;
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) entries[(int) sequence & mask];
+    }
+
+    /** Deja la entrada reservada a la vista del consumidor. */
+    public void publish(long sequence) {
+        published.setRelease((int) sequence & mask, sequence + 1);
+    }
+
+    /**
+     * Entrega al consumidor, en orden, hasta {@code max} entradas publicadas; se detiene en la
+     * primera posición aún no publicada. La entrada solo es válida durante la llamada.
+     *
+     * @return número de entradas entregadas
+     */
+    @SuppressWarnings("unchecked")
+    public int drain(Consumer<E> consumer, int max) {
+        long next = consumed;
+        int count = 0;
+        try {
+            while (count < max && published.getAcquire((int) next & mask) == next + 1) {
+                consumer.accept((E) entries[(int) next & mask]);
+                next++;
+                count++;
+            }
+        } finally {
+            consumed = next;
+        }
+        return count;
+    }
+
+    /** Entradas reservadas pendientes de consumir. */
+    public long size() {
+        return claimed.get() - consumed;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,59 @@
+package com.alejandro.facturacion.utils;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Copia filas genéricas (leídas con {@code queryForList}) entre bases de datos con el mismo esquema,
+ * conservando los IDs. Las columnas se toman de la primera fila.
+ */
+public final class SqlRows {
+
+    private SqlRows() {
+    }
+
+    /**
+     * Inserta las filas en la tabla con un único lote JDBC.
+     */
+    public static void insert(JdbcTemplate jdbc, String table, List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<String> columns = new ArrayList<>(rows.get(0).keySet());
+        String sql = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES ("
+                + columns.stream().map(c -> "?").collect(Collectors.joining(", ")) + ")";
+        jdbc.batchUpdate(sql, values(rows, columns));
+    }
+
+    /**
+     * Actualiza, por la columna {@code id}, el resto de columnas de las filas indicadas.
+     */
+    public static void updateById(JdbcTemplate jdbc, String table, List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<String> columns = new ArrayList<>(rows.get(0).keySet());
+        columns.removeIf(c -> c.equalsIgnoreCase("id"));
+        columns.add("id");
+        String sql = "UPDATE " + table + " SET "
+                + columns.subList(0, columns.size() - 1).stream().map(c -> c + " = ?").collect(Collectors.joining(", "))
+                + " WHERE id = ?";
+        jdbc.batchUpdate(sql, values(rows, columns));
+    }
+
+    private static List<Object[]> values(List<Map<String, Object>> rows, List<String> columns) {
+        List<Object[]> values = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            Object[] args = new Object[columns.size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = row.get(columns.get(i));
+            }
+            values.add(args);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,44 @@
+-- Resumen de cuenta de cada cliente (número de facturas, total histórico, última factura y totales
+-- del mes y el año en curso), actualizado en la misma transacción que crea cada factura. Con
+-- sharding, cada shard guarda el resumen de sus clientes.
+-- period_month (aaaamm) y period_year indican a qué periodo corresponden month_* y year_*.
+
+CREATE TABLE client_summaries (
+    client_id        BIGINT         NOT NULL,
+    invoice_count    BIGINT         NOT NULL,
+    lifetime_total   DECIMAL(38, 2) NOT NULL,
+    first_invoice_at DATETIME(6),
+    last_invoice_id  BIGINT,
+    last_invoice_at  DATETIME(6),
+    period_month     INT            NOT NULL,
+    month_count      BIGINT         NOT NULL,
+    month_total      DECIMAL(38, 2) NOT NULL,
+    period_year      INT            NOT NULL,
+    year_count       BIGINT         NOT NULL,
+    year_total       DECIMAL(38, 2) NOT NULL,
+    updated_at       DATETIME(6)    NOT NULL,
+    PRIMARY KEY (client_id)
+);
+
+-- Resumen inicial a partir de las facturas existentes (las ya archivadas no cuentan)
+INSERT INTO client_summaries (client_id, invoice_count, lifetime_total, first_invoice_at, last_invoice_at,
+                              period_month, month_count, month_total, period_year, year_count, year_total, updated_at)
+SELECT i.client_id,
+       COUNT(*),
+       COALESCE(SUM(i.total), 0),
+       MIN(i.created_at),
+       MAX(i.created_at),
+       YEAR(CURRENT_DATE) * 100 + MONTH(CURRENT_DATE),
+       SUM(CASE WHEN YEAR(i.created_at) * 100 + MONTH(i.created_at) = YEAR(CURRENT_DATE) * 100 + MONTH(CURRENT_DATE) THEN 1 ELSE 0 END),
+       COALESCE(SUM(CASE WHEN YEAR(i.created_at) * 100 + MONTH(i.created_at) = YEAR(CURRENT_DATE) * 100 + MONTH(CURRENT_DATE) THEN i.total END), 0),
+       YEAR(CURRENT_DATE),
+       SUM(CASE WHEN YEAR(i.created_at) = YEAR(CURRENT_DATE) THEN 1 ELSE 0 END),
+       COALESCE(SUM(CASE WHEN YEAR(i.created_at) = YEAR(CURRENT_DATE) THEN i.total END), 0),
+       CURRENT_TIMESTAMP
+FROM invoices i
+WHERE i.client_id IS NOT NULL
+GROUP BY i.client_id;
+
+UPDATE client_summaries
+SET last_invoice_id = (SELECT MAX(i.id) FROM invoices i
+                       WHERE i.client_id = client_summaries.client_id AND i.created_at = client_summaries.last_invoice_at);
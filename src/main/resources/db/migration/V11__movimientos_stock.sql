@@ -0,0 +1,38 @@
+-- Libro de movimientos de stock: cada venta, devolución, ajuste o reserva para un nodo de borde
+-- añade una fila que no se modifica nunca. El stock de un producto es el de su último snapshot
+-- más los movimientos posteriores; products.stock pasa a ser el valor del último snapshot.
+-- Con sharding, el libro está en el shard principal, junto al catálogo maestro.
+
+CREATE TABLE stock_movements (
+    id            BIGINT       NOT NULL AUTO_INCREMENT,
+    product_id    BIGINT       NOT NULL,
+    movement_type VARCHAR(20)  NOT NULL,
+    quantity      INT          NOT NULL,
+    invoice_id    BIGINT,
+    reference     VARCHAR(255),
+    created_at    DATETIME(6)  NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_stock_movements_product ON stock_movements (product_id, id);
+
+CREATE INDEX idx_stock_movements_product_time ON stock_movements (product_id, created_at);
+
+-- Stock de un producto tras aplicar todos sus movimientos hasta movement_id (incluido).
+CREATE TABLE stock_snapshots (
+    product_id  BIGINT      NOT NULL,
+    movement_id BIGINT      NOT NULL,
+    stock       INT         NOT NULL,
+    taken_at    DATETIME(6) NOT NULL,
+    PRIMARY KEY (product_id, movement_id)
+);
+
+CREATE INDEX idx_stock_snapshots_time ON stock_snapshots (product_id, taken_at);
+
+CREATE INDEX idx_stock_snapshots_taken ON stock_snapshots (taken_at);
+
+-- El stock actual de cada producto entra en el libro como stock inicial
+INSERT INTO stock_movements (product_id, movement_type, quantity, reference, created_at)
+SELECT id, 'INITIAL', stock, 'Stock al crear el libro de movimientos', CURRENT_TIMESTAMP
+FROM products
+WHERE stock IS NOT NULL AND stock <> 0;
@@ -0,0 +1,21 @@
+-- Historial de precios de los productos: cada cambio de products.price añade una fila que no se
+-- modifica nunca. El precio de un producto en un instante es el de su última fila con valid_from
+-- anterior o igual. Con sharding, el historial está en el shard principal, junto al catálogo maestro.
+
+CREATE TABLE product_prices (
+    id         BIGINT         NOT NULL AUTO_INCREMENT,
+    product_id BIGINT         NOT NULL,
+    price      DECIMAL(38, 2) NOT NULL,
+    valid_from DATETIME(6)    NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_product_prices_product ON product_prices (product_id, valid_from);
+
+CREATE INDEX idx_product_prices_valid_from ON product_prices (valid_from);
+
+-- Los precios anteriores no se conocen: el actual de cada producto rige desde siempre
+INSERT INTO product_prices (product_id, price, valid_from)
+SELECT id, price, TIMESTAMP '1970-01-01 00:00:00'
+FROM products
+WHERE price IS NOT NULL;
@@ -0,0 +1,9 @@
+-- Trabajos asíncronos con varias instancias: cada trabajo pendiente pertenece a la instancia que lo
+-- encoló o lo reclamó, que renueva heartbeat_at mientras vive. Otra instancia solo lo reclama (con un
+-- UPDATE condicional) cuando el heartbeat ha caducado.
+
+ALTER TABLE jobs ADD COLUMN owner VARCHAR(100);
+
+ALTER TABLE jobs ADD COLUMN heartbeat_at DATETIME(6);
+
+CREATE INDEX idx_jobs_finished_at ON jobs (finished_at);
@@ -0,0 +1,4 @@
+-- Tributo de cada impuesto (IVA, INC, ICA). Sin valor se considera IVA, el único que existía antes.
+
+ALTER TABLE products ADD COLUMN tax_scheme VARCHAR(10);
+ALTER TABLE invoice_items ADD COLUMN tax_scheme VARCHAR(10);
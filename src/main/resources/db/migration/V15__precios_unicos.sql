@@ -0,0 +1,10 @@
+-- Un solo precio por producto e instante: dos escrituras simultáneas del mismo producto podían
+-- añadir la misma fila dos veces. Se conserva la última insertada de cada duplicado.
+
+DELETE FROM product_prices
+WHERE id NOT IN (SELECT id FROM (SELECT MAX(id) AS id FROM product_prices GROUP BY product_id, valid_from) kept);
+
+ALTER TABLE product_prices ADD CONSTRAINT uk_product_prices_product_time UNIQUE (product_id, valid_from);
+
+-- La clave única ya cubre las búsquedas por producto
+DROP INDEX idx_product_prices_product ON product_prices;
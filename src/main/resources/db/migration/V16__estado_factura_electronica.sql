@@ -0,0 +1,6 @@
+-- Resultado del último envío de cada factura como factura electrónica. Sin estado, no se ha enviado.
+
+ALTER TABLE invoices ADD COLUMN einvoice_status VARCHAR(20);
+ALTER TABLE invoices ADD COLUMN einvoice_cufe VARCHAR(96);
+ALTER TABLE invoices ADD COLUMN einvoice_track_id VARCHAR(100);
+ALTER TABLE invoices ADD COLUMN einvoice_sent_at DATETIME(6);
@@ -0,0 +1,14 @@
+-- Ventas registradas en el libro de stock (shard principal) para facturas de otro shard cuya
+-- transacción aún no consta como confirmada. Si la factura no llega a existir, la venta se devuelve
+-- al stock con un movimiento CANCELLATION, también tras una caída entre las dos transacciones.
+
+CREATE TABLE stock_pending_sales (
+    invoice_id BIGINT      NOT NULL,
+    shard      INT         NOT NULL,
+    created_at DATETIME(6) NOT NULL,
+    PRIMARY KEY (invoice_id)
+);
+
+CREATE INDEX idx_stock_pending_sales_created ON stock_pending_sales (created_at);
+
+CREATE INDEX idx_stock_movements_invoice ON stock_movements (invoice_id);
@@ -0,0 +1,44 @@
+-- Esquema inicial equivalente al generado por Hibernate (ddl-auto=update).
+-- En bases existentes esta versión se marca como línea base (spring.flyway.baseline-on-migrate).
+
+CREATE TABLE clients (
+    id                    BIGINT       NOT NULL AUTO_INCREMENT,
+    name                  VARCHAR(255) NOT NULL,
+    email                 VARCHAR(255) NOT NULL,
+    identification_number VARCHAR(255) NOT NULL,
+    created_at            DATETIME(6),
+    PRIMARY KEY (id),
+    CONSTRAINT uk_clients_email UNIQUE (email),
+    CONSTRAINT uk_clients_identification_number UNIQUE (identification_number)
+);
+
+CREATE TABLE products (
+    id          BIGINT        NOT NULL AUTO_INCREMENT,
+    name        VARCHAR(255),
+    description VARCHAR(500),
+    price       DECIMAL(38, 2),
+    stock       INT,
+    category    VARCHAR(255),
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE invoices (
+    id         BIGINT         NOT NULL AUTO_INCREMENT,
+    created_at DATETIME(6),
+    total      DECIMAL(38, 2),
+    client_id  BIGINT,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_invoices_client FOREIGN KEY (client_id) REFERENCES clients (id)
+);
+
+CREATE TABLE invoice_items (
+    id         BIGINT         NOT NULL AUTO_INCREMENT,
+    quantity   INT,
+    price      DECIMAL(38, 2),
+    subtotal   DECIMAL(38, 2),
+    product_id BIGINT,
+    invoice_id BIGINT,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_invoice_items_product FOREIGN KEY (product_id) REFERENCES products (id),
+    CONSTRAINT fk_invoice_items_invoice FOREIGN KEY (invoice_id) REFERENCES invoices (id)
+);
@@ -0,0 +1,11 @@
+-- Índices para las consultas de InvoiceRepository.
+--   findByClientId / historial por cliente  -> (client_id, created_at)
+--   findByCreatedAtBetween / reporte mensual -> (created_at, total), índice cubriente:
+--     el GROUP BY por año/mes se resuelve sin leer las filas de la tabla.
+--   carga de items de una factura            -> invoice_items(invoice_id)
+--   ventas por producto                      -> invoice_items(product_id)
+
+CREATE INDEX idx_invoices_client_created_at ON invoices (client_id, created_at);
+CREATE INDEX idx_invoices_created_at_total ON invoices (created_at, total);
+CREATE INDEX idx_invoice_items_invoice ON invoice_items (invoice_id);
+CREATE INDEX idx_invoice_items_product ON invoice_items (product_id);
@@ -0,0 +1,19 @@
+-- Trabajos asíncronos (POST /api/jobs): estado persistente para sobrevivir a reinicios.
+
+CREATE TABLE jobs (
+    id           VARCHAR(36)   NOT NULL,
+    type         VARCHAR(40)   NOT NULL,
+    status       VARCHAR(20)   NOT NULL,
+    priority     INT           NOT NULL,
+    progress     INT           NOT NULL,
+    params       TEXT,
+    result_path  VARCHAR(500),
+    content_type VARCHAR(100),
+    error        VARCHAR(1000),
+    created_at   DATETIME(6),
+    started_at   DATETIME(6),
+    finished_at  DATETIME(6),
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_jobs_status ON jobs (status);
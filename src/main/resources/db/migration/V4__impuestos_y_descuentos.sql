@@ -0,0 +1,17 @@
+-- IVA por producto, descuentos por línea y desglose de totales en la factura.
+
+ALTER TABLE products ADD COLUMN tax_rate DECIMAL(5, 2);
+UPDATE products SET tax_rate = 0 WHERE tax_rate IS NULL;
+
+ALTER TABLE invoice_items ADD COLUMN discount_rate DECIMAL(5, 2);
+ALTER TABLE invoice_items ADD COLUMN discount_amount DECIMAL(38, 2);
+ALTER TABLE invoice_items ADD COLUMN tax_rate DECIMAL(5, 2);
+ALTER TABLE invoice_items ADD COLUMN tax_amount DECIMAL(38, 2);
+
+ALTER TABLE invoices ADD COLUMN subtotal DECIMAL(38, 2);
+ALTER TABLE invoices ADD COLUMN discount_total DECIMAL(38, 2);
+ALTER TABLE invoices ADD COLUMN tax_total DECIMAL(38, 2);
+
+-- Las facturas anteriores no tenían impuestos ni descuentos: el subtotal es el total
+UPDATE invoices SET subtotal = total, discount_total = 0, tax_total = 0 WHERE subtotal IS NULL;
+UPDATE invoice_items SET discount_rate = 0, discount_amount = 0, tax_rate = 0, tax_amount = 0 WHERE tax_amount IS NULL;
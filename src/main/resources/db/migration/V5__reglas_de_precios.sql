@@ -0,0 +1,18 @@
+-- Reglas de precios: descuentos por volumen, promociones por categoría y precios por cliente.
+
+CREATE TABLE pricing_rules (
+    id               BIGINT         NOT NULL AUTO_INCREMENT,
+    type             VARCHAR(30)    NOT NULL,
+    product_id       BIGINT,
+    category         VARCHAR(255),
+    client_id        BIGINT,
+    min_quantity     INT,
+    discount_percent DECIMAL(5, 2),
+    fixed_price      DECIMAL(38, 2),
+    valid_from       DATETIME(6),
+    valid_to         DATETIME(6),
+    active           BOOLEAN        NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_pricing_rules_active ON pricing_rules (active);
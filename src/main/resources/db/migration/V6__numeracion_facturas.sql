@@ -0,0 +1,37 @@
+-- Numeración legal de facturas: series (prefijo + rango autorizado) y bloques reservados por nodo.
+
+CREATE TABLE invoice_series (
+    id                BIGINT       NOT NULL AUTO_INCREMENT,
+    prefix            VARCHAR(10)  NOT NULL,
+    resolution_number VARCHAR(50),
+    range_from        BIGINT       NOT NULL,
+    range_to          BIGINT       NOT NULL,
+    valid_from        DATE,
+    valid_to          DATE,
+    next_block_start  BIGINT       NOT NULL,
+    block_size        INT          NOT NULL,
+    default_series    BOOLEAN      NOT NULL,
+    active            BOOLEAN      NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_invoice_series_prefix UNIQUE (prefix)
+);
+
+CREATE TABLE invoice_number_blocks (
+    id               BIGINT      NOT NULL AUTO_INCREMENT,
+    series_id        BIGINT      NOT NULL,
+    series_prefix    VARCHAR(10) NOT NULL,
+    range_start      BIGINT      NOT NULL,
+    range_end        BIGINT      NOT NULL,
+    status           VARCHAR(20) NOT NULL,
+    owner_node       VARCHAR(100),
+    lease_expires_at DATETIME(6),
+    created_at       DATETIME(6),
+    PRIMARY KEY (id),
+    CONSTRAINT fk_invoice_number_blocks_series FOREIGN KEY (series_id) REFERENCES invoice_series (id)
+);
+
+CREATE INDEX idx_invoice_number_blocks_series_status ON invoice_number_blocks (series_id, status, range_start);
+
+ALTER TABLE invoices ADD COLUMN series_prefix VARCHAR(10);
+ALTER TABLE invoices ADD COLUMN invoice_number BIGINT;
+ALTER TABLE invoices ADD CONSTRAINT uk_invoices_series_number UNIQUE (series_prefix, invoice_number);
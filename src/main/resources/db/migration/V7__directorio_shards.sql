@@ -0,0 +1,11 @@
+-- Directorio de shards: clientes que no están en el shard de su serie de IDs (movidos por el
+-- rebalanceo) o que se están moviendo. Solo se usa en el shard principal; el resto de shards
+-- tienen la tabla vacía porque comparten las migraciones.
+
+CREATE TABLE client_shards (
+    client_id  BIGINT      NOT NULL,
+    shard_id   INT         NOT NULL,
+    status     VARCHAR(20) NOT NULL,
+    updated_at DATETIME(6),
+    PRIMARY KEY (client_id)
+);
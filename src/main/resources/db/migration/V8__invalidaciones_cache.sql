@@ -0,0 +1,14 @@
+-- Invalidaciones de la caché entre instancias (facturacion.cache.transport=db): cada instancia
+-- registra aquí los cambios que confirma y lee periódicamente los de las demás. Con sharding solo
+-- se usa en el shard principal.
+
+CREATE TABLE cache_invalidations (
+    id         BIGINT      NOT NULL AUTO_INCREMENT,
+    origin     VARCHAR(64) NOT NULL,
+    region     VARCHAR(20) NOT NULL,
+    entity_id  BIGINT,
+    created_at DATETIME(6) NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_cache_invalidations_created_at ON cache_invalidations (created_at);
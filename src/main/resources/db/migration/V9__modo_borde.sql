@@ -0,0 +1,44 @@
+-- Modo borde: puntos de venta que facturan contra una base de datos local y sincronizan por lotes
+-- con la central. Las mismas tablas existen en ambos lados; cada uno usa las suyas.
+
+-- Central: facturas recibidas de cada nodo (para no guardar dos veces un lote reenviado).
+-- Nodo: no se usa.
+CREATE TABLE edge_invoices (
+    node_id     VARCHAR(100) NOT NULL,
+    local_id    BIGINT       NOT NULL,
+    invoice_id  BIGINT       NOT NULL,
+    received_at DATETIME(6)  NOT NULL,
+    PRIMARY KEY (node_id, local_id)
+);
+
+-- Central: stock reservado para cada nodo y aún no facturado (ya descontado de products.stock).
+-- Nodo: la copia de lo que la central le tiene reservado.
+CREATE TABLE edge_allowances (
+    node_id    VARCHAR(100) NOT NULL,
+    product_id BIGINT       NOT NULL,
+    quantity   INT          NOT NULL,
+    updated_at DATETIME(6)  NOT NULL,
+    PRIMARY KEY (node_id, product_id)
+);
+
+-- Central: unidades vendidas por un nodo sin stock que las cubriera.
+CREATE TABLE edge_stock_conflicts (
+    id         BIGINT       NOT NULL AUTO_INCREMENT,
+    node_id    VARCHAR(100) NOT NULL,
+    product_id BIGINT       NOT NULL,
+    invoice_id BIGINT       NOT NULL,
+    shortfall  INT          NOT NULL,
+    created_at DATETIME(6)  NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_edge_stock_conflicts_node ON edge_stock_conflicts (node_id, created_at);
+
+-- Nodo: facturas locales pendientes de enviar a la central.
+CREATE TABLE edge_outbox (
+    invoice_id BIGINT        NOT NULL,
+    created_at DATETIME(6)   NOT NULL,
+    attempts   INT           NOT NULL,
+    last_error VARCHAR(1000),
+    PRIMARY KEY (invoice_id)
+);
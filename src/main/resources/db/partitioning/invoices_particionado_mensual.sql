@@ -0,0 +1,65 @@
+-- Particionado mensual OPCIONAL de la tabla invoices (solo MySQL).
+--
+-- No forma parte de las migraciones automáticas: convertir una tabla grande
+-- reescribe todos sus datos y debe ejecutarse en una ventana de mantenimiento:
+--
+--   mysql -u root -p facturacion < invoices_particionado_mensual.sql
+--
+-- Restricciones de MySQL que obligan a modificar el esquema:
+--   * La columna de particionado debe formar parte de la clave primaria.
+--   * Las tablas particionadas no admiten claves foráneas (ni propias ni entrantes),
+--     por lo que se eliminan fk_invoices_client y fk_invoice_items_invoice; la
+--     integridad la sigue garantizando la aplicación (Invoice -> InvoiceItem en cascada).
+--   * Toda clave única debe incluir la columna de particionado, así que
+--     uk_invoices_series_number (series_prefix, invoice_number) no puede mantenerse:
+--     añadirle created_at permitiría repetir un número en otro instante. La unicidad
+--     pasa a la tabla sin particionar invoice_numbers, que rellenan los triggers de
+--     invoices; un número repetido hace fallar el INSERT de la factura igual que antes.
+--     Las filas de invoice_numbers no se borran al archivar facturas: el número sigue
+--     usado aunque la factura ya no esté en la tabla.
+--
+-- Una vez particionada, InvoicePartitionMaintenanceJob crea por adelantado las
+-- particiones de los meses siguientes (facturacion.partitioning.enabled=true).
+
+ALTER TABLE invoice_items DROP FOREIGN KEY fk_invoice_items_invoice;
+ALTER TABLE invoices DROP FOREIGN KEY fk_invoices_client;
+
+UPDATE invoices SET created_at = '1970-01-01 00:00:00' WHERE created_at IS NULL;
+
+CREATE TABLE invoice_numbers (
+    series_prefix  VARCHAR(10) NOT NULL,
+    invoice_number BIGINT      NOT NULL,
+    PRIMARY KEY (series_prefix, invoice_number)
+);
+
+INSERT INTO invoice_numbers (series_prefix, invoice_number)
+SELECT series_prefix, invoice_number FROM invoices
+WHERE series_prefix IS NOT NULL AND invoice_number IS NOT NULL;
+
+CREATE TRIGGER trg_invoices_number_insert AFTER INSERT ON invoices FOR EACH ROW
+    INSERT INTO invoice_numbers (series_prefix, invoice_number)
+    SELECT NEW.series_prefix, NEW.invoice_number FROM DUAL
+    WHERE NEW.series_prefix IS NOT NULL AND NEW.invoice_number IS NOT NULL;
+
+CREATE TRIGGER trg_invoices_number_update AFTER UPDATE ON invoices FOR EACH ROW
+    INSERT INTO invoice_numbers (series_prefix, invoice_number)
+    SELECT NEW.series_prefix, NEW.invoice_number FROM DUAL
+    WHERE NEW.series_prefix IS NOT NULL AND NEW.invoice_number IS NOT NULL
+      AND NOT (NEW.series_prefix <=> OLD.series_prefix AND NEW.invoice_number <=> OLD.invoice_number);
+
+-- Índice no único para las búsquedas por número (recuperación de bloques, cierre de bloques)
+ALTER TABLE invoices
+    ADD INDEX idx_invoices_series_number (series_prefix, invoice_number),
+    DROP INDEX uk_invoices_series_number;
+
+ALTER TABLE invoices
+    MODIFY created_at DATETIME(6) NOT NULL,
+    DROP PRIMARY KEY,
+    ADD PRIMARY KEY (id, created_at);
+
+-- Partición inicial con todo el histórico; el job divide p_max mes a mes.
+ALTER TABLE invoices
+    PARTITION BY RANGE COLUMNS (created_at) (
+        PARTITION p_historico VALUES LESS THAN ('2024-01-01'),
+        PARTITION p_max VALUES LESS THAN (MAXVALUE)
+    );
@@ -0,0 +1,41 @@
+package com.alejandro.facturacion.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ShardingEnvironmentPostProcessorTest {
+
+    private final ShardingEnvironmentPostProcessor processor = new ShardingEnvironmentPostProcessor();
+
+    @Test
+    void shardingDisablesOpenInView() {
+        MockEnvironment environment = new MockEnvironment().withProperty("facturacion.sharding.enabled", "true");
+
+        processor.postProcessEnvironment(environment, new SpringApplication());
+
+        assertThat(environment.getProperty("spring.jpa.open-in-view")).isEqualTo("false");
+    }
+
+    @Test
+    void withoutShardingOpenInViewIsUntouched() {
+        MockEnvironment environment = new MockEnvironment();
+
+        processor.postProcessEnvironment(environment, new SpringApplication());
+
+        assertThat(environment.getProperty("spring.jpa.open-in-view")).isNull();
+    }
+
+    @Test
+    void explicitOpenInViewWithShardingFails() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("facturacion.sharding.enabled", "true")
+                .withProperty("spring.jpa.open-in-view", "true");
+
+        assertThatThrownBy(() -> processor.postProcessEnvironment(environment, new SpringApplication()))
+                .isInstanceOf(IllegalStateException.class).hasMessageContaining("open-in-view");
+    }
+}
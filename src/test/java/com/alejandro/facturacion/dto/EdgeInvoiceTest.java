@@ -0,0 +1,53 @@
+package com.alejandro.facturacion.dto;
+
+import com.alejandro.facturacion.entity.Client;
+import com.alejandro.facturacion.entity.Invoice;
+import com.alejandro.facturacion.entity.InvoiceItem;
+import com.alejandro.facturacion.entity.Product;
+import com.alejandro.facturacion.entity.TaxScheme;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EdgeInvoiceTest {
+
+    @Test
+    void resendOfTheSameInvoiceMatches() {
+        Invoice saved = invoice(line(1L, 2, "10.00"), line(2L, 1, "30.00"));
+        EdgeInvoice resent = EdgeInvoice.of(invoice(line(2L, 1, "30.0"), line(1L, 2, "10")));
+        resent.getItems().forEach(item -> item.setTaxScheme(null));
+
+        assertThat(resent.sameAs(saved)).isTrue();
+    }
+
+    @Test
+    void sameClientAndTotalWithOtherLinesDoesNotMatch() {
+        Invoice saved = invoice(line(1L, 2, "10.00"), line(2L, 1, "30.00"));
+        // Mismo cliente y mismo total (50), otras líneas
+        EdgeInvoice other = EdgeInvoice.of(invoice(line(3L, 5, "10.00")));
+
+        assertThat(other.getTotal()).isEqualByComparingTo(saved.getTotal());
+        assertThat(other.sameAs(saved)).isFalse();
+    }
+
+    private static InvoiceItem line(long productId, int quantity, String price) {
+        BigDecimal subtotal = new BigDecimal(price).multiply(BigDecimal.valueOf(quantity));
+        return InvoiceItem.builder().product(Product.builder().id(productId).build()).quantity(quantity)
+                .price(new BigDecimal(price)).subtotal(subtotal).taxRate(BigDecimal.ZERO)
+                .taxScheme(TaxScheme.IVA).taxAmount(BigDecimal.ZERO).build();
+    }
+
+    private static Invoice invoice(InvoiceItem... items) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (InvoiceItem item : items) {
+            total = total.add(item.getSubtotal());
+        }
+        return Invoice.builder().client(Client.builder().id(7L).build()).seriesPrefix("FE").number(1L)
+                .subtotal(total).discountTotal(BigDecimal.ZERO).taxTotal(BigDecimal.ZERO).total(total)
+                .items(new ArrayList<>(List.of(items))).build();
+    }
+}
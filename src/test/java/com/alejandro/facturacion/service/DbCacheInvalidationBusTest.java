@@ -0,0 +1,117 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.CacheProperties;
+import com.alejandro.facturacion.dto.CacheRegion;
+import com.alejandro.facturacion.entity.Client;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Dos instancias (cada una con su {@link EntityCache} y su {@link DbCacheInvalidationBus}) sobre una
+ * misma base H2: lo que una escribe, la otra puede no verlo como mucho durante
+ * {@code facturacion.cache.max-staleness}.
+ */
+class DbCacheInvalidationBusTest {
+
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(100);
+    private static final Duration MAX_STALENESS = Duration.ofSeconds(1);
+
+    private H2TestDatabase database;
+    private JdbcTemplate jdbc;
+    private DbCacheInvalidationBus writerBus;
+    private DbCacheInvalidationBus readerBus;
+    private EntityCache writer;
+    private EntityCache reader;
+    private long clientId;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        database = new H2TestDatabase("cache");
+        jdbc = new JdbcTemplate(database.getDataSource());
+
+        writerBus = new DbCacheInvalidationBus(jdbc, properties("writer"));
+        readerBus = new DbCacheInvalidationBus(jdbc, properties("reader"));
+        writer = new EntityCache(writerBus, properties("writer"));
+        reader = new EntityCache(readerBus, properties("reader"));
+        writer.start();
+        reader.start();
+        while (!writer.isFresh() || !reader.isFresh()) {
+            Thread.sleep(10);
+        }
+
+        jdbc.update("INSERT INTO clients (name, email, identification_number) VALUES ('Antes', 'c@test', '1')");
+        clientId = jdbc.queryForObject("SELECT MAX(id) FROM clients", Long.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writerBus.shutdown();
+        readerBus.shutdown();
+        database.drop();
+    }
+
+    @Test
+    void writeOnOneInstanceReachesTheOtherWithinTheStalenessBound() throws InterruptedException {
+        assertThat(name(reader)).isEqualTo("Antes");
+        assertThat(name(writer)).isEqualTo("Antes");
+
+        long start = System.nanoTime();
+        rename("Después");
+
+        assertThat(name(writer)).isEqualTo("Después");
+        assertThat(awaitName(reader, "Después")).isLessThanOrEqualTo(MAX_STALENESS.toNanos());
+        assertThat(System.nanoTime() - start).isLessThanOrEqualTo(MAX_STALENESS.toNanos() + POLL_INTERVAL.toNanos());
+    }
+
+    @Test
+    void instanceThatStopsReceivingInvalidationsReadsTheDatabaseAfterTheBound() throws InterruptedException {
+        assertThat(name(reader)).isEqualTo("Antes");
+        readerBus.shutdown();
+
+        rename("Después");
+
+        // Sin bus la invalidación no llega nunca: se sirve lo cacheado hasta el límite y después la base de datos
+        assertThat(name(reader)).isEqualTo("Antes");
+        // El límite se cuenta desde la última sincronización; el margen cubre el paso del sondeo de la prueba
+        assertThat(awaitName(reader, "Después")).isLessThanOrEqualTo(MAX_STALENESS.toNanos() + POLL_INTERVAL.toNanos());
+        assertThat(reader.isFresh()).isFalse();
+    }
+
+    private void rename(String name) {
+        jdbc.update("UPDATE clients SET name = ? WHERE id = ?", name, clientId);
+        // Lo que hace EntityCache al confirmarse la transacción (ClientsChangedEvent)
+        writer.invalidate(CacheRegion.CLIENT, clientId);
+    }
+
+    /** Nanosegundos hasta que la instancia devuelve el nombre indicado. */
+    private long awaitName(EntityCache cache, String expected) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + 2 * MAX_STALENESS.toNanos();
+        while (!expected.equals(name(cache)) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(name(cache)).isEqualTo(expected);
+        return System.nanoTime() - start;
+    }
+
+    private String name(EntityCache cache) {
+        return cache.<Client>get(CacheRegion.CLIENT, clientId, () -> Optional.ofNullable(jdbc.queryForObject(
+                "SELECT name FROM clients WHERE id = ?", String.class, clientId))
+                .map(name -> Client.builder().id(clientId).name(name).build())).orElseThrow().getName();
+    }
+
+    private static CacheProperties properties(String nodeId) {
+        CacheProperties properties = new CacheProperties();
+        properties.setNodeId(nodeId);
+        properties.setMaxStaleness(MAX_STALENESS);
+        properties.getDb().setPollInterval(POLL_INTERVAL);
+        return properties;
+    }
+}
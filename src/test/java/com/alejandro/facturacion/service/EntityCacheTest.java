@@ -0,0 +1,102 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.CacheProperties;
+import com.alejandro.facturacion.dto.CacheInvalidation;
+import com.alejandro.facturacion.dto.CacheRegion;
+import com.alejandro.facturacion.entity.Client;
+import com.alejandro.facturacion.entity.Invoice;
+import com.alejandro.facturacion.entity.InvoiceItem;
+import com.alejandro.facturacion.entity.Product;
+import com.alejandro.facturacion.event.InvoicesChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EntityCacheTest {
+
+    private final List<CacheInvalidation> published = new ArrayList<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private EntityCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new EntityCache(new CacheInvalidationBus() {
+            @Override
+            public void start(Consumer<CacheInvalidation> listener) {
+            }
+
+            @Override
+            public void publish(CacheInvalidation invalidation) {
+                published.add(invalidation);
+            }
+
+            @Override
+            public long lagNanos() {
+                return 0;
+            }
+        }, new CacheProperties());
+    }
+
+    @Test
+    void hitsReturnCopiesThatDoNotChangeTheCache() {
+        Invoice loaded = invoice();
+        Invoice first = get(loaded);
+        Invoice second = get(loaded);
+
+        assertThat(loads).hasValue(1);
+        assertThat(second).isNotSameAs(loaded).isEqualTo(loaded);
+        assertThat(second.getClient()).isNotSameAs(loaded.getClient());
+        assertThat(second.getItems().get(0).getProduct()).isNotSameAs(loaded.getItems().get(0).getProduct());
+
+        // Ni la entidad cargada ni una copia servida alteran lo que ven las siguientes lecturas
+        loaded.setTotal(BigDecimal.ONE);
+        first.getClient().setName("Otro");
+        second.getItems().get(0).getProduct().setName("Otro");
+        second.getItems().clear();
+        Invoice third = get(loaded);
+        assertThat(third.getTotal()).isEqualByComparingTo("119.00");
+        assertThat(third.getClient().getName()).isEqualTo("Cliente");
+        assertThat(third.getItems()).singleElement()
+                .satisfies(item -> assertThat(item.getProduct().getName()).isEqualTo("Producto"));
+    }
+
+    @Test
+    void invoicesChangedEventEvictsTheInvoice() {
+        Invoice loaded = invoice();
+        get(loaded);
+
+        cache.onInvoicesChanged(new InvoicesChangedEvent(List.of(loaded.getId())));
+        get(loaded);
+
+        assertThat(loads).hasValue(2);
+        assertThat(published).containsExactly(new CacheInvalidation(CacheRegion.INVOICE, loaded.getId()));
+
+        cache.onInvoicesChanged(InvoicesChangedEvent.all());
+        get(loaded);
+        assertThat(loads).hasValue(3);
+    }
+
+    private Invoice get(Invoice loaded) {
+        return cache.<Invoice>get(CacheRegion.INVOICE, loaded.getId(), () -> {
+            loads.incrementAndGet();
+            return Optional.of(loaded);
+        }).orElseThrow();
+    }
+
+    private static Invoice invoice() {
+        Product product = Product.builder().id(3L).name("Producto").price(new BigDecimal("100.00")).build();
+        InvoiceItem item = InvoiceItem.builder().id(2L).product(product).quantity(1)
+                .price(new BigDecimal("100.00")).subtotal(new BigDecimal("100.00")).build();
+        Client client = Client.builder().id(1L).name("Cliente").email("c@test").build();
+        List<InvoiceItem> items = new ArrayList<>(List.of(item));
+        return Invoice.builder().id(10L).client(client).items(items).total(new BigDecimal("119.00")).build();
+    }
+}
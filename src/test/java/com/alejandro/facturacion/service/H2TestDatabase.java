@@ -0,0 +1,51 @@
+package com.alejandro.facturacion.service;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.UUID;
+
+/**
+ * Base H2 en memoria, en modo MySQL y con las migraciones de Flyway aplicadas, para las pruebas que
+ * necesitan SQL real. Cada instancia crea una base nueva; {@link #drop()} la borra.
+ */
+final class H2TestDatabase {
+
+    private static final String USERNAME = "sa";
+    private static final String PASSWORD = "";
+
+    private final String url;
+    private final DriverManagerDataSource dataSource;
+
+    /**
+     * @param name prefijo del nombre de la base, para reconocerla en los errores
+     */
+    H2TestDatabase(String name) {
+        this.url = "jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;"
+                + "NON_KEYWORDS=MONTH,YEAR,VALUE;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000";
+        Flyway.configure().dataSource(url, USERNAME, PASSWORD).load().migrate();
+        this.dataSource = new DriverManagerDataSource(url, USERNAME, PASSWORD);
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    String getUsername() {
+        return USERNAME;
+    }
+
+    String getPassword() {
+        return PASSWORD;
+    }
+
+    /** Cada llamada abre una conexión nueva, sin pool. */
+    DriverManagerDataSource getDataSource() {
+        return dataSource;
+    }
+
+    void drop() {
+        new JdbcTemplate(dataSource).execute("DROP ALL OBJECTS");
+    }
+}
@@ -0,0 +1,290 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.ShardRoutingDataSource;
+import com.alejandro.facturacion.dto.EdgeNumberBlock;
+import com.alejandro.facturacion.dto.InvoiceNumber;
+import com.alejandro.facturacion.entity.InvoiceSeries;
+import com.alejandro.facturacion.repository.InvoiceSeriesRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Numeración con varios hilos y varias instancias del servicio sobre la misma base H2: los
+ * números confirmados de la serie deben ser únicos y, una vez recuperados los bloques
+ * abandonados, consecutivos desde el primero.
+ */
+class InvoiceNumberingServiceTest {
+
+    private static final String PREFIX = "FE";
+    private static final int BLOCK_SIZE = 10;
+
+    private H2TestDatabase database;
+    private JdbcTemplate jdbc;
+    private TransactionTemplate transaction;
+    private InvoiceSeriesRepository seriesRepository;
+    private long clientId;
+    private final List<InvoiceNumberingService> services = new ArrayList<>();
+    // IDs puestos por la prueba: con inserciones concurrentes y rollbacks, el AUTO_INCREMENT de H2
+    // llega a repetir un ID
+    private final AtomicLong invoiceIds = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        database = new H2TestDatabase("numbering");
+        jdbc = new JdbcTemplate(database.getDataSource());
+        transaction = new TransactionTemplate(new DataSourceTransactionManager(database.getDataSource()));
+
+        jdbc.update("INSERT INTO invoice_series (prefix, range_from, range_to, next_block_start, block_size, "
+                + "default_series, active) VALUES (?, 1, 1000000, 1, ?, TRUE, TRUE)", PREFIX, BLOCK_SIZE);
+        InvoiceSeries series = InvoiceSeries.builder()
+                .id(jdbc.queryForObject("SELECT id FROM invoice_series WHERE prefix = ?", Long.class, PREFIX))
+                .prefix(PREFIX).rangeFrom(1L).rangeTo(1_000_000L).nextBlockStart(1L).blockSize(BLOCK_SIZE)
+                .defaultSeries(true).active(true)
+                .build();
+        seriesRepository = mock(InvoiceSeriesRepository.class);
+        when(seriesRepository.findByActiveTrue()).thenReturn(List.of(series));
+
+        jdbc.update("INSERT INTO clients (name, email, identification_number) VALUES ('Cliente', 'c@test', 'C1')");
+        clientId = jdbc.queryForObject("SELECT id FROM clients", Long.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        services.forEach(InvoiceNumberingService::shutdown);
+        database.drop();
+    }
+
+    @Test
+    void concurrentInvoicesGetUniqueContiguousNumbers() throws Exception {
+        InvoiceNumberingService service = newService("a", Duration.ofMinutes(2), Duration.ofSeconds(30));
+
+        // Una de cada siete transacciones falla: su número se devuelve y se reutiliza
+        runConcurrently(8, 150, (thread, i) -> saveInvoice(service, (thread * 150 + i) % 7 == 0));
+
+        List<Long> numbers = savedNumbers();
+        assertThat(numbers).doesNotHaveDuplicates().hasSize(8 * 150 - countMultiplesOfSeven(8 * 150));
+        fillGapsAfterShutdown();
+        assertContiguous();
+    }
+
+    @Test
+    void severalInstancesShareTheSeriesWithoutDuplicates() throws Exception {
+        List<InvoiceNumberingService> nodes = List.of(
+                newService("a", Duration.ofMinutes(2), Duration.ofSeconds(30)),
+                newService("b", Duration.ofMinutes(2), Duration.ofSeconds(30)),
+                newService("c", Duration.ofMinutes(2), Duration.ofSeconds(30)));
+
+        runConcurrently(6, 100, (thread, i) -> saveInvoice(nodes.get(thread % nodes.size()), i % 11 == 0));
+
+        assertThat(savedNumbers()).doesNotHaveDuplicates();
+        fillGapsAfterShutdown();
+        assertContiguous();
+    }
+
+    @Test
+    void expiredLeaseIsRecoveredByAnotherInstance() throws Exception {
+        InvoiceNumberingService slow = newService("lento", Duration.ofSeconds(2), Duration.ofSeconds(1));
+        InvoiceNumberingService other = newService("otro", Duration.ofMinutes(2), Duration.ofSeconds(30));
+
+        for (int i = 0; i < 5; i++) {
+            saveInvoice(slow, false);
+        }
+        // El nodo lento no renueva (no hay tareas programadas): su concesión vence
+        Thread.sleep(2_200);
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM invoice_number_blocks WHERE owner_node = 'lento' "
+                + "AND lease_expires_at < ?", Long.class, Timestamp.valueOf(LocalDateTime.now()))).isPositive();
+
+        // El otro nodo recupera primero el bloque abandonado: emite 6..10
+        List<Long> recovered = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            recovered.add(saveInvoice(other, false).getNumber());
+        }
+        assertThat(recovered).containsExactly(6L, 7L, 8L, 9L, 10L);
+
+        // El nodo lento ya no puede emitir del bloque perdido: reserva otro
+        for (int i = 0; i < 5; i++) {
+            assertThat(saveInvoice(slow, false).getNumber()).isGreaterThan(10L);
+        }
+        runConcurrently(4, 30, (thread, i) -> saveInvoice(thread % 2 == 0 ? slow : other, false));
+
+        assertThat(savedNumbers()).doesNotHaveDuplicates();
+        fillGapsAfterShutdown();
+        assertContiguous();
+    }
+
+    @Test
+    void commitFailsWhenTheLeaseIsLostDuringTheTransaction() throws Exception {
+        InvoiceNumberingService slow = newService("lento", Duration.ofSeconds(2), Duration.ofSeconds(1));
+        InvoiceNumberingService other = newService("otro", Duration.ofMinutes(2), Duration.ofSeconds(30));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            List<Future<InvoiceNumber>> otherInvoice = new ArrayList<>();
+            assertThatThrownBy(() -> transaction.executeWithoutResult(status -> {
+                InvoiceNumber number = slow.assign(PREFIX);
+                assertThat(number.getNumber()).isEqualTo(1L);
+                insertInvoice(number);
+                sleep(2_200);
+                // Mientras la transacción sigue abierta, otro nodo recupera el bloque vencido; el 1
+                // le parece libre y su INSERT espera a que esta transacción termine
+                otherInvoice.add(executor.submit(() -> saveInvoice(other, false)));
+                while (jdbc.queryForObject("SELECT COUNT(*) FROM invoice_number_blocks WHERE owner_node = 'otro'",
+                        Long.class) == 0) {
+                    sleep(20);
+                }
+            })).isInstanceOf(IllegalStateException.class).hasMessageContaining("concesión");
+
+            assertThat(otherInvoice.get(0).get().getNumber()).isEqualTo(1L);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(savedNumbers()).containsExactly(1L);
+        fillGapsAfterShutdown();
+        assertContiguous();
+    }
+
+    @Test
+    void decommissionedEdgeBlocksAreNotReissued() {
+        InvoiceNumberingService central = newService("a", Duration.ofMinutes(2), Duration.ofSeconds(30));
+        EdgeNumberBlock block = central.grantEdgeBlock(PREFIX, "tienda", BLOCK_SIZE);
+        // La central recibe dos facturas del nodo; el resto del bloque pudo usarse sin enviarse
+        insertInvoice(new InvoiceNumber(PREFIX, block.getRangeStart()));
+        insertInvoice(new InvoiceNumber(PREFIX, block.getRangeStart() + 1));
+
+        assertThat(central.closeDecommissionedEdgeBlocks("tienda")).isEqualTo(1);
+        assertThat(central.getEdgeBlocks("tienda")).isEmpty();
+        assertThat(central.isEdgeNumber(PREFIX, block.getRangeEnd(), "tienda")).isTrue();
+
+        // Ni este nodo ni uno nuevo emiten números del bloque del nodo dado de baja
+        services.forEach(InvoiceNumberingService::shutdown);
+        services.clear();
+        InvoiceNumberingService other = newService("b", Duration.ofMinutes(2), Duration.ofSeconds(30));
+        for (int i = 0; i < 2 * BLOCK_SIZE; i++) {
+            long number = saveInvoice(other, false).getNumber();
+            assertThat(number < block.getRangeStart() || number > block.getRangeEnd()).as("número %d", number).isTrue();
+        }
+    }
+
+    private InvoiceNumberingService newService(String node, Duration lease, Duration margin) {
+        DataSourceProperties properties = new DataSourceProperties();
+        properties.setUrl(database.getUrl());
+        properties.setUsername(database.getUsername());
+        properties.setPassword(database.getPassword());
+        @SuppressWarnings("unchecked")
+        ObjectProvider<ShardRoutingDataSource> noShards = mock(ObjectProvider.class);
+        InvoiceNumberingService service = new InvoiceNumberingService(seriesRepository, properties, noShards,
+                4, lease, margin, node);
+        service.reloadSeries();
+        services.add(service);
+        return service;
+    }
+
+    private InvoiceNumber saveInvoice(InvoiceNumberingService service, boolean fail) {
+        try {
+            return transaction.execute(status -> {
+                InvoiceNumber number = service.assign(PREFIX);
+                insertInvoice(number);
+                if (fail) {
+                    throw new IllegalArgumentException("fallo simulado");
+                }
+                return number;
+            });
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void insertInvoice(InvoiceNumber number) {
+        jdbc.update("INSERT INTO invoices (id, created_at, total, client_id, series_prefix, invoice_number) "
+                        + "VALUES (?, ?, 10, ?, ?, ?)", invoiceIds.incrementAndGet(), Timestamp.valueOf(LocalDateTime.now()),
+                clientId, number.getSeriesPrefix(), number.getNumber());
+    }
+
+    /**
+     * Apaga los nodos (liberan sus bloques) y emite con un nodo nuevo tantos números como huecos
+     * haya por debajo del mayor: los números libres de los bloques recuperados salen primero.
+     */
+    private void fillGapsAfterShutdown() {
+        services.forEach(InvoiceNumberingService::shutdown);
+        services.clear();
+        List<Long> numbers = savedNumbers();
+        long gaps = numbers.get(numbers.size() - 1) - numbers.size();
+        InvoiceNumberingService recovery = newService("recuperacion", Duration.ofMinutes(2), Duration.ofSeconds(30));
+        for (long i = 0; i < gaps; i++) {
+            saveInvoice(recovery, false);
+        }
+    }
+
+    private void assertContiguous() {
+        List<Long> numbers = savedNumbers();
+        assertThat(numbers).isNotEmpty().doesNotHaveDuplicates();
+        for (int i = 0; i < numbers.size(); i++) {
+            assertThat(numbers.get(i)).isEqualTo(i + 1L);
+        }
+    }
+
+    private List<Long> savedNumbers() {
+        return jdbc.queryForList("SELECT invoice_number FROM invoices WHERE series_prefix = ? ORDER BY invoice_number",
+                Long.class, PREFIX);
+    }
+
+    private static int countMultiplesOfSeven(int n) {
+        return (n + 6) / 7;
+    }
+
+    private static void runConcurrently(int threads, int perThread, Task task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    for (int i = 0; i < perThread; i++) {
+                        task.run(thread, i);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Task {
+        void run(int thread, int i) throws Exception;
+    }
+}
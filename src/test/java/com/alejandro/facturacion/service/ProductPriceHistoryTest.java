@@ -0,0 +1,98 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.dto.ProductPrice;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProductPriceHistoryTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2026, 1, 1, 0, 0);
+
+    private H2TestDatabase database;
+    private JdbcTemplate jdbc;
+    private TransactionTemplate transaction;
+    private ProductPriceHistory history;
+    private long productId;
+
+    @BeforeEach
+    void setUp() {
+        database = new H2TestDatabase("prices");
+        jdbc = new JdbcTemplate(database.getDataSource());
+        transaction = new TransactionTemplate(new DataSourceTransactionManager(database.getDataSource()));
+        history = new ProductPriceHistory(jdbc, Duration.ofMinutes(1), 2);
+
+        jdbc.update("INSERT INTO products (name, price, stock) VALUES ('Producto', 40, 0)");
+        productId = jdbc.queryForObject("SELECT MAX(id) FROM products", Long.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.drop();
+    }
+
+    @Test
+    void recordsOnlyPricesThatChanged() {
+        assertThat(record(List.of(productId))).isEqualTo(1);
+        assertThat(record(List.of(productId))).isZero();
+
+        jdbc.update("UPDATE products SET price = 45 WHERE id = ?", productId);
+        assertThat(record(null)).isEqualTo(1);
+        history.refresh();
+
+        assertThat(history.getHistory(productId)).extracting(ProductPrice::getPrice)
+                .usingElementComparator(BigDecimal::compareTo).containsExactly(
+                        new BigDecimal("40"), new BigDecimal("45"));
+    }
+
+    @Test
+    void onePricePerProductAndInstant() {
+        insertPrice(10, START);
+
+        assertThatThrownBy(() -> insertPrice(11, START)).isInstanceOf(DuplicateKeyException.class);
+    }
+
+    @Test
+    void pricesOlderThanTheKeptOnesAreReadFromTheDatabase() {
+        for (int i = 0; i < 4; i++) {
+            insertPrice(10 + i, START.plusDays(i));
+        }
+        history.refresh();
+        // Releer las mismas filas no cambia nada
+        history.refresh();
+
+        ProductPrice first = history.getPriceAt(productId, START.plusHours(1)).orElseThrow();
+        assertThat(first.getPrice()).isEqualByComparingTo("10");
+        assertThat(first.getValidTo()).isEqualTo(START.plusDays(1));
+        assertThat(history.getPriceAt(productId, START.plusDays(2).plusHours(1)).orElseThrow().getPrice())
+                .isEqualByComparingTo("12");
+        assertThat(history.getPriceAt(productId, START.plusDays(9)).orElseThrow().getPrice())
+                .isEqualByComparingTo("13");
+        assertThat(history.getPriceAt(productId, START.minusDays(1))).isEmpty();
+        assertThat(history.getHistory(productId)).hasSize(4)
+                .extracting(ProductPrice::getValidFrom).containsExactly(
+                        START, START.plusDays(1), START.plusDays(2), START.plusDays(3));
+    }
+
+    private int record(List<Long> productIds) {
+        return transaction.execute(status -> history.recordChanges(productIds));
+    }
+
+    private void insertPrice(int price, LocalDateTime validFrom) {
+        jdbc.update("INSERT INTO product_prices (product_id, price, valid_from) VALUES (?, ?, ?)",
+                productId, price, Timestamp.valueOf(validFrom));
+    }
+}
@@ -0,0 +1,241 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.ShardDataSources;
+import com.alejandro.facturacion.config.ShardRoutingDataSource;
+import com.alejandro.facturacion.dto.StockMovementType;
+import com.alejandro.facturacion.entity.Invoice;
+import com.alejandro.facturacion.entity.InvoiceItem;
+import com.alejandro.facturacion.entity.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Enrutamiento entre tres bases H2 (shards 0, 1 y 2) montadas como en {@code ShardingConfig}: pool
+ * por shard, {@link ShardRoutingDataSource} y proxy de conexiones perezoso.
+ */
+class ShardRouterTest {
+
+    private static final int SHARDS = 3;
+
+    private final List<H2TestDatabase> shardDatabases = new ArrayList<>();
+    private JdbcTemplate jdbc;
+    private TransactionTemplate transaction;
+    private ShardRoutingDataSource routing;
+    private ShardDirectory directory;
+    private ShardRouter router;
+
+    @BeforeEach
+    void setUp() {
+        List<DataSource> shardDataSources = new ArrayList<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            H2TestDatabase database = new H2TestDatabase("shard" + shard);
+            ShardDataSources.alignIds(database.getDataSource(), shard);
+            shardDatabases.add(database);
+            shardDataSources.add(database.getDataSource());
+        }
+        routing = new ShardRoutingDataSource(shardDataSources);
+        routing.afterPropertiesSet();
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+        jdbc = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        transaction = new TransactionTemplate(transactionManager);
+
+        directory = new ShardDirectory(routing);
+        directory.refresh();
+        StaticListableBeanFactory beans = new StaticListableBeanFactory(Map.of("routing", routing, "directory", directory));
+        router = new ShardRouter(beans.getBeanProvider(ShardRoutingDataSource.class),
+                beans.getBeanProvider(ShardDirectory.class), transactionManager, 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        router.shutdown();
+        shardDatabases.forEach(H2TestDatabase::drop);
+    }
+
+    @Test
+    void eachShardGeneratesIdsOfItsOwnSeries() {
+        for (int shard = 0; shard < SHARDS; shard++) {
+            long clientId = createClient(shard);
+            assertThat(router.shardOfId(clientId)).isEqualTo(shard);
+            assertThat(directory.locate(clientId).getShard()).isEqualTo(shard);
+        }
+    }
+
+    @Test
+    void clientWritesGoOnlyToTheClientShard() {
+        long home = createClient(0);
+        long second = createClient(2);
+
+        insertInvoice(home);
+        insertInvoice(second);
+        insertInvoice(second);
+
+        assertThat(countInvoices(0)).isEqualTo(1);
+        assertThat(countInvoices(1)).isZero();
+        assertThat(countInvoices(2)).isEqualTo(2);
+        assertThat(router.scatter(() -> jdbc.queryForObject("SELECT COUNT(*) FROM invoices", Long.class)))
+                .containsExactly(1L, 0L, 2L);
+    }
+
+    @Test
+    void findFirstLooksInEveryShard() {
+        long clientId = createClient(2);
+        long invoiceId = insertInvoice(clientId);
+
+        // Aunque se empiece por otro shard (p. ej. una factura de un cliente movido), se encuentra
+        Optional<Long> found = router.findFirst(1, () -> jdbc.queryForList(
+                "SELECT client_id FROM invoices WHERE id = ?", Long.class, invoiceId).stream().findFirst());
+
+        assertThat(found).contains(clientId);
+    }
+
+    @Test
+    void movedClientIsRoutedToItsNewShard() {
+        long clientId = createClient(1);
+        assertThat(directory.markMoving(clientId, 1)).isTrue();
+
+        assertThatThrownBy(() -> insertInvoice(clientId))
+                .isInstanceOf(IllegalStateException.class).hasMessageContaining("moviendo");
+
+        router.onShard(2, () -> transaction.execute(status -> jdbc.update(
+                "INSERT INTO clients (id, name, email, identification_number) VALUES (?, 'Movido', 'm@test', 'M')",
+                clientId)));
+        directory.assign(clientId, 2);
+        insertInvoice(clientId);
+
+        assertThat(countInvoices(1)).isZero();
+        assertThat(countInvoices(2)).isEqualTo(1);
+    }
+
+    @Test
+    void nestedOperationOnAnotherShardIsRejected() {
+        long first = createClient(1);
+        long second = createClient(2);
+
+        assertThatThrownBy(() -> router.forClientWrite(first, () -> transaction.execute(status -> {
+            jdbc.queryForObject("SELECT COUNT(*) FROM invoices", Long.class);
+            return router.forClientWrite(second, () -> 0);
+        }))).isInstanceOf(IllegalStateException.class).hasMessageContaining("shard 2");
+    }
+
+    @Test
+    void saleOfAnInvoiceThatNeverCommitsReturnsToTheHomeShardStock() {
+        StockLedgerService ledger = ledger();
+        long productId = createProduct(ledger, 10);
+        long clientId = createClient(1);
+
+        assertThatThrownBy(() -> router.forClientWrite(clientId, () -> transaction.execute(status -> {
+            long invoiceId = insertInvoiceRow(clientId);
+            ledger.recordSale(sale(invoiceId, productId, 4));
+            throw new IllegalStateException("Fallo al confirmar la factura");
+        }))).isInstanceOf(IllegalStateException.class);
+
+        assertThat(ledger.getStock(productId).orElseThrow().getStock()).isEqualTo(10);
+        assertThat(pendingSales()).isZero();
+    }
+
+    @Test
+    void pendingSalesLeftByACrashAreReconciled() {
+        StockLedgerService ledger = ledger();
+        long productId = createProduct(ledger, 10);
+        long clientId = createClient(1);
+        long confirmed = insertInvoice(clientId);
+        // Venta de una factura confirmada cuya marca no llegó a borrarse
+        router.forClientWrite(clientId, () -> transaction.execute(status -> {
+            ledger.recordSale(sale(confirmed, productId, 3));
+            return null;
+        }));
+        new JdbcTemplate(shardDatabases.get(0).getDataSource()).update("INSERT INTO stock_pending_sales (invoice_id, shard, created_at) "
+                + "VALUES (?, 1, ?)", confirmed, Timestamp.valueOf(LocalDateTime.now()));
+        // Caída entre la transacción del libro y la de la factura: la venta quedó, la factura no
+        long lost = confirmed + 1;
+        router.forClientWrite(clientId, () -> transaction.execute(status -> {
+            ledger.recordSale(sale(lost, productId, 4));
+            status.setRollbackOnly();
+            // Sin sincronizaciones no se ejecuta afterCompletion, como si la instancia cayera antes
+            TransactionSynchronizationManager.clearSynchronization();
+            TransactionSynchronizationManager.initSynchronization();
+            return null;
+        }));
+        assertThat(ledger.getStock(productId).orElseThrow().getStock()).isEqualTo(3);
+        assertThat(pendingSales()).isEqualTo(2);
+
+        ledger.reconcilePendingSales();
+
+        assertThat(ledger.getStock(productId).orElseThrow().getStock()).isEqualTo(7);
+        assertThat(pendingSales()).isZero();
+    }
+
+    private StockLedgerService ledger() {
+        return new StockLedgerService(jdbc, new DataSourceTransactionManager(jdbc.getDataSource()),
+                new StaticListableBeanFactory(Map.of("routing", routing)).getBeanProvider(ShardRoutingDataSource.class),
+                event -> { }, mock(AuditService.class), 500, Duration.ofDays(30), Duration.ZERO);
+    }
+
+    private long createProduct(StockLedgerService ledger, int stock) {
+        return transaction.execute(status -> {
+            jdbc.update("INSERT INTO products (name, price, stock) VALUES ('Producto', 10, 0)");
+            long productId = jdbc.queryForObject("SELECT MAX(id) FROM products", Long.class);
+            ledger.record(productId, StockMovementType.ADJUSTMENT, stock, null, null);
+            return productId;
+        });
+    }
+
+    private static Invoice sale(long invoiceId, long productId, int quantity) {
+        InvoiceItem item = InvoiceItem.builder().product(Product.builder().id(productId).name("Producto").build())
+                .quantity(quantity).build();
+        return Invoice.builder().id(invoiceId).items(List.of(item)).build();
+    }
+
+    private long pendingSales() {
+        return new JdbcTemplate(shardDatabases.get(0).getDataSource()).queryForObject("SELECT COUNT(*) FROM stock_pending_sales", Long.class);
+    }
+
+    private long insertInvoiceRow(long clientId) {
+        jdbc.update("INSERT INTO invoices (created_at, total, client_id) VALUES (?, 10, ?)",
+                Timestamp.valueOf(LocalDateTime.now()), clientId);
+        return jdbc.queryForObject("SELECT MAX(id) FROM invoices WHERE client_id = ?", Long.class, clientId);
+    }
+
+    private long createClient(int shard) {
+        return router.onShard(shard, () -> transaction.execute(status -> {
+            jdbc.update("INSERT INTO clients (name, email, identification_number) VALUES (?, ?, ?)",
+                    "Cliente", UUID.randomUUID() + "@test", UUID.randomUUID().toString());
+            return jdbc.queryForObject("SELECT MAX(id) FROM clients", Long.class);
+        }));
+    }
+
+    private long insertInvoice(long clientId) {
+        return router.forClientWrite(clientId, () -> transaction.execute(status -> {
+            jdbc.update("INSERT INTO invoices (created_at, total, client_id) VALUES (?, 10, ?)",
+                    Timestamp.valueOf(LocalDateTime.now()), clientId);
+            return jdbc.queryForObject("SELECT MAX(id) FROM invoices WHERE client_id = ?", Long.class, clientId);
+        }));
+    }
+
+    private long countInvoices(int shard) {
+        return new JdbcTemplate(shardDatabases.get(shard).getDataSource()).queryForObject("SELECT COUNT(*) FROM invoices", Long.class);
+    }
+}
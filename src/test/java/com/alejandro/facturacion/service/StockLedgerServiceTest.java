@@ -0,0 +1,83 @@
+package com.alejandro.facturacion.service;
+
+import com.alejandro.facturacion.config.ShardRoutingDataSource;
+import com.alejandro.facturacion.dto.StockMovementType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class StockLedgerServiceTest {
+
+    private H2TestDatabase database;
+    private JdbcTemplate jdbc;
+    private TransactionTemplate transaction;
+    private StockLedgerService ledger;
+    private long productId;
+
+    @BeforeEach
+    void setUp() {
+        database = new H2TestDatabase("stock");
+        jdbc = new JdbcTemplate(database.getDataSource());
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(database.getDataSource());
+        transaction = new TransactionTemplate(transactionManager);
+        ledger = new StockLedgerService(jdbc, transactionManager,
+                new StaticListableBeanFactory().getBeanProvider(ShardRoutingDataSource.class), event -> { },
+                mock(AuditService.class), 500, Duration.ofDays(30), Duration.ofMinutes(5));
+
+        jdbc.update("INSERT INTO products (name, price, stock) VALUES ('Producto', 10, 0)");
+        productId = jdbc.queryForObject("SELECT MAX(id) FROM products", Long.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.drop();
+    }
+
+    @Test
+    void stockAtFollowsMovementDatesNotIds() {
+        LocalDateTime start = LocalDateTime.of(2026, 3, 1, 9, 0);
+        long first = insertMovement(10, start);
+        // Escrito por una instancia con el reloj adelantado: ID menor, fecha posterior al siguiente
+        long skewed = insertMovement(-3, start.plusMinutes(105));
+        insertMovement(-2, start.plusMinutes(60));
+        jdbc.update("INSERT INTO stock_snapshots (product_id, movement_id, stock, taken_at) VALUES (?, ?, ?, ?)",
+                productId, skewed, 7, Timestamp.valueOf(start.plusMinutes(75)));
+
+        assertThat(first).isLessThan(skewed);
+        assertThat(ledger.getStockAt(productId, start.plusMinutes(30)).orElseThrow().getStock()).isEqualTo(10);
+        assertThat(ledger.getStockAt(productId, start.plusMinutes(90)).orElseThrow().getStock()).isEqualTo(8);
+        assertThat(ledger.getStockAt(productId, start.plusMinutes(120)).orElseThrow().getStock()).isEqualTo(5);
+        assertThat(ledger.getStock(productId).orElseThrow().getStock()).isEqualTo(5);
+    }
+
+    @Test
+    void recordedMovementsNeverLeaveNegativeStock() {
+        transaction.executeWithoutResult(status -> ledger.record(productId, StockMovementType.ADJUSTMENT, 4, null, null));
+        LocalDateTime afterAdjustment = LocalDateTime.now();
+        transaction.executeWithoutResult(status -> ledger.record(productId, StockMovementType.SALE, -3, null, null));
+
+        assertThatThrownBy(() -> transaction.executeWithoutResult(
+                status -> ledger.record(productId, StockMovementType.SALE, -2, null, null)))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("hay 1 unidades");
+        assertThat(ledger.getStock(productId).orElseThrow().getStock()).isEqualTo(1);
+        assertThat(ledger.getStockAt(productId, afterAdjustment).orElseThrow().getStock()).isEqualTo(4);
+    }
+
+    private long insertMovement(int quantity, LocalDateTime createdAt) {
+        jdbc.update("INSERT INTO stock_movements (product_id, movement_type, quantity, created_at) VALUES (?, ?, ?, ?)",
+                productId, StockMovementType.ADJUSTMENT.name(), quantity, Timestamp.valueOf(createdAt));
+        return jdbc.queryForObject("SELECT MAX(id) FROM stock_movements", Long.class);
+    }
+}